@@ -0,0 +1,73 @@
+package com.caojx.javaconcurrencylearn.source.test;
+
+import com.caojx.javaconcurrencylearn.source.util.concurrent.BoundedConcurrentCache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * BoundedConcurrentCache并发put/remove的丢失更新校验：
+ * 多个线程对同一个key并发put（每次写入全局唯一的值）和remove，每个写入的值最终必须恰好被观察到一次——
+ * 作为之后某次put或remove的返回值，或者作为结束时缓存中的值。
+ * 如果put把值写进了已被remove从map中删除的节点，这个值就再也观察不到，而被覆盖的旧值会被返回两次。
+ *
+ * @author caojx created on 2026/10/19
+ */
+public class BoundedConcurrentCacheTest {
+
+    private static final int KEYS = 1;
+    private static final int WRITERS = 4;
+    private static final int REMOVERS = 4;
+    private static final int PUTS_PER_WRITER = 200_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        // 容量足够大, 不会淘汰, 被观察到的值只来自put和remove的返回值
+        BoundedConcurrentCache<Integer, Integer> cache = new BoundedConcurrentCache<>(1 << 20);
+        int total = WRITERS * PUTS_PER_WRITER;
+        AtomicIntegerArray seen = new AtomicIntegerArray(total);
+        AtomicInteger nextValue = new AtomicInteger();
+        Thread[] writers = new Thread[WRITERS];
+        for (int w = 0; w < WRITERS; w++) {
+            writers[w] = new Thread(() -> {
+                for (int i = 0; i < PUTS_PER_WRITER; i++) {
+                    int v = nextValue.getAndIncrement();
+                    observe(seen, cache.put(v % KEYS, v));
+                }
+            });
+        }
+        Thread[] removers = new Thread[REMOVERS];
+        for (int r = 0; r < REMOVERS; r++) {
+            removers[r] = new Thread(() -> {
+                for (int i = 0; nextValue.get() < total; i++)
+                    observe(seen, cache.remove(i % KEYS));
+            });
+        }
+        for (Thread t : writers)
+            t.start();
+        for (Thread t : removers)
+            t.start();
+        for (Thread t : writers)
+            t.join();
+        for (Thread t : removers)
+            t.join();
+        for (int k = 0; k < KEYS; k++)
+            observe(seen, cache.remove(k));
+
+        int lost = 0;
+        for (int v = 0; v < total; v++) {
+            int n = seen.get(v);
+            if (n > 1)
+                throw new AssertionError("value " + v + " returned " + n + " times");
+            if (n == 0)
+                lost++;
+        }
+        if (lost != 0)
+            throw new AssertionError(lost + " lost updates");
+        System.out.println("BoundedConcurrentCache put/remove: OK");
+    }
+
+    private static void observe(AtomicIntegerArray seen, Integer v) {
+        if (v != null)
+            seen.incrementAndGet(v);
+    }
+}
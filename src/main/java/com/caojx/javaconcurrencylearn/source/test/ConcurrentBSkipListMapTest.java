@@ -0,0 +1,91 @@
+package com.caojx.javaconcurrencylearn.source.test;
+
+import com.caojx.javaconcurrencylearn.source.util.concurrent.ConcurrentBSkipListMap;
+import com.caojx.javaconcurrencylearn.source.util.concurrent.ConcurrentSkipListMap;
+import com.caojx.javaconcurrencylearn.source.util.concurrent.CountDownLatch;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+
+/**
+ * ConcurrentBSkipListMap与ConcurrentSkipListMap的简单对比：
+ * 先插入相同的键, 然后若干线程分别做点查询(get)和范围扫描(subMap遍历), 统计耗时。
+ * <p>
+ * 这只是一个粗略的对比演示（没有预热隔离、没有多次fork），严格的测量请使用JMH。
+ *
+ * @author caojx created on 2026/10/19
+ */
+public class ConcurrentBSkipListMapTest {
+
+    private static final int KEYS = 1_000_000;
+    private static final int THREADS = 4;
+    private static final int POINT_OPS = 200_000;
+    private static final int RANGE_OPS = 20_000;
+    private static final int RANGE = 100;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws InterruptedException {
+        ConcurrentNavigableMap<Integer, Integer> bskip = new ConcurrentBSkipListMap<>();
+        ConcurrentNavigableMap<Integer, Integer> skip = new ConcurrentSkipListMap<>();
+        long b = fill(bskip), s = fill(skip);
+        System.out.printf("fill: ConcurrentBSkipListMap %d ms, ConcurrentSkipListMap %d ms%n",
+                b / 1_000_000, s / 1_000_000);
+        for (int r = 0; r < ROUNDS; r++) {
+            long bp = run(bskip, false), sp = run(skip, false);
+            long br = run(bskip, true), sr = run(skip, true);
+            System.out.printf("round %d: get ConcurrentBSkipListMap %d ms, ConcurrentSkipListMap %d ms; "
+                            + "range ConcurrentBSkipListMap %d ms, ConcurrentSkipListMap %d ms%n",
+                    r, bp / 1_000_000, sp / 1_000_000, br / 1_000_000, sr / 1_000_000);
+        }
+    }
+
+    private static long fill(ConcurrentNavigableMap<Integer, Integer> map) {
+        long begin = System.nanoTime();
+        // 乱序插入, 避免顺序插入的特殊情况
+        for (int i = 0; i < KEYS; i++) {
+            int k = (int) ((i * 2654435761L) % KEYS);
+            map.put(k, i);
+        }
+        return System.nanoTime() - begin;
+    }
+
+    /**
+     * 每个线程做固定次数的点查询或范围扫描
+     */
+    private static long run(ConcurrentNavigableMap<Integer, Integer> map, boolean range)
+            throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        long[] sink = new long[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final int id = t;
+            new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long sum = 0;
+                int k = id * 7919;
+                if (range) {
+                    for (int i = 0; i < RANGE_OPS; i++) {
+                        k = (k + 104729) % (KEYS - RANGE);
+                        for (Map.Entry<Integer, Integer> e : map.subMap(k, k + RANGE).entrySet())
+                            sum += e.getValue();
+                    }
+                } else {
+                    for (int i = 0; i < POINT_OPS; i++) {
+                        k = (k + 104729) % KEYS;
+                        sum += map.get(k);
+                    }
+                }
+                sink[id] = sum;
+                done.countDown();
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        return System.nanoTime() - begin;
+    }
+}
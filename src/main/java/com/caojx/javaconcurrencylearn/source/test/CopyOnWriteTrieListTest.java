@@ -0,0 +1,88 @@
+package com.caojx.javaconcurrencylearn.source.test;
+
+import com.caojx.javaconcurrencylearn.source.util.concurrent.CopyOnWriteTrieList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * CopyOnWriteTrieList子列表的简单校验：对同样的操作序列, 分别作用于CopyOnWriteTrieList和ArrayList的子列表, 比较结果是否一致。
+ * 覆盖clear、remove(Object)、removeIf、removeAll、retainAll、replaceAll、sort、forEach以及嵌套的subList。
+ *
+ * @author caojx created on 2026/10/19
+ */
+public class CopyOnWriteTrieListTest {
+
+    private static final int SIZE = 5_000;
+    private static final int ROUNDS = 200;
+
+    public static void main(String[] args) {
+        Random random = new Random(46);
+        for (int r = 0; r < ROUNDS; r++) {
+            List<Integer> trie = new CopyOnWriteTrieList<>();
+            List<Integer> ref = new ArrayList<>();
+            for (int i = 0; i < SIZE; i++) {
+                trie.add(i);
+                ref.add(i);
+            }
+            int from = random.nextInt(SIZE), to = from + random.nextInt(SIZE - from + 1);
+            List<Integer> ts = trie.subList(from, to), rs = ref.subList(from, to);
+            switch (r % 9) {
+                case 0:
+                    ts.clear();
+                    rs.clear();
+                    break;
+                case 1:
+                    Integer o = from + random.nextInt(SIZE);
+                    check(ts.remove(o) == rs.remove(o), "remove(Object)");
+                    break;
+                case 2:
+                    check(ts.removeIf(x -> x % 3 == 0) == rs.removeIf(x -> x % 3 == 0), "removeIf");
+                    break;
+                case 3:
+                    List<Integer> c = Arrays.asList(from, from + 1, to - 1, SIZE + 1);
+                    check(ts.removeAll(c) == rs.removeAll(c), "removeAll");
+                    break;
+                case 4:
+                    check(ts.retainAll(Arrays.asList(from + 2, to - 2)) == rs.retainAll(Arrays.asList(from + 2, to - 2)),
+                            "retainAll");
+                    break;
+                case 5:
+                    ts.replaceAll(x -> -x);
+                    rs.replaceAll(x -> -x);
+                    break;
+                case 6:
+                    ts.sort(Comparator.reverseOrder());
+                    rs.sort(Comparator.reverseOrder());
+                    break;
+                case 7:
+                    int half = ts.size() / 2;
+                    ts.subList(0, half).clear();
+                    rs.subList(0, half).clear();
+                    // 与CopyOnWriteArrayList相同, 通过嵌套子列表修改后外层子列表失效, 重新取得视图
+                    ts = trie.subList(from, to - half);
+                    rs = ref.subList(from, to - half);
+                    break;
+                default:
+                    List<Integer> seen = new ArrayList<>();
+                    ts.forEach(seen::add);
+                    check(seen.equals(rs), "forEach");
+            }
+            check(ts.size() == rs.size() && ts.equals(rs), "subList after case " + r % 9);
+            check(trie.equals(ref), "list after case " + r % 9);
+            // 子列表修改后仍然可以继续使用
+            ts.add(0, -1);
+            rs.add(0, -1);
+            check(trie.equals(ref), "add after case " + r % 9);
+        }
+        System.out.println("CopyOnWriteTrieList subList: OK");
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok)
+            throw new AssertionError(what);
+    }
+}
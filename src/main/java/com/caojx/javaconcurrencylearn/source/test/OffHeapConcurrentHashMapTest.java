@@ -0,0 +1,58 @@
+package com.caojx.javaconcurrencylearn.source.test;
+
+import com.caojx.javaconcurrencylearn.source.util.concurrent.OffHeapConcurrentHashMap;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * OffHeapConcurrentHashMap按内容比较byte[]的简单校验：containsValue、equals、hashCode以及entrySet的contains和remove
+ * 都使用与map中不是同一个对象、但内容相同的数组。
+ *
+ * @author caojx created on 2026/10/19
+ */
+public class OffHeapConcurrentHashMapTest {
+
+    public static void main(String[] args) {
+        try (OffHeapConcurrentHashMap a = new OffHeapConcurrentHashMap(1 << 20);
+             OffHeapConcurrentHashMap b = new OffHeapConcurrentHashMap(1 << 20, 4)) {
+            for (int i = 0; i < 1000; i++) {
+                a.put(bytes(i), bytes(-i));
+                b.put(bytes(i), bytes(-i));
+            }
+            check(a.containsValue(bytes(-500)), "containsValue");
+            check(!a.containsValue(bytes(1)) && !a.containsValue("x"), "containsValue absent");
+
+            check(a.equals(b) && b.equals(a), "equals");
+            check(a.hashCode() == b.hashCode() && a.hashCode() == a.hashCode(), "hashCode");
+            check(a.entrySet().equals(b.entrySet()), "entrySet equals");
+            // HashMap按数组的identity查找, 与按内容比较的map不相等
+            Map<byte[], byte[]> heap = new HashMap<>();
+            b.forEach(heap::put);
+            check(!a.equals(heap), "equals identity map");
+
+            Map.Entry<byte[], byte[]> e = new AbstractMap.SimpleEntry<>(bytes(7), bytes(-7));
+            check(a.entrySet().contains(e), "entrySet contains");
+            check(!a.entrySet().contains(new AbstractMap.SimpleEntry<>(bytes(7), bytes(7))), "entrySet contains wrong value");
+            check(!a.entrySet().remove(new AbstractMap.SimpleEntry<>(bytes(7), bytes(7))), "entrySet remove wrong value");
+            check(a.entrySet().remove(e) && !a.containsKey(bytes(7)), "entrySet remove");
+            check(!a.equals(b) && a.size() == 999, "equals after remove");
+
+            a.put(bytes(7), bytes(8));
+            check(!a.equals(b) && a.hashCode() != b.hashCode(), "equals different value");
+            a.put(bytes(7), bytes(-7));
+            check(a.equals(b) && a.hashCode() == b.hashCode(), "equals restored");
+        }
+        System.out.println("OffHeapConcurrentHashMap content equality: OK");
+    }
+
+    private static byte[] bytes(int i) {
+        return new byte[]{(byte) (i >>> 24), (byte) (i >>> 16), (byte) (i >>> 8), (byte) i};
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok)
+            throw new AssertionError(what);
+    }
+}
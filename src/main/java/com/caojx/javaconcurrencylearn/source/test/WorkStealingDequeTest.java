@@ -0,0 +1,97 @@
+package com.caojx.javaconcurrencylearn.source.test;
+
+import com.caojx.javaconcurrencylearn.source.util.concurrent.ConcurrentLinkedDeque;
+import com.caojx.javaconcurrencylearn.source.util.concurrent.CountDownLatch;
+import com.caojx.javaconcurrencylearn.source.util.concurrent.WorkStealingDeque;
+
+/**
+ * WorkStealingDeque与ConcurrentLinkedDeque的简单对比：
+ * 一个所有者线程在队首push/pop，若干窃取者线程在队尾steal，统计完成固定数量任务的耗时。
+ * <p>
+ * 这只是一个粗略的对比演示（没有预热隔离、没有多次fork），严格的测量请使用JMH。
+ *
+ * @author caojx created on 2026/10/19
+ */
+public class WorkStealingDequeTest {
+
+    private static final int TASKS = 2_000_000;
+    private static final int THIEVES = 2;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws InterruptedException {
+        for (int r = 0; r < ROUNDS; r++) {
+            long wsd = runWorkStealingDeque();
+            long cld = runConcurrentLinkedDeque();
+            System.out.printf("round %d: WorkStealingDeque %d ms, ConcurrentLinkedDeque %d ms%n",
+                    r, wsd / 1_000_000, cld / 1_000_000);
+        }
+    }
+
+    private static long runWorkStealingDeque() throws InterruptedException {
+        WorkStealingDeque<Integer> deque = new WorkStealingDeque<>();
+        return run(new Ops() {
+            public void push(Integer e) { deque.push(e); }
+            public Integer pop() { return deque.pop(); }
+            public Integer steal() { return deque.steal(); }
+        });
+    }
+
+    private static long runConcurrentLinkedDeque() throws InterruptedException {
+        ConcurrentLinkedDeque<Integer> deque = new ConcurrentLinkedDeque<>();
+        return run(new Ops() {
+            public void push(Integer e) { deque.offerLast(e); }
+            public Integer pop() { return deque.pollLast(); }
+            public Integer steal() { return deque.pollFirst(); }
+        });
+    }
+
+    private interface Ops {
+        void push(Integer e);
+
+        Integer pop();
+
+        Integer steal();
+    }
+
+    /**
+     * 所有者每push两个任务pop一个, 窃取者不停地steal, 直到所有任务都被取走.
+     */
+    private static long run(Ops ops) throws InterruptedException {
+        java.util.concurrent.atomic.AtomicLong taken = new java.util.concurrent.atomic.AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] thieves = new Thread[THIEVES];
+        for (int i = 0; i < THIEVES; i++) {
+            thieves[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (taken.get() < TASKS) {
+                    if (ops.steal() != null)
+                        taken.incrementAndGet();
+                    else
+                        Thread.yield();
+                }
+            });
+            thieves[i].start();
+        }
+        Integer task = 1;
+        long begin = System.nanoTime();
+        start.countDown();
+        for (int i = 0; i < TASKS; i++) {
+            ops.push(task);
+            if ((i & 1) == 1 && ops.pop() != null)
+                taken.incrementAndGet();
+        }
+        // 所有者也帮忙把剩下的任务取完
+        while (taken.get() < TASKS) {
+            if (ops.pop() != null)
+                taken.incrementAndGet();
+        }
+        long elapsed = System.nanoTime() - begin;
+        for (Thread t : thieves)
+            t.join();
+        return elapsed;
+    }
+}
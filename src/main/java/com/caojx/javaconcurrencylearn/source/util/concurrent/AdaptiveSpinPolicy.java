@@ -0,0 +1,220 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+import com.caojx.javaconcurrencylearn.source.util.concurrent.atomic.LongAdder;
+
+/**
+ * AdaptiveSpinPolicy是SynchronousQueue和LinkedTransferQueue使用的自适应“先自旋再阻塞”策略。
+ * <p>
+ * 原来的实现中，自旋次数是根据CPU核数算出来的常量（SynchronousQueue的maxTimedSpins/maxUntimedSpins，LinkedTransferQueue的FRONT_SPINS/CHAINED_SPINS）：
+ * 1.在CPU超卖的容器中，自旋的线程占着CPU，反而拖慢了真正要来配对的线程，白白浪费CPU；
+ * 2.在空闲的多核大机器上，配对线程往往在自旋结束后不久就到了，线程已经阻塞，只能付出一次park/unpark的延迟。
+ * <p>
+ * 因此每个队列持有一个AdaptiveSpinPolicy，根据最近的配对等待时间动态调整自旋预算：
+ * 1.自旋期间就完成了配对，并且用掉了大半预算，说明预算偏紧，适当增加；
+ * 2.阻塞后很快（PARK_THRESHOLD_NANOS以内）就被唤醒，说明再多自旋一会就能避免阻塞，适当增加；
+ * 3.阻塞了很久才被唤醒，说明自旋是在浪费CPU，减少预算（最少可以减到0）.
+ * <p>
+ * 另外还统计了“自旋期间完成的配对次数”和“阻塞后才完成的配对次数”，用于观察和调优线程池的交接延迟.
+ * 还没有自旋就已经完成的配对（例如预算为0，或者在第一次自旋之前就被匹配）单独计数，不计入自旋配对次数，否则会虚高自旋的成功率.
+ * <p>
+ * Per-queue spin budget for the spin-then-park waits of
+ * {@link SynchronousQueue} and {@link LinkedTransferQueue}, adapted
+ * from the outcome of recent handoffs.  The budget grows when waits
+ * complete late in the spin phase or shortly after parking, and
+ * shrinks when waiters park for long periods.  Updates are racy by
+ * design: a lost update merely delays adaptation.
+ *
+ * <p>Budgets are expressed in units of untimed spins; timed waits use
+ * a sixteenth of the budget because each timed spin also reads the
+ * clock.  On uniprocessors the budget is always zero.
+ *
+ * @author caojx created on 2026/10/19
+ */
+public final class AdaptiveSpinPolicy {
+
+    /**
+     * True如果是多核CPU
+     */
+    static final boolean MP = Runtime.getRuntime().availableProcessors() > 1;
+
+    /**
+     * 阻塞时间低于该阈值时，认为多自旋一会就能避免这次阻塞. 粗略估计为几次park/unpark的开销即可.
+     * <p>
+     * Waits that complete within this many nanoseconds after parking
+     * are considered to have been avoidable by spinning longer.
+     */
+    static final long PARK_THRESHOLD_NANOS = 50L * 1000L;
+
+    /**
+     * 每次增加预算时的最小增量
+     */
+    static final int MIN_GROWTH = 8;
+
+    /**
+     * 自旋预算的上限
+     */
+    private final int maxSpins;
+
+    /**
+     * 当前的自旋预算（以无超时等待的自旋次数为单位）
+     */
+    private volatile int spins;
+
+    /**
+     * 在自旋期间完成的配对次数
+     */
+    private final LongAdder spinHandoffs = new LongAdder();
+
+    /**
+     * 还没有自旋就完成的配对次数
+     */
+    private final LongAdder immediateHandoffs = new LongAdder();
+
+    /**
+     * 阻塞后才完成的配对次数
+     */
+    private final LongAdder parkHandoffs = new LongAdder();
+
+    /**
+     * Creates a policy with the given initial and maximum budget.
+     *
+     * @param initialSpins the initial number of untimed spins
+     * @param maxSpins     the maximum number of untimed spins
+     * @throws IllegalArgumentException if {@code initialSpins} is
+     *                                  negative or greater than {@code maxSpins}
+     */
+    AdaptiveSpinPolicy(int initialSpins, int maxSpins) {
+        if (initialSpins < 0 || maxSpins < initialSpins)
+            throw new IllegalArgumentException();
+        this.spins = MP ? initialSpins : 0;
+        this.maxSpins = maxSpins;
+    }
+
+    /**
+     * 返回本次等待可以使用的自旋次数.
+     * <p>
+     * Returns the number of spins to use for a wait.
+     *
+     * @param timed true if the wait is timed
+     */
+    int spins(boolean timed) {
+        return timed ? spins >>> 4 : spins;
+    }
+
+    /**
+     * 记录一次没有阻塞就完成的配对: 一次都还没有自旋时计为立即配对, 不参与预算调整.
+     * <p>
+     * Records a handoff that completed without parking.  A handoff
+     * that completed before the first spin is counted as immediate
+     * rather than as a spin handoff, and does not affect the budget.
+     *
+     * @param used   the number of spins consumed
+     * @param budget the number of spins that were available
+     */
+    void spunHandoff(int used, int budget) {
+        if (used <= 0) {
+            immediateHandoffs.increment();
+            return;
+        }
+        spinHandoffs.increment();
+        if (used > (budget >>> 1))      // 用掉了大半预算, 适当增加
+            grow();
+    }
+
+    /**
+     * 记录一次阻塞后才完成的配对.
+     * <p>
+     * Records a handoff that completed only after parking.
+     *
+     * @param parkedNanos the time spent from first park until the match
+     */
+    void parkedHandoff(long parkedNanos) {
+        parkHandoffs.increment();
+        if (parkedNanos < PARK_THRESHOLD_NANOS)
+            grow();
+        else
+            shrink();
+    }
+
+    private void grow() {
+        int s = spins, max = maxSpins;
+        if (MP && s < max)
+            spins = Math.min(max, s + (s >>> 2) + MIN_GROWTH);
+    }
+
+    private void shrink() {
+        int s = spins;
+        if (s > 0)
+            spins = (s * 3) >>> 2;
+    }
+
+    /**
+     * Returns the current untimed spin budget.
+     *
+     * @return the current untimed spin budget
+     */
+    public int getSpinBudget() {
+        return spins;
+    }
+
+    /**
+     * Returns the maximum untimed spin budget.
+     *
+     * @return the maximum untimed spin budget
+     */
+    public int getMaxSpinBudget() {
+        return maxSpins;
+    }
+
+    /**
+     * Returns the number of handoffs that completed while the waiting
+     * thread was still spinning, after at least one spin.
+     *
+     * @return the number of handoffs completed without parking
+     */
+    public long getSpinHandoffCount() {
+        return spinHandoffs.sum();
+    }
+
+    /**
+     * Returns the number of handoffs that completed before the waiting
+     * thread had spun even once.
+     *
+     * @return the number of handoffs completed without spinning
+     */
+    public long getImmediateHandoffCount() {
+        return immediateHandoffs.sum();
+    }
+
+    /**
+     * Returns the number of handoffs for which the waiting thread had
+     * to park.
+     *
+     * @return the number of handoffs completed after parking
+     */
+    public long getParkHandoffCount() {
+        return parkHandoffs.sum();
+    }
+
+    /**
+     * Resets the handoff counters to zero; the spin budget is kept.
+     */
+    public void resetCounts() {
+        spinHandoffs.reset();
+        immediateHandoffs.reset();
+        parkHandoffs.reset();
+    }
+
+    /**
+     * Returns a string identifying this policy, as well as its state.
+     *
+     * @return a string identifying this policy, as well as its state
+     */
+    public String toString() {
+        return super.toString() +
+                "[spinBudget = " + spins +
+                ", immediateHandoffs = " + immediateHandoffs.sum() +
+                ", spinHandoffs = " + spinHandoffs.sum() +
+                ", parkHandoffs = " + parkHandoffs.sum() + "]";
+    }
+}
@@ -95,7 +95,7 @@ import java.util.concurrent.TimeUnit;
  * @since 1.5
  */
 public class ArrayBlockingQueue<E> extends AbstractQueue<E>
-        implements BlockingQueue<E>, java.io.Serializable {
+        implements BlockingQueue<E>, InstrumentedQueue, java.io.Serializable {
 
     /**
      * Serialization ID. This class relies on default serialization
@@ -162,6 +162,17 @@ public class ArrayBlockingQueue<E> extends AbstractQueue<E>
      */
     transient Itrs itrs = null;
 
+    /**
+     * 观测探针, 为null表示不做统计
+     */
+    private transient volatile QueueProbe probe;
+
+    /**
+     * 与items平行的入队时间戳数组, 仅在安装了探针时非null, 0表示入队时间未知.
+     * probe和stamps都在持有lock时设置, 所以持锁读取到的两者是一致的.
+     */
+    private transient long[] stamps;
+
     // Internal helper methods
 
     /**
@@ -197,10 +208,15 @@ public class ArrayBlockingQueue<E> extends AbstractQueue<E>
         // assert lock.getHoldCount() == 1;
         // assert items[putIndex] == null;
         final Object[] items = this.items;
+        final QueueProbe p = probe;
         items[putIndex] = x;
+        if (p != null)
+            stamps[putIndex] = System.nanoTime();
         if (++putIndex == items.length) // 队列已满,则重置索引为0
             putIndex = 0;
         count++;                        // 元素个数+1
+        if (p != null)
+            p.onEnqueue(count);
         notEmpty.signal();              // 唤醒一个notEmpty上的等待线程(可以来队列取元素了)
     }
 
@@ -215,6 +231,9 @@ public class ArrayBlockingQueue<E> extends AbstractQueue<E>
         @SuppressWarnings("unchecked")
         E x = (E) items[takeIndex];
         items[takeIndex] = null;
+        final QueueProbe p = probe;
+        if (p != null)
+            p.onDequeue(sojourn(stamps, takeIndex));
         if (++takeIndex == items.length)    // 如果队列已空，重置takeIndex=0
             takeIndex = 0;
         count--;
@@ -247,12 +266,15 @@ public class ArrayBlockingQueue<E> extends AbstractQueue<E>
 
             // slide over all others up through putIndex.
             final int putIndex = this.putIndex;
+            final long[] stamps = this.stamps;
             for (int i = removeIndex; ; ) {
                 int next = i + 1;
                 if (next == items.length)
                     next = 0;
                 if (next != putIndex) {
                     items[i] = items[next];
+                    if (stamps != null)             // 时间戳跟着元素一起移动
+                        stamps[i] = stamps[next];
                     i = next;
                 } else {
                     items[i] = null;
@@ -267,6 +289,34 @@ public class ArrayBlockingQueue<E> extends AbstractQueue<E>
         notFull.signal();
     }
 
+    /**
+     * 返回元素的排队时间, 入队时间未知时返回QueueProbe.UNKNOWN.
+     * Call only when holding lock and a probe is installed.
+     */
+    private static long sojourn(long[] stamps, int i) {
+        long t = stamps[i];
+        return (t == 0L) ? QueueProbe.UNKNOWN : System.nanoTime() - t;
+    }
+
+    /**
+     * 开始阻塞时调用, 返回开始阻塞的时间; 没有安装探针时返回0, 不读取时钟.
+     */
+    private long blockStart() {
+        return (probe == null) ? 0L : System.nanoTime();
+    }
+
+    private void producerBlocked(long start) {
+        QueueProbe p = probe;
+        if (p != null)
+            p.onProducerBlocked(System.nanoTime() - start);
+    }
+
+    private void consumerBlocked(long start) {
+        QueueProbe p = probe;
+        if (p != null)
+            p.onConsumerBlocked(System.nanoTime() - start);
+    }
+
     /**
      * 指定队列初始容量的构造器.
      * <p>
@@ -399,11 +449,17 @@ public class ArrayBlockingQueue<E> extends AbstractQueue<E>
         checkNotNull(e);
         final ReentrantLock lock = this.lock;
         lock.lockInterruptibly();   // 加锁
+        long blockedAt = 0L;
         try {
-            while (count == items.length)   // 队列已满。这里必须用while，防止虚假唤醒
+            while (count == items.length) { // 队列已满。这里必须用while，防止虚假唤醒
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
                 notFull.await();            // 在notFull队列上等待
+            }
             enqueue(e);                     // 队列未满, 直接入队
         } finally {
+            if (blockedAt != 0L)
+                producerBlocked(blockedAt);
             lock.unlock();
         }
     }
@@ -423,15 +479,20 @@ public class ArrayBlockingQueue<E> extends AbstractQueue<E>
         long nanos = unit.toNanos(timeout);
         final ReentrantLock lock = this.lock;
         lock.lockInterruptibly();
+        long blockedAt = 0L;
         try {
             while (count == items.length) {
                 if (nanos <= 0)
                     return false;
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
                 nanos = notFull.awaitNanos(nanos);
             }
             enqueue(e);
             return true;
         } finally {
+            if (blockedAt != 0L)
+                producerBlocked(blockedAt);
             lock.unlock();
         }
     }
@@ -455,11 +516,17 @@ public class ArrayBlockingQueue<E> extends AbstractQueue<E>
     public E take() throws InterruptedException {
         final ReentrantLock lock = this.lock;
         lock.lockInterruptibly();
+        long blockedAt = 0L;
         try {
-            while (count == 0)      // 队列为空, 则线程在notEmpty条件队列等待
+            while (count == 0) {    // 队列为空, 则线程在notEmpty条件队列等待
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
                 notEmpty.await();
+            }
             return dequeue();       // 队列非空，则出队一个元素
         } finally {
+            if (blockedAt != 0L)
+                consumerBlocked(blockedAt);
             lock.unlock();
         }
     }
@@ -468,14 +535,19 @@ public class ArrayBlockingQueue<E> extends AbstractQueue<E>
         long nanos = unit.toNanos(timeout);
         final ReentrantLock lock = this.lock;
         lock.lockInterruptibly();
+        long blockedAt = 0L;
         try {
             while (count == 0) {
                 if (nanos <= 0)
                     return null;
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
                 nanos = notEmpty.awaitNanos(nanos);
             }
             return dequeue();
         } finally {
+            if (blockedAt != 0L)
+                consumerBlocked(blockedAt);
             lock.unlock();
         }
     }
@@ -781,12 +853,15 @@ public class ArrayBlockingQueue<E> extends AbstractQueue<E>
             int n = Math.min(maxElements, count);
             int take = takeIndex;
             int i = 0;
+            final QueueProbe p = probe;
             try {
                 while (i < n) {
                     @SuppressWarnings("unchecked")
                     E x = (E) items[take];
                     c.add(x);
                     items[take] = null;
+                    if (p != null)
+                        p.onDequeue(sojourn(stamps, take));
                     if (++take == items.length)
                         take = 0;
                     i++;
@@ -812,6 +887,21 @@ public class ArrayBlockingQueue<E> extends AbstractQueue<E>
         }
     }
 
+    public void setProbe(QueueProbe probe) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            stamps = (probe == null) ? null : new long[items.length];
+            this.probe = probe;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public QueueProbe getProbe() {
+        return probe;
+    }
+
     /**
      * Returns an iterator over the elements in this queue in proper sequence.
      * The elements will be returned in order from first (head) to last (tail).
@@ -0,0 +1,1167 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+import com.caojx.javaconcurrencylearn.source.util.concurrent.atomic.LongAdder;
+import com.caojx.javaconcurrencylearn.source.util.concurrent.locks.ReentrantLock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BoundedConcurrentCache是建立在ConcurrentHashMap之上的有界缓存，使用W-TinyLFU淘汰策略，支持写后过期和访问后过期。
+ * <p>
+ * 直接用ConcurrentHashMap做缓存时没有容量上限，而在每次读操作中维护LRU链表又需要加锁，读操作就不再是无锁的了。
+ * BoundedConcurrentCache把“数据”和“策略”分开：
+ * 1.数据保存在ConcurrentHashMap中，get只做一次ConcurrentHashMap的get，然后把被访问的节点放入读缓冲区，
+ *   读缓冲区是按线程分条的有损环形缓冲区，满了直接丢弃，所以读操作永远不加锁；
+ * 2.写操作修改ConcurrentHashMap后，把“新增/更新/删除”事件放入写缓冲区，写事件不能丢弃；
+ * 3.淘汰策略相关的数据结构（LRU链表、频率草图、时间轮）只由持有evictionLock的线程访问，
+ *   读写缓冲区由维护任务批量地回放，维护任务默认提交到JDK的ForkJoinPool.commonPool()异步执行；
+ * 4.W-TinyLFU：新元素先进入窗口LRU（容量的1%），从窗口淘汰出来的元素作为候选者，
+ *   与主区域SLRU（试用区20% + 保护区80%）试用区的头部元素（受害者）比较访问频率，频率高的留下；
+ *   访问频率由4位计数的Count-Min Sketch估计，计数总和达到阈值后全部减半，使频率随时间衰减；
+ * 5.过期：每个节点按“写入时间 + expireAfterWrite”与“访问时间 + expireAfterAccess”中较早的时间挂到分层时间轮上，
+ *   维护任务推进时间轮，到期的节点被淘汰；读操作本身也会检查过期时间，不会返回已过期的值。
+ * <p>
+ * A bounded cache backed by a {@link ConcurrentHashMap}.  Reads perform
+ * a single hash map lookup and record the access in a striped, lossy
+ * buffer; writes update the map and record an event in a write buffer.
+ * The eviction policy, a Window TinyLFU, consumes both buffers in
+ * batches under a lock, normally on the maintenance executor, so
+ * neither reads nor writes wait for policy bookkeeping.
+ *
+ * <p>The size bound is approximate: the cache may briefly hold more
+ * than {@code maximumSize} entries until the pending events have been
+ * replayed.  Expired entries are never returned, even before the
+ * maintenance task removes them.  This class does not permit
+ * {@code null} keys or values.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ * @author caojx created on 2026/10/19
+ * @see ConcurrentHashMap
+ */
+public class BoundedConcurrentCache<K, V> {
+
+    /*
+     * Overview:
+     *
+     * Nodes are shared between the map and the policy.  The map owns
+     * the key-to-node association and node.value; all other node fields
+     * (the access-order links, queue type, timer-wheel links) are
+     * guarded by evictionLock.  A node is "retired" when it has been
+     * removed from the map, and "dead" when it has also been unlinked
+     * from the policy.  Removal from the map and retirement happen
+     * together under the node's monitor, which writers also hold while
+     * updating node.value, so a write never lands in a node that has
+     * left the map.  Writers that find a retired node retry, so a
+     * key never maps to a retired node.
+     *
+     * Because buffers are replayed asynchronously, events for the same
+     * node may be seen out of order (a removal before its addition).
+     * Each task therefore checks the node's state instead of trusting
+     * the order: an add of a retired node is dropped, and an update or
+     * removal of a node that is not yet linked is ignored.
+     *
+     * Reads only ever publish to the read buffer; when a stripe is full
+     * the access is simply dropped, which only makes the recency and
+     * frequency information slightly less precise.  The write buffer is
+     * unbounded, but once it is too far behind a writer performs the
+     * maintenance itself, which bounds the backlog.
+     */
+
+    /**
+     * 窗口区占总容量的比例
+     */
+    static final double PERCENT_WINDOW = 0.01d;
+
+    /**
+     * 保护区占主区域的比例
+     */
+    static final double PERCENT_MAIN_PROTECTED = 0.80d;
+
+    /**
+     * 写缓冲区积压超过该值时, 写线程直接执行维护任务
+     */
+    static final int WRITE_BUFFER_MAX = 128 * ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * 默认的维护线程池: JDK的ForkJoinPool.commonPool().
+     * 本包中的ForkJoinPool提交任务时会用到本包的AtomicLong, 其本地方法VMSupportsCS8只为java.util.concurrent.atomic注册, 运行时不可用.
+     */
+    static final Executor DEFAULT_EXECUTOR = java.util.concurrent.ForkJoinPool.commonPool()::execute;
+
+    /**
+     * 节点所在的区域
+     */
+    static final int WINDOW = 0;
+    static final int PROBATION = 1;
+    static final int PROTECTED = 2;
+
+    /**
+     * 缓存数据
+     */
+    final ConcurrentHashMap<K, Node<K, V>> data;
+
+    /**
+     * 最大元素个数
+     */
+    final long maximum;
+
+    /**
+     * 写后过期时间和访问后过期时间（纳秒）, 0表示不过期
+     */
+    final long expireAfterWriteNanos;
+    final long expireAfterAccessNanos;
+
+    /**
+     * 执行维护任务的线程池
+     */
+    final Executor executor;
+
+    /**
+     * 保护策略数据结构的锁, 只有维护任务持有
+     */
+    final ReentrantLock evictionLock = new ReentrantLock();
+
+    /**
+     * 读缓冲区和写缓冲区
+     */
+    final ReadBuffer<K, V> readBuffer = new ReadBuffer<K, V>();
+    final ConcurrentLinkedQueue<Runnable> writeBuffer = new ConcurrentLinkedQueue<Runnable>();
+
+    /**
+     * 写缓冲区中尚未回放的事件数
+     */
+    volatile int pendingWrites;
+
+    /**
+     * 维护任务是否已提交
+     */
+    volatile int drainScheduled;
+
+    /**
+     * 以下字段都由evictionLock保护
+     */
+    final AccessOrderDeque<K, V> windowDeque = new AccessOrderDeque<K, V>();
+    final AccessOrderDeque<K, V> probationDeque = new AccessOrderDeque<K, V>();
+    final AccessOrderDeque<K, V> protectedDeque = new AccessOrderDeque<K, V>();
+    final FrequencySketch sketch;
+    final TimerWheel<K, V> timerWheel;
+    final long windowMaximum;
+    final long protectedMaximum;
+    long windowSize;
+    long protectedSize;
+    long weightedSize;
+
+    /**
+     * 统计
+     */
+    final LongAdder hitCount = new LongAdder();
+    final LongAdder missCount = new LongAdder();
+    final LongAdder evictionCount = new LongAdder();
+    final LongAdder expirationCount = new LongAdder();
+
+    /**
+     * 维护任务
+     */
+    final Runnable drainBuffersTask = this::runMaintenance;
+
+    /**
+     * Creates a cache holding at most about {@code maximumSize}
+     * entries, without expiration.
+     *
+     * @param maximumSize the maximum number of entries
+     * @throws IllegalArgumentException if {@code maximumSize} is not positive
+     */
+    public BoundedConcurrentCache(long maximumSize) {
+        this(maximumSize, 0L, 0L, TimeUnit.NANOSECONDS, DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * Creates a cache holding at most about {@code maximumSize} entries,
+     * with the given expiration times.
+     *
+     * @param maximumSize       the maximum number of entries
+     * @param expireAfterWrite  the time after which an entry expires
+     *                          once written, or 0 for none
+     * @param expireAfterAccess the time after which an entry expires
+     *                          once last read or written, or 0 for none
+     * @param unit              the unit of the expiration times
+     * @throws IllegalArgumentException if {@code maximumSize} is not
+     *                                  positive or a time is negative
+     */
+    public BoundedConcurrentCache(long maximumSize, long expireAfterWrite,
+                                  long expireAfterAccess, TimeUnit unit) {
+        this(maximumSize, expireAfterWrite, expireAfterAccess, unit, DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * Creates a cache holding at most about {@code maximumSize} entries,
+     * with the given expiration times and maintenance executor.
+     *
+     * @param maximumSize       the maximum number of entries
+     * @param expireAfterWrite  the time after which an entry expires
+     *                          once written, or 0 for none
+     * @param expireAfterAccess the time after which an entry expires
+     *                          once last read or written, or 0 for none
+     * @param unit              the unit of the expiration times
+     * @param executor          the executor running maintenance; use
+     *                          {@code Runnable::run} to run it on the
+     *                          calling thread
+     * @throws IllegalArgumentException if {@code maximumSize} is not
+     *                                  positive or a time is negative
+     * @throws NullPointerException     if {@code unit} or {@code executor}
+     *                                  is null
+     */
+    public BoundedConcurrentCache(long maximumSize, long expireAfterWrite,
+                                  long expireAfterAccess, TimeUnit unit, Executor executor) {
+        if (maximumSize <= 0L || expireAfterWrite < 0L || expireAfterAccess < 0L)
+            throw new IllegalArgumentException();
+        if (unit == null || executor == null)
+            throw new NullPointerException();
+        this.maximum = maximumSize;
+        this.expireAfterWriteNanos = unit.toNanos(expireAfterWrite);
+        this.expireAfterAccessNanos = unit.toNanos(expireAfterAccess);
+        this.executor = executor;
+        int initialCapacity = (int) Math.min(maximumSize, 1 << 16);
+        this.data = new ConcurrentHashMap<K, Node<K, V>>(initialCapacity);
+        this.windowMaximum = Math.max(1L, (long) (maximumSize * PERCENT_WINDOW));
+        long mainMaximum = maximumSize - windowMaximum;
+        this.protectedMaximum = (long) (mainMaximum * PERCENT_MAIN_PROTECTED);
+        this.sketch = new FrequencySketch(maximumSize);
+        this.timerWheel = expires() ? new TimerWheel<K, V>(this, System.nanoTime()) : null;
+    }
+
+    static int ceilingPowerOfTwo(int x) {
+        return 1 << -Integer.numberOfLeadingZeros(x - 1);
+    }
+
+    final boolean expires() {
+        return expireAfterWriteNanos > 0L || expireAfterAccessNanos > 0L;
+    }
+
+    /**
+     * 节点的过期时间: 写入时间 + expireAfterWrite 与 访问时间 + expireAfterAccess 中较早的一个.
+     */
+    final long expirationTime(Node<K, V> node) {
+        long w = (expireAfterWriteNanos > 0L) ? node.writeTime + expireAfterWriteNanos : Long.MAX_VALUE;
+        long a = (expireAfterAccessNanos > 0L) ? node.accessTime + expireAfterAccessNanos : Long.MAX_VALUE;
+        return Math.min(w, a);
+    }
+
+    final boolean hasExpired(Node<K, V> node, long now) {
+        return expires() && now - expirationTime(node) >= 0L;
+    }
+
+    // 读写操作
+
+    /**
+     * 返回key对应的值, 不存在或已过期时返回null. 只做一次ConcurrentHashMap查找, 不加锁.
+     *
+     * @param key the key
+     * @return the value, or {@code null} if absent or expired
+     * @throws NullPointerException if the key is null
+     */
+    public V get(Object key) {
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            missCount.increment();
+            return null;
+        }
+        V value = node.value;
+        long now = expires() ? System.nanoTime() : 0L;
+        if (value == null || hasExpired(node, now)) {
+            missCount.increment();
+            scheduleDrain();
+            return null;
+        }
+        if (expireAfterAccessNanos > 0L)
+            node.accessTime = now;
+        hitCount.increment();
+        afterRead(node);
+        return value;
+    }
+
+    /**
+     * Maps the key to the value, replacing any previous value.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the previous live value, or {@code null} if none
+     * @throws NullPointerException if the key or value is null
+     */
+    public V put(K key, V value) {
+        return put(key, value, false);
+    }
+
+    /**
+     * Maps the key to the value unless it is already mapped to a live
+     * value.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the current live value, or {@code null} if the value was
+     * inserted
+     * @throws NullPointerException if the key or value is null
+     */
+    public V putIfAbsent(K key, V value) {
+        return put(key, value, true);
+    }
+
+    final V put(K key, V value, boolean onlyIfAbsent) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        long now = expires() ? System.nanoTime() : 0L;
+        for (; ; ) {
+            Node<K, V> prior = data.get(key);
+            if (prior == null) {
+                Node<K, V> node = new Node<K, V>(key, value, now);
+                prior = data.putIfAbsent(key, node);
+                if (prior == null) {
+                    afterWrite(new AddTask(node));
+                    return null;
+                }
+            }
+            V oldValue;
+            boolean expired;
+            synchronized (prior) {
+                if (prior.retired)
+                    continue;       // 节点已被删除, 重新插入
+                oldValue = prior.value;
+                expired = hasExpired(prior, now);
+                if (!onlyIfAbsent || expired) {
+                    prior.value = value;
+                    prior.writeTime = now;
+                    prior.accessTime = now;
+                } else if (expireAfterAccessNanos > 0L)
+                    prior.accessTime = now;
+            }
+            // 在节点监视器之外通知策略: 维护任务可能在当前线程执行, 它持有evictionLock后还要获取节点的监视器
+            if (onlyIfAbsent && !expired) {
+                afterRead(prior);
+                return oldValue;
+            }
+            afterWrite(new UpdateTask(prior));
+            return expired ? null : oldValue;
+        }
+    }
+
+    /**
+     * Removes the mapping of the key.
+     *
+     * @param key the key
+     * @return the previous live value, or {@code null} if none
+     */
+    public V remove(Object key) {
+        for (; ; ) {
+            Node<K, V> node = data.get(key);
+            if (node == null)
+                return null;
+            V oldValue;
+            // 从map中删除和标记retired在同一个监视器内完成, 否则put可能把新值写入已经不在map中的节点
+            synchronized (node) {
+                if (node.retired || !data.remove(key, node))
+                    continue;       // 已被其它线程删除, 重新读取
+                oldValue = node.value;
+                node.retired = true;
+            }
+            afterWrite(new RemovalTask(node));
+            long now = expires() ? System.nanoTime() : 0L;
+            return hasExpired(node, now) ? null : oldValue;
+        }
+    }
+
+    /**
+     * Removes all mappings.
+     */
+    public void invalidateAll() {
+        for (K key : data.keySet())
+            remove(key);
+    }
+
+    /**
+     * Returns the approximate number of entries, possibly including
+     * entries that have expired or are about to be evicted.
+     *
+     * @return the approximate number of entries
+     */
+    public long estimatedSize() {
+        return data.mappingCount();
+    }
+
+    /**
+     * 在当前线程执行所有待处理的维护工作: 回放读写缓冲区, 淘汰过期和超出容量的元素.
+     * <p>
+     * Performs any pending maintenance on the calling thread.
+     */
+    public void cleanUp() {
+        evictionLock.lock();
+        try {
+            maintenance();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the statistics of this cache.
+     *
+     * @return a snapshot of the statistics
+     */
+    public Stats stats() {
+        return new Stats(hitCount.sum(), missCount.sum(),
+                evictionCount.sum(), expirationCount.sum());
+    }
+
+    /**
+     * 读操作之后: 把节点放入读缓冲区, 缓冲区的某一条满了就安排维护任务.
+     */
+    final void afterRead(Node<K, V> node) {
+        if (readBuffer.offer(node) == ReadBuffer.FULL)
+            scheduleDrain();
+    }
+
+    /**
+     * 写操作之后: 事件放入写缓冲区并安排维护任务; 积压过多时由当前线程直接维护.
+     */
+    final void afterWrite(Runnable task) {
+        writeBuffer.offer(task);
+        if (U.getAndAddInt(this, PENDINGWRITES, 1) >= WRITE_BUFFER_MAX) {
+            cleanUp();
+            return;
+        }
+        scheduleDrain();
+    }
+
+    final void scheduleDrain() {
+        if (drainScheduled == 0 && U.compareAndSwapInt(this, DRAINSCHEDULED, 0, 1)) {
+            try {
+                executor.execute(drainBuffersTask);
+            } catch (Throwable t) {
+                // 线程池拒绝时, 在当前线程执行
+                drainScheduled = 0;
+                cleanUp();
+            }
+        }
+    }
+
+    final void runMaintenance() {
+        evictionLock.lock();
+        try {
+            // 先清除标志, 维护期间到达的事件会重新安排一次维护
+            drainScheduled = 0;
+            maintenance();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // 以下方法都需要持有evictionLock
+
+    final void maintenance() {
+        readBuffer.drainTo(this);
+        drainWriteBuffer();
+        if (timerWheel != null)
+            timerWheel.advance(System.nanoTime());
+        evictEntries();
+    }
+
+    final void drainWriteBuffer() {
+        Runnable task;
+        int n = 0;
+        while ((task = writeBuffer.poll()) != null) {
+            task.run();
+            n++;
+        }
+        if (n != 0)
+            U.getAndAddInt(this, PENDINGWRITES, -n);
+    }
+
+    /**
+     * 回放一次读操作: 增加频率, 调整在LRU中的位置, 重新挂到时间轮上.
+     */
+    final void onAccess(Node<K, V> node) {
+        if (!node.linked)
+            return;
+        sketch.increment(node.key);
+        if (node.queueType == WINDOW) {
+            windowDeque.moveToBack(node);
+        } else if (node.queueType == PROBATION) {
+            // 试用区中再次被访问的元素晋升到保护区
+            probationDeque.unlink(node);
+            protectedDeque.addLast(node);
+            node.queueType = PROTECTED;
+            protectedSize++;
+            demoteFromProtected();
+        } else {
+            protectedDeque.moveToBack(node);
+        }
+        if (timerWheel != null && expireAfterAccessNanos > 0L)
+            timerWheel.reschedule(node, expirationTime(node));
+    }
+
+    /**
+     * 保护区超出容量时, 把保护区头部的元素降级到试用区尾部.
+     */
+    final void demoteFromProtected() {
+        while (protectedSize > protectedMaximum) {
+            Node<K, V> demoted = protectedDeque.first;
+            if (demoted == null)
+                break;
+            protectedDeque.unlink(demoted);
+            probationDeque.addLast(demoted);
+            demoted.queueType = PROBATION;
+            protectedSize--;
+        }
+    }
+
+    final class AddTask implements Runnable {
+        final Node<K, V> node;
+
+        AddTask(Node<K, V> node) {
+            this.node = node;
+        }
+
+        public void run() {
+            Node<K, V> n = node;
+            if (n.retired || n.linked)
+                return;
+            sketch.increment(n.key);
+            n.linked = true;
+            n.queueType = WINDOW;
+            windowDeque.addLast(n);
+            windowSize++;
+            weightedSize++;
+            if (timerWheel != null)
+                timerWheel.schedule(n, expirationTime(n));
+        }
+    }
+
+    final class UpdateTask implements Runnable {
+        final Node<K, V> node;
+
+        UpdateTask(Node<K, V> node) {
+            this.node = node;
+        }
+
+        public void run() {
+            Node<K, V> n = node;
+            if (!n.linked)
+                return;
+            onAccess(n);
+            if (timerWheel != null && expireAfterAccessNanos == 0L)
+                timerWheel.reschedule(n, expirationTime(n));
+        }
+    }
+
+    final class RemovalTask implements Runnable {
+        final Node<K, V> node;
+
+        RemovalTask(Node<K, V> node) {
+            this.node = node;
+        }
+
+        public void run() {
+            if (node.linked)
+                unlinkFromPolicy(node);
+        }
+    }
+
+    /**
+     * 把节点从LRU链表和时间轮中摘除.
+     */
+    final void unlinkFromPolicy(Node<K, V> node) {
+        if (node.queueType == WINDOW) {
+            windowDeque.unlink(node);
+            windowSize--;
+        } else if (node.queueType == PROBATION) {
+            probationDeque.unlink(node);
+        } else {
+            protectedDeque.unlink(node);
+            protectedSize--;
+        }
+        if (timerWheel != null)
+            timerWheel.deschedule(node);
+        node.linked = false;
+        weightedSize--;
+    }
+
+    /**
+     * 淘汰一个节点: 从map中删除（如果映射仍然指向它）并从策略中摘除.
+     *
+     * @param expired 是否因过期而淘汰
+     */
+    final void evict(Node<K, V> node, boolean expired) {
+        boolean removed = false;
+        synchronized (node) {
+            if (!node.retired && data.remove(node.key, node)) {
+                node.retired = true;
+                removed = true;
+            }
+        }
+        if (removed) {
+            if (expired)
+                expirationCount.increment();
+            else
+                evictionCount.increment();
+        }
+        unlinkFromPolicy(node);
+    }
+
+    /**
+     * 时间轮到期回调: 节点的过期时间可能因为后来的访问/写入而推迟, 此时返回false, 由时间轮重新挂上.
+     */
+    final boolean evictIfExpired(Node<K, V> node, long now) {
+        if (now - expirationTime(node) < 0L)
+            return false;
+        evict(node, true);
+        return true;
+    }
+
+    final void evictEntries() {
+        int candidates = evictFromWindow();
+        evictFromMain(candidates);
+    }
+
+    /**
+     * 把窗口区超出容量的元素移动到试用区尾部, 返回移动的个数（候选者个数）.
+     */
+    final int evictFromWindow() {
+        int candidates = 0;
+        Node<K, V> node = windowDeque.first;
+        while (windowSize > windowMaximum && node != null) {
+            Node<K, V> next = node.nextInAccessOrder;
+            windowDeque.unlink(node);
+            probationDeque.addLast(node);
+            node.queueType = PROBATION;
+            windowSize--;
+            candidates++;
+            node = next;
+        }
+        return candidates;
+    }
+
+    /**
+     * 主区域淘汰: 试用区尾部是刚从窗口进来的候选者, 头部是受害者, 两者比较频率, 淘汰频率低的一方.
+     */
+    final void evictFromMain(int candidates) {
+        Node<K, V> victim = probationDeque.first;
+        Node<K, V> candidate = probationDeque.last;
+        while (weightedSize > maximum) {
+            if (candidates == 0)
+                candidate = null;
+            if (candidate == null && victim == null) {
+                // 试用区已空, 从保护区或窗口区淘汰
+                Node<K, V> n = (protectedDeque.first != null) ? protectedDeque.first : windowDeque.first;
+                if (n == null)
+                    break;
+                evict(n, false);
+                continue;
+            }
+            if (victim == null) {
+                Node<K, V> prev = candidate.prevInAccessOrder;
+                evict(candidate, false);
+                candidate = prev;
+                candidates--;
+                continue;
+            }
+            if (candidate == null) {
+                Node<K, V> next = victim.nextInAccessOrder;
+                evict(victim, false);
+                victim = next;
+                continue;
+            }
+            if (candidate == victim) {
+                evict(candidate, false);
+                candidate = victim = null;
+                candidates = 0;
+                continue;
+            }
+            if (admit(candidate.key, victim.key)) {
+                Node<K, V> next = victim.nextInAccessOrder;
+                evict(victim, false);
+                victim = next;
+            } else {
+                Node<K, V> prev = candidate.prevInAccessOrder;
+                evict(candidate, false);
+                candidate = prev;
+            }
+            candidates--;
+        }
+    }
+
+    /**
+     * TinyLFU准入: 候选者频率高于受害者时留下候选者. 频率接近时随机放行一小部分候选者,
+     * 防止攻击者用热点哈希冲突把受害者的频率抬高.
+     */
+    final boolean admit(K candidateKey, K victimKey) {
+        int victimFreq = sketch.frequency(victimKey);
+        int candidateFreq = sketch.frequency(candidateKey);
+        if (candidateFreq > victimFreq)
+            return true;
+        if (candidateFreq <= 5)
+            return false;
+        return (ThreadLocalRandom.current().nextInt() & 127) == 0;
+    }
+
+    /**
+     * Returns a string identifying this cache, as well as its size.
+     *
+     * @return a string identifying this cache, as well as its size
+     */
+    public String toString() {
+        return super.toString() + "[size = " + estimatedSize() + ", maximum = " + maximum + "]";
+    }
+
+    /**
+     * 缓存统计的快照.
+     * <p>
+     * An immutable snapshot of cache statistics.
+     */
+    public static final class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long expirationCount;
+
+        Stats(long hitCount, long missCount, long evictionCount, long expirationCount) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.expirationCount = expirationCount;
+        }
+
+        public long hitCount() {
+            return hitCount;
+        }
+
+        public long missCount() {
+            return missCount;
+        }
+
+        public long requestCount() {
+            return hitCount + missCount;
+        }
+
+        /**
+         * Returns the ratio of hits to requests, or 1.0 if there were no
+         * requests.
+         *
+         * @return the hit rate
+         */
+        public double hitRate() {
+            long requests = requestCount();
+            return (requests == 0L) ? 1.0d : (double) hitCount / requests;
+        }
+
+        /**
+         * Returns the number of entries evicted because of the size bound.
+         *
+         * @return the number of size evictions
+         */
+        public long evictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * Returns the number of entries removed because they expired.
+         *
+         * @return the number of expirations
+         */
+        public long expirationCount() {
+            return expirationCount;
+        }
+
+        public String toString() {
+            return "Stats[hitCount = " + hitCount + ", missCount = " + missCount +
+                    ", hitRate = " + hitRate() + ", evictionCount = " + evictionCount +
+                    ", expirationCount = " + expirationCount + "]";
+        }
+    }
+
+    /**
+     * 缓存节点. key和value由map使用, 其它字段由evictionLock保护.
+     */
+    static final class Node<K, V> {
+        final K key;
+        volatile V value;
+        volatile long writeTime;
+        volatile long accessTime;
+
+        /**
+         * 是否已从map中删除, 在节点的监视器锁下修改
+         */
+        volatile boolean retired;
+
+        // 以下字段由evictionLock保护
+        boolean linked;
+        int queueType;
+        Node<K, V> prevInAccessOrder;
+        Node<K, V> nextInAccessOrder;
+        long variableTime;
+        Node<K, V> prevInTimer;
+        Node<K, V> nextInTimer;
+
+        Node(K key, V value, long now) {
+            this.key = key;
+            this.value = value;
+            this.writeTime = now;
+            this.accessTime = now;
+        }
+    }
+
+    /**
+     * 以节点自身的指针串起来的双向链表, 头部最久未访问.
+     */
+    static final class AccessOrderDeque<K, V> {
+        Node<K, V> first;
+        Node<K, V> last;
+
+        void addLast(Node<K, V> node) {
+            Node<K, V> l = last;
+            node.prevInAccessOrder = l;
+            node.nextInAccessOrder = null;
+            last = node;
+            if (l == null)
+                first = node;
+            else
+                l.nextInAccessOrder = node;
+        }
+
+        void unlink(Node<K, V> node) {
+            Node<K, V> prev = node.prevInAccessOrder;
+            Node<K, V> next = node.nextInAccessOrder;
+            if (prev == null)
+                first = next;
+            else
+                prev.nextInAccessOrder = next;
+            if (next == null)
+                last = prev;
+            else
+                next.prevInAccessOrder = prev;
+            node.prevInAccessOrder = node.nextInAccessOrder = null;
+        }
+
+        void moveToBack(Node<K, V> node) {
+            if (node != last) {
+                unlink(node);
+                addLast(node);
+            }
+        }
+    }
+
+    /**
+     * 按线程分条的有损读缓冲区. 每条是一个固定大小的环形数组, 生产者CAS推进写计数器,
+     * 满了或竞争失败时直接丢弃; 只有持有evictionLock的线程消费.
+     */
+    static final class ReadBuffer<K, V> {
+        static final int SUCCESS = 0;
+        static final int FAILED = 1;
+        static final int FULL = 2;
+
+        static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * 条数
+         */
+        static final int STRIPES = ceilingPowerOfTwo(Math.max(NCPU, 1) * 4);
+
+        /**
+         * 每条的容量
+         */
+        static final int BUFFER_SIZE = 16;
+        static final int BUFFER_MASK = BUFFER_SIZE - 1;
+
+        final Stripe[] stripes = new Stripe[STRIPES];
+
+        ReadBuffer() {
+            for (int i = 0; i < STRIPES; i++)
+                stripes[i] = new Stripe();
+        }
+
+        int offer(Node<K, V> node) {
+            int probe = ThreadLocalRandom.getProbe();
+            if (probe == 0) {
+                ThreadLocalRandom.localInit();
+                probe = ThreadLocalRandom.getProbe();
+            }
+            int result = stripes[probe & (STRIPES - 1)].offer(node);
+            if (result == FAILED)
+                ThreadLocalRandom.advanceProbe(probe);  // 竞争失败, 下次换一条
+            return result;
+        }
+
+        @SuppressWarnings("unchecked")
+        void drainTo(BoundedConcurrentCache<K, V> cache) {
+            for (Stripe s : stripes) {
+                long r = s.readCounter;
+                long w = s.writeCounter;
+                Object[] buf = s.buffer;
+                for (; r != w; r++) {
+                    long offset = (((int) r & BUFFER_MASK) << ASHIFT) + ABASE;
+                    Object e = U.getObjectVolatile(buf, offset);
+                    if (e == null)
+                        break;          // 生产者已认领但尚未写入
+                    U.putOrderedObject(buf, offset, null);
+                    cache.onAccess((Node<K, V>) e);
+                }
+                U.putOrderedLong(s, READCOUNTER, r);
+            }
+        }
+
+        @sun.misc.Contended
+        static final class Stripe {
+            final Object[] buffer = new Object[BUFFER_SIZE];
+            volatile long readCounter;
+            volatile long writeCounter;
+
+            int offer(Object e) {
+                long w = writeCounter;
+                if (w - readCounter >= BUFFER_SIZE)
+                    return FULL;
+                if (!U.compareAndSwapLong(this, WRITECOUNTER, w, w + 1))
+                    return FAILED;
+                U.putOrderedObject(buffer, (((int) w & BUFFER_MASK) << ASHIFT) + ABASE, e);
+                return SUCCESS;
+            }
+        }
+
+        private static final long READCOUNTER;
+        private static final long WRITECOUNTER;
+        private static final int ABASE;
+        private static final int ASHIFT;
+
+        static {
+            try {
+                Class<?> k = Stripe.class;
+                READCOUNTER = U.objectFieldOffset(k.getDeclaredField("readCounter"));
+                WRITECOUNTER = U.objectFieldOffset(k.getDeclaredField("writeCounter"));
+                ABASE = U.arrayBaseOffset(Object[].class);
+                int scale = U.arrayIndexScale(Object[].class);
+                if ((scale & (scale - 1)) != 0)
+                    throw new Error("data type scale not a power of two");
+                ASHIFT = 31 - Integer.numberOfLeadingZeros(scale);
+            } catch (Exception e) {
+                throw new Error(e);
+            }
+        }
+    }
+
+    /**
+     * 4位计数的Count-Min Sketch, 用于估计元素的访问频率. 每个long保存16个计数器,
+     * 每个元素在4个long中各选1个计数器. 计数总和达到10倍容量时所有计数器减半.
+     * 只由持有evictionLock的线程访问.
+     */
+    static final class FrequencySketch {
+        static final long[] SEED = {
+                0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        static final long RESET_MASK = 0x7777777777777777L;
+        static final long ONE_MASK = 0x1111111111111111L;
+
+        final long[] table;
+        final int tableMask;
+        final int sampleSize;
+        int size;
+
+        FrequencySketch(long maximumSize) {
+            int n = (int) Math.min(Math.max(maximumSize, 8L), 1 << 30);
+            table = new long[ceilingPowerOfTwo(n)];
+            tableMask = table.length - 1;
+            sampleSize = (int) Math.min(10L * maximumSize, Integer.MAX_VALUE);
+        }
+
+        static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
+
+        int indexOf(int item, int i) {
+            long hash = (item + SEED[i]) * SEED[i];
+            hash += hash >>> 32;
+            return ((int) hash) & tableMask;
+        }
+
+        int frequency(Object e) {
+            int hash = spread(e.hashCode());
+            int start = (hash & 3) << 2;
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        void increment(Object e) {
+            int hash = spread(e.hashCode());
+            int start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                added |= incrementAt(index, start + i);
+            }
+            if (added && ++size == sampleSize)
+                reset();
+        }
+
+        boolean incrementAt(int i, int j) {
+            int offset = j << 2;
+            long mask = (0xfL << offset);
+            if ((table[i] & mask) != mask) {
+                table[i] += (1L << offset);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * 所有计数器减半（老化）.
+         */
+        void reset() {
+            int count = 0;
+            for (int i = 0; i < table.length; i++) {
+                count += Long.bitCount(table[i] & ONE_MASK);
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            size = (size >>> 1) - (count >>> 2);
+        }
+    }
+
+    /**
+     * 分层时间轮. 每层的桶是以哨兵节点为头的循环双向链表; 节点按到期时间与当前时间的差值挂到合适的层,
+     * 推进时间时把经过的桶中的节点取出, 到期的淘汰, 未到期的（被访问后推迟了）重新挂上.
+     * 只由持有evictionLock的线程访问.
+     */
+    static final class TimerWheel<K, V> {
+        /**
+         * 每层的桶数和每个桶的时间跨度（纳秒, 2的幂次）: 约1.07秒、1.14分钟、1.22小时、1.63天、6.5天
+         */
+        static final int[] BUCKETS = {64, 64, 32, 4, 1};
+        static final long[] SPANS = {
+                1L << 30, 1L << 36, 1L << 42, 1L << 47, 4L << 47, 4L << 47};
+        static final int[] SHIFT = {30, 36, 42, 47, 49};
+
+        final BoundedConcurrentCache<K, V> cache;
+        final Node<K, V>[][] wheel;
+        long nanos;
+
+        @SuppressWarnings("unchecked")
+        TimerWheel(BoundedConcurrentCache<K, V> cache, long now) {
+            this.cache = cache;
+            this.nanos = now;
+            wheel = (Node<K, V>[][]) new Node<?, ?>[BUCKETS.length][];
+            for (int i = 0; i < wheel.length; i++) {
+                wheel[i] = (Node<K, V>[]) new Node<?, ?>[BUCKETS[i]];
+                for (int j = 0; j < wheel[i].length; j++) {
+                    Node<K, V> sentinel = new Node<K, V>(null, null, 0L);
+                    sentinel.prevInTimer = sentinel.nextInTimer = sentinel;
+                    wheel[i][j] = sentinel;
+                }
+            }
+        }
+
+        void schedule(Node<K, V> node, long time) {
+            node.variableTime = time;
+            Node<K, V> sentinel = findBucket(time);
+            Node<K, V> last = sentinel.prevInTimer;
+            node.prevInTimer = last;
+            node.nextInTimer = sentinel;
+            last.nextInTimer = node;
+            sentinel.prevInTimer = node;
+        }
+
+        void reschedule(Node<K, V> node, long time) {
+            if (node.nextInTimer != null) {
+                unlink(node);
+                schedule(node, time);
+            }
+        }
+
+        void deschedule(Node<K, V> node) {
+            if (node.nextInTimer != null)
+                unlink(node);
+        }
+
+        void unlink(Node<K, V> node) {
+            Node<K, V> next = node.nextInTimer;
+            Node<K, V> prev = node.prevInTimer;
+            next.prevInTimer = prev;
+            prev.nextInTimer = next;
+            node.nextInTimer = node.prevInTimer = null;
+        }
+
+        /**
+         * 根据到期时间与当前时间的差值选择层, 再根据到期时间选择该层的桶.
+         */
+        Node<K, V> findBucket(long time) {
+            long duration = time - nanos;
+            if (duration < 0L) {
+                // 已经到期的节点放到当前的桶中, 下次推进时间时处理
+                time = nanos;
+                duration = 0L;
+            }
+            int length = wheel.length - 1;
+            for (int i = 0; i < length; i++) {
+                if (duration < SPANS[i + 1]) {
+                    long ticks = time >>> SHIFT[i];
+                    int index = (int) (ticks & (wheel[i].length - 1));
+                    return wheel[i][index];
+                }
+            }
+            return wheel[length][0];
+        }
+
+        /**
+         * 推进到当前时间, 处理每一层中经过的桶.
+         */
+        void advance(long currentTimeNanos) {
+            long previousTimeNanos = nanos;
+            nanos = currentTimeNanos;
+            for (int i = 0; i < SHIFT.length; i++) {
+                long previousTicks = previousTimeNanos >>> SHIFT[i];
+                long currentTicks = currentTimeNanos >>> SHIFT[i];
+                if (currentTicks - previousTicks <= 0L)
+                    break;
+                expire(i, previousTicks, currentTicks);
+            }
+        }
+
+        void expire(int index, long previousTicks, long currentTicks) {
+            Node<K, V>[] timerWheel = wheel[index];
+            int mask = timerWheel.length - 1;
+            long delta = currentTicks - previousTicks;
+            int steps = (int) Math.min(1L + delta, timerWheel.length);
+            int start = (int) (previousTicks & mask);
+            int end = start + steps;
+            for (int i = start; i < end; i++) {
+                Node<K, V> sentinel = timerWheel[i & mask];
+                Node<K, V> node = sentinel.nextInTimer;
+                sentinel.prevInTimer = sentinel.nextInTimer = sentinel;
+                while (node != sentinel) {
+                    Node<K, V> next = node.nextInTimer;
+                    node.prevInTimer = node.nextInTimer = null;
+                    if (!cache.evictIfExpired(node, nanos))
+                        schedule(node, cache.expirationTime(node));
+                    node = next;
+                }
+            }
+        }
+    }
+
+    // Unsafe mechanics
+    private static final sun.misc.Unsafe U;
+    private static final long PENDINGWRITES;
+    private static final long DRAINSCHEDULED;
+
+    static {
+        try {
+            U = sun.misc.Unsafe.getUnsafe();
+            Class<?> k = BoundedConcurrentCache.class;
+            PENDINGWRITES = U.objectFieldOffset(k.getDeclaredField("pendingWrites"));
+            DRAINSCHEDULED = U.objectFieldOffset(k.getDeclaredField("drainScheduled"));
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+}
@@ -0,0 +1,1686 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+import com.caojx.javaconcurrencylearn.source.util.concurrent.atomic.LongAdder;
+import com.caojx.javaconcurrencylearn.source.util.concurrent.locks.ReentrantLock;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.function.BiConsumer;
+
+/**
+ * ConcurrentBSkipListMap是“胖结点”的并发有序Map（B-skiplist）：每个结点按顺序保存多个键值对，用于替代范围扫描很多的ConcurrentSkipListMap。
+ * <p>
+ * ConcurrentSkipListMap的每个键值对是一个Node，另外还有若干Index对象，subMap范围扫描时每个元素都要跟随一次指针，缓存命中率很低。
+ * ConcurrentBSkipListMap的做法：
+ * 1.数据保存在一条有序的结点链表中，每个结点最多保存NODE_CAPACITY(32)个键值对，
+ *   键值对按[高键, k0, v0, k1, v1, ...]的顺序放在一个不可变的Object[]中，范围扫描是对连续数组的顺序访问；
+ * 2.每个结点负责一个键区间[low, 高键)：low是结点创建时确定的下界，高键是下一个结点的low（最后一个结点为null，表示正无穷）；
+ *   结点的low作为key放入一个ConcurrentSkipListMap索引，查找时用floorEntry定位结点，索引中的元素个数只有键值对数的1/16左右；
+ * 3.读操作不加锁：只读取一次结点的items（volatile），如果key不小于items中的高键，说明结点已经分裂，沿next向右移动（B-link树的做法）；
+ * 4.写操作锁住单个结点（ReentrantLock），复制出新的items数组后发布（写时复制），读者看到的总是一个完整的版本；
+ *   结点满时分裂为两个：先发布右边的新结点（next），再发布缩小后的items，最后把新结点加入索引；
+ * 5.结点变空后（头结点除外）按从左到右的顺序锁住前驱和它自己，把区间合并到前驱中，然后从索引和链表中删除。
+ * <p>
+ * 为什么写操作用结点锁而不是CAS：
+ * 分裂要同时改变结点的items和next，合并要同时改变前驱和被删结点，单个CAS无法原子地完成；如果写操作对items做CAS，
+ * 分裂和合并就需要冻结结点并让其它线程帮助完成（helping），实现复杂得多。而且每次写都要复制整个items数组，
+ * CAS失败的重试同样要重新复制，高竞争时并不比排队等锁便宜。
+ * 对竞争的影响：锁的粒度是一个结点（最多32个相邻的键），写不同结点的线程互不影响，读操作从不阻塞；
+ * 但是写同一个结点的线程（热点键或相邻的键）会串行执行，高竞争时会自旋后阻塞，这种情况下写吞吐量低于按单个键CAS的ConcurrentSkipListMap。
+ * <p>
+ * A scalable concurrent {@link ConcurrentNavigableMap} that stores up
+ * to {@value #NODE_CAPACITY} mappings per node in one sorted array,
+ * so that range scans walk contiguous memory instead of chasing one
+ * pointer per mapping as {@link ConcurrentSkipListMap} does.  The
+ * nodes form a sorted linked list; each node covers a key range and
+ * is found through a {@link ConcurrentSkipListMap} index holding only
+ * one key per node.
+ *
+ * <p>Reads are lock-free: a node's contents are an immutable array
+ * published through a volatile field, and a reader that finds its key
+ * beyond the node's range after a concurrent split moves right to the
+ * next node.  Updates lock only the node they modify and publish a new
+ * array.
+ *
+ * <p>Updates use a per-node lock rather than compare-and-set because
+ * a split changes both the contents and the successor of a node, and
+ * a merge changes two nodes; doing either with CAS alone would need
+ * freezing and helping protocols.  Since every update copies the
+ * node's array anyway, a failed CAS would repeat that copy, so under
+ * contention retrying is not cheaper than queueing on the lock.  The
+ * effect on contention: updates to different nodes never interfere
+ * and reads never block, but updates to the same node, that is to a
+ * hot key or to keys within the same run of up to
+ * {@value #NODE_CAPACITY} neighbours, are serialized, so write
+ * throughput on a hot range is lower than with the per-key CAS of
+ * {@link ConcurrentSkipListMap}.
+ *
+ * <p>As with {@link ConcurrentSkipListMap}, iterators and spliterators
+ * are weakly consistent, the {@code size} method is not a
+ * constant-time snapshot, and bulk operations such as {@code putAll}
+ * are not atomic.  Null keys and values are not permitted.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @author caojx created on 2026/10/19
+ * @see ConcurrentSkipListMap
+ */
+public class ConcurrentBSkipListMap<K, V> extends AbstractMap<K, V>
+        implements ConcurrentNavigableMap<K, V> {
+
+    /**
+     * 每个结点最多保存的键值对数
+     */
+    static final int NODE_CAPACITY = 32;
+
+    /**
+     * 已删除结点的items, 读到它的线程需要重新查找
+     */
+    static final Object[] DEAD = new Object[1];
+
+    private static final int EQ = 1;
+    private static final int LT = 2;
+    private static final int GT = 0; // Actually checked as !LT
+
+    /**
+     * 比较器, 为null时使用自然顺序
+     */
+    final Comparator<? super K> comparator;
+
+    /**
+     * 头结点: 区间为(-∞, 高键), 永远不会被删除
+     */
+    final Node<K, V> head;
+
+    /**
+     * 索引: 结点的low -> 结点, 不包含头结点
+     */
+    final ConcurrentSkipListMap<K, Node<K, V>> index;
+
+    /**
+     * 键值对数
+     */
+    final LongAdder count = new LongAdder();
+
+    // Lazily initialized view holders
+    private transient KeySet<K> keySet;
+    private transient EntrySet<K, V> entrySet;
+    private transient Values<V> values;
+    private transient ConcurrentNavigableMap<K, V> descendingMap;
+
+    /**
+     * 结点: 保存区间[low, 高键)中的键值对.
+     */
+    static final class Node<K, V> extends ReentrantLock {
+        private static final long serialVersionUID = 2934567301828564771L;
+
+        /**
+         * 区间下界(包含), 头结点为null
+         */
+        final K low;
+
+        /**
+         * [高键, k0, v0, k1, v1, ...], 发布后不再修改
+         */
+        volatile Object[] items;
+
+        volatile Node<K, V> next;
+
+        Node(K low, Object[] items, Node<K, V> next) {
+            this.low = low;
+            this.next = next;
+            this.items = items;
+        }
+    }
+
+    /* ---------------- Utilities -------------- */
+
+    /**
+     * Compares using comparator or natural ordering if null.
+     * Called only by methods that have performed required type checks.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static final int cpr(Comparator c, Object x, Object y) {
+        return (c != null) ? c.compare(x, y) : ((Comparable) x).compareTo(y);
+    }
+
+    /**
+     * items中的键值对数
+     */
+    static int sizeOf(Object[] it) {
+        return (it.length - 1) >>> 1;
+    }
+
+    /**
+     * 在items中二分查找key: 找到时返回键值对的下标, 否则返回-(插入位置+1)
+     */
+    final int search(Object[] it, Object key) {
+        Comparator<? super K> cmp = comparator;
+        int lo = 0, hi = sizeOf(it) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = cpr(cmp, it[1 + (mid << 1)], key);
+            if (c < 0)
+                lo = mid + 1;
+            else if (c > 0)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+        return -(lo + 1);
+    }
+
+    /**
+     * 判断读取到的items是否覆盖key.
+     * strict为false时要求 low <= key < 高键; strict为true时查找的是小于key的键, 要求 low < key <= 高键.
+     */
+    final boolean covers(Node<K, V> n, Object[] it, Object key, boolean strict) {
+        if (it == DEAD)
+            return false;
+        Comparator<? super K> cmp = comparator;
+        int c;
+        K low = n.low;
+        if (low != null && ((c = cpr(cmp, low, key)) > 0 || (c == 0 && strict)))
+            return false;
+        Object hk = it[0];
+        return hk == null || (c = cpr(cmp, key, hk)) < 0 || (c == 0 && strict);
+    }
+
+    /**
+     * 查找key所在的结点: 先在索引中定位, 再沿next向右移动到覆盖key的结点. 遇到已删除的结点时重新查找索引.
+     * 返回时结点覆盖key, 调用者重新读取items后仍需用covers检查.
+     */
+    final Node<K, V> findNode(Object key, boolean strict) {
+        @SuppressWarnings("unchecked") K k = (K) key;
+        Comparator<? super K> cmp = comparator;
+        for (; ; ) {
+            Map.Entry<K, Node<K, V>> e = strict ? index.lowerEntry(k) : index.floorEntry(k);
+            Node<K, V> n = (e == null) ? head : e.getValue();
+            for (; ; ) {
+                Object[] it = n.items;
+                if (it == DEAD)
+                    break;
+                int c;
+                K low = n.low;
+                if (low != null && ((c = cpr(cmp, low, key)) > 0 || (c == 0 && strict)))
+                    break;      // 前驱刚刚合并了后面的结点, 重新查找
+                Object hk = it[0];
+                if (hk == null || (c = cpr(cmp, key, hk)) < 0 || (c == 0 && strict))
+                    return n;
+                if ((n = n.next) == null)   // 结点已分裂, 向右移动
+                    break;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> AbstractMap.SimpleImmutableEntry<K, V> entryAt(Object[] it, int i) {
+        return new AbstractMap.SimpleImmutableEntry<K, V>((K) it[1 + (i << 1)], (V) it[2 + (i << 1)]);
+    }
+
+    /* ---------------- Constructors -------------- */
+
+    /**
+     * Constructs a new, empty map, sorted according to the
+     * {@linkplain Comparable natural ordering} of the keys.
+     */
+    public ConcurrentBSkipListMap() {
+        this((Comparator<? super K>) null);
+    }
+
+    /**
+     * Constructs a new, empty map, sorted according to the specified
+     * comparator.
+     *
+     * @param comparator the comparator that will be used to order this map.
+     *                   If {@code null}, the {@linkplain Comparable natural
+     *                   ordering} of the keys will be used.
+     */
+    public ConcurrentBSkipListMap(Comparator<? super K> comparator) {
+        this.comparator = comparator;
+        this.head = new Node<K, V>(null, new Object[1], null);
+        this.index = new ConcurrentSkipListMap<K, Node<K, V>>(comparator);
+    }
+
+    /**
+     * Constructs a new map containing the same mappings as the given map,
+     * sorted according to the {@linkplain Comparable natural ordering} of
+     * the keys.
+     *
+     * @param m the map whose mappings are to be placed in this map
+     * @throws ClassCastException   if the keys in {@code m} are not
+     *                              {@link Comparable}, or are not mutually comparable
+     * @throws NullPointerException if the specified map or any of its keys
+     *                              or values are null
+     */
+    public ConcurrentBSkipListMap(Map<? extends K, ? extends V> m) {
+        this((Comparator<? super K>) null);
+        putAll(m);
+    }
+
+    /* ---------------- Internal operations -------------- */
+
+    /**
+     * 插入或替换. 返回旧值, 不存在时返回null.
+     */
+    final V doPut(K key, V value, boolean onlyIfAbsent) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        for (; ; ) {
+            Node<K, V> n = findNode(key, false);
+            n.lock();
+            try {
+                Object[] it = n.items;
+                if (!covers(n, it, key, false))
+                    continue;
+                int j = search(it, key);
+                if (j >= 0) {
+                    @SuppressWarnings("unchecked") V old = (V) it[2 + (j << 1)];
+                    if (!onlyIfAbsent) {
+                        Object[] c = it.clone();
+                        c[2 + (j << 1)] = value;
+                        n.items = c;
+                    }
+                    return old;
+                }
+                insert(n, it, -j - 1, key, value);
+            } finally {
+                n.unlock();
+            }
+            count.increment();
+            return null;
+        }
+    }
+
+    /**
+     * 在持有结点锁时把键值对插入到第pos个位置, 结点满时分裂.
+     */
+    private void insert(Node<K, V> n, Object[] it, int pos, K key, V value) {
+        int size = sizeOf(it);
+        Object[] c = new Object[it.length + 2];
+        c[0] = it[0];
+        System.arraycopy(it, 1, c, 1, pos << 1);
+        c[1 + (pos << 1)] = key;
+        c[2 + (pos << 1)] = value;
+        System.arraycopy(it, 1 + (pos << 1), c, 3 + (pos << 1), (size - pos) << 1);
+        if (size < NODE_CAPACITY) {
+            n.items = c;
+            return;
+        }
+
+        // 分裂: 右半部分放入新结点, 新结点的low是它的第一个键
+        int total = size + 1, left = total >>> 1, right = total - left;
+        @SuppressWarnings("unchecked") K splitKey = (K) c[1 + (left << 1)];
+        Object[] r = new Object[1 + (right << 1)];
+        r[0] = c[0];
+        System.arraycopy(c, 1 + (left << 1), r, 1, right << 1);
+        Object[] l = new Object[1 + (left << 1)];
+        l[0] = splitKey;
+        System.arraycopy(c, 1, l, 1, left << 1);
+        Node<K, V> sibling = new Node<K, V>(splitKey, r, n.next);
+        n.next = sibling;       // 先链接新结点, 读到缩小后的items的线程一定能看到它
+        n.items = l;
+        index.put(splitKey, sibling);   // 持有锁时加入索引, 新结点不会在加入索引前被删除
+    }
+
+    /**
+     * 删除key. value不为null时仅当值相等才删除. 返回被删除的值.
+     */
+    final V doRemove(Object key, Object value) {
+        if (key == null)
+            throw new NullPointerException();
+        for (; ; ) {
+            Node<K, V> n = findNode(key, false);
+            V v;
+            boolean empty;
+            n.lock();
+            try {
+                Object[] it = n.items;
+                if (!covers(n, it, key, false))
+                    continue;
+                int j = search(it, key);
+                if (j < 0)
+                    return null;
+                @SuppressWarnings("unchecked") V old = (V) it[2 + (j << 1)];
+                if (value != null && !value.equals(old))
+                    return null;
+                Object[] c = new Object[it.length - 2];
+                c[0] = it[0];
+                System.arraycopy(it, 1, c, 1, j << 1);
+                System.arraycopy(it, 3 + (j << 1), c, 1 + (j << 1), c.length - 1 - (j << 1));
+                n.items = c;
+                v = old;
+                empty = c.length == 1 && n != head;
+            } finally {
+                n.unlock();
+            }
+            count.decrement();
+            if (empty)
+                unlinkEmpty(n);
+            return v;
+        }
+    }
+
+    /**
+     * 删除一个空结点: 按从左到右的顺序锁住前驱和结点, 把结点的区间合并到前驱中.
+     * 结点已经不为空或已被删除时什么也不做.
+     */
+    final void unlinkEmpty(Node<K, V> d) {
+        for (; ; ) {
+            if (d == head || d.items == DEAD || sizeOf(d.items) > 0)
+                return;
+            Map.Entry<K, Node<K, V>> e = index.lowerEntry(d.low);
+            Node<K, V> p = (e == null) ? head : e.getValue();
+            for (Node<K, V> q; p != null && (q = p.next) != d; p = q) {
+                if (q == null || (q.low != null && cpr(comparator, q.low, d.low) > 0))
+                    return;     // d已经不在链表中
+            }
+            if (p == null)
+                return;
+            p.lock();
+            try {
+                if (p.items == DEAD || p.next != d)
+                    continue;
+                d.lock();
+                try {
+                    Object[] dit = d.items;
+                    if (dit == DEAD || sizeOf(dit) > 0)
+                        return;
+                    index.remove(d.low, d);
+                    Object[] pit = p.items.clone();
+                    pit[0] = dit[0];
+                    p.next = d.next;
+                    p.items = pit;
+                    d.items = DEAD;
+                } finally {
+                    d.unlock();
+                }
+            } finally {
+                p.unlock();
+            }
+            return;
+        }
+    }
+
+    /**
+     * 替换已存在的映射. expect不为null时仅当旧值相等才替换. 返回旧值, 没有替换时返回null.
+     */
+    final V doReplace(K key, Object expect, V value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        for (; ; ) {
+            Node<K, V> n = findNode(key, false);
+            n.lock();
+            try {
+                Object[] it = n.items;
+                if (!covers(n, it, key, false))
+                    continue;
+                int j = search(it, key);
+                if (j < 0)
+                    return null;
+                @SuppressWarnings("unchecked") V old = (V) it[2 + (j << 1)];
+                if (expect != null && !expect.equals(old))
+                    return null;
+                Object[] c = it.clone();
+                c[2 + (j << 1)] = value;
+                n.items = c;
+                return old;
+            } finally {
+                n.unlock();
+            }
+        }
+    }
+
+    /**
+     * 查找与key满足rel关系的最近的映射, 没有时返回null.
+     */
+    final AbstractMap.SimpleImmutableEntry<K, V> findNear(Object key, int rel) {
+        if (key == null)
+            throw new NullPointerException();
+        if ((rel & LT) == 0) {      // GT 或 GE: 从key所在的结点开始向右扫描
+            Node<K, V> n;
+            Object[] it;
+            do {
+                n = findNode(key, false);
+                it = n.items;
+            } while (!covers(n, it, key, false));
+            for (; ; ) {
+                int j = search(it, key);
+                int i = (j >= 0) ? (((rel & EQ) != 0) ? j : j + 1) : -j - 1;
+                if (i < sizeOf(it))
+                    return entryAt(it, i);
+                if ((n = n.next) == null)
+                    return null;
+                it = n.items;
+            }
+        }
+        Object bound = key;
+        boolean strict = (rel & EQ) == 0;
+        for (; ; ) {                // LT 或 LE: 在覆盖bound的结点中查找, 没有时以结点的low为新的bound向左查找
+            Node<K, V> n;
+            Object[] it;
+            do {
+                n = findNode(bound, strict);
+                it = n.items;
+            } while (!covers(n, it, bound, strict));
+            int j = search(it, bound);
+            int i = (j >= 0) ? (strict ? j - 1 : j) : -j - 2;
+            if (i >= 0)
+                return entryAt(it, i);
+            if (n.low == null)
+                return null;
+            bound = n.low;
+            strict = true;
+        }
+    }
+
+    /**
+     * 返回第一个映射, 没有时返回null
+     */
+    final AbstractMap.SimpleImmutableEntry<K, V> findFirst() {
+        for (Node<K, V> n = head; n != null; n = n.next) {
+            Object[] it = n.items;
+            if (sizeOf(it) > 0)
+                return entryAt(it, 0);
+        }
+        return null;
+    }
+
+    /**
+     * 返回最后一个映射, 没有时返回null
+     */
+    final AbstractMap.SimpleImmutableEntry<K, V> findLast() {
+        outer:
+        for (; ; ) {
+            Map.Entry<K, Node<K, V>> e = index.lastEntry();
+            Node<K, V> n = (e == null) ? head : e.getValue();
+            Object[] it;
+            for (; ; ) {
+                it = n.items;
+                if (it == DEAD)
+                    continue outer;
+                if (it[0] == null)
+                    break;
+                if ((n = n.next) == null)
+                    continue outer;
+            }
+            int size = sizeOf(it);
+            if (size > 0)
+                return entryAt(it, size - 1);
+            return (n.low == null) ? null : findNear(n.low, LT);
+        }
+    }
+
+    /* ---------------- Map API methods -------------- */
+
+    /**
+     * Returns {@code true} if this map contains a mapping for the specified
+     * key.
+     *
+     * @param key key whose presence in this map is to be tested
+     * @return {@code true} if this map contains a mapping for the specified key
+     * @throws ClassCastException   if the specified key cannot be compared
+     *                              with the keys currently in the map
+     * @throws NullPointerException if the specified key is null
+     */
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped,
+     * or {@code null} if this map contains no mapping for the key.
+     * <p>
+     * 不加锁: 读取一次覆盖key的结点的items, 在其中二分查找.
+     *
+     * @throws ClassCastException   if the specified key cannot be compared
+     *                              with the keys currently in the map
+     * @throws NullPointerException if the specified key is null
+     */
+    public V get(Object key) {
+        if (key == null)
+            throw new NullPointerException();
+        Node<K, V> n;
+        Object[] it;
+        do {
+            n = findNode(key, false);
+            it = n.items;
+        } while (!covers(n, it, key, false));
+        int j = search(it, key);
+        @SuppressWarnings("unchecked") V v = (j >= 0) ? (V) it[2 + (j << 1)] : null;
+        return v;
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * If the map previously contained a mapping for the key, the old
+     * value is replaced.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with the specified key, or
+     * {@code null} if there was no mapping for the key
+     * @throws ClassCastException   if the specified key cannot be compared
+     *                              with the keys currently in the map
+     * @throws NullPointerException if the specified key or value is null
+     */
+    public V put(K key, V value) {
+        return doPut(key, value, false);
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @param key key for which mapping should be removed
+     * @return the previous value associated with the specified key, or
+     * {@code null} if there was no mapping for the key
+     * @throws ClassCastException   if the specified key cannot be compared
+     *                              with the keys currently in the map
+     * @throws NullPointerException if the specified key is null
+     */
+    public V remove(Object key) {
+        return doRemove(key, null);
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.  The result
+     * is not a snapshot if the map is being modified concurrently.
+     *
+     * @return the number of elements in this map
+     */
+    public int size() {
+        long n = count.sum();
+        return (n < 0L) ? 0 : (n > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) n;
+    }
+
+    /**
+     * Returns {@code true} if this map contains no key-value mappings.
+     *
+     * @return {@code true} if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        return findFirst() == null;
+    }
+
+    /**
+     * Returns {@code true} if this map maps one or more keys to the
+     * specified value.  This operation requires time linear in the
+     * map size.
+     *
+     * @param value value whose presence in this map is to be tested
+     * @return {@code true} if a mapping to {@code value} exists
+     * @throws NullPointerException if the specified value is null
+     */
+    public boolean containsValue(Object value) {
+        if (value == null)
+            throw new NullPointerException();
+        for (Node<K, V> n = head; n != null; n = n.next) {
+            Object[] it = n.items;
+            for (int i = 2; i < it.length; i += 2) {
+                if (value.equals(it[i]))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes all of the mappings from this map.
+     */
+    public void clear() {
+        for (Node<K, V> n = head; n != null; n = n.next) {
+            int removed = 0;
+            n.lock();
+            try {
+                Object[] it = n.items;
+                if (it != DEAD && (removed = sizeOf(it)) > 0)
+                    n.items = new Object[]{it[0]};
+            } finally {
+                n.unlock();
+            }
+            if (removed > 0) {
+                count.add(-removed);
+                unlinkEmpty(n);
+            }
+        }
+    }
+
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null) throw new NullPointerException();
+        for (Node<K, V> n = head; n != null; n = n.next) {
+            Object[] it = n.items;
+            for (int i = 1; i < it.length; i += 2) {
+                @SuppressWarnings("unchecked") K k = (K) it[i];
+                @SuppressWarnings("unchecked") V v = (V) it[i + 1];
+                action.accept(k, v);
+            }
+        }
+    }
+
+    /* ---------------- ConcurrentMap API methods -------------- */
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return the previous value associated with the specified key,
+     * or {@code null} if there was no mapping for the key
+     * @throws ClassCastException   if the specified key cannot be compared
+     *                              with the keys currently in the map
+     * @throws NullPointerException if the specified key or value is null
+     */
+    public V putIfAbsent(K key, V value) {
+        return doPut(key, value, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws ClassCastException   if the specified key cannot be compared
+     *                              with the keys currently in the map
+     * @throws NullPointerException if the specified key is null
+     */
+    public boolean remove(Object key, Object value) {
+        if (key == null)
+            throw new NullPointerException();
+        return value != null && doRemove(key, value) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws ClassCastException   if the specified key cannot be compared
+     *                              with the keys currently in the map
+     * @throws NullPointerException if any of the arguments are null
+     */
+    public boolean replace(K key, V oldValue, V newValue) {
+        if (oldValue == null)
+            throw new NullPointerException();
+        return doReplace(key, oldValue, newValue) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return the previous value associated with the specified key,
+     * or {@code null} if there was no mapping for the key
+     * @throws ClassCastException   if the specified key cannot be compared
+     *                              with the keys currently in the map
+     * @throws NullPointerException if the specified key or value is null
+     */
+    public V replace(K key, V value) {
+        return doReplace(key, null, value);
+    }
+
+    /* ------ SortedMap API methods ------ */
+
+    public Comparator<? super K> comparator() {
+        return comparator;
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public K firstKey() {
+        Map.Entry<K, V> e = findFirst();
+        if (e == null)
+            throw new NoSuchElementException();
+        return e.getKey();
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public K lastKey() {
+        Map.Entry<K, V> e = findLast();
+        if (e == null)
+            throw new NoSuchElementException();
+        return e.getKey();
+    }
+
+    /**
+     * @throws ClassCastException       {@inheritDoc}
+     * @throws NullPointerException     if {@code fromKey} or {@code toKey} is null
+     * @throws IllegalArgumentException {@inheritDoc}
+     */
+    public ConcurrentNavigableMap<K, V> subMap(K fromKey, boolean fromInclusive,
+                                               K toKey, boolean toInclusive) {
+        if (fromKey == null || toKey == null)
+            throw new NullPointerException();
+        return new SubMap<K, V>(this, fromKey, fromInclusive, toKey, toInclusive, false);
+    }
+
+    /**
+     * @throws ClassCastException       {@inheritDoc}
+     * @throws NullPointerException     if {@code toKey} is null
+     * @throws IllegalArgumentException {@inheritDoc}
+     */
+    public ConcurrentNavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        if (toKey == null)
+            throw new NullPointerException();
+        return new SubMap<K, V>(this, null, false, toKey, inclusive, false);
+    }
+
+    /**
+     * @throws ClassCastException       {@inheritDoc}
+     * @throws NullPointerException     if {@code fromKey} is null
+     * @throws IllegalArgumentException {@inheritDoc}
+     */
+    public ConcurrentNavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        if (fromKey == null)
+            throw new NullPointerException();
+        return new SubMap<K, V>(this, fromKey, inclusive, null, false, false);
+    }
+
+    public ConcurrentNavigableMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    public ConcurrentNavigableMap<K, V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    public ConcurrentNavigableMap<K, V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    public ConcurrentNavigableMap<K, V> descendingMap() {
+        ConcurrentNavigableMap<K, V> dm = descendingMap;
+        return (dm != null) ? dm : (descendingMap =
+                new SubMap<K, V>(this, null, false, null, false, true));
+    }
+
+    /* ---------------- Relational operations -------------- */
+
+    /**
+     * @throws ClassCastException   {@inheritDoc}
+     * @throws NullPointerException if the specified key is null
+     */
+    public Map.Entry<K, V> lowerEntry(K key) {
+        return findNear(key, LT);
+    }
+
+    public K lowerKey(K key) {
+        Map.Entry<K, V> e = findNear(key, LT);
+        return (e == null) ? null : e.getKey();
+    }
+
+    public Map.Entry<K, V> floorEntry(K key) {
+        return findNear(key, LT | EQ);
+    }
+
+    public K floorKey(K key) {
+        Map.Entry<K, V> e = findNear(key, LT | EQ);
+        return (e == null) ? null : e.getKey();
+    }
+
+    public Map.Entry<K, V> ceilingEntry(K key) {
+        return findNear(key, GT | EQ);
+    }
+
+    public K ceilingKey(K key) {
+        Map.Entry<K, V> e = findNear(key, GT | EQ);
+        return (e == null) ? null : e.getKey();
+    }
+
+    public Map.Entry<K, V> higherEntry(K key) {
+        return findNear(key, GT);
+    }
+
+    public K higherKey(K key) {
+        Map.Entry<K, V> e = findNear(key, GT);
+        return (e == null) ? null : e.getKey();
+    }
+
+    public Map.Entry<K, V> firstEntry() {
+        return findFirst();
+    }
+
+    public Map.Entry<K, V> lastEntry() {
+        return findLast();
+    }
+
+    public Map.Entry<K, V> pollFirstEntry() {
+        for (; ; ) {
+            Map.Entry<K, V> e = findFirst();
+            if (e == null)
+                return null;
+            V v = doRemove(e.getKey(), null);
+            if (v != null)
+                return new AbstractMap.SimpleImmutableEntry<K, V>(e.getKey(), v);
+        }
+    }
+
+    public Map.Entry<K, V> pollLastEntry() {
+        for (; ; ) {
+            Map.Entry<K, V> e = findLast();
+            if (e == null)
+                return null;
+            V v = doRemove(e.getKey(), null);
+            if (v != null)
+                return new AbstractMap.SimpleImmutableEntry<K, V>(e.getKey(), v);
+        }
+    }
+
+    /* ---------------- Views -------------- */
+
+    public NavigableSet<K> keySet() {
+        KeySet<K> ks = keySet;
+        return (ks != null) ? ks : (keySet = new KeySet<K>(this));
+    }
+
+    public NavigableSet<K> navigableKeySet() {
+        return keySet();
+    }
+
+    public NavigableSet<K> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    public Collection<V> values() {
+        Values<V> vs = values;
+        return (vs != null) ? vs : (values = new Values<V>(this));
+    }
+
+    public Set<Map.Entry<K, V>> entrySet() {
+        EntrySet<K, V> es = entrySet;
+        return (es != null) ? es : (entrySet = new EntrySet<K, V>(this));
+    }
+
+    static final int KEYS = 0, VALUES = 1, ENTRIES = 2;
+
+    /**
+     * 迭代器: 升序时在结点的items数组中顺序扫描, 读完一个结点后沿next移动到下一个结点,
+     * 并跳过不大于上一个返回的键的键(结点可能在两次读取之间分裂); 降序时每一步调用findNear(LT).
+     */
+    final class Iter<T> implements Iterator<T> {
+        final int kind;
+        final K lo, hi;
+        final boolean loInclusive, hiInclusive, descending;
+
+        /**
+         * 升序扫描的当前结点、它的items和下一个键值对的下标
+         */
+        Node<K, V> node;
+        Object[] items;
+        int i;
+
+        K nextKey;
+        V nextValue;
+        K lastReturned;
+
+        Iter(int kind, K lo, boolean loInclusive, K hi, boolean hiInclusive, boolean descending) {
+            this.kind = kind;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+            if (descending) {
+                Map.Entry<K, V> e = (hi == null) ? findLast() : findNear(hi, hiInclusive ? LT | EQ : LT);
+                setNext(e);
+            } else {
+                if (lo == null) {
+                    node = head;
+                    items = node.items;
+                    i = 0;
+                } else {
+                    do {
+                        node = findNode(lo, false);
+                        items = node.items;
+                    } while (!covers(node, items, lo, false));
+                    int j = search(items, lo);
+                    i = (j >= 0) ? (loInclusive ? j : j + 1) : -j - 1;
+                }
+                ascend(lo, loInclusive);
+            }
+        }
+
+        private void setNext(Map.Entry<K, V> e) {
+            if (e == null || tooLow(e.getKey())) {
+                nextKey = null;
+                nextValue = null;
+            } else {
+                nextKey = e.getKey();
+                nextValue = e.getValue();
+            }
+        }
+
+        private boolean tooLow(K k) {
+            int c;
+            return lo != null && ((c = cpr(comparator, k, lo)) < 0 || (c == 0 && !loInclusive));
+        }
+
+        private boolean tooHigh(K k) {
+            int c;
+            return hi != null && ((c = cpr(comparator, k, hi)) > 0 || (c == 0 && !hiInclusive));
+        }
+
+        /**
+         * 从(items, i)开始找下一个键值对; 移动到下一个结点时跳过不在after之后的键
+         */
+        @SuppressWarnings("unchecked")
+        private void ascend(K after, boolean afterInclusive) {
+            for (; ; ) {
+                if (i < sizeOf(items)) {
+                    K k = (K) items[1 + (i << 1)];
+                    if (tooHigh(k))
+                        break;
+                    nextKey = k;
+                    nextValue = (V) items[2 + (i << 1)];
+                    ++i;
+                    return;
+                }
+                if ((node = node.next) == null)
+                    break;
+                items = node.items;
+                if (after == null)
+                    i = 0;
+                else {
+                    int j = search(items, after);
+                    i = (j >= 0) ? (afterInclusive ? j : j + 1) : -j - 1;
+                }
+            }
+            nextKey = null;
+            nextValue = null;
+            items = null;
+        }
+
+        public boolean hasNext() {
+            return nextKey != null;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T next() {
+            K k = nextKey;
+            V v = nextValue;
+            if (k == null)
+                throw new NoSuchElementException();
+            lastReturned = k;
+            if (descending)
+                setNext(findNear(k, LT));
+            else
+                ascend(k, false);
+            return (T) (kind == KEYS ? k :
+                    kind == VALUES ? v : new AbstractMap.SimpleImmutableEntry<K, V>(k, v));
+        }
+
+        public void remove() {
+            K k = lastReturned;
+            if (k == null)
+                throw new IllegalStateException();
+            ConcurrentBSkipListMap.this.remove(k);
+            lastReturned = null;
+        }
+    }
+
+    Iterator<K> keyIterator() {
+        return new Iter<K>(KEYS, null, false, null, false, false);
+    }
+
+    Iterator<V> valueIterator() {
+        return new Iter<V>(VALUES, null, false, null, false, false);
+    }
+
+    Iterator<Map.Entry<K, V>> entryIterator() {
+        return new Iter<Map.Entry<K, V>>(ENTRIES, null, false, null, false, false);
+    }
+
+    /* ---------------- View Classes -------------- */
+
+    static final <E> List<E> toList(Collection<E> c) {
+        // Using size() here would be a pessimization.
+        ArrayList<E> list = new ArrayList<E>();
+        for (E e : c)
+            list.add(e);
+        return list;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V, T> Iterator<T> iteratorOf(ConcurrentNavigableMap<K, V> m, int kind) {
+        if (m instanceof ConcurrentBSkipListMap) {
+            ConcurrentBSkipListMap<K, V> map = (ConcurrentBSkipListMap<K, V>) m;
+            return map.new Iter<T>(kind, null, false, null, false, false);
+        } else
+            return ((SubMap<K, V>) m).iterator(kind);
+    }
+
+    static final class KeySet<E>
+            extends AbstractSet<E> implements NavigableSet<E> {
+        final ConcurrentNavigableMap<E, ?> m;
+
+        KeySet(ConcurrentNavigableMap<E, ?> map) {
+            m = map;
+        }
+
+        public int size() {
+            return m.size();
+        }
+
+        public boolean isEmpty() {
+            return m.isEmpty();
+        }
+
+        public boolean contains(Object o) {
+            return m.containsKey(o);
+        }
+
+        public boolean remove(Object o) {
+            return m.remove(o) != null;
+        }
+
+        public void clear() {
+            m.clear();
+        }
+
+        public E lower(E e) {
+            return m.lowerKey(e);
+        }
+
+        public E floor(E e) {
+            return m.floorKey(e);
+        }
+
+        public E ceiling(E e) {
+            return m.ceilingKey(e);
+        }
+
+        public E higher(E e) {
+            return m.higherKey(e);
+        }
+
+        public Comparator<? super E> comparator() {
+            return m.comparator();
+        }
+
+        public E first() {
+            return m.firstKey();
+        }
+
+        public E last() {
+            return m.lastKey();
+        }
+
+        public E pollFirst() {
+            Map.Entry<E, ?> e = m.pollFirstEntry();
+            return (e == null) ? null : e.getKey();
+        }
+
+        public E pollLast() {
+            Map.Entry<E, ?> e = m.pollLastEntry();
+            return (e == null) ? null : e.getKey();
+        }
+
+        public Iterator<E> iterator() {
+            return iteratorOf(m, KEYS);
+        }
+
+        public boolean equals(Object o) {
+            if (o == this)
+                return true;
+            if (!(o instanceof Set))
+                return false;
+            Collection<?> c = (Collection<?>) o;
+            try {
+                return containsAll(c) && c.containsAll(this);
+            } catch (ClassCastException unused) {
+                return false;
+            } catch (NullPointerException unused) {
+                return false;
+            }
+        }
+
+        public Object[] toArray() {
+            return toList(this).toArray();
+        }
+
+        public <T> T[] toArray(T[] a) {
+            return toList(this).toArray(a);
+        }
+
+        public Iterator<E> descendingIterator() {
+            return descendingSet().iterator();
+        }
+
+        public NavigableSet<E> subSet(E fromElement,
+                                      boolean fromInclusive,
+                                      E toElement,
+                                      boolean toInclusive) {
+            return new KeySet<E>(m.subMap(fromElement, fromInclusive,
+                    toElement, toInclusive));
+        }
+
+        public NavigableSet<E> headSet(E toElement, boolean inclusive) {
+            return new KeySet<E>(m.headMap(toElement, inclusive));
+        }
+
+        public NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
+            return new KeySet<E>(m.tailMap(fromElement, inclusive));
+        }
+
+        public NavigableSet<E> subSet(E fromElement, E toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        public NavigableSet<E> headSet(E toElement) {
+            return headSet(toElement, false);
+        }
+
+        public NavigableSet<E> tailSet(E fromElement) {
+            return tailSet(fromElement, true);
+        }
+
+        public NavigableSet<E> descendingSet() {
+            return new KeySet<E>(m.descendingMap());
+        }
+    }
+
+    static final class Values<E> extends AbstractCollection<E> {
+        final ConcurrentNavigableMap<?, E> m;
+
+        Values(ConcurrentNavigableMap<?, E> map) {
+            m = map;
+        }
+
+        public Iterator<E> iterator() {
+            return iteratorOf(m, VALUES);
+        }
+
+        public boolean isEmpty() {
+            return m.isEmpty();
+        }
+
+        public int size() {
+            return m.size();
+        }
+
+        public boolean contains(Object o) {
+            return m.containsValue(o);
+        }
+
+        public void clear() {
+            m.clear();
+        }
+
+        public Object[] toArray() {
+            return toList(this).toArray();
+        }
+
+        public <T> T[] toArray(T[] a) {
+            return toList(this).toArray(a);
+        }
+    }
+
+    static final class EntrySet<K1, V1> extends AbstractSet<Map.Entry<K1, V1>> {
+        final ConcurrentNavigableMap<K1, V1> m;
+
+        EntrySet(ConcurrentNavigableMap<K1, V1> map) {
+            m = map;
+        }
+
+        public Iterator<Map.Entry<K1, V1>> iterator() {
+            return iteratorOf(m, ENTRIES);
+        }
+
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            V1 v = m.get(e.getKey());
+            return v != null && v.equals(e.getValue());
+        }
+
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return m.remove(e.getKey(),
+                    e.getValue());
+        }
+
+        public boolean isEmpty() {
+            return m.isEmpty();
+        }
+
+        public int size() {
+            return m.size();
+        }
+
+        public void clear() {
+            m.clear();
+        }
+
+        public boolean equals(Object o) {
+            if (o == this)
+                return true;
+            if (!(o instanceof Set))
+                return false;
+            Collection<?> c = (Collection<?>) o;
+            try {
+                return containsAll(c) && c.containsAll(this);
+            } catch (ClassCastException unused) {
+                return false;
+            } catch (NullPointerException unused) {
+                return false;
+            }
+        }
+
+        public Object[] toArray() {
+            return toList(this).toArray();
+        }
+
+        public <T> T[] toArray(T[] a) {
+            return toList(this).toArray(a);
+        }
+    }
+
+    /**
+     * 子Map视图: 与ConcurrentSkipListMap.SubMap相同, 映射范围之外的键被忽略, 插入范围之外的键抛出IllegalArgumentException.
+     * 升序遍历直接扫描结点数组.
+     */
+    static final class SubMap<K, V> extends AbstractMap<K, V>
+            implements ConcurrentNavigableMap<K, V> {
+
+        /**
+         * Underlying map
+         */
+        private final ConcurrentBSkipListMap<K, V> m;
+        /**
+         * lower bound key, or null if from start
+         */
+        private final K lo;
+        /**
+         * upper bound key, or null if to end
+         */
+        private final K hi;
+        /**
+         * inclusion flag for lo
+         */
+        private final boolean loInclusive;
+        /**
+         * inclusion flag for hi
+         */
+        private final boolean hiInclusive;
+        /**
+         * direction
+         */
+        private final boolean isDescending;
+
+        // Lazily initialized view holders
+        private transient KeySet<K> keySetView;
+        private transient Set<Map.Entry<K, V>> entrySetView;
+        private transient Collection<V> valuesView;
+
+        SubMap(ConcurrentBSkipListMap<K, V> map,
+               K fromKey, boolean fromInclusive,
+               K toKey, boolean toInclusive,
+               boolean isDescending) {
+            Comparator<? super K> cmp = map.comparator;
+            if (fromKey != null && toKey != null &&
+                    cpr(cmp, fromKey, toKey) > 0)
+                throw new IllegalArgumentException("inconsistent range");
+            this.m = map;
+            this.lo = fromKey;
+            this.hi = toKey;
+            this.loInclusive = fromInclusive;
+            this.hiInclusive = toInclusive;
+            this.isDescending = isDescending;
+        }
+
+        /* ----------------  Utilities -------------- */
+
+        boolean tooLow(Object key, Comparator<? super K> cmp) {
+            int c;
+            return (lo != null && ((c = cpr(cmp, key, lo)) < 0 ||
+                    (c == 0 && !loInclusive)));
+        }
+
+        boolean tooHigh(Object key, Comparator<? super K> cmp) {
+            int c;
+            return (hi != null && ((c = cpr(cmp, key, hi)) > 0 ||
+                    (c == 0 && !hiInclusive)));
+        }
+
+        boolean inBounds(Object key, Comparator<? super K> cmp) {
+            return !tooLow(key, cmp) && !tooHigh(key, cmp);
+        }
+
+        void checkKeyBounds(K key, Comparator<? super K> cmp) {
+            if (key == null)
+                throw new NullPointerException();
+            if (!inBounds(key, cmp))
+                throw new IllegalArgumentException("key out of range");
+        }
+
+        /**
+         * Returns lowest entry in range, or null.
+         */
+        Map.Entry<K, V> lowestEntry() {
+            Map.Entry<K, V> e = (lo == null) ? m.findFirst() :
+                    m.findNear(lo, loInclusive ? GT | EQ : GT);
+            return (e == null || tooHigh(e.getKey(), m.comparator)) ? null : e;
+        }
+
+        /**
+         * Returns highest entry in range, or null.
+         */
+        Map.Entry<K, V> highestEntry() {
+            Map.Entry<K, V> e = (hi == null) ? m.findLast() :
+                    m.findNear(hi, hiInclusive ? LT | EQ : LT);
+            return (e == null || tooLow(e.getKey(), m.comparator)) ? null : e;
+        }
+
+        K lowestKey() {
+            Map.Entry<K, V> e = lowestEntry();
+            if (e == null)
+                throw new NoSuchElementException();
+            return e.getKey();
+        }
+
+        K highestKey() {
+            Map.Entry<K, V> e = highestEntry();
+            if (e == null)
+                throw new NoSuchElementException();
+            return e.getKey();
+        }
+
+        Map.Entry<K, V> removeLowest() {
+            for (; ; ) {
+                Map.Entry<K, V> e = lowestEntry();
+                if (e == null)
+                    return null;
+                V v = m.doRemove(e.getKey(), null);
+                if (v != null)
+                    return new SimpleImmutableEntry<K, V>(e.getKey(), v);
+            }
+        }
+
+        Map.Entry<K, V> removeHighest() {
+            for (; ; ) {
+                Map.Entry<K, V> e = highestEntry();
+                if (e == null)
+                    return null;
+                V v = m.doRemove(e.getKey(), null);
+                if (v != null)
+                    return new SimpleImmutableEntry<K, V>(e.getKey(), v);
+            }
+        }
+
+        /**
+         * Submap version of ConcurrentBSkipListMap.findNear
+         */
+        Map.Entry<K, V> getNearEntry(K key, int rel) {
+            Comparator<? super K> cmp = m.comparator;
+            if (isDescending) { // adjust relation for direction
+                if ((rel & LT) == 0)
+                    rel |= LT;
+                else
+                    rel &= ~LT;
+            }
+            if (tooLow(key, cmp))
+                return ((rel & LT) != 0) ? null : lowestEntry();
+            if (tooHigh(key, cmp))
+                return ((rel & LT) != 0) ? highestEntry() : null;
+            Map.Entry<K, V> e = m.findNear(key, rel);
+            return (e == null || !inBounds(e.getKey(), cmp)) ? null : e;
+        }
+
+        K getNearKey(K key, int rel) {
+            Map.Entry<K, V> e = getNearEntry(key, rel);
+            return (e == null) ? null : e.getKey();
+        }
+
+        /* ----------------  Map API methods -------------- */
+
+        public boolean containsKey(Object key) {
+            if (key == null) throw new NullPointerException();
+            return inBounds(key, m.comparator) && m.containsKey(key);
+        }
+
+        public V get(Object key) {
+            if (key == null) throw new NullPointerException();
+            return (!inBounds(key, m.comparator)) ? null : m.get(key);
+        }
+
+        public V put(K key, V value) {
+            checkKeyBounds(key, m.comparator);
+            return m.put(key, value);
+        }
+
+        public V remove(Object key) {
+            return (!inBounds(key, m.comparator)) ? null : m.remove(key);
+        }
+
+        public int size() {
+            long count = 0;
+            for (Iterator<K> it = iterator(KEYS); it.hasNext(); it.next())
+                ++count;
+            return count >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) count;
+        }
+
+        public boolean isEmpty() {
+            return lowestEntry() == null;
+        }
+
+        public boolean containsValue(Object value) {
+            if (value == null)
+                throw new NullPointerException();
+            for (Iterator<V> it = iterator(VALUES); it.hasNext(); ) {
+                if (value.equals(it.next()))
+                    return true;
+            }
+            return false;
+        }
+
+        public void clear() {
+            for (Iterator<K> it = iterator(KEYS); it.hasNext(); ) {
+                it.next();
+                it.remove();
+            }
+        }
+
+        /* ----------------  ConcurrentMap API methods -------------- */
+
+        public V putIfAbsent(K key, V value) {
+            checkKeyBounds(key, m.comparator);
+            return m.putIfAbsent(key, value);
+        }
+
+        public boolean remove(Object key, Object value) {
+            return inBounds(key, m.comparator) && m.remove(key, value);
+        }
+
+        public boolean replace(K key, V oldValue, V newValue) {
+            checkKeyBounds(key, m.comparator);
+            return m.replace(key, oldValue, newValue);
+        }
+
+        public V replace(K key, V value) {
+            checkKeyBounds(key, m.comparator);
+            return m.replace(key, value);
+        }
+
+        /* ----------------  SortedMap API methods -------------- */
+
+        public Comparator<? super K> comparator() {
+            Comparator<? super K> cmp = m.comparator();
+            if (isDescending)
+                return Collections.reverseOrder(cmp);
+            else
+                return cmp;
+        }
+
+        /**
+         * Utility to create submaps, where given bounds override
+         * unbounded(null) ones and/or are checked against bounded ones.
+         */
+        SubMap<K, V> newSubMap(K fromKey, boolean fromInclusive,
+                               K toKey, boolean toInclusive) {
+            Comparator<? super K> cmp = m.comparator;
+            if (isDescending) { // flip senses
+                K tk = fromKey;
+                fromKey = toKey;
+                toKey = tk;
+                boolean ti = fromInclusive;
+                fromInclusive = toInclusive;
+                toInclusive = ti;
+            }
+            if (lo != null) {
+                if (fromKey == null) {
+                    fromKey = lo;
+                    fromInclusive = loInclusive;
+                } else {
+                    int c = cpr(cmp, fromKey, lo);
+                    if (c < 0 || (c == 0 && !loInclusive && fromInclusive))
+                        throw new IllegalArgumentException("key out of range");
+                }
+            }
+            if (hi != null) {
+                if (toKey == null) {
+                    toKey = hi;
+                    toInclusive = hiInclusive;
+                } else {
+                    int c = cpr(cmp, toKey, hi);
+                    if (c > 0 || (c == 0 && !hiInclusive && toInclusive))
+                        throw new IllegalArgumentException("key out of range");
+                }
+            }
+            return new SubMap<K, V>(m, fromKey, fromInclusive,
+                    toKey, toInclusive, isDescending);
+        }
+
+        public SubMap<K, V> subMap(K fromKey, boolean fromInclusive,
+                                   K toKey, boolean toInclusive) {
+            if (fromKey == null || toKey == null)
+                throw new NullPointerException();
+            return newSubMap(fromKey, fromInclusive, toKey, toInclusive);
+        }
+
+        public SubMap<K, V> headMap(K toKey, boolean inclusive) {
+            if (toKey == null)
+                throw new NullPointerException();
+            return newSubMap(null, false, toKey, inclusive);
+        }
+
+        public SubMap<K, V> tailMap(K fromKey, boolean inclusive) {
+            if (fromKey == null)
+                throw new NullPointerException();
+            return newSubMap(fromKey, inclusive, null, false);
+        }
+
+        public SubMap<K, V> subMap(K fromKey, K toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        public SubMap<K, V> headMap(K toKey) {
+            return headMap(toKey, false);
+        }
+
+        public SubMap<K, V> tailMap(K fromKey) {
+            return tailMap(fromKey, true);
+        }
+
+        public SubMap<K, V> descendingMap() {
+            return new SubMap<K, V>(m, lo, loInclusive,
+                    hi, hiInclusive, !isDescending);
+        }
+
+        /* ----------------  Relational methods -------------- */
+
+        public Map.Entry<K, V> ceilingEntry(K key) {
+            return getNearEntry(key, GT | EQ);
+        }
+
+        public K ceilingKey(K key) {
+            return getNearKey(key, GT | EQ);
+        }
+
+        public Map.Entry<K, V> lowerEntry(K key) {
+            return getNearEntry(key, LT);
+        }
+
+        public K lowerKey(K key) {
+            return getNearKey(key, LT);
+        }
+
+        public Map.Entry<K, V> floorEntry(K key) {
+            return getNearEntry(key, LT | EQ);
+        }
+
+        public K floorKey(K key) {
+            return getNearKey(key, LT | EQ);
+        }
+
+        public Map.Entry<K, V> higherEntry(K key) {
+            return getNearEntry(key, GT);
+        }
+
+        public K higherKey(K key) {
+            return getNearKey(key, GT);
+        }
+
+        public K firstKey() {
+            return isDescending ? highestKey() : lowestKey();
+        }
+
+        public K lastKey() {
+            return isDescending ? lowestKey() : highestKey();
+        }
+
+        public Map.Entry<K, V> firstEntry() {
+            return isDescending ? highestEntry() : lowestEntry();
+        }
+
+        public Map.Entry<K, V> lastEntry() {
+            return isDescending ? lowestEntry() : highestEntry();
+        }
+
+        public Map.Entry<K, V> pollFirstEntry() {
+            return isDescending ? removeHighest() : removeLowest();
+        }
+
+        public Map.Entry<K, V> pollLastEntry() {
+            return isDescending ? removeLowest() : removeHighest();
+        }
+
+        /* ---------------- Submap Views -------------- */
+
+        public NavigableSet<K> keySet() {
+            KeySet<K> ks = keySetView;
+            return (ks != null) ? ks : (keySetView = new KeySet<K>(this));
+        }
+
+        public NavigableSet<K> navigableKeySet() {
+            return keySet();
+        }
+
+        public Collection<V> values() {
+            Collection<V> vs = valuesView;
+            return (vs != null) ? vs : (valuesView = new Values<V>(this));
+        }
+
+        public Set<Map.Entry<K, V>> entrySet() {
+            Set<Map.Entry<K, V>> es = entrySetView;
+            return (es != null) ? es : (entrySetView = new EntrySet<K, V>(this));
+        }
+
+        public NavigableSet<K> descendingKeySet() {
+            return descendingMap().navigableKeySet();
+        }
+
+        <T> Iterator<T> iterator(int kind) {
+            return m.new Iter<T>(kind, lo, loInclusive, hi, hiInclusive, isDescending);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+import com.caojx.javaconcurrencylearn.source.util.concurrent.atomic.AtomicLongArray;
+import com.caojx.javaconcurrencylearn.source.util.concurrent.atomic.LongAdder;
+
+/**
+ * ConcurrentBloomFilter是无锁的布隆过滤器，可以在查询ConcurrentHashMap之前廉价地排除一定不存在的key。
+ * <p>
+ * 1.位数组保存在AtomicLongArray中，每个long保存64位。置位时读取所在的long，如果该位已经是1则直接返回，否则CAS写入w | mask，
+ *   失败（其他线程修改了同一个long中的其他位）则重试，所以put和mightContain都不需要加锁；
+ * 2.根据预期元素个数n和误判率p计算位数m = -n*ln(p)/(ln2)^2和哈希函数个数k = m/n*ln2，
+ *   k个哈希值由一个64位哈希拆成的两个32位哈希h1、h2按h1 + i*h2生成（Kirsch-Mitzenmacher），每个元素只计算一次哈希；
+ * 3.merge把另一个相同参数的过滤器的位数组按位或到本过滤器，同样通过CAS完成，可以与put以及其他线程的merge并发执行；
+ * 4.没有删除操作：布隆过滤器只会把位从0变为1。
+ * <p>
+ * A lock-free Bloom filter.  Bits are stored in an
+ * {@link AtomicLongArray}, sixty-four to a word, and are set with a
+ * compare-and-set loop that retries only when another thread changed a
+ * different bit of the same word.  {@link #mightContain} never returns
+ * {@code false} for an element that has been {@linkplain #put put}; it
+ * returns {@code true} for other elements with a probability close to
+ * the configured false-positive rate, provided no more than the
+ * expected number of elements have been added.
+ *
+ * <p>Elements are hashed with their {@code hashCode}, further mixed with
+ * MurmurHash3's 64-bit finalizer, so elements must have a
+ * {@code hashCode} consistent with {@code equals}; the {@code long}
+ * overloads hash the value itself.  Filters created with the same
+ * parameters can be {@linkplain #merge merged}, concurrently with
+ * insertions.
+ *
+ * @param <T> the type of elements
+ * @author caojx created on 2026/10/19
+ * @see ConcurrentCountMinSketch
+ */
+public class ConcurrentBloomFilter<T> {
+
+    /**
+     * 位数组
+     */
+    private final AtomicLongArray bits;
+
+    /**
+     * 位数, 64的倍数
+     */
+    private final long bitSize;
+
+    /**
+     * 哈希函数个数
+     */
+    private final int numHashes;
+
+    /**
+     * 已经置为1的位数, 用于估算当前的误判率
+     */
+    private final LongAdder bitCount = new LongAdder();
+
+    /**
+     * Creates a filter sized for the expected number of insertions and
+     * the desired false-positive probability.
+     *
+     * @param expectedInsertions the number of elements expected to be added
+     * @param fpp                the desired false-positive probability
+     * @throws IllegalArgumentException if {@code expectedInsertions} is not
+     *                                  positive or {@code fpp} is not in (0, 1), or the filter would be
+     *                                  too large
+     */
+    public ConcurrentBloomFilter(long expectedInsertions, double fpp) {
+        if (expectedInsertions <= 0 || !(fpp > 0.0 && fpp < 1.0))
+            throw new IllegalArgumentException();
+        long m = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        long words = Math.max(1L, (m + 63) >>> 6);
+        if (words > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("filter too large");
+        this.bitSize = words << 6;
+        this.numHashes = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+        this.bits = new AtomicLongArray((int) words);
+    }
+
+    /**
+     * 由另一个过滤器的参数创建一个空的过滤器
+     */
+    private ConcurrentBloomFilter(long bitSize, int numHashes) {
+        this.bitSize = bitSize;
+        this.numHashes = numHashes;
+        this.bits = new AtomicLongArray((int) (bitSize >>> 6));
+    }
+
+    static long hash(Object o) {
+        if (o == null)
+            throw new NullPointerException();
+        return ConcurrentLongLongHashMap.mix(o.hashCode());
+    }
+
+    /**
+     * 第i个哈希值对应的位, h1 + i*h2 取非负值后对位数取模
+     */
+    static long index(long h, int i, long size) {
+        int h1 = (int) h, h2 = (int) (h >>> 32);
+        long c = (long) h1 + (long) i * h2;
+        return (c & Long.MAX_VALUE) % size;
+    }
+
+    /**
+     * CAS置位, 该位原来是0时返回true
+     */
+    private boolean setBit(long index) {
+        int i = (int) (index >>> 6);
+        long mask = 1L << index;
+        for (long w; ((w = bits.get(i)) & mask) == 0; ) {
+            if (bits.compareAndSet(i, w, w | mask)) {
+                bitCount.increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean getBit(long index) {
+        return (bits.get((int) (index >>> 6)) & (1L << index)) != 0;
+    }
+
+    private boolean putHash(long h) {
+        boolean changed = false;
+        for (int i = 0; i < numHashes; i++)
+            changed |= setBit(index(h, i, bitSize));
+        return changed;
+    }
+
+    private boolean containsHash(long h) {
+        for (int i = 0; i < numHashes; i++)
+            if (!getBit(index(h, i, bitSize)))
+                return false;
+        return true;
+    }
+
+    /**
+     * Adds the element to this filter.
+     *
+     * @param element the element
+     * @return {@code true} if a bit changed, in which case the element was
+     * definitely not present before
+     * @throws NullPointerException if the element is null
+     */
+    public boolean put(T element) {
+        return putHash(hash(element));
+    }
+
+    /**
+     * Adds the value to this filter.
+     *
+     * @param value the value
+     * @return {@code true} if a bit changed
+     */
+    public boolean put(long value) {
+        return putHash(ConcurrentLongLongHashMap.mix(value));
+    }
+
+    /**
+     * Returns {@code true} if the element might have been added, and
+     * {@code false} if it definitely has not.
+     *
+     * @param element the element
+     * @return whether the element might be present
+     * @throws NullPointerException if the element is null
+     */
+    public boolean mightContain(T element) {
+        return containsHash(hash(element));
+    }
+
+    /**
+     * Returns {@code true} if the value might have been added, and
+     * {@code false} if it definitely has not.
+     *
+     * @param value the value
+     * @return whether the value might be present
+     */
+    public boolean mightContain(long value) {
+        return containsHash(ConcurrentLongLongHashMap.mix(value));
+    }
+
+    /**
+     * Adds all elements of the other filter to this one, by or-ing its
+     * bits into this filter's.  May run concurrently with insertions
+     * and with other merges into this filter.
+     *
+     * @param other a filter created with the same parameters
+     * @throws IllegalArgumentException if the filters are not compatible
+     */
+    public void merge(ConcurrentBloomFilter<T> other) {
+        if (other.bitSize != bitSize || other.numHashes != numHashes)
+            throw new IllegalArgumentException("incompatible filters");
+        for (int i = 0, n = bits.length(); i < n; i++) {
+            long o = other.bits.get(i);
+            for (long w; (o & ~(w = bits.get(i))) != 0; ) {
+                if (bits.compareAndSet(i, w, w | o)) {
+                    bitCount.add(Long.bitCount(o & ~w));
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a new, empty filter with the same parameters as this one,
+     * which can later be {@linkplain #merge merged} into it.
+     *
+     * @return an empty compatible filter
+     */
+    public ConcurrentBloomFilter<T> emptyCopy() {
+        return new ConcurrentBloomFilter<T>(bitSize, numHashes);
+    }
+
+    /**
+     * Returns the number of bits in this filter.
+     */
+    public long bitSize() {
+        return bitSize;
+    }
+
+    /**
+     * Returns the number of hash functions used per element.
+     */
+    public int numHashes() {
+        return numHashes;
+    }
+
+    /**
+     * Returns the probability that {@link #mightContain} returns
+     * {@code true} for an element that has not been added, estimated
+     * from the fraction of bits that are set.
+     *
+     * @return the current false-positive probability
+     */
+    public double expectedFpp() {
+        return Math.pow((double) bitCount.sum() / bitSize, numHashes);
+    }
+
+    public String toString() {
+        return "ConcurrentBloomFilter[bits=" + bitSize + ", hashes=" + numHashes
+                + ", fpp=" + expectedFpp() + "]";
+    }
+}
@@ -0,0 +1,338 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+import com.caojx.javaconcurrencylearn.source.util.concurrent.atomic.AtomicReferenceArray;
+import com.caojx.javaconcurrencylearn.source.util.concurrent.atomic.LongAdder;
+
+import java.util.function.BiConsumer;
+
+/**
+ * ConcurrentClockMap是按CLOCK（二次机会）算法淘汰的有界并发map，用来代替Collections.synchronizedMap包装的访问顺序LinkedHashMap。
+ * <p>
+ * 访问顺序的LinkedHashMap在每次get时都要把节点移到链表尾部，所以必须加锁，所有读操作都被串行化。
+ * CLOCK用一个“引用位”近似LRU：
+ * 1.数据保存在ConcurrentHashMap中，get只做一次ConcurrentHashMap的get，如果节点的引用位还没有设置就设置它，
+ *   不加锁也不修改任何共享的链表，已设置时连写操作都没有，所以读操作可以随CPU核数扩展；
+ * 2.所有节点同时放在一个容量为capacity的环形数组（时钟）中，插入新key时由插入线程推动时钟指针（CAS递增的计数器）：
+ *   遇到空槽位直接占用；遇到引用位为1的节点清除引用位（给它第二次机会）后继续；
+ *   遇到引用位为0的节点则CAS把槽位换成新节点，并把旧节点从map中删除，即淘汰；
+ * 3.多个插入线程各自取得不同的指针位置，并发地扫描时钟，槽位的替换都通过CAS完成，不需要全局锁；
+ * 4.remove删除map中的节点后，再把它在时钟中的槽位CAS为null并放入空闲槽位队列，后续插入优先使用空闲槽位而不是淘汰节点。
+ * <p>
+ * 指针扫描一整圈后所有引用位都已被清除，所以插入最多扫描两圈；如果读线程一直在设置引用位，两圈后直接淘汰下一个节点。
+ * <p>
+ * A bounded concurrent map that evicts with the CLOCK (second chance)
+ * approximation of LRU.  Entries are held in a {@link ConcurrentHashMap}
+ * and, at the same time, in a ring of {@code capacity} slots.  A read
+ * performs one hash map lookup and sets the entry's reference bit if it
+ * is not already set, so reads take no lock and usually write nothing.
+ *
+ * <p>Inserting a new key advances the clock hand, an atomic counter,
+ * until it finds a free slot or an entry whose reference bit is clear,
+ * clearing the bits it passes.  The entry found is replaced in the ring
+ * with a compare-and-set and removed from the map.  Concurrent inserts
+ * sweep different slots, so eviction needs no global lock either.
+ *
+ * <p>The size bound is approximate: the map may briefly hold one entry
+ * more than {@code capacity} for each insert still in progress.  This
+ * class does not permit {@code null} keys or values.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ * @author caojx created on 2026/10/19
+ * @see BoundedConcurrentCache
+ */
+public class ConcurrentClockMap<K, V> {
+
+    /**
+     * key -> 节点
+     */
+    final ConcurrentHashMap<K, Node<K, V>> data;
+
+    /**
+     * 时钟, 每个槽位保存一个节点或null
+     */
+    final AtomicReferenceArray<Node<K, V>> ring;
+
+    final int capacity;
+
+    /**
+     * remove释放的槽位. 插入时优先使用, 否则时钟指针要转到这些槽位时才能使用它们, 之前会多淘汰节点
+     */
+    final ConcurrentLinkedQueue<Integer> freeSlots = new ConcurrentLinkedQueue<Integer>();
+
+    /**
+     * 时钟指针, 只增不减, 对capacity取模得到槽位
+     */
+    private volatile long hand;
+
+    /**
+     * 淘汰的节点数
+     */
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * 节点. value和referenced可以被任意线程读写, slot只由占用槽位的插入线程写一次
+     */
+    static final class Node<K, V> {
+        final K key;
+        volatile V value;
+
+        /**
+         * 引用位, get和更新时设置, 时钟指针经过时清除
+         */
+        volatile boolean referenced;
+
+        /**
+         * 节点在时钟中的槽位, 还没有占用槽位时为-1
+         */
+        volatile int slot = -1;
+
+        /**
+         * 是否已从map中删除
+         */
+        volatile boolean removed;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Creates a map holding at most about {@code capacity} entries.
+     *
+     * @param capacity the maximum number of entries
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public ConcurrentClockMap(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException();
+        this.capacity = capacity;
+        this.data = new ConcurrentHashMap<K, Node<K, V>>(capacity);
+        this.ring = new AtomicReferenceArray<Node<K, V>>(capacity);
+    }
+
+    /**
+     * 设置引用位, 已经设置时不写, 避免读线程之间在节点所在的缓存行上竞争
+     */
+    static void reference(Node<?, ?> n) {
+        if (!n.referenced)
+            n.referenced = true;
+    }
+
+    /**
+     * Returns the value to which the key is mapped, or {@code null} if
+     * none, and marks the entry as recently used.
+     *
+     * @param key the key
+     * @return the value, or {@code null}
+     * @throws NullPointerException if the key is null
+     */
+    public V get(Object key) {
+        Node<K, V> n = data.get(key);
+        if (n == null)
+            return null;
+        reference(n);
+        return n.value;
+    }
+
+    /**
+     * Returns {@code true} if the key is mapped.  Does not mark the entry
+     * as recently used.
+     *
+     * @param key the key
+     * @return whether the key is present
+     * @throws NullPointerException if the key is null
+     */
+    public boolean containsKey(Object key) {
+        return data.containsKey(key);
+    }
+
+    /**
+     * Maps the key to the value, evicting another entry if the map is
+     * full.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the previous value, or {@code null} if none
+     * @throws NullPointerException if the key or value is null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        Object[] old = new Object[1];
+        Node<K, V>[] created = (Node<K, V>[]) new Node<?, ?>[1];
+        // 在桶锁内更新已有节点, 与淘汰时的data.remove(key, node)互斥, 不会把新值写到已被淘汰的节点上
+        data.compute(key, (k, n) -> {
+            if (n == null)
+                return created[0] = new Node<K, V>(k, value);
+            old[0] = n.value;
+            n.value = value;
+            reference(n);
+            return n;
+        });
+        if (created[0] != null)
+            claimSlot(created[0]);
+        return (V) old[0];
+    }
+
+    /**
+     * Maps the key to the value unless it is already mapped.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the current value, or {@code null} if the value was inserted
+     * @throws NullPointerException if the key or value is null
+     */
+    public V putIfAbsent(K key, V value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        Node<K, V> n = data.get(key);
+        if (n == null) {
+            Node<K, V> node = new Node<K, V>(key, value);
+            if ((n = data.putIfAbsent(key, node)) == null) {
+                claimSlot(node);
+                return null;
+            }
+        }
+        reference(n);
+        return n.value;
+    }
+
+    /**
+     * Removes the mapping for the key.
+     *
+     * @param key the key
+     * @return the previous value, or {@code null} if none
+     * @throws NullPointerException if the key is null
+     */
+    public V remove(Object key) {
+        Node<K, V> n = data.remove(key);
+        if (n == null)
+            return null;
+        release(n);
+        return n.value;
+    }
+
+    /**
+     * 节点已从map中删除, 释放它占用的槽位.
+     * removed与slot的写读顺序和claimSlot相反, 两者之中至少有一个线程能看到对方的写入, 所以槽位不会泄漏
+     */
+    private void release(Node<K, V> n) {
+        n.removed = true;
+        int s = n.slot;
+        if (s >= 0 && ring.compareAndSet(s, n, null))
+            freeSlots.offer(s);
+    }
+
+    /**
+     * 推动时钟指针为新节点找到一个槽位: 空槽位直接占用, 引用位为1的节点清除引用位, 引用位为0的节点被淘汰.
+     * 扫描两圈后仍未找到时, 不再考虑引用位
+     */
+    private void claimSlot(Node<K, V> node) {
+        for (Integer f; (f = freeSlots.poll()) != null; ) {
+            // 时钟指针可能已经先占用了这个槽位, CAS失败时换下一个
+            if (ring.compareAndSet(f, null, node)) {
+                publishSlot(node, f);
+                return;
+            }
+        }
+        final int cap = capacity;
+        for (long step = 0; ; ++step) {
+            int s = (int) (U.getAndAddLong(this, HAND, 1L) % cap);
+            Node<K, V> x = ring.get(s);
+            if (x == null) {
+                if (!ring.compareAndSet(s, null, node))
+                    continue;
+            } else if (x.referenced && !x.removed && step < 2L * cap) {
+                x.referenced = false;
+                continue;
+            } else if (ring.compareAndSet(s, x, node)) {
+                if (data.remove(x.key, x)) {
+                    x.removed = true;
+                    evictionCount.increment();
+                }
+            } else
+                continue;
+            publishSlot(node, s);
+            return;
+        }
+    }
+
+    private void publishSlot(Node<K, V> node, int s) {
+        node.slot = s;
+        if (node.removed && ring.compareAndSet(s, node, null))
+            freeSlots.offer(s);
+    }
+
+    /**
+     * Removes all of the mappings.
+     */
+    public void clear() {
+        for (K k : data.keySet())
+            remove(k);
+    }
+
+    /**
+     * Returns the number of mappings, which may briefly exceed the
+     * capacity while inserts are in progress.
+     */
+    public int size() {
+        return data.size();
+    }
+
+    public boolean isEmpty() {
+        return data.isEmpty();
+    }
+
+    /**
+     * Returns the maximum number of entries.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of entries evicted to make room for new ones.
+     */
+    public long evictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Performs the action for each mapping, without marking the entries
+     * as recently used.
+     *
+     * @param action the action
+     * @throws NullPointerException if the action is null
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null) throw new NullPointerException();
+        data.forEach((k, n) -> action.accept(k, n.value));
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder().append('{');
+        forEach((k, v) -> {
+            if (sb.length() > 1)
+                sb.append(", ");
+            sb.append(k).append('=').append(v);
+        });
+        return sb.append('}').toString();
+    }
+
+    // Unsafe mechanics
+    private static final sun.misc.Unsafe U;
+    private static final long HAND;
+
+    static {
+        try {
+            U = sun.misc.Unsafe.getUnsafe();
+            Class<?> k = ConcurrentClockMap.class;
+            HAND = U.objectFieldOffset(k.getDeclaredField("hand"));
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+}
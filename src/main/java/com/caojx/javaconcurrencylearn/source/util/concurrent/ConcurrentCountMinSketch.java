@@ -0,0 +1,211 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+import com.caojx.javaconcurrencylearn.source.util.concurrent.atomic.AtomicLongArray;
+import com.caojx.javaconcurrencylearn.source.util.concurrent.atomic.LongAdder;
+
+/**
+ * ConcurrentCountMinSketch是无锁的Count-Min Sketch，用固定大小的计数器矩阵估算每个元素出现的次数。
+ * <p>
+ * 1.计数器矩阵有depth行width列，按行连续保存在一个AtomicLongArray中，
+ *   每次add对每一行的一个计数器执行getAndAdd，不需要加锁，也不会像ConcurrentHashMap.merge那样为每个元素创建对象；
+ * 2.估算次数时取所有行中对应计数器的最小值，结果不会小于真实值，
+ *   在概率confidence下高估的部分不超过epsilon * 总次数，据此计算width = e/epsilon（取2的幂）和depth = ln(1/(1-confidence))；
+ * 3.每行的列下标与ConcurrentBloomFilter相同，由一个64位哈希拆成的h1、h2按h1 + i*h2生成；
+ * 4.merge把另一个相同参数的sketch逐个计数器累加到本sketch，可以与add以及其他线程的merge并发执行。
+ * <p>
+ * A lock-free count-min sketch.  Counters are kept row by row in an
+ * {@link AtomicLongArray} and updated with atomic adds, so
+ * {@link #add} neither locks nor allocates.  {@link #estimateCount}
+ * never underestimates, and with probability {@code confidence}
+ * overestimates by at most {@code epsilon} times the total of all
+ * counts added.
+ *
+ * <p>Elements are hashed in the same way as by
+ * {@link ConcurrentBloomFilter}.  Sketches created with the same
+ * parameters can be {@linkplain #merge merged}, concurrently with
+ * updates.
+ *
+ * @param <T> the type of elements
+ * @author caojx created on 2026/10/19
+ * @see ConcurrentBloomFilter
+ */
+public class ConcurrentCountMinSketch<T> {
+
+    /**
+     * 计数器矩阵, 第r行第c列在下标r * width + c
+     */
+    private final AtomicLongArray counters;
+
+    /**
+     * 列数, 2的幂
+     */
+    private final int width;
+
+    /**
+     * 行数
+     */
+    private final int depth;
+
+    /**
+     * 所有元素的总次数
+     */
+    private final LongAdder total = new LongAdder();
+
+    /**
+     * Creates a sketch whose estimates exceed the true count by at most
+     * {@code epsilon} times the total count, with probability
+     * {@code confidence}.
+     *
+     * @param epsilon    the relative error, in (0, 1)
+     * @param confidence the probability that an estimate is within the
+     *                   error bound, in (0, 1)
+     * @throws IllegalArgumentException if a parameter is out of range or
+     *                                  the sketch would be too large
+     */
+    public ConcurrentCountMinSketch(double epsilon, double confidence) {
+        if (!(epsilon > 0.0 && epsilon < 1.0) || !(confidence > 0.0 && confidence < 1.0))
+            throw new IllegalArgumentException();
+        long w = 1;
+        while (w < Math.ceil(Math.E / epsilon))
+            w <<= 1;
+        int d = Math.max(1, (int) Math.ceil(Math.log(1.0 / (1.0 - confidence))));
+        if (w * d > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("sketch too large");
+        this.width = (int) w;
+        this.depth = d;
+        this.counters = new AtomicLongArray(width * depth);
+    }
+
+    private ConcurrentCountMinSketch(int width, int depth) {
+        this.width = width;
+        this.depth = depth;
+        this.counters = new AtomicLongArray(width * depth);
+    }
+
+    private int slot(long h, int row) {
+        return row * width + (int) ConcurrentBloomFilter.index(h, row, width);
+    }
+
+    private void addHash(long h, long count) {
+        if (count < 0)
+            throw new IllegalArgumentException("negative count");
+        for (int r = 0; r < depth; r++)
+            counters.getAndAdd(slot(h, r), count);
+        total.add(count);
+    }
+
+    private long estimateHash(long h) {
+        long min = Long.MAX_VALUE;
+        for (int r = 0; r < depth; r++)
+            min = Math.min(min, counters.get(slot(h, r)));
+        return min;
+    }
+
+    /**
+     * Adds one occurrence of the element.
+     *
+     * @param element the element
+     * @throws NullPointerException if the element is null
+     */
+    public void add(T element) {
+        addHash(ConcurrentBloomFilter.hash(element), 1L);
+    }
+
+    /**
+     * Adds {@code count} occurrences of the element.
+     *
+     * @param element the element
+     * @param count   the number of occurrences, not negative
+     * @throws NullPointerException     if the element is null
+     * @throws IllegalArgumentException if the count is negative
+     */
+    public void add(T element, long count) {
+        addHash(ConcurrentBloomFilter.hash(element), count);
+    }
+
+    /**
+     * Adds {@code count} occurrences of the value.
+     *
+     * @param value the value
+     * @param count the number of occurrences, not negative
+     * @throws IllegalArgumentException if the count is negative
+     */
+    public void add(long value, long count) {
+        addHash(ConcurrentLongLongHashMap.mix(value), count);
+    }
+
+    /**
+     * Returns an estimate of the number of occurrences of the element,
+     * never less than the true number.
+     *
+     * @param element the element
+     * @return the estimated count
+     * @throws NullPointerException if the element is null
+     */
+    public long estimateCount(T element) {
+        return estimateHash(ConcurrentBloomFilter.hash(element));
+    }
+
+    /**
+     * Returns an estimate of the number of occurrences of the value,
+     * never less than the true number.
+     *
+     * @param value the value
+     * @return the estimated count
+     */
+    public long estimateCount(long value) {
+        return estimateHash(ConcurrentLongLongHashMap.mix(value));
+    }
+
+    /**
+     * Adds all counts of the other sketch to this one.  May run
+     * concurrently with updates and with other merges into this sketch.
+     *
+     * @param other a sketch created with the same parameters
+     * @throws IllegalArgumentException if the sketches are not compatible
+     */
+    public void merge(ConcurrentCountMinSketch<T> other) {
+        if (other.width != width || other.depth != depth)
+            throw new IllegalArgumentException("incompatible sketches");
+        // 每一行的计数器之和都等于总次数, 用实际累加的第一行计算总次数, 而不是读取other.total
+        long sum = 0;
+        for (int i = 0, n = counters.length(); i < n; i++) {
+            long c = other.counters.get(i);
+            if (c != 0)
+                counters.getAndAdd(i, c);
+            if (i < width)
+                sum += c;
+        }
+        total.add(sum);
+    }
+
+    /**
+     * Returns a new, empty sketch with the same parameters as this one,
+     * which can later be {@linkplain #merge merged} into it.
+     *
+     * @return an empty compatible sketch
+     */
+    public ConcurrentCountMinSketch<T> emptyCopy() {
+        return new ConcurrentCountMinSketch<T>(width, depth);
+    }
+
+    /**
+     * Returns the total of all counts added.
+     */
+    public long totalCount() {
+        return total.sum();
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    public String toString() {
+        return "ConcurrentCountMinSketch[width=" + width + ", depth=" + depth
+                + ", total=" + totalCount() + "]";
+    }
+}
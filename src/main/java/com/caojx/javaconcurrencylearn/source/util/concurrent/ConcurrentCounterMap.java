@@ -0,0 +1,238 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+import com.caojx.javaconcurrencylearn.source.util.concurrent.atomic.LongAdder;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * ConcurrentCounterMap是按key计数的并发计数器（也可以看作一个并发的多重集合Multiset）。
+ * <p>
+ * 用ConcurrentHashMap.merge(k, 1L, Long::sum)计数时，每次计数都会创建一个新的Long对象，
+ * 并且同一个热点key的所有更新都竞争同一个桶锁。ConcurrentCounterMap的做法：
+ * 1.每个key对应一个LongAdder，只有key第一次出现时才创建；之后的计数只读取map（无锁）并累加LongAdder，不创建任何对象；
+ * 2.LongAdder在没有竞争时直接CAS累加base，只有出现竞争时才创建Cell数组，
+ *   所以只有被多个线程同时更新的热点key才会占用分散的Cell，冷的key只占一个LongAdder对象；
+ * 3.读取计数时对Cell求和，snapshot和topK遍历所有key，得到的是弱一致的结果。
+ * <p>
+ * A map from keys to {@code long} counts.  Each key is backed by a
+ * {@link LongAdder}, created the first time the key is counted; after
+ * that, counting a key reads the underlying {@link ConcurrentHashMap}
+ * without locking and adds to the adder without allocating.  The adder
+ * spreads updates over striped cells only once it sees contention, so
+ * only hot keys pay for them.
+ *
+ * <p>Reads such as {@link #get}, {@link #snapshot} and {@link #topK}
+ * sum the cells and are not atomic with respect to concurrent updates.
+ * Keys whose count drops to zero stay in the map until
+ * {@link #remove}d.  Null keys are not permitted.
+ *
+ * @param <K> the type of keys
+ * @author caojx created on 2026/10/19
+ * @see LongAdder
+ */
+public class ConcurrentCounterMap<K> {
+
+    /**
+     * key -> 计数值
+     */
+    final ConcurrentHashMap<K, LongAdder> counters;
+
+    /**
+     * Creates a new, empty counter map.
+     */
+    public ConcurrentCounterMap() {
+        counters = new ConcurrentHashMap<K, LongAdder>();
+    }
+
+    /**
+     * Creates a new, empty counter map sized for the given number of keys.
+     *
+     * @param initialCapacity the expected number of keys
+     * @throws IllegalArgumentException if the initial capacity is negative
+     */
+    public ConcurrentCounterMap(int initialCapacity) {
+        counters = new ConcurrentHashMap<K, LongAdder>(initialCapacity);
+    }
+
+    /**
+     * 获取key对应的计数器, 不存在时创建. 先用get查找, 避免computeIfAbsent加桶锁
+     */
+    final LongAdder counter(K key) {
+        LongAdder a = counters.get(key);
+        if (a == null)
+            a = counters.computeIfAbsent(key, k -> new LongAdder());
+        return a;
+    }
+
+    /**
+     * Adds one to the count of the key.
+     *
+     * @param key the key
+     * @throws NullPointerException if the key is null
+     */
+    public void increment(K key) {
+        counter(key).increment();
+    }
+
+    /**
+     * Subtracts one from the count of the key.
+     *
+     * @param key the key
+     * @throws NullPointerException if the key is null
+     */
+    public void decrement(K key) {
+        counter(key).decrement();
+    }
+
+    /**
+     * Adds the given value to the count of the key.
+     *
+     * @param key   the key
+     * @param delta the value to add
+     * @throws NullPointerException if the key is null
+     */
+    public void add(K key, long delta) {
+        counter(key).add(delta);
+    }
+
+    /**
+     * Returns the current count of the key, or zero if it has never
+     * been counted.
+     *
+     * @param key the key
+     * @return the count
+     * @throws NullPointerException if the key is null
+     */
+    public long get(Object key) {
+        LongAdder a = counters.get(key);
+        return a == null ? 0L : a.sum();
+    }
+
+    /**
+     * Removes the key and returns its count.  Updates racing with the
+     * removal may be applied to the removed counter and lost.
+     * <p>
+     * 删除key并返回它的计数值. 与删除并发的计数可能累加到已被删除的计数器上而丢失.
+     *
+     * @param key the key
+     * @return the count of the key before removal, or zero if absent
+     * @throws NullPointerException if the key is null
+     */
+    public long remove(Object key) {
+        LongAdder a = counters.remove(key);
+        return a == null ? 0L : a.sum();
+    }
+
+    /**
+     * Removes all keys.
+     */
+    public void clear() {
+        counters.clear();
+    }
+
+    /**
+     * Returns the number of keys.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        return counters.size();
+    }
+
+    /**
+     * Returns {@code true} if no key has been counted.
+     *
+     * @return {@code true} if there are no keys
+     */
+    public boolean isEmpty() {
+        return counters.isEmpty();
+    }
+
+    /**
+     * Returns the sum of the counts of all keys.
+     *
+     * @return the total count
+     */
+    public long total() {
+        long sum = 0L;
+        for (LongAdder a : counters.values())
+            sum += a.sum();
+        return sum;
+    }
+
+    /**
+     * Returns a view of the keys.  Removing a key from the view removes
+     * its count.
+     *
+     * @return the keys
+     */
+    public Set<K> keySet() {
+        return counters.keySet();
+    }
+
+    /**
+     * Performs the action for each key and its current count.
+     *
+     * @param action the action
+     */
+    public void forEach(ObjLongConsumer<? super K> action) {
+        if (action == null) throw new NullPointerException();
+        counters.forEach((k, a) -> action.accept(k, a.sum()));
+    }
+
+    /**
+     * Returns a copy of the current counts.
+     *
+     * @return a new map from each key to its count
+     */
+    public Map<K, Long> snapshot() {
+        Map<K, Long> m = new HashMap<K, Long>(Math.max((int) (counters.size() / .75f) + 1, 16));
+        counters.forEach((k, a) -> m.put(k, a.sum()));
+        return m;
+    }
+
+    /**
+     * Returns the keys with the highest counts, highest first.
+     * <p>
+     * 用一个容量为n的小顶堆遍历所有key, 复杂度O(size * log n).
+     *
+     * @param n the maximum number of keys to return
+     * @return at most {@code n} entries ordered by descending count
+     * @throws IllegalArgumentException if {@code n} is negative
+     */
+    public List<Map.Entry<K, Long>> topK(int n) {
+        if (n < 0)
+            throw new IllegalArgumentException();
+        if (n == 0)
+            return Collections.emptyList();
+        Comparator<Map.Entry<K, Long>> byCount = Map.Entry.comparingByValue();
+        // 堆的初始容量不超过当前key的个数, 避免n很大时分配无用的数组(以及n + 1溢出); key增多时堆会自动扩容
+        PriorityQueue<Map.Entry<K, Long>> heap =
+                new PriorityQueue<Map.Entry<K, Long>>(Math.min(n, counters.size()) + 1, byCount);
+        counters.forEach((k, a) -> {
+            long c = a.sum();
+            if (heap.size() < n)
+                heap.add(new AbstractMap.SimpleImmutableEntry<K, Long>(k, c));
+            else if (c > heap.peek().getValue()) {
+                heap.poll();
+                heap.add(new AbstractMap.SimpleImmutableEntry<K, Long>(k, c));
+            }
+        });
+        List<Map.Entry<K, Long>> list = new ArrayList<Map.Entry<K, Long>>(heap);
+        list.sort(byCount.reversed());
+        return list;
+    }
+
+    public String toString() {
+        return snapshot().toString();
+    }
+}
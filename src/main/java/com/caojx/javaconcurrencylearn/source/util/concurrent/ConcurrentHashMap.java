@@ -1022,6 +1022,72 @@ public class ConcurrentHashMap<K, V> extends AbstractMap<K, V>
         return null;
     }
 
+    /**
+     * Returns the mappings for the given keys, reading the table once
+     * and visiting the keys in bin order.
+     *
+     * <p>The returned map holds only the keys that were found, each with
+     * the value some {@link #get} of that key could have returned during
+     * the call; the lookups are not a single atomic snapshot.
+     * <p>
+     * 批量查找: 一次性读取table, 先计算所有key的hash值, 再按桶的下标排序后依次查找，
+     * 对table的访问是顺序的(有利于CPU的预取), 而不是像逐个调用get那样随机跳跃.
+     * 遇到ForwardingNode等特殊结点时, 通过find方法到nextTable中查找, 结果与逐个get一致.
+     *
+     * @param keys the keys to look up
+     * @return a new map of the keys found to their values
+     * @throws NullPointerException if the collection or any key is null
+     */
+    public Map<K, V> getAll(Collection<?> keys) {
+        Object[] ks = keys.toArray();
+        int m = ks.length;
+        Map<K, V> result = new HashMap<K, V>(Math.max((int) (m / .75f) + 1, 16));
+        int[] hashes = new int[m];
+        for (int i = 0; i < m; ++i)
+            hashes[i] = spread(ks[i].hashCode());   // key为null时抛出NullPointerException
+        Node<K, V>[] tab;
+        int n;
+        if ((tab = table) == null || (n = tab.length) == 0)
+            return result;
+
+        // 高32位是桶的下标, 低32位是key在ks中的下标
+        long[] order = new long[m];
+        for (int i = 0; i < m; ++i)
+            order[i] = ((long) ((n - 1) & hashes[i]) << 32) | i;
+        Arrays.sort(order);
+        for (long o : order) {
+            int i = (int) o;
+            V v = findVal(tab, n, hashes[i], ks[i]);
+            if (v != null) {
+                @SuppressWarnings("unchecked") K k = (K) ks[i];
+                result.put(k, v);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 在给定的table中查找, 与get相同, 但不再重新读取table和计算hash值
+     */
+    static <K, V> V findVal(Node<K, V>[] tab, int n, int h, Object key) {
+        Node<K, V> e, p;
+        int eh;
+        K ek;
+        if ((e = tabAt(tab, (n - 1) & h)) != null) {
+            if ((eh = e.hash) == h) {
+                if ((ek = e.key) == key || (ek != null && key.equals(ek)))
+                    return e.val;
+            } else if (eh < 0)
+                return (p = e.find(h, key)) != null ? p.val : null;
+            while ((e = e.next) != null) {
+                if (e.hash == h &&
+                        ((ek = e.key) == key || (ek != null && key.equals(ek))))
+                    return e.val;
+            }
+        }
+        return null;
+    }
+
     /**
      * Tests if the specified object is a key in this table.
      *
@@ -1165,13 +1231,127 @@ public class ConcurrentHashMap<K, V> extends AbstractMap<K, V>
      * Copies all of the mappings from the specified map to this one.
      * These mappings replace any mappings that this map had for any of the
      * keys currently in the specified map.
+     * <p>
+     * 多于一个映射时按批量插入处理(见putBatch): 只扩容一次, 按桶的顺序插入, 计数值最后一次性更新.
      *
      * @param m mappings to be stored in this map
      */
     public void putAll(Map<? extends K, ? extends V> m) {
-        tryPresize(m.size());
-        for (Entry<? extends K, ? extends V> e : m.entrySet())
-            putVal(e.getKey(), e.getValue(), false);
+        int size = m.size();
+        if (size <= 1) {
+            tryPresize(size);
+            for (Entry<? extends K, ? extends V> e : m.entrySet())
+                putVal(e.getKey(), e.getValue(), false);
+            return;
+        }
+        Object[] ks = new Object[size], vs = new Object[size];
+        int c = 0;
+        for (Entry<? extends K, ? extends V> e : m.entrySet()) {
+            if (c == ks.length) {   // m在遍历期间变大了
+                ks = Arrays.copyOf(ks, c + (c >>> 1) + 1);
+                vs = Arrays.copyOf(vs, ks.length);
+            }
+            ks[c] = e.getKey();
+            vs[c] = e.getValue();
+            ++c;
+        }
+        putBatch(ks, vs, c);
+    }
+
+    /**
+     * 批量插入:
+     * 1.先按 现有结点数+本批结点数 调用一次tryPresize, 整批插入只扩容一次, 而不是在插入过程中多次触发扩容;
+     * 2.计算所有key的hash值, 按桶的下标排序后依次插入, 对table的访问是顺序的;
+     * 3.每次插入不更新计数值, 最后把本批新增的结点数一次性地累加(addCount), 并只做一次扩容检查.
+     * 批量插入期间size()可能暂时小于实际的结点数.
+     */
+    @SuppressWarnings("unchecked")
+    final void putBatch(Object[] ks, Object[] vs, int m) {
+        int[] hashes = new int[m];
+        for (int i = 0; i < m; ++i) {
+            if (ks[i] == null || vs[i] == null)     // 先检查, 不插入部分结点
+                throw new NullPointerException();
+            hashes[i] = spread(ks[i].hashCode());
+        }
+        tryPresize((int) Math.min(sumCount() + m, Integer.MAX_VALUE));
+        Node<K, V>[] tab = table;
+        int n = tab.length;
+        long[] order = new long[m];
+        for (int i = 0; i < m; ++i)
+            order[i] = ((long) ((n - 1) & hashes[i]) << 32) | i;
+        Arrays.sort(order);
+        long added = 0L;
+        int check = 2;
+        for (long o : order) {
+            int i = (int) o;
+            int binCount = putValUncounted(hashes[i], (K) ks[i], (V) vs[i]);
+            if (binCount >= 0) {
+                ++added;
+                if (binCount > check)
+                    check = binCount;
+            }
+        }
+        if (added != 0L)
+            addCount(added, check);
+    }
+
+    /**
+     * 与putVal(key, value, false)相同, 但不调用addCount, 由调用者合并计数.
+     *
+     * @return 新增了结点时返回binCount(>=0), 替换了旧值时返回-1
+     */
+    private int putValUncounted(int hash, K key, V value) {
+        int binCount = 0;
+        for (Node<K, V>[] tab = table; ; ) {
+            Node<K, V> f;
+            int n, i, fh;
+            if (tab == null || (n = tab.length) == 0)
+                tab = initTable();
+            else if ((f = tabAt(tab, i = (n - 1) & hash)) == null) {
+                if (casTabAt(tab, i, null, new Node<K, V>(hash, key, value, null)))
+                    return 0;
+            } else if ((fh = f.hash) == MOVED)
+                tab = helpTransfer(tab, f);
+            else {
+                V oldVal = null;
+                synchronized (f) {
+                    if (tabAt(tab, i) == f) {
+                        if (fh >= 0) {
+                            binCount = 1;
+                            for (Node<K, V> e = f; ; ++binCount) {
+                                K ek;
+                                if (e.hash == hash &&
+                                        ((ek = e.key) == key ||
+                                                (ek != null && key.equals(ek)))) {
+                                    oldVal = e.val;
+                                    e.val = value;
+                                    break;
+                                }
+                                Node<K, V> pred = e;
+                                if ((e = e.next) == null) {
+                                    pred.next = new Node<K, V>(hash, key,
+                                            value, null);
+                                    break;
+                                }
+                            }
+                        } else if (f instanceof TreeBin) {
+                            Node<K, V> p;
+                            binCount = 2;
+                            if ((p = ((TreeBin<K, V>) f).putTreeVal(hash, key,
+                                    value)) != null) {
+                                oldVal = p.val;
+                                p.val = value;
+                            }
+                        }
+                    }
+                }
+                if (binCount != 0) {
+                    if (binCount >= TREEIFY_THRESHOLD)
+                        treeifyBin(tab, i);
+                    return oldVal != null ? -1 : binCount;
+                }
+            }
+        }
     }
 
     /**
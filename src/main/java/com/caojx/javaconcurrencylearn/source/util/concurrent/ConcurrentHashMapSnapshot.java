@@ -0,0 +1,288 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+import com.caojx.javaconcurrencylearn.source.util.concurrent.OffHeapConcurrentHashMap.Serializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * ConcurrentHashMapSnapshot把ConcurrentHashMap的内容并行地写入内存映射文件（快照），重启时再从快照快速地加载回来。
+ * <p>
+ * 服务重启后从数据库重新预热一个大的ConcurrentHashMap往往需要几分钟。使用快照：
+ * 1.写快照：用ConcurrentHashMap.forEach(parallelismThreshold, ...)并行遍历，每个线程把映射序列化到自己的1MB块中，
+ *   块满时用一个原子计数器在文件中“认领”一段连续的区域，把这段区域映射到内存后拷贝进去，线程之间互不等待；
+ * 2.文件格式：[文件头][块1][块2]...[块索引]，每条记录是[int 键长度][int 值长度][键][值]，
+ *   块索引记录了每个块的位置、长度和记录数，文件头记录映射总数和块索引的位置；
+ *   快照先写入临时文件，完成后原子地重命名，所以崩溃时不会留下半个快照；
+ * 3.加载快照：根据文件头中的映射总数预先确定ConcurrentHashMap的table大小，加载过程中不会扩容；
+ *   各个块由多个线程并行地解码并插入，不同线程插入的是已经分配好的table中的不同的桶，几乎没有竞争。
+ * <p>
+ * Writes the contents of a {@link ConcurrentHashMap} to a memory-mapped
+ * snapshot file in parallel, and loads a snapshot back into a new map
+ * presized for its contents.
+ *
+ * <p>A snapshot reflects some state of the map during the traversal; as
+ * with {@link ConcurrentHashMap#forEach(long, java.util.function.BiConsumer)},
+ * concurrent updates may or may not be included.
+ *
+ * @author caojx created on 2026/10/19
+ * @see ConcurrentHashMap
+ */
+public final class ConcurrentHashMapSnapshot {
+
+    private ConcurrentHashMapSnapshot() {
+    }
+
+    /**
+     * 文件头: [int 魔数][int 版本][long 映射数][long 块索引位置][int 块数][int 保留]
+     */
+    static final int MAGIC = 0x43484d53; // "CHMS"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+
+    /**
+     * 块索引中每个块的描述: [long 位置][int 长度][int 记录数]
+     */
+    static final int INDEX_ENTRY_SIZE = 16;
+
+    /**
+     * 每个线程的写缓冲块大小
+     */
+    static final int CHUNK_SIZE = 1 << 20;
+
+    /**
+     * 并行遍历map, 把所有映射写入快照文件. 快照先写入同目录下的临时文件, 完成后替换file.
+     * <p>
+     * Writes a snapshot of the map to the file, replacing it atomically
+     * once complete.
+     *
+     * @param map                  the map
+     * @param file                 the snapshot file
+     * @param keySerializer        the key serializer
+     * @param valueSerializer      the value serializer
+     * @param parallelismThreshold the (estimated) number of elements needed
+     *                             for the traversal to be executed in parallel, as for
+     *                             {@link ConcurrentHashMap#forEach(long, java.util.function.BiConsumer)}
+     * @param <K>                  the type of keys
+     * @param <V>                  the type of values
+     * @return the number of mappings written
+     * @throws IOException if an I/O error occurs
+     */
+    public static <K, V> long write(ConcurrentHashMap<K, V> map, File file,
+                                    Serializer<K> keySerializer, Serializer<V> valueSerializer,
+                                    long parallelismThreshold) throws IOException {
+        if (map == null || file == null || keySerializer == null || valueSerializer == null)
+            throw new NullPointerException();
+        File tmp = new File(file.getPath() + ".tmp");
+        long count;
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+             FileChannel ch = raf.getChannel()) {
+            raf.setLength(0L);
+            Writer writer = new Writer(ch);
+            try {
+                map.forEach(parallelismThreshold, (k, v) ->
+                        writer.append(keySerializer.serialize(k), valueSerializer.serialize(v)));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            count = writer.finish();
+            ch.force(true);
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    /**
+     * 从快照文件加载一个新的ConcurrentHashMap. table按映射数预先分配, 各块并行解码插入.
+     * <p>
+     * Loads a snapshot into a new map presized for its contents,
+     * decoding the chunks of the file in parallel.
+     *
+     * @param file            the snapshot file
+     * @param keySerializer   the key serializer
+     * @param valueSerializer the value serializer
+     * @param <K>             the type of keys
+     * @param <V>             the type of values
+     * @return a new map holding the snapshot's mappings
+     * @throws IOException if an I/O error occurs or the file is not a
+     *                     valid snapshot
+     */
+    public static <K, V> ConcurrentHashMap<K, V> read(File file, Serializer<K> keySerializer,
+                                                      Serializer<V> valueSerializer) throws IOException {
+        if (file == null || keySerializer == null || valueSerializer == null)
+            throw new NullPointerException();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel ch = raf.getChannel()) {
+            if (ch.size() < HEADER_SIZE)
+                throw new IOException("Not a snapshot: " + file);
+            MappedByteBuffer header = ch.map(FileChannel.MapMode.READ_ONLY, 0L, HEADER_SIZE);
+            int magic = header.getInt(0), version = header.getInt(4);
+            long count = header.getLong(8);
+            long indexPosition = header.getLong(16);
+            int chunks = header.getInt(24);
+            unmap(header);
+            if (magic != MAGIC || version != VERSION || count < 0L || chunks < 0 ||
+                    indexPosition + (long) chunks * INDEX_ENTRY_SIZE > ch.size())
+                throw new IOException("Not a valid snapshot: " + file);
+            long[] positions = new long[chunks];
+            int[] lengths = new int[chunks];
+            if (chunks > 0) {
+                MappedByteBuffer index = ch.map(FileChannel.MapMode.READ_ONLY,
+                        indexPosition, (long) chunks * INDEX_ENTRY_SIZE);
+                for (int i = 0; i < chunks; i++) {
+                    positions[i] = index.getLong(i * INDEX_ENTRY_SIZE);
+                    lengths[i] = index.getInt(i * INDEX_ENTRY_SIZE + 8);
+                }
+                unmap(index);
+            }
+            // 按映射总数预先分配table, 加载时不会扩容
+            ConcurrentHashMap<K, V> map =
+                    new ConcurrentHashMap<K, V>((int) Math.min(count, Integer.MAX_VALUE));
+            IntStream range = IntStream.range(0, chunks);
+            if (chunks > 1)
+                range = range.parallel();
+            try {
+                range.forEach(i -> {
+                    try {
+                        loadChunk(ch, positions[i], lengths[i], map, keySerializer, valueSerializer);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return map;
+        }
+    }
+
+    private static <K, V> void loadChunk(FileChannel ch, long position, int length,
+                                         ConcurrentHashMap<K, V> map, Serializer<K> keySerializer,
+                                         Serializer<V> valueSerializer) throws IOException {
+        MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, position, length);
+        try {
+            while (b.hasRemaining()) {
+                byte[] k = new byte[b.getInt()];
+                byte[] v = new byte[b.getInt()];
+                b.get(k);
+                b.get(v);
+                map.put(keySerializer.deserialize(k), valueSerializer.deserialize(v));
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt snapshot chunk at " + position, e);
+        } finally {
+            unmap(b);
+        }
+    }
+
+    private static void unmap(MappedByteBuffer b) {
+        sun.misc.Cleaner cleaner = ((sun.nio.ch.DirectBuffer) b).cleaner();
+        if (cleaner != null)
+            cleaner.clean();
+    }
+
+    /**
+     * 并行写快照: 每个线程一个缓冲块, 块满时原子地认领文件中的一段区域并通过内存映射写入.
+     */
+    static final class Writer {
+        final FileChannel channel;
+
+        /**
+         * 下一个块在文件中的位置
+         */
+        final java.util.concurrent.atomic.AtomicLong position =
+                new java.util.concurrent.atomic.AtomicLong(HEADER_SIZE);
+
+        /**
+         * 每个线程的缓冲块
+         */
+        final ConcurrentHashMap<Thread, Chunk> chunks = new ConcurrentHashMap<Thread, Chunk>();
+
+        /**
+         * 已写入的块: {位置, 长度, 记录数}
+         */
+        final ConcurrentLinkedQueue<long[]> index = new ConcurrentLinkedQueue<long[]>();
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void append(byte[] key, byte[] value) {
+            Chunk c = chunks.computeIfAbsent(Thread.currentThread(), t -> new Chunk());
+            int need = 8 + key.length + value.length;
+            if (c.buffer.remaining() < need) {
+                flush(c);
+                if (c.buffer.capacity() < need)
+                    c.buffer = ByteBuffer.allocate(need);   // 超大的记录单独成块
+            }
+            c.buffer.putInt(key.length).putInt(value.length).put(key).put(value);
+            c.count++;
+        }
+
+        void flush(Chunk c) {
+            int length = c.buffer.position();
+            if (length == 0)
+                return;
+            long pos = position.getAndAdd(length);
+            try {
+                MappedByteBuffer mb = channel.map(FileChannel.MapMode.READ_WRITE, pos, length);
+                mb.put(c.buffer.array(), 0, length);
+                mb.force();
+                unmap(mb);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            index.add(new long[]{pos, length, c.count});
+            c.buffer.clear();
+            c.count = 0;
+        }
+
+        /**
+         * 遍历结束后: 写出所有线程剩余的块, 然后写块索引和文件头. 返回映射总数.
+         */
+        long finish() throws IOException {
+            try {
+                for (Chunk c : chunks.values())
+                    flush(c);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            List<long[]> list = new ArrayList<long[]>(index);
+            long indexPosition = position.get();
+            long count = 0L;
+            ByteBuffer b = ByteBuffer.allocate(list.size() * INDEX_ENTRY_SIZE);
+            for (long[] e : list) {
+                b.putLong(e[0]).putInt((int) e[1]).putInt((int) e[2]);
+                count += e[2];
+            }
+            if (b.capacity() > 0) {
+                MappedByteBuffer mb = channel.map(FileChannel.MapMode.READ_WRITE, indexPosition, b.capacity());
+                mb.put(b.array());
+                mb.force();
+                unmap(mb);
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0L, HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(count)
+                    .putLong(indexPosition).putInt(list.size()).putInt(0);
+            header.force();
+            unmap(header);
+            return count;
+        }
+    }
+
+    static final class Chunk {
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        int count;
+    }
+}
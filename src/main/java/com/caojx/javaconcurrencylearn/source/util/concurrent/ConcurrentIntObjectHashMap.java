@@ -0,0 +1,613 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+import com.caojx.javaconcurrencylearn.source.util.concurrent.locks.StampedLock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * ConcurrentIntObjectHashMap是键为int、值为对象的并发哈希表，采用开放寻址法，键不装箱。
+ * <p>
+ * 与{@link ConcurrentLongLongHashMap}的实现方式相同：
+ * 1.整个表分成若干段（Section），每段是一个独立的开放寻址哈希表，键保存在int[]中，值保存在平行的Object[]中；
+ * 2.每个段继承StampedLock：读操作先用乐观读无锁地查找，validate失败时才退化为读锁；
+ * 3.写操作只锁一个段，扩容也是按段各自进行的；
+ * 4.与ConcurrentHashMap一样不允许null值，值为null表示空槽，所以任何int值都可以作为键；
+ * 5.删除时使用线性探测的“向后移动”算法，不留下墓碑。
+ * <p>
+ * 与ConcurrentHashMap<Integer, V>相比，每个映射省去了一个Node对象和一个Integer对象（-128~127以外的键）。
+ * <p>
+ * A concurrent hash map from primitive {@code int} keys to object
+ * values, using open addressing with linear probing in a fixed number
+ * of independently locked sections.  Retrievals first run
+ * optimistically without locking and fall back to a read lock only if
+ * a write intervened; updates lock a single section, and each section
+ * grows on its own.
+ *
+ * <p>Like {@link ConcurrentHashMap}, this class does not allow
+ * {@code null} values.  Bulk operations such as {@link #forEach} and
+ * {@link #size} are weakly consistent across sections.
+ *
+ * @param <V> the type of mapped values
+ * @author caojx created on 2026/10/19
+ * @see ConcurrentLongObjectHashMap
+ */
+public class ConcurrentIntObjectHashMap<V> {
+
+    /**
+     * 默认的段数
+     */
+    static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /**
+     * 默认的预期映射数
+     */
+    static final int DEFAULT_EXPECTED_ITEMS = 256;
+
+    /**
+     * 每段的最小槽位数
+     */
+    static final int MIN_SECTION_CAPACITY = 16;
+
+    /**
+     * 每段的最大槽位数
+     */
+    static final int MAX_SECTION_CAPACITY = 1 << 30;
+
+    /**
+     * 段数组, 长度是2的幂次
+     */
+    private final Section<V>[] sections;
+
+    private final int sectionMask;
+
+    /**
+     * Represents an operation that accepts a key and its value.
+     *
+     * @param <V> the type of values
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(int key, V value);
+    }
+
+    /**
+     * Creates a new, empty map with the default expected size and
+     * concurrency level.
+     */
+    public ConcurrentIntObjectHashMap() {
+        this(DEFAULT_EXPECTED_ITEMS, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Creates a new, empty map sized for the given number of mappings.
+     *
+     * @param expectedItems the expected number of mappings
+     * @throws IllegalArgumentException if {@code expectedItems} is negative
+     */
+    public ConcurrentIntObjectHashMap(int expectedItems) {
+        this(expectedItems, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Creates a new, empty map.
+     *
+     * @param expectedItems    the expected number of mappings
+     * @param concurrencyLevel the number of independently locked
+     *                         sections, rounded up to a power of two
+     * @throws IllegalArgumentException if {@code expectedItems} is negative
+     *                                  or {@code concurrencyLevel} is not positive
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentIntObjectHashMap(int expectedItems, int concurrencyLevel) {
+        if (expectedItems < 0 || concurrencyLevel <= 0)
+            throw new IllegalArgumentException();
+        int n = 1;
+        while (n < concurrencyLevel && n < (1 << 16))
+            n <<= 1;
+        this.sections = (Section<V>[]) new Section<?>[n];
+        this.sectionMask = n - 1;
+        // 按装载因子2/3计算每段的初始槽位数
+        long perSection = ((long) expectedItems * 3 / 2 + n - 1) / n;
+        int cap = MIN_SECTION_CAPACITY;
+        while (cap < perSection && cap < MAX_SECTION_CAPACITY)
+            cap <<= 1;
+        for (int i = 0; i < n; i++)
+            sections[i] = new Section<V>(cap);
+    }
+
+    /**
+     * 对键做二次散列（MurmurHash3的fmix64）, 高32位选段, 低位选槽. int键先扩展为long.
+     */
+    static long mix(int key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private Section<V> sectionFor(long h) {
+        return sections[(int) (h >>> 32) & sectionMask];
+    }
+
+    /**
+     * Returns the number of mappings, summed over sections without
+     * locking.
+     *
+     * @return the number of mappings
+     */
+    public int size() {
+        long n = 0L;
+        for (Section<V> s : sections)
+            n += s.size;
+        return (n > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) n;
+    }
+
+    /**
+     * Returns {@code true} if this map contains no mappings.
+     *
+     * @return {@code true} if this map contains no mappings
+     */
+    public boolean isEmpty() {
+        for (Section<V> s : sections)
+            if (s.size != 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * Returns the value to which the key is mapped, or {@code null} if
+     * there is no mapping.
+     *
+     * @param key the key
+     * @return the value, or {@code null}
+     */
+    public V get(int key) {
+        long h = mix(key);
+        return sectionFor(h).get(key, (int) h);
+    }
+
+    /**
+     * Returns the value to which the key is mapped, or
+     * {@code defaultValue} if there is no mapping.
+     *
+     * @param key          the key
+     * @param defaultValue the value to return if there is no mapping
+     * @return the value, or {@code defaultValue}
+     */
+    public V getOrDefault(int key, V defaultValue) {
+        V v = get(key);
+        return (v == null) ? defaultValue : v;
+    }
+
+    /**
+     * Tests whether the key is mapped.
+     *
+     * @param key the key
+     * @return {@code true} if the key is mapped
+     */
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Maps the key to the value.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the previous value, or {@code null} if there was none
+     * @throws NullPointerException if the value is null
+     */
+    public V put(int key, V value) {
+        if (value == null)
+            throw new NullPointerException();
+        long h = mix(key);
+        return sectionFor(h).put(key, (int) h, value, false);
+    }
+
+    /**
+     * Maps the key to the value unless it is already mapped.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the current value, or {@code null} if the value was inserted
+     * @throws NullPointerException if the value is null
+     */
+    public V putIfAbsent(int key, V value) {
+        if (value == null)
+            throw new NullPointerException();
+        long h = mix(key);
+        return sectionFor(h).put(key, (int) h, value, true);
+    }
+
+    /**
+     * 不存在时用mappingFunction计算值并插入. 已存在时只有一次乐观读, 不加锁.
+     * <p>
+     * Returns the value of the key, computing and inserting it with the
+     * given function if absent.  As with
+     * {@link ConcurrentHashMap#computeIfAbsent}, the function runs while
+     * holding the lock of the key's section, so it must be short and
+     * must not access this map.
+     *
+     * @param key             the key
+     * @param mappingFunction the function computing a value
+     * @return the current or computed value, or {@code null} if the
+     * function returned {@code null}
+     */
+    public V computeIfAbsent(int key, IntFunction<? extends V> mappingFunction) {
+        if (mappingFunction == null)
+            throw new NullPointerException();
+        long h = mix(key);
+        Section<V> s = sectionFor(h);
+        V v = s.get(key, (int) h);
+        return (v != null) ? v : s.computeIfAbsent(key, (int) h, mappingFunction);
+    }
+
+    /**
+     * Replaces the value of the key only if currently mapped to
+     * {@code expect}, compared by identity or {@code equals}.
+     *
+     * @param key    the key
+     * @param expect the expected value
+     * @param update the new value
+     * @return {@code true} if the value was replaced
+     * @throws NullPointerException if any value is null
+     */
+    public boolean replace(int key, V expect, V update) {
+        if (expect == null || update == null)
+            throw new NullPointerException();
+        long h = mix(key);
+        return sectionFor(h).replace(key, (int) h, expect, update);
+    }
+
+    /**
+     * Removes the mapping of the key.
+     *
+     * @param key the key
+     * @return the previous value, or {@code null} if there was none
+     */
+    public V remove(int key) {
+        long h = mix(key);
+        return sectionFor(h).remove(key, (int) h, null);
+    }
+
+    /**
+     * Removes the mapping of the key only if currently mapped to the
+     * value.
+     *
+     * @param key   the key
+     * @param value the expected value
+     * @return {@code true} if the mapping was removed
+     */
+    public boolean remove(int key, Object value) {
+        if (value == null)
+            return false;
+        long h = mix(key);
+        return sectionFor(h).remove(key, (int) h, value) != null;
+    }
+
+    /**
+     * Removes all mappings.  Sections are cleared one at a time.
+     */
+    public void clear() {
+        for (Section<V> s : sections)
+            s.clear();
+    }
+
+    /**
+     * 遍历所有映射. 每段在读锁下拷贝后再回调, 回调中可以修改本map.
+     * <p>
+     * Performs the action for each mapping.  Each section is copied
+     * under its read lock and the action runs on the copy, so the action
+     * may update this map; mappings added or removed concurrently may or
+     * may not be reported.
+     *
+     * @param action the action
+     */
+    public void forEach(EntryConsumer<? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        for (Section<V> s : sections)
+            s.forEach(action);
+    }
+
+    /**
+     * Returns the keys of all mappings.
+     *
+     * @return a new array holding the keys
+     */
+    public int[] keys() {
+        int[][] a = {new int[Math.max(size(), 16)]};
+        int[] n = {0};
+        forEach((k, v) -> {
+            if (n[0] == a[0].length)
+                a[0] = Arrays.copyOf(a[0], n[0] << 1);
+            a[0][n[0]++] = k;
+        });
+        return Arrays.copyOf(a[0], n[0]);
+    }
+
+    /**
+     * Returns the values of all mappings.
+     *
+     * @return a new list holding the values
+     */
+    public List<V> values() {
+        List<V> list = new ArrayList<V>(size());
+        forEach((k, v) -> list.add(v));
+        return list;
+    }
+
+    /**
+     * Returns a string representation of this map.
+     *
+     * @return a string representation of this map
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder().append('{');
+        forEach((k, v) -> {
+            if (sb.length() > 1)
+                sb.append(", ");
+            sb.append(k).append('=').append(v == this ? "(this Map)" : v);
+        });
+        return sb.append('}').toString();
+    }
+
+    /**
+     * 段: 一个独立的开放寻址哈希表, 读用乐观读, 写用写锁.
+     */
+    @SuppressWarnings("serial")
+    static final class Section<V> extends StampedLock {
+
+        /**
+         * 键数组
+         */
+        int[] keys;
+
+        /**
+         * 值数组, 与keys一一对应, null表示空槽
+         */
+        Object[] values;
+
+        /**
+         * 扩容阈值
+         */
+        int threshold;
+
+        /**
+         * 映射数, volatile以便size()无锁读取
+         */
+        volatile int size;
+
+        Section(int capacity) {
+            keys = new int[capacity];
+            values = new Object[capacity];
+            threshold = thresholdFor(capacity);
+        }
+
+        static int thresholdFor(int capacity) {
+            return (int) ((long) capacity * 2 / 3);
+        }
+
+        /**
+         * 在给定的数组中查找key对应的值. 乐观读时两个数组可能来自不同的版本,
+         * 长度不一致时返回null, 由validate失败后在读锁下重新查找.
+         */
+        static Object find(int[] ks, Object[] vs, int key, int h) {
+            if (ks.length != vs.length)
+                return null;
+            int m = ks.length - 1;
+            int i = h & m;
+            for (int n = 0; n <= m; n++) {
+                Object v = vs[i];
+                if (v == null)
+                    return null;
+                if (ks[i] == key)
+                    return v;
+                i = (i + 1) & m;
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(int key, int h) {
+            long stamp = tryOptimisticRead();
+            Object v = find(keys, values, key, h);
+            if (!validate(stamp)) {
+                // 乐观读期间有写操作, 退化为读锁重新查找
+                stamp = readLock();
+                try {
+                    v = find(keys, values, key, h);
+                } finally {
+                    unlockRead(stamp);
+                }
+            }
+            return (V) v;
+        }
+
+        /**
+         * 查找key所在的槽, 找不到时返回-(插入位置 + 1). 调用者持有锁.
+         */
+        private int slotOf(int key, int h) {
+            int[] ks = keys;
+            Object[] vs = values;
+            int m = ks.length - 1;
+            for (int i = h & m; ; i = (i + 1) & m) {
+                if (vs[i] == null)
+                    return -(i + 1);
+                if (ks[i] == key)
+                    return i;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        V put(int key, int h, V value, boolean onlyIfAbsent) {
+            long stamp = writeLock();
+            try {
+                int i = slotOf(key, h);
+                if (i >= 0) {
+                    V prev = (V) values[i];
+                    if (!onlyIfAbsent)
+                        values[i] = value;
+                    return prev;
+                }
+                insertAt(-(i + 1), key, value);
+                return null;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        V computeIfAbsent(int key, int h, IntFunction<? extends V> mappingFunction) {
+            long stamp = writeLock();
+            try {
+                int i = slotOf(key, h);
+                if (i >= 0)
+                    return (V) values[i];
+                V value = mappingFunction.apply(key);
+                if (value != null)
+                    insertAt(-(i + 1), key, value);
+                return value;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        boolean replace(int key, int h, V expect, V update) {
+            long stamp = writeLock();
+            try {
+                int i = slotOf(key, h);
+                Object v;
+                if (i < 0 || ((v = values[i]) != expect && !expect.equals(v)))
+                    return false;
+                values[i] = update;
+                return true;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * 在空槽i插入, 超过阈值时本段扩容. 调用者持有写锁.
+         */
+        private void insertAt(int i, int key, V value) {
+            keys[i] = key;
+            values[i] = value;
+            if ((size = size + 1) >= threshold)
+                rehash();
+        }
+
+        /**
+         * 删除key的映射; expect不为null时只有值相等才删除.
+         */
+        @SuppressWarnings("unchecked")
+        V remove(int key, int h, Object expect) {
+            long stamp = writeLock();
+            try {
+                int i = slotOf(key, h);
+                if (i < 0)
+                    return null;
+                V prev = (V) values[i];
+                if (expect != null && prev != expect && !expect.equals(prev))
+                    return null;
+                shiftKeys(i);
+                size = size - 1;
+                return prev;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * 线性探测的删除: 把后面探测链上的键向前移动填补空位, 不留墓碑.
+         */
+        private void shiftKeys(int pos) {
+            int[] ks = keys;
+            Object[] vs = values;
+            int m = ks.length - 1;
+            for (; ; ) {
+                int last = pos;
+                Object v;
+                for (; ; ) {
+                    pos = (pos + 1) & m;
+                    if ((v = vs[pos]) == null) {
+                        vs[last] = null;
+                        ks[last] = 0;
+                        return;
+                    }
+                    int slot = (int) mix(ks[pos]) & m;
+                    // slot不在(last, pos]之间时, 该键可以移动到last
+                    if (last <= pos ? (last >= slot || slot > pos) : (last >= slot && slot > pos))
+                        break;
+                }
+                ks[last] = ks[pos];
+                vs[last] = v;
+            }
+        }
+
+        /**
+         * 容量翻倍并重新插入本段的所有映射. 调用者持有写锁.
+         */
+        private void rehash() {
+            int[] oldKs = keys;
+            Object[] oldVs = values;
+            int oldCap = oldKs.length;
+            if (oldCap >= MAX_SECTION_CAPACITY)
+                throw new IllegalStateException("Section capacity exceeded");
+            int cap = oldCap << 1, m = cap - 1;
+            int[] ks = new int[cap];
+            Object[] vs = new Object[cap];
+            for (int j = 0; j < oldCap; j++) {
+                Object v = oldVs[j];
+                if (v != null) {
+                    int k = oldKs[j];
+                    int i = (int) mix(k) & m;
+                    while (vs[i] != null)
+                        i = (i + 1) & m;
+                    ks[i] = k;
+                    vs[i] = v;
+                }
+            }
+            keys = ks;
+            values = vs;
+            threshold = thresholdFor(cap);
+        }
+
+        void clear() {
+            long stamp = writeLock();
+            try {
+                Arrays.fill(keys, 0);
+                Arrays.fill(values, null);
+                size = 0;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void forEach(EntryConsumer<? super V> action) {
+            int[] ks;
+            Object[] vs;
+            long stamp = readLock();
+            try {
+                if (size == 0)
+                    return;
+                ks = keys.clone();
+                vs = values.clone();
+            } finally {
+                unlockRead(stamp);
+            }
+            for (int i = 0; i < vs.length; i++) {
+                Object v = vs[i];
+                if (v != null)
+                    action.accept(ks[i], (V) v);
+            }
+        }
+    }
+}
@@ -35,6 +35,8 @@
 
 package com.caojx.javaconcurrencylearn.source.util.concurrent;
 
+import com.caojx.javaconcurrencylearn.source.util.concurrent.atomic.LongAdder;
+
 import java.util.*;
 import java.util.function.Consumer;
 
@@ -52,6 +54,9 @@ import java.util.function.Consumer;
  * 关于ConcurrentLinkedDeque还有以下需要注意的几点：
  * 1、ConcurrentLinkedDeque的迭代器是弱一致性的，这在并发容器中是比较普遍的现象，主要是指在一个线程在遍历队列结点而另一个线程尝试对某个队列结点进行修改的话不会抛出ConcurrentModificationException，这也就造成在遍历某个尚未被修改的结点时，在next方法返回时可以看到该结点的修改，但在遍历后再对该结点修改时就看不到这种变化。
  * 2、size方法需要遍历链表，所以在并发情况下，其结果不一定是准确的，只能供参考。
+ * 如果需要频繁调用size（例如监控每秒采集一次），可以用ConcurrentLinkedDeque(true)构造，
+ * 这时队列内部会维护一个LongAdder计数器，size方法直接返回计数器的值，时间复杂度O(1)，但结果仍然只是一个近似值。
+ * 3、addAllFirst/addAllLast先把集合中的元素在私有的结点链上链接好，再用一次CAS把整条链拼接到队首/队尾。
  * <p>
  * An unbounded concurrent {@linkplain Deque deque} based on linked nodes.
  * Concurrent insertion, removal, and access operations execute safely
@@ -65,7 +70,9 @@ import java.util.function.Consumer;
  * <a href="package-summary.html#Weakly"><i>weakly consistent</i></a>.
  *
  * <p>Beware that, unlike in most collections, the {@code size} method
- * is <em>NOT</em> a constant-time operation. Because of the
+ * is <em>NOT</em> a constant-time operation, unless the deque was
+ * created with an element counter (see
+ * {@link #ConcurrentLinkedDeque(boolean)}). Because of the
  * asynchronous nature of these deques, determining the current number
  * of elements requires a traversal of the elements, and so may report
  * inaccurate results if this collection is modified during traversal.
@@ -285,6 +292,21 @@ public class ConcurrentLinkedDeque<E>
      */
     private transient volatile Node<E> tail;
 
+    /**
+     * 是否维护元素计数器
+     */
+    private final boolean counted;
+
+    /**
+     * 元素计数器, 仅在counted为true时非null.
+     * 插入成功（CAS链接结点）后加1, 删除成功（CAS将item置为null）后减1, 所以计数器的值只是近似值, 可能短暂地为负.
+     * <p>
+     * Striped count of elements, or null if not counted.  Incremented
+     * after the linking CAS and decremented after the item CAS, so
+     * the sum may transiently lag or even be negative.
+     */
+    private transient LongAdder counter;
+
     private static final Node<Object> PREV_TERMINATOR, NEXT_TERMINATOR;
 
     @SuppressWarnings("unchecked")
@@ -390,6 +412,7 @@ public class ConcurrentLinkedDeque<E>
                         // and for newNode to become "live".
                         if (p != h) // hop two nodes at a time  //  一次跳两个节点
                             casHead(h, newNode);  // Failure is OK.
+                        added(1);
                         return;
                     }
                     // Lost CAS race to another thread; re-read prev
@@ -423,6 +446,7 @@ public class ConcurrentLinkedDeque<E>
                         // and for newNode to become "live".
                         if (p != t) // hop two nodes at a time
                             casTail(t, newNode);  // Failure is OK.
+                        added(1);
                         return;
                     }
                     // Lost CAS race to another thread; re-read next
@@ -430,6 +454,24 @@ public class ConcurrentLinkedDeque<E>
             }
     }
 
+    /**
+     * 元素插入成功后更新计数器.
+     */
+    private void added(long n) {
+        final LongAdder c = counter;
+        if (c != null)
+            c.add(n);
+    }
+
+    /**
+     * 元素删除成功后更新计数器.
+     */
+    private void removed() {
+        final LongAdder c = counter;
+        if (c != null)
+            c.decrement();
+    }
+
     private static final int HOPS = 2;
 
     /**
@@ -847,6 +889,23 @@ public class ConcurrentLinkedDeque<E>
      * Constructs an empty deque.
      */
     public ConcurrentLinkedDeque() {
+        this(false);
+    }
+
+    /**
+     * 指定是否维护元素计数器的构造器.
+     * <p>
+     * Constructs an empty deque, optionally maintaining a striped
+     * element counter.  With a counter, {@link #size} is a constant-time
+     * estimate at the cost of one {@link LongAdder} update per
+     * insertion and removal.
+     *
+     * @param countElements {@code true} to maintain an element counter
+     */
+    public ConcurrentLinkedDeque(boolean countElements) {
+        counted = countElements;
+        if (countElements)
+            counter = new LongAdder();
         head = tail = new Node<E>(null);
     }
 
@@ -862,6 +921,7 @@ public class ConcurrentLinkedDeque<E>
      *                              of its elements are null
      */
     public ConcurrentLinkedDeque(Collection<? extends E> c) {
+        counted = false;
         // Copy c into a private chain of Nodes
         Node<E> h = null, t = null;
         for (E e : c) {
@@ -1012,6 +1072,7 @@ public class ConcurrentLinkedDeque<E>
         for (Node<E> p = first(); p != null; p = succ(p)) {
             E item = p.item;
             if (item != null && p.casItem(item, null)) {
+                removed();
                 unlink(p);
                 return item;
             }
@@ -1033,6 +1094,7 @@ public class ConcurrentLinkedDeque<E>
         for (Node<E> p = last(); p != null; p = pred(p)) {
             E item = p.item;
             if (item != null && p.casItem(item, null)) {
+                removed();
                 unlink(p);
                 return item;
             }
@@ -1157,6 +1219,7 @@ public class ConcurrentLinkedDeque<E>
         for (Node<E> p = first(); p != null; p = succ(p)) {
             E item = p.item;
             if (item != null && o.equals(item) && p.casItem(item, null)) {
+                removed();
                 unlink(p);
                 return true;
             }
@@ -1178,6 +1241,7 @@ public class ConcurrentLinkedDeque<E>
         for (Node<E> p = last(); p != null; p = pred(p)) {
             E item = p.item;
             if (item != null && o.equals(item) && p.casItem(item, null)) {
+                removed();
                 unlink(p);
                 return true;
             }
@@ -1231,9 +1295,21 @@ public class ConcurrentLinkedDeque<E>
      * will be inaccurate. Thus, this method is typically not very
      * useful in concurrent applications.
      *
+     * <p>If this deque maintains an element counter, this method
+     * instead returns the current value of the counter in constant
+     * time.  The value is an estimate that may differ from the
+     * actual number of elements while insertions and removals are in
+     * progress.
+     *
      * @return the number of elements in this deque
      */
     public int size() {
+        final LongAdder c = counter;
+        if (c != null) {
+            long n = c.sum();
+            return (n <= 0L) ? 0 :
+                    (n >= Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) n;
+        }
         int count = 0;
         for (Node<E> p = first(); p != null; p = succ(p))
             if (p.item != null)
@@ -1271,12 +1347,104 @@ public class ConcurrentLinkedDeque<E>
      * @throws IllegalArgumentException if the collection is this deque
      */
     public boolean addAll(Collection<? extends E> c) {
+        return addAllLast(c);
+    }
+
+    /**
+     * 批量在队首插入: 先在私有的结点链上把所有元素链接好, 再用一次CAS把整条链拼接到队首.
+     * 插入后集合c的第一个元素就是队首元素, 即元素顺序与c的迭代顺序一致（与逐个调用addFirst的顺序相反）.
+     * <p>
+     * Inserts all of the elements in the specified collection at the
+     * front of this deque, in the order that they are returned by the
+     * collection's iterator, so that the first element of the
+     * collection becomes the first element of this deque.  The
+     * elements are linked into a private chain and spliced in with a
+     * single CAS, so concurrent observers see either none or all of
+     * them at the front.
+     *
+     * @param c the elements to be inserted into this deque
+     * @return {@code true} if this deque changed as a result of the call
+     * @throws NullPointerException     if the specified collection or any
+     *                                  of its elements are null
+     * @throws IllegalArgumentException if the collection is this deque
+     */
+    public boolean addAllFirst(Collection<? extends E> c) {
+        if (c == this)
+            throw new IllegalArgumentException();
+
+        // Copy c into a private chain of Nodes
+        Node<E> first = null, endOfTheBeginning = null;
+        long n = 0L;
+        for (E e : c) {
+            checkNotNull(e);
+            Node<E> newNode = new Node<E>(e);
+            if (first == null)
+                first = endOfTheBeginning = newNode;
+            else {
+                endOfTheBeginning.lazySetNext(newNode);
+                newNode.lazySetPrev(endOfTheBeginning);
+                endOfTheBeginning = newNode;
+            }
+            ++n;
+        }
+        if (first == null)
+            return false;
+
+        // Atomically prepend the chain at the head of this collection
+        restartFromHead:
+        for (; ; )
+            for (Node<E> h = head, p = h, q; ; ) {
+                if ((q = p.prev) != null &&
+                        (q = (p = q).prev) != null)
+                    // Check for head updates every other hop.
+                    // If p == q, we are sure to follow head instead.
+                    p = (h != (h = head)) ? h : q;
+                else if (p.next == p) // PREV_TERMINATOR
+                    continue restartFromHead;
+                else {
+                    // p is first node
+                    endOfTheBeginning.lazySetNext(p); // CAS piggyback
+                    if (p.casPrev(null, endOfTheBeginning)) {
+                        // Successful CAS is the linearization point
+                        // for all elements to be added to this deque.
+                        if (!casHead(h, first)) {
+                            // Try a little harder to update head,
+                            // since we may be adding many elements.
+                            h = head;
+                            if (first.prev == null)
+                                casHead(h, first);
+                        }
+                        added(n);
+                        return true;
+                    }
+                    // Lost CAS race to another thread; re-read prev
+                }
+            }
+    }
+
+    /**
+     * 批量在队尾插入: 先在私有的结点链上把所有元素链接好, 再用一次CAS把整条链拼接到队尾.
+     * <p>
+     * Appends all of the elements in the specified collection to the end of
+     * this deque, in the order that they are returned by the specified
+     * collection's iterator.  The elements are linked into a private
+     * chain and spliced in with a single CAS.  Equivalent to
+     * {@link #addAll}.
+     *
+     * @param c the elements to be inserted into this deque
+     * @return {@code true} if this deque changed as a result of the call
+     * @throws NullPointerException     if the specified collection or any
+     *                                  of its elements are null
+     * @throws IllegalArgumentException if the collection is this deque
+     */
+    public boolean addAllLast(Collection<? extends E> c) {
         if (c == this)
             // As historically specified in AbstractQueue#addAll
             throw new IllegalArgumentException();
 
         // Copy c into a private chain of Nodes
         Node<E> beginningOfTheEnd = null, last = null;
+        long n = 0L;
         for (E e : c) {
             checkNotNull(e);
             Node<E> newNode = new Node<E>(e);
@@ -1287,6 +1455,7 @@ public class ConcurrentLinkedDeque<E>
                 newNode.lazySetPrev(last);
                 last = newNode;
             }
+            ++n;
         }
         if (beginningOfTheEnd == null)
             return false;
@@ -1315,6 +1484,7 @@ public class ConcurrentLinkedDeque<E>
                             if (last.next == null)
                                 casTail(t, last);
                         }
+                        added(n);
                         return true;
                     }
                     // Lost CAS race to another thread; re-read next
@@ -1487,7 +1657,9 @@ public class ConcurrentLinkedDeque<E>
         public void remove() {
             Node<E> l = lastRet;
             if (l == null) throw new IllegalStateException();
-            l.item = null;
+            E item = l.item;
+            if (item != null && l.casItem(item, null))   // CAS保证计数器只减一次
+                removed();
             unlink(l);
             lastRet = null;
         }
@@ -1668,10 +1840,14 @@ public class ConcurrentLinkedDeque<E>
             throws java.io.IOException, ClassNotFoundException {
         s.defaultReadObject();
 
+        if (counted)
+            counter = new LongAdder();
+
         // Read in elements until trailing null sentinel found
         Node<E> h = null, t = null;
         Object item;
         while ((item = s.readObject()) != null) {
+            added(1);
             @SuppressWarnings("unchecked")
             Node<E> newNode = new Node<E>((E) item);
             if (h == null)
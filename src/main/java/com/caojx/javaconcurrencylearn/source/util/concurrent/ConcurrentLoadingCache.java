@@ -0,0 +1,468 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConcurrentLoadingCache是自动加载的缓存：同一个key的并发未命中只加载一次，加载在任何锁之外执行，并支持提前刷新。
+ * <p>
+ * 用ConcurrentHashMap.computeIfAbsent实现加载时，映射函数是在桶锁中执行的：
+ * 加载很慢时，同一个桶中其它不相关的key也会被阻塞；映射函数中再访问同一个map还可能死锁。
+ * ConcurrentLoadingCache的做法：
+ * 1.map中的值要么是已加载的值（Loaded），要么是正在进行的加载任务（LoadTask，一个FutureTask）；
+ * 2.未命中时先用putIfAbsent放入一个LoadTask，放入成功的线程负责执行加载，其它线程在同一个LoadTask上等待结果，
+ *   所以同一个key的并发未命中只会加载一次；putIfAbsent本身只短暂地持有桶锁，加载在桶锁之外执行；
+ * 3.加载完成后LoadTask.done()用replace(key, task, loaded)把结果放入map，加载失败则把任务删除，下次重新加载；
+ *   加载期间key被put或invalidate时，replace失败，加载结果不会覆盖新的值；
+ * 4.提前刷新（refreshAfterWrite）：值写入超过一定时间后，第一个读到它的线程在线程池中异步地重新加载，
+ *   重新加载完成之前所有读操作仍然立即返回旧值；
+ * 5.同一个线程在加载某个key时又读取这个key（递归加载）会抛出IllegalStateException，而不是永远等待。
+ * <p>
+ * A cache that loads missing values with a {@link Loader}.  Concurrent
+ * misses for the same key share a single load, which runs on the
+ * thread that first missed (or on the executor, for
+ * {@link #getAsync}) without holding any lock of the underlying
+ * {@link ConcurrentHashMap}.  Values may be refreshed ahead of time:
+ * once a value is older than the refresh interval, the next read
+ * triggers an asynchronous reload and keeps returning the old value
+ * until the reload completes.
+ *
+ * <p>This cache is unbounded; entries are removed only by
+ * {@link #invalidate}, by expiration, or when a reload returns
+ * {@code null}.  Null keys and values are not permitted.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ * @author caojx created on 2026/10/19
+ * @see BoundedConcurrentCache
+ */
+public class ConcurrentLoadingCache<K, V> {
+
+    /**
+     * 加载器.
+     * <p>
+     * Computes values for a {@link ConcurrentLoadingCache}.
+     *
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     */
+    @FunctionalInterface
+    public interface Loader<K, V> {
+
+        /**
+         * Computes the value of the key.
+         *
+         * @param key the key
+         * @return the value, or {@code null} if there is none
+         * @throws Exception if the value cannot be computed
+         */
+        V load(K key) throws Exception;
+
+        /**
+         * Computes a new value of a key that is already cached.  The
+         * default implementation calls {@link #load}.
+         *
+         * @param key      the key
+         * @param oldValue the currently cached value
+         * @return the new value, or {@code null} to remove the entry
+         * @throws Exception if the value cannot be computed; the old
+         *                   value is then kept
+         */
+        default V reload(K key, V oldValue) throws Exception {
+            return load(key);
+        }
+    }
+
+    /**
+     * key -> Loaded或LoadTask
+     */
+    final ConcurrentHashMap<K, Object> map = new ConcurrentHashMap<K, Object>();
+
+    final Loader<? super K, V> loader;
+
+    /**
+     * 提前刷新时间和过期时间（纳秒）, 0表示不刷新/不过期
+     */
+    final long refreshNanos;
+    final long expireNanos;
+
+    /**
+     * 执行异步加载和刷新的线程池
+     */
+    final Executor executor;
+
+    /**
+     * Creates a cache that never refreshes or expires values.
+     *
+     * @param loader the loader
+     * @throws NullPointerException if {@code loader} is null
+     */
+    public ConcurrentLoadingCache(Loader<? super K, V> loader) {
+        this(loader, 0L, 0L, TimeUnit.NANOSECONDS, BoundedConcurrentCache.DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * Creates a cache refreshing and expiring values at the given
+     * intervals, running reloads on the JDK common pool.
+     *
+     * @param loader            the loader
+     * @param refreshAfterWrite the age after which a read triggers an
+     *                          asynchronous reload, or 0 for none
+     * @param expireAfterWrite  the age after which a value is no longer
+     *                          returned and must be loaded again, or 0 for none
+     * @param unit              the unit of the intervals
+     * @throws IllegalArgumentException if an interval is negative
+     */
+    public ConcurrentLoadingCache(Loader<? super K, V> loader, long refreshAfterWrite,
+                                  long expireAfterWrite, TimeUnit unit) {
+        this(loader, refreshAfterWrite, expireAfterWrite, unit, BoundedConcurrentCache.DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * Creates a cache refreshing and expiring values at the given
+     * intervals, running reloads on the given executor.
+     *
+     * @param loader            the loader
+     * @param refreshAfterWrite the age after which a read triggers an
+     *                          asynchronous reload, or 0 for none
+     * @param expireAfterWrite  the age after which a value is no longer
+     *                          returned and must be loaded again, or 0 for none
+     * @param unit              the unit of the intervals
+     * @param executor          the executor running reloads and
+     *                          {@link #getAsync} loads
+     * @throws IllegalArgumentException if an interval is negative
+     * @throws NullPointerException     if any reference argument is null
+     */
+    public ConcurrentLoadingCache(Loader<? super K, V> loader, long refreshAfterWrite,
+                                  long expireAfterWrite, TimeUnit unit, Executor executor) {
+        if (loader == null || unit == null || executor == null)
+            throw new NullPointerException();
+        if (refreshAfterWrite < 0L || expireAfterWrite < 0L)
+            throw new IllegalArgumentException();
+        this.loader = loader;
+        this.refreshNanos = unit.toNanos(refreshAfterWrite);
+        this.expireNanos = unit.toNanos(expireAfterWrite);
+        this.executor = executor;
+    }
+
+    /**
+     * 已加载的值.
+     */
+    static final class Loaded<V> {
+        final V value;
+        final long writeTime;
+
+        /**
+         * 是否正在刷新, 保证同一个值只触发一次刷新
+         */
+        volatile int refreshing;
+
+        Loaded(V value, long writeTime) {
+            this.value = value;
+            this.writeTime = writeTime;
+        }
+
+        boolean startRefresh() {
+            return refreshing == 0 && U.compareAndSwapInt(this, REFRESHING, 0, 1);
+        }
+
+        private static final sun.misc.Unsafe U;
+        private static final long REFRESHING;
+
+        static {
+            try {
+                U = sun.misc.Unsafe.getUnsafe();
+                REFRESHING = U.objectFieldOffset(Loaded.class.getDeclaredField("refreshing"));
+            } catch (Exception e) {
+                throw new Error(e);
+            }
+        }
+    }
+
+    /**
+     * 正在进行的加载. 完成时把结果放入map（仅当map中仍然是这个任务时）, 失败或取消时把任务删除.
+     */
+    final class LoadTask extends FutureTask<V> {
+        final K key;
+
+        /**
+         * 执行加载的线程, 用于检测递归加载
+         */
+        volatile Thread runner;
+
+        LoadTask(K key) {
+            super(() -> loader.load(key));
+            this.key = key;
+        }
+
+        public void run() {
+            runner = Thread.currentThread();
+            try {
+                super.run();
+            } finally {
+                runner = null;
+            }
+        }
+
+        protected void done() {
+            V value = null;
+            if (!isCancelled()) {
+                try {
+                    value = get();
+                } catch (Exception ignore) {
+                    // 加载失败, 等待者会从get()中得到异常
+                }
+            }
+            if (value != null)
+                map.replace(key, this, new Loaded<V>(value, now()));
+            else
+                map.remove(key, this);
+        }
+    }
+
+    final long now() {
+        return (refreshNanos > 0L || expireNanos > 0L) ? System.nanoTime() : 0L;
+    }
+
+    final boolean isExpired(Loaded<V> e, long now) {
+        return expireNanos > 0L && now - e.writeTime >= expireNanos;
+    }
+
+    /**
+     * 返回key对应的值, 未命中时加载. 同一个key的并发未命中共享同一次加载,
+     * 第一个未命中的线程执行加载, 其它线程等待它的结果.
+     * <p>
+     * Returns the value of the key, loading it if necessary.  If
+     * another thread is loading the key, waits for that load instead of
+     * starting another one.  Waiting is uninterruptible; the interrupt
+     * status is restored on return.
+     *
+     * @param key the key
+     * @return the value, or {@code null} if the loader returned {@code null}
+     * @throws ExecutionException    if the loader threw an exception
+     * @throws IllegalStateException if called from within the load of
+     *                               the same key
+     * @throws NullPointerException  if the key is null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(K key) throws ExecutionException {
+        if (key == null)
+            throw new NullPointerException();
+        for (; ; ) {
+            Object e = map.get(key);
+            long now = now();
+            LoadTask task;
+            if (e instanceof Loaded) {
+                Loaded<V> loaded = (Loaded<V>) e;
+                if (!isExpired(loaded, now)) {
+                    refreshIfNeeded(key, loaded, now);
+                    return loaded.value;
+                }
+                // 已过期, 用加载任务替换
+                task = new LoadTask(key);
+                if (!map.replace(key, e, task))
+                    continue;
+                task.run();
+            } else if (e == null) {
+                task = new LoadTask(key);
+                if (map.putIfAbsent(key, task) != null)
+                    continue;
+                task.run();         // 在桶锁之外, 由当前线程加载
+            } else {
+                task = (LoadTask) e;
+                if (task.runner == Thread.currentThread())
+                    throw new IllegalStateException("Recursive load of key " + key);
+            }
+            try {
+                return getUninterruptibly(task);
+            } catch (CancellationException ex) {
+                // getAsync返回的Future被取消, 重新加载
+            }
+        }
+    }
+
+    /**
+     * 异步地返回key对应的值: 已加载时返回已完成的Future, 否则在线程池中加载,
+     * 同一个key的并发调用共享同一个Future.
+     * <p>
+     * Returns a future of the value of the key, loading it on the
+     * executor if necessary.  Concurrent callers for the same key share
+     * one load.  Cancelling the returned future abandons the load for
+     * all waiters.
+     *
+     * @param key the key
+     * @return a future of the value
+     * @throws NullPointerException if the key is null
+     */
+    @SuppressWarnings("unchecked")
+    public Future<V> getAsync(K key) {
+        if (key == null)
+            throw new NullPointerException();
+        for (; ; ) {
+            Object e = map.get(key);
+            long now = now();
+            if (e instanceof Loaded) {
+                Loaded<V> loaded = (Loaded<V>) e;
+                if (!isExpired(loaded, now)) {
+                    refreshIfNeeded(key, loaded, now);
+                    FutureTask<V> done = new FutureTask<V>(() -> loaded.value);
+                    done.run();
+                    return done;
+                }
+                LoadTask task = new LoadTask(key);
+                if (map.replace(key, e, task)) {
+                    submit(task);
+                    return task;
+                }
+            } else if (e == null) {
+                LoadTask task = new LoadTask(key);
+                if (map.putIfAbsent(key, task) == null) {
+                    submit(task);
+                    return task;
+                }
+            } else {
+                return (LoadTask) e;
+            }
+        }
+    }
+
+    private void submit(LoadTask task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            task.run();
+        }
+    }
+
+    /**
+     * 值的年龄超过刷新时间时, 由第一个读到它的线程在线程池中异步地重新加载, 期间继续返回旧值.
+     */
+    final void refreshIfNeeded(K key, Loaded<V> loaded, long now) {
+        if (refreshNanos > 0L && now - loaded.writeTime >= refreshNanos && loaded.startRefresh()) {
+            try {
+                executor.execute(() -> reload(key, loaded));
+            } catch (RejectedExecutionException ex) {
+                loaded.refreshing = 0;
+            }
+        }
+    }
+
+    final void reload(K key, Loaded<V> old) {
+        V value;
+        try {
+            value = loader.reload(key, old.value);
+        } catch (Throwable ex) {
+            // 刷新失败, 保留旧值, 允许下次读取时再次刷新
+            old.refreshing = 0;
+            return;
+        }
+        if (value != null)
+            map.replace(key, old, new Loaded<V>(value, now()));
+        else
+            map.remove(key, old);
+    }
+
+    static <V> V getUninterruptibly(Future<V> f) throws ExecutionException {
+        boolean interrupted = false;
+        try {
+            for (; ; ) {
+                try {
+                    return f.get();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 返回已加载且未过期的值, 不触发加载.
+     *
+     * @param key the key
+     * @return the value, or {@code null} if not loaded
+     */
+    @SuppressWarnings("unchecked")
+    public V getIfPresent(Object key) {
+        Object e = map.get(key);
+        if (e instanceof Loaded) {
+            Loaded<V> loaded = (Loaded<V>) e;
+            long now = now();
+            if (!isExpired(loaded, now)) {
+                refreshIfNeeded((K) key, loaded, now);
+                return loaded.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 直接放入一个值. 正在进行的加载完成后不会覆盖这个值.
+     *
+     * @param key   the key
+     * @param value the value
+     * @throws NullPointerException if the key or value is null
+     */
+    public void put(K key, V value) {
+        if (value == null)
+            throw new NullPointerException();
+        map.put(key, new Loaded<V>(value, now()));
+    }
+
+    /**
+     * 异步地重新加载key, 期间继续返回旧值; key未加载时异步加载.
+     *
+     * @param key the key
+     */
+    @SuppressWarnings("unchecked")
+    public void refresh(K key) {
+        Object e = map.get(key);
+        if (e instanceof Loaded) {
+            Loaded<V> loaded = (Loaded<V>) e;
+            if (loaded.startRefresh()) {
+                try {
+                    executor.execute(() -> reload(key, loaded));
+                } catch (RejectedExecutionException ex) {
+                    loaded.refreshing = 0;
+                }
+            }
+        } else if (e == null) {
+            getAsync(key);
+        }
+    }
+
+    /**
+     * 删除key. 正在进行的加载的结果不会被放入缓存, 但等待它的线程仍然会得到结果.
+     *
+     * @param key the key
+     */
+    public void invalidate(Object key) {
+        map.remove(key);
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void invalidateAll() {
+        map.clear();
+    }
+
+    /**
+     * Returns the number of entries, including loads in progress.
+     *
+     * @return the number of entries
+     */
+    public long size() {
+        return map.mappingCount();
+    }
+
+    /**
+     * Returns a string identifying this cache, as well as its size.
+     *
+     * @return a string identifying this cache, as well as its size
+     */
+    public String toString() {
+        return super.toString() + "[size = " + size() + "]";
+    }
+}
@@ -0,0 +1,653 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+import com.caojx.javaconcurrencylearn.source.util.concurrent.locks.StampedLock;
+
+import java.util.Arrays;
+
+/**
+ * ConcurrentLongLongHashMap是键和值都是long的并发哈希表，采用开放寻址法，不装箱。
+ * <p>
+ * ConcurrentHashMap<Long, Long>中每个映射都需要一个Node对象加上两个Long对象，每个映射的额外开销大约80字节，get时还要拆箱和比较equals。
+ * ConcurrentLongLongHashMap的实现方式：
+ * 1.整个表分成若干段（Section），每段是一个独立的开放寻址哈希表，键和值交替保存在同一个long[]中（key0, value0, key1, value1 ...），
+ *   查找时顺着线性探测序列访问相邻的内存，没有指针追踪；
+ * 2.每个段继承StampedLock：读操作先用乐观读（tryOptimisticRead）无锁地查找，validate失败时才退化为读锁，
+ *   所以在没有并发写的情况下读操作不加锁，与ConcurrentHashMap的get一样是无锁的；
+ * 3.写操作只锁一个段，扩容也是按段各自进行的（分段扩容），一个段扩容时不影响其它段的读写；
+ * 4.键0在数组中表示空槽，所以键0单独保存在段的zeroValue字段中，任何long值都可以作为键；
+ * 5.删除时使用线性探测的“向后移动”算法，不留下墓碑，表不会因为反复增删而退化。
+ * <p>
+ * 每个映射在装载因子2/3时平均占用约24字节，而且没有任何对象头。
+ * <p>
+ * A concurrent hash map from primitive {@code long} keys to primitive
+ * {@code long} values, using open addressing with linear probing in a
+ * fixed number of independently locked sections.  Retrievals first
+ * run optimistically without locking and fall back to a read lock only
+ * if a write intervened; updates lock a single section, and each
+ * section grows on its own.
+ *
+ * <p>Every {@code long} value is a valid key.  Methods that must report
+ * a missing mapping return the <em>no-entry value</em> given at
+ * construction, {@code 0} by default; use {@link #containsKey} where
+ * that is ambiguous.  Bulk operations such as {@link #forEach} and
+ * {@link #size} are weakly consistent across sections.
+ *
+ * @author caojx created on 2026/10/19
+ * @see ConcurrentHashMap
+ */
+public class ConcurrentLongLongHashMap {
+
+    /**
+     * 默认的段数
+     */
+    static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /**
+     * 默认的预期映射数
+     */
+    static final int DEFAULT_EXPECTED_ITEMS = 256;
+
+    /**
+     * 每段的最小槽位数
+     */
+    static final int MIN_SECTION_CAPACITY = 16;
+
+    /**
+     * 每段的最大槽位数, long[]长度是槽位数的两倍
+     */
+    static final int MAX_SECTION_CAPACITY = 1 << 29;
+
+    /**
+     * 段数组, 长度是2的幂次
+     */
+    private final Section[] sections;
+
+    private final int sectionMask;
+
+    /**
+     * 映射不存在时返回的值
+     */
+    private final long noEntryValue;
+
+    /**
+     * Represents an operation that accepts a key and its value.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, long value);
+    }
+
+    /**
+     * Creates a new, empty map with the default expected size and
+     * concurrency level, and a no-entry value of {@code 0}.
+     */
+    public ConcurrentLongLongHashMap() {
+        this(DEFAULT_EXPECTED_ITEMS, DEFAULT_CONCURRENCY_LEVEL, 0L);
+    }
+
+    /**
+     * Creates a new, empty map sized for the given number of mappings.
+     *
+     * @param expectedItems the expected number of mappings
+     * @throws IllegalArgumentException if {@code expectedItems} is negative
+     */
+    public ConcurrentLongLongHashMap(int expectedItems) {
+        this(expectedItems, DEFAULT_CONCURRENCY_LEVEL, 0L);
+    }
+
+    /**
+     * Creates a new, empty map.
+     *
+     * @param expectedItems    the expected number of mappings
+     * @param concurrencyLevel the number of independently locked
+     *                         sections, rounded up to a power of two
+     * @param noEntryValue     the value returned by methods that find no
+     *                         mapping
+     * @throws IllegalArgumentException if {@code expectedItems} is negative
+     *                                  or {@code concurrencyLevel} is not positive
+     */
+    public ConcurrentLongLongHashMap(int expectedItems, int concurrencyLevel, long noEntryValue) {
+        if (expectedItems < 0 || concurrencyLevel <= 0)
+            throw new IllegalArgumentException();
+        int n = 1;
+        while (n < concurrencyLevel && n < (1 << 16))
+            n <<= 1;
+        this.sections = new Section[n];
+        this.sectionMask = n - 1;
+        this.noEntryValue = noEntryValue;
+        // 按装载因子2/3计算每段的初始槽位数
+        long perSection = ((long) expectedItems * 3 / 2 + n - 1) / n;
+        int cap = MIN_SECTION_CAPACITY;
+        while (cap < perSection && cap < MAX_SECTION_CAPACITY)
+            cap <<= 1;
+        for (int i = 0; i < n; i++)
+            sections[i] = new Section(cap);
+    }
+
+    /**
+     * 对键做二次散列（MurmurHash3的fmix64）, 高32位选段, 低位选槽.
+     */
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private Section sectionFor(long h) {
+        return sections[(int) (h >>> 32) & sectionMask];
+    }
+
+    /**
+     * Returns the value returned by methods that find no mapping.
+     *
+     * @return the no-entry value
+     */
+    public long getNoEntryValue() {
+        return noEntryValue;
+    }
+
+    /**
+     * Returns the number of mappings, summed over sections without
+     * locking.
+     *
+     * @return the number of mappings
+     */
+    public int size() {
+        long n = 0L;
+        for (Section s : sections)
+            n += s.size;
+        return (n > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) n;
+    }
+
+    /**
+     * Returns {@code true} if this map contains no mappings.
+     *
+     * @return {@code true} if this map contains no mappings
+     */
+    public boolean isEmpty() {
+        for (Section s : sections)
+            if (s.size != 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * 返回key对应的值, 不存在时返回no-entry value.
+     *
+     * @param key the key
+     * @return the value, or the no-entry value if there is no mapping
+     */
+    public long get(long key) {
+        long h = mix(key);
+        return sectionFor(h).get(key, (int) h, noEntryValue);
+    }
+
+    /**
+     * Returns the value to which the key is mapped, or
+     * {@code defaultValue} if there is no mapping.
+     *
+     * @param key          the key
+     * @param defaultValue the value to return if there is no mapping
+     * @return the value, or {@code defaultValue}
+     */
+    public long getOrDefault(long key, long defaultValue) {
+        long h = mix(key);
+        return sectionFor(h).get(key, (int) h, defaultValue);
+    }
+
+    /**
+     * Tests whether the key is mapped.
+     *
+     * @param key the key
+     * @return {@code true} if the key is mapped
+     */
+    public boolean containsKey(long key) {
+        long h = mix(key);
+        return sectionFor(h).containsKey(key, (int) h);
+    }
+
+    /**
+     * Maps the key to the value.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the previous value, or the no-entry value if there was none
+     */
+    public long put(long key, long value) {
+        long h = mix(key);
+        return sectionFor(h).put(key, (int) h, value, false, noEntryValue);
+    }
+
+    /**
+     * Maps the key to the value unless it is already mapped.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the current value, or the no-entry value if the value was
+     * inserted
+     */
+    public long putIfAbsent(long key, long value) {
+        long h = mix(key);
+        return sectionFor(h).put(key, (int) h, value, true, noEntryValue);
+    }
+
+    /**
+     * 原子地给key对应的值加上delta, 不存在时视为0. 适合做计数器.
+     * <p>
+     * Atomically adds {@code delta} to the value of the key, treating a
+     * missing mapping as zero.
+     *
+     * @param key   the key
+     * @param delta the amount to add
+     * @return the updated value
+     */
+    public long addAndGet(long key, long delta) {
+        long h = mix(key);
+        return sectionFor(h).add(key, (int) h, delta);
+    }
+
+    /**
+     * Replaces the value of the key only if currently mapped to
+     * {@code expect}.
+     *
+     * @param key    the key
+     * @param expect the expected value
+     * @param update the new value
+     * @return {@code true} if the value was replaced
+     */
+    public boolean replace(long key, long expect, long update) {
+        long h = mix(key);
+        return sectionFor(h).replace(key, (int) h, expect, update);
+    }
+
+    /**
+     * Removes the mapping of the key.
+     *
+     * @param key the key
+     * @return the previous value, or the no-entry value if there was none
+     */
+    public long remove(long key) {
+        long h = mix(key);
+        return sectionFor(h).remove(key, (int) h, 0L, false, noEntryValue);
+    }
+
+    /**
+     * Removes the mapping of the key only if currently mapped to the
+     * value.
+     *
+     * @param key   the key
+     * @param value the expected value
+     * @return {@code true} if the mapping was removed
+     */
+    public boolean remove(long key, long value) {
+        long h = mix(key);
+        Section s = sectionFor(h);
+        // 用一个与value不同的值作为“未删除”的返回值
+        long absent = ~value;
+        return s.remove(key, (int) h, value, true, absent) != absent;
+    }
+
+    /**
+     * Removes all mappings.  Sections are cleared one at a time.
+     */
+    public void clear() {
+        for (Section s : sections)
+            s.clear();
+    }
+
+    /**
+     * 遍历所有映射. 每段在读锁下拷贝后再回调, 回调中可以修改本map.
+     * <p>
+     * Performs the action for each mapping.  Each section is copied
+     * under its read lock and the action runs on the copy, so the action
+     * may update this map; mappings added or removed concurrently may or
+     * may not be reported.
+     *
+     * @param action the action
+     */
+    public void forEach(EntryConsumer action) {
+        if (action == null)
+            throw new NullPointerException();
+        for (Section s : sections)
+            s.forEach(action);
+    }
+
+    /**
+     * Returns the keys of all mappings.
+     *
+     * @return a new array holding the keys
+     */
+    public long[] keys() {
+        long[][] a = {new long[Math.max(size(), 16)]};
+        int[] n = {0};
+        forEach((k, v) -> {
+            if (n[0] == a[0].length)
+                a[0] = Arrays.copyOf(a[0], n[0] << 1);
+            a[0][n[0]++] = k;
+        });
+        return Arrays.copyOf(a[0], n[0]);
+    }
+
+    /**
+     * Returns a string representation of this map.
+     *
+     * @return a string representation of this map
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder().append('{');
+        forEach((k, v) -> {
+            if (sb.length() > 1)
+                sb.append(", ");
+            sb.append(k).append('=').append(v);
+        });
+        return sb.append('}').toString();
+    }
+
+    /**
+     * 段: 一个独立的开放寻址哈希表, 读用乐观读, 写用写锁.
+     */
+    @SuppressWarnings("serial")
+    static final class Section extends StampedLock {
+
+        /**
+         * 键值交替保存: table[2i]为键, table[2i + 1]为值, 键0表示空槽
+         */
+        long[] table;
+
+        /**
+         * table中已占用的槽位数
+         */
+        int used;
+
+        /**
+         * 扩容阈值
+         */
+        int threshold;
+
+        /**
+         * 键0是否存在以及它的值
+         */
+        boolean hasZeroKey;
+        long zeroValue;
+
+        /**
+         * 映射数（含键0）, volatile以便size()无锁读取
+         */
+        volatile int size;
+
+        Section(int capacity) {
+            table = new long[capacity << 1];
+            threshold = thresholdFor(capacity);
+        }
+
+        static int thresholdFor(int capacity) {
+            return (int) ((long) capacity * 2 / 3);
+        }
+
+        /**
+         * 查找key所在的槽, 找不到返回-1. 最多探测一整圈, 乐观读时即使看到不一致的表也不会死循环.
+         */
+        static int indexOf(long[] t, long key, int h) {
+            int m = (t.length >>> 1) - 1;
+            int i = h & m;
+            for (int n = 0; n <= m; n++) {
+                long k = t[i << 1];
+                if (k == key)
+                    return i;
+                if (k == 0L)
+                    return -1;
+                i = (i + 1) & m;
+            }
+            return -1;
+        }
+
+        long get(long key, int h, long absent) {
+            long stamp = tryOptimisticRead();
+            boolean locked = false;
+            try {
+                for (; ; ) {
+                    long v = absent;
+                    if (key == 0L) {
+                        if (hasZeroKey)
+                            v = zeroValue;
+                    } else {
+                        long[] t = table;
+                        int i = indexOf(t, key, h);
+                        if (i >= 0)
+                            v = t[(i << 1) + 1];
+                    }
+                    if (locked || validate(stamp))
+                        return v;
+                    // 乐观读期间有写操作, 退化为读锁重新查找
+                    stamp = readLock();
+                    locked = true;
+                }
+            } finally {
+                if (locked)
+                    unlockRead(stamp);
+            }
+        }
+
+        boolean containsKey(long key, int h) {
+            long stamp = tryOptimisticRead();
+            boolean locked = false;
+            try {
+                for (; ; ) {
+                    boolean found = (key == 0L) ? hasZeroKey : indexOf(table, key, h) >= 0;
+                    if (locked || validate(stamp))
+                        return found;
+                    stamp = readLock();
+                    locked = true;
+                }
+            } finally {
+                if (locked)
+                    unlockRead(stamp);
+            }
+        }
+
+        long put(long key, int h, long value, boolean onlyIfAbsent, long absent) {
+            long stamp = writeLock();
+            try {
+                if (key == 0L) {
+                    if (hasZeroKey) {
+                        long prev = zeroValue;
+                        if (!onlyIfAbsent)
+                            zeroValue = value;
+                        return prev;
+                    }
+                    zeroValue = value;
+                    hasZeroKey = true;
+                    size = size + 1;
+                    return absent;
+                }
+                long[] t = table;
+                int m = (t.length >>> 1) - 1;
+                for (int i = h & m; ; i = (i + 1) & m) {
+                    long k = t[i << 1];
+                    if (k == key) {
+                        long prev = t[(i << 1) + 1];
+                        if (!onlyIfAbsent)
+                            t[(i << 1) + 1] = value;
+                        return prev;
+                    }
+                    if (k == 0L) {
+                        insertAt(t, i, key, value);
+                        return absent;
+                    }
+                }
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        long add(long key, int h, long delta) {
+            long stamp = writeLock();
+            try {
+                if (key == 0L) {
+                    if (!hasZeroKey) {
+                        hasZeroKey = true;
+                        zeroValue = 0L;
+                        size = size + 1;
+                    }
+                    return zeroValue += delta;
+                }
+                long[] t = table;
+                int m = (t.length >>> 1) - 1;
+                for (int i = h & m; ; i = (i + 1) & m) {
+                    long k = t[i << 1];
+                    if (k == key)
+                        return t[(i << 1) + 1] += delta;
+                    if (k == 0L) {
+                        insertAt(t, i, key, delta);
+                        return delta;
+                    }
+                }
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        boolean replace(long key, int h, long expect, long update) {
+            long stamp = writeLock();
+            try {
+                if (key == 0L) {
+                    if (!hasZeroKey || zeroValue != expect)
+                        return false;
+                    zeroValue = update;
+                    return true;
+                }
+                long[] t = table;
+                int i = indexOf(t, key, h);
+                if (i < 0 || t[(i << 1) + 1] != expect)
+                    return false;
+                t[(i << 1) + 1] = update;
+                return true;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * 在空槽i插入, 超过阈值时本段扩容. 调用者持有写锁.
+         */
+        private void insertAt(long[] t, int i, long key, long value) {
+            t[(i << 1) + 1] = value;
+            t[i << 1] = key;
+            size = size + 1;
+            if (++used >= threshold)
+                rehash();
+        }
+
+        long remove(long key, int h, long expect, boolean matchValue, long absent) {
+            long stamp = writeLock();
+            try {
+                if (key == 0L) {
+                    if (!hasZeroKey || (matchValue && zeroValue != expect))
+                        return absent;
+                    hasZeroKey = false;
+                    size = size - 1;
+                    return zeroValue;
+                }
+                long[] t = table;
+                int i = indexOf(t, key, h);
+                if (i < 0)
+                    return absent;
+                long prev = t[(i << 1) + 1];
+                if (matchValue && prev != expect)
+                    return absent;
+                shiftKeys(t, i);
+                --used;
+                size = size - 1;
+                return prev;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * 线性探测的删除: 把后面探测链上的键向前移动填补空位, 不留墓碑.
+         */
+        private static void shiftKeys(long[] t, int pos) {
+            int m = (t.length >>> 1) - 1;
+            for (; ; ) {
+                int last = pos;
+                long k;
+                for (; ; ) {
+                    pos = (pos + 1) & m;
+                    if ((k = t[pos << 1]) == 0L) {
+                        t[last << 1] = 0L;
+                        t[(last << 1) + 1] = 0L;
+                        return;
+                    }
+                    int slot = (int) mix(k) & m;
+                    // slot不在(last, pos]之间时, 键k可以移动到last
+                    if (last <= pos ? (last >= slot || slot > pos) : (last >= slot && slot > pos))
+                        break;
+                }
+                t[last << 1] = k;
+                t[(last << 1) + 1] = t[(pos << 1) + 1];
+            }
+        }
+
+        /**
+         * 容量翻倍并重新插入本段的所有键. 调用者持有写锁, 乐观读会因为写锁而validate失败.
+         */
+        private void rehash() {
+            long[] old = table;
+            int oldCap = old.length >>> 1;
+            if (oldCap >= MAX_SECTION_CAPACITY)
+                throw new IllegalStateException("Section capacity exceeded");
+            int cap = oldCap << 1, m = cap - 1;
+            long[] t = new long[cap << 1];
+            for (int j = 0; j < oldCap; j++) {
+                long k = old[j << 1];
+                if (k != 0L) {
+                    int i = (int) mix(k) & m;
+                    while (t[i << 1] != 0L)
+                        i = (i + 1) & m;
+                    t[i << 1] = k;
+                    t[(i << 1) + 1] = old[(j << 1) + 1];
+                }
+            }
+            table = t;
+            threshold = thresholdFor(cap);
+        }
+
+        void clear() {
+            long stamp = writeLock();
+            try {
+                Arrays.fill(table, 0L);
+                used = 0;
+                hasZeroKey = false;
+                size = 0;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        void forEach(EntryConsumer action) {
+            long[] t;
+            boolean zero;
+            long zv;
+            long stamp = readLock();
+            try {
+                if (size == 0)
+                    return;
+                t = table.clone();
+                zero = hasZeroKey;
+                zv = zeroValue;
+            } finally {
+                unlockRead(stamp);
+            }
+            if (zero)
+                action.accept(0L, zv);
+            for (int i = 0; i < t.length; i += 2) {
+                if (t[i] != 0L)
+                    action.accept(t[i], t[i + 1]);
+            }
+        }
+    }
+}
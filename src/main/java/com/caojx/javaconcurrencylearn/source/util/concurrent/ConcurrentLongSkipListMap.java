@@ -0,0 +1,1469 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.LongFunction;
+
+/**
+ * ConcurrentLongSkipListMap是key为基本类型long的ConcurrentSkipListMap，适合按时间戳索引事件这类场景。
+ * <p>
+ * ConcurrentSkipListMap<Long, V>的每个结点都引用一个Long对象，每次比较都要经过Long.compareTo并读取另一个对象：
+ * 1.Node中直接保存long类型的key，比较就是两个long的比较，少了一次指针跟随和一个Long对象的内存；
+ * 2.算法与ConcurrentSkipListMap完全相同：底层是有序的Node单链表，删除时先把value置为null，再追加标记结点（marker）后摘除，
+ *   上层是随机层级的Index索引；标记结点和底层头结点通过value字段区分（value为自身/BASE_HEADER），不再依赖key为null；
+ * 3.floor/ceiling/lower/higher和subMap都以long为参数；返回key的方法在没有结果时返回构造时指定的noEntryKey（默认为Long.MIN_VALUE），
+ *   返回Entry的方法在没有结果时返回null。
+ * <p>
+ * A scalable concurrent sorted map from primitive {@code long} keys to
+ * values, using the same lock-free skip list algorithm as
+ * {@link ConcurrentSkipListMap} but storing keys unboxed in the nodes.
+ *
+ * <p>Methods returning a key return the map's {@code noEntryKey}
+ * (by default {@link Long#MIN_VALUE}) when there is no such key;
+ * methods returning a {@link LongEntry} return {@code null}.  Null
+ * values are not permitted.  Iterators are weakly consistent and the
+ * {@code size} method is not a constant-time operation.
+ *
+ * @param <V> the type of mapped values
+ * @author caojx created on 2026/10/19
+ * @see ConcurrentSkipListMap
+ * @see ConcurrentLongSkipListSet
+ */
+public class ConcurrentLongSkipListMap<V> {
+
+    /**
+     * Special value used to identify base-level header
+     */
+    private static final Object BASE_HEADER = new Object();
+
+    /**
+     * 最上层链表的头指针head
+     */
+    private transient volatile HeadIndex<V> head;
+
+    /**
+     * 没有对应的key时返回的值
+     */
+    final long noEntryKey;
+
+    /**
+     * An immutable mapping from a {@code long} key to a value.
+     *
+     * @param <V> the type of the value
+     */
+    public static final class LongEntry<V> {
+        private final long key;
+        private final V value;
+
+        LongEntry(long key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public long getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof LongEntry))
+                return false;
+            LongEntry<?> e = (LongEntry<?>) o;
+            return key == e.key && value.equals(e.value);
+        }
+
+        public int hashCode() {
+            return Long.hashCode(key) ^ value.hashCode();
+        }
+
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    /**
+     * Represents an operation that accepts a key and its value.
+     *
+     * @param <V> the type of values
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    /**
+     * Creates a new, empty map whose key-returning methods return
+     * {@link Long#MIN_VALUE} when there is no such key.
+     */
+    public ConcurrentLongSkipListMap() {
+        this(Long.MIN_VALUE);
+    }
+
+    /**
+     * Creates a new, empty map.
+     *
+     * @param noEntryKey the value returned by key-returning methods such
+     *                   as {@link #floorKey} when there is no such key
+     */
+    public ConcurrentLongSkipListMap(long noEntryKey) {
+        this.noEntryKey = noEntryKey;
+        initialize();
+    }
+
+    private void initialize() {
+        head = new HeadIndex<V>(new Node<V>(0L, BASE_HEADER, null),
+                null, null, 1);
+    }
+
+    /**
+     * compareAndSet head node
+     */
+    private boolean casHead(HeadIndex<V> cmp, HeadIndex<V> val) {
+        return UNSAFE.compareAndSwapObject(this, headOffset, cmp, val);
+    }
+
+    /* ---------------- Nodes -------------- */
+
+    /**
+     * 最底层链表中的结点, key为long. 标记结点和头结点的key没有意义, 通过value区分.
+     */
+    static final class Node<V> {
+        final long key;
+        volatile Object value;
+        volatile Node<V> next;
+
+        Node(long key, Object value, Node<V> next) {
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+
+        /**
+         * 标记结点: value指向自身
+         */
+        Node(Node<V> next) {
+            this.key = 0L;
+            this.value = this;
+            this.next = next;
+        }
+
+        boolean casValue(Object cmp, Object val) {
+            return UNSAFE.compareAndSwapObject(this, valueOffset, cmp, val);
+        }
+
+        boolean casNext(Node<V> cmp, Node<V> val) {
+            return UNSAFE.compareAndSwapObject(this, nextOffset, cmp, val);
+        }
+
+        boolean isBaseHeader() {
+            return value == BASE_HEADER;
+        }
+
+        boolean appendMarker(Node<V> f) {
+            return casNext(f, new Node<V>(f));
+        }
+
+        void helpDelete(Node<V> b, Node<V> f) {
+            if (f == next && this == b.next) {
+                if (f == null || f.value != f) // not already marked
+                    casNext(f, new Node<V>(f));
+                else
+                    b.casNext(this, f.next);
+            }
+        }
+
+        V getValidValue() {
+            Object v = value;
+            if (v == this || v == BASE_HEADER)
+                return null;
+            @SuppressWarnings("unchecked") V vv = (V) v;
+            return vv;
+        }
+
+        LongEntry<V> createSnapshot() {
+            Object v = value;
+            if (v == null || v == this || v == BASE_HEADER)
+                return null;
+            @SuppressWarnings("unchecked") V vv = (V) v;
+            return new LongEntry<V>(key, vv);
+        }
+
+        private static final sun.misc.Unsafe UNSAFE;
+        private static final long valueOffset;
+        private static final long nextOffset;
+
+        static {
+            try {
+                UNSAFE = sun.misc.Unsafe.getUnsafe();
+                Class<?> k = Node.class;
+                valueOffset = UNSAFE.objectFieldOffset
+                        (k.getDeclaredField("value"));
+                nextOffset = UNSAFE.objectFieldOffset
+                        (k.getDeclaredField("next"));
+            } catch (Exception e) {
+                throw new Error(e);
+            }
+        }
+    }
+
+    /* ---------------- Indexing -------------- */
+
+    static class Index<V> {
+        final Node<V> node;
+        final Index<V> down;
+        volatile Index<V> right;
+
+        Index(Node<V> node, Index<V> down, Index<V> right) {
+            this.node = node;
+            this.down = down;
+            this.right = right;
+        }
+
+        final boolean casRight(Index<V> cmp, Index<V> val) {
+            return UNSAFE.compareAndSwapObject(this, rightOffset, cmp, val);
+        }
+
+        final boolean indexesDeletedNode() {
+            return node.value == null;
+        }
+
+        final boolean link(Index<V> succ, Index<V> newSucc) {
+            Node<V> n = node;
+            newSucc.right = succ;
+            return n.value != null && casRight(succ, newSucc);
+        }
+
+        final boolean unlink(Index<V> succ) {
+            return node.value != null && casRight(succ, succ.right);
+        }
+
+        private static final sun.misc.Unsafe UNSAFE;
+        private static final long rightOffset;
+
+        static {
+            try {
+                UNSAFE = sun.misc.Unsafe.getUnsafe();
+                Class<?> k = Index.class;
+                rightOffset = UNSAFE.objectFieldOffset
+                        (k.getDeclaredField("right"));
+            } catch (Exception e) {
+                throw new Error(e);
+            }
+        }
+    }
+
+    static final class HeadIndex<V> extends Index<V> {
+        final int level;
+
+        HeadIndex(Node<V> node, Index<V> down, Index<V> right, int level) {
+            super(node, down, right);
+            this.level = level;
+        }
+    }
+
+    /* ---------------- Traversal -------------- */
+
+    /**
+     * 返回“小于且最接近给定key”的结点(或底层链表头结点), 顺便删除已删除结点的索引.
+     */
+    private Node<V> findPredecessor(long key) {
+        for (; ; ) {
+            for (Index<V> q = head, r = q.right, d; ; ) {
+                if (r != null) {
+                    Node<V> n = r.node;
+                    long k = n.key;
+                    if (n.value == null) {
+                        if (!q.unlink(r))
+                            break;           // restart
+                        r = q.right;         // reread r
+                        continue;
+                    }
+                    if (key > k) {
+                        q = r;
+                        r = r.right;
+                        continue;
+                    }
+                }
+                if ((d = q.down) == null)
+                    return q.node;
+                q = d;
+                r = d.right;
+            }
+        }
+    }
+
+    private Node<V> findNode(long key) {
+        outer:
+        for (; ; ) {
+            for (Node<V> b = findPredecessor(key), n = b.next; ; ) {
+                Object v;
+                if (n == null)
+                    break outer;
+                Node<V> f = n.next;
+                if (n != b.next)                // inconsistent read
+                    break;
+                if ((v = n.value) == null) {    // n is deleted
+                    n.helpDelete(b, f);
+                    break;
+                }
+                if (b.value == null || v == n)  // b is deleted
+                    break;
+                long k = n.key;
+                if (key == k)
+                    return n;
+                if (key < k)
+                    break outer;
+                b = n;
+                n = f;
+            }
+        }
+        return null;
+    }
+
+    private V doGet(long key) {
+        outer:
+        for (; ; ) {
+            for (Node<V> b = findPredecessor(key), n = b.next; ; ) {
+                Object v;
+                if (n == null)
+                    break outer;
+                Node<V> f = n.next;
+                if (n != b.next)                // inconsistent read
+                    break;
+                if ((v = n.value) == null) {    // n is deleted
+                    n.helpDelete(b, f);
+                    break;
+                }
+                if (b.value == null || v == n)  // b is deleted
+                    break;
+                long k = n.key;
+                if (key == k) {
+                    @SuppressWarnings("unchecked") V vv = (V) v;
+                    return vv;
+                }
+                if (key < k)
+                    break outer;
+                b = n;
+                n = f;
+            }
+        }
+        return null;
+    }
+
+    /* ---------------- Insertion -------------- */
+
+    private V doPut(long key, V value, boolean onlyIfAbsent) {
+        Node<V> z;             // added node
+        if (value == null)
+            throw new NullPointerException();
+        outer:
+        for (; ; ) {
+            for (Node<V> b = findPredecessor(key), n = b.next; ; ) {
+                if (n != null) {
+                    Object v;
+                    Node<V> f = n.next;
+                    if (n != b.next)               // inconsistent read
+                        break;
+                    if ((v = n.value) == null) {   // n is deleted
+                        n.helpDelete(b, f);
+                        break;
+                    }
+                    if (b.value == null || v == n) // b is deleted
+                        break;
+                    long k = n.key;
+                    if (key > k) {
+                        b = n;
+                        n = f;
+                        continue;
+                    }
+                    if (key == k) {
+                        if (onlyIfAbsent || n.casValue(v, value)) {
+                            @SuppressWarnings("unchecked") V vv = (V) v;
+                            return vv;
+                        }
+                        break; // restart if lost race to replace value
+                    }
+                    // else key < k; fall through
+                }
+
+                z = new Node<V>(key, value, n);
+                if (!b.casNext(n, z))
+                    break;         // restart if lost race to append to b
+                break outer;
+            }
+        }
+
+        // 随机决定新结点的层级, 与ConcurrentSkipListMap相同
+        int rnd = ThreadLocalRandom.nextSecondarySeed();
+        if ((rnd & 0x80000001) == 0) { // test highest and lowest bits
+            int level = 1, max;
+            while (((rnd >>>= 1) & 1) != 0)
+                ++level;
+            Index<V> idx = null;
+            HeadIndex<V> h = head;
+            if (level <= (max = h.level)) {
+                for (int i = 1; i <= level; ++i)
+                    idx = new Index<V>(z, idx, null);
+            } else { // try to grow by one level
+                level = max + 1; // hold in array and later pick the one to use
+                @SuppressWarnings("unchecked")
+                Index<V>[] idxs = (Index<V>[]) new Index<?>[level + 1];
+                for (int i = 1; i <= level; ++i)
+                    idxs[i] = idx = new Index<V>(z, idx, null);
+                for (; ; ) {
+                    h = head;
+                    int oldLevel = h.level;
+                    if (level <= oldLevel) // lost race to add level
+                        break;
+                    HeadIndex<V> newh = h;
+                    Node<V> oldbase = h.node;
+                    for (int j = oldLevel + 1; j <= level; ++j)
+                        newh = new HeadIndex<V>(oldbase, newh, idxs[j], j);
+                    if (casHead(h, newh)) {
+                        h = newh;
+                        idx = idxs[level = oldLevel];
+                        break;
+                    }
+                }
+            }
+            // find insertion points and splice in
+            splice:
+            for (int insertionLevel = level; ; ) {
+                int j = h.level;
+                for (Index<V> q = h, r = q.right, t = idx; ; ) {
+                    if (q == null || t == null)
+                        break splice;
+                    if (r != null) {
+                        Node<V> n = r.node;
+                        // compare before deletion check avoids needing recheck
+                        boolean greater = key > n.key;
+                        if (n.value == null) {
+                            if (!q.unlink(r))
+                                break;
+                            r = q.right;
+                            continue;
+                        }
+                        if (greater) {
+                            q = r;
+                            r = r.right;
+                            continue;
+                        }
+                    }
+
+                    if (j == insertionLevel) {
+                        if (!q.link(r, t))
+                            break; // restart
+                        if (t.node.value == null) {
+                            findNode(key);
+                            break splice;
+                        }
+                        if (--insertionLevel == 0)
+                            break splice;
+                    }
+
+                    if (--j >= insertionLevel && j < level)
+                        t = t.down;
+                    q = q.down;
+                    r = q.right;
+                }
+            }
+        }
+        return null;
+    }
+
+    /* ---------------- Deletion -------------- */
+
+    final V doRemove(long key, Object value) {
+        outer:
+        for (; ; ) {
+            for (Node<V> b = findPredecessor(key), n = b.next; ; ) {
+                Object v;
+                if (n == null)
+                    break outer;
+                Node<V> f = n.next;
+                if (n != b.next)                    // inconsistent read
+                    break;
+                if ((v = n.value) == null) {        // n is deleted
+                    n.helpDelete(b, f);
+                    break;
+                }
+                if (b.value == null || v == n)      // b is deleted
+                    break;
+                long k = n.key;
+                if (key < k)
+                    break outer;
+                if (key > k) {
+                    b = n;
+                    n = f;
+                    continue;
+                }
+                if (value != null && !value.equals(v))
+                    break outer;
+                if (!n.casValue(v, null))
+                    break;
+                if (!n.appendMarker(f) || !b.casNext(n, f))
+                    findNode(key);                  // retry via findNode
+                else {
+                    findPredecessor(key);           // clean index
+                    if (head.right == null)
+                        tryReduceLevel();
+                }
+                @SuppressWarnings("unchecked") V vv = (V) v;
+                return vv;
+            }
+        }
+        return null;
+    }
+
+    private void tryReduceLevel() {
+        HeadIndex<V> h = head;
+        HeadIndex<V> d;
+        HeadIndex<V> e;
+        if (h.level > 3 &&
+                (d = (HeadIndex<V>) h.down) != null &&
+                (e = (HeadIndex<V>) d.down) != null &&
+                e.right == null &&
+                d.right == null &&
+                h.right == null &&
+                casHead(h, d) && // try to set
+                h.right != null) // recheck
+            casHead(d, h);   // try to backout
+    }
+
+    /* ---------------- Finding and removing first element -------------- */
+
+    final Node<V> findFirst() {
+        for (Node<V> b, n; ; ) {
+            if ((n = (b = head.node).next) == null)
+                return null;
+            if (n.value != null)
+                return n;
+            n.helpDelete(b, n.next);
+        }
+    }
+
+    private LongEntry<V> doRemoveFirstEntry() {
+        for (Node<V> b, n; ; ) {
+            if ((n = (b = head.node).next) == null)
+                return null;
+            Node<V> f = n.next;
+            if (n != b.next)
+                continue;
+            Object v = n.value;
+            if (v == null) {
+                n.helpDelete(b, f);
+                continue;
+            }
+            if (!n.casValue(v, null))
+                continue;
+            if (!n.appendMarker(f) || !b.casNext(n, f))
+                findFirst(); // retry
+            clearIndexToFirst();
+            @SuppressWarnings("unchecked") V vv = (V) v;
+            return new LongEntry<V>(n.key, vv);
+        }
+    }
+
+    private void clearIndexToFirst() {
+        for (; ; ) {
+            for (Index<V> q = head; ; ) {
+                Index<V> r = q.right;
+                if (r != null && r.indexesDeletedNode() && !q.unlink(r))
+                    break;
+                if ((q = q.down) == null) {
+                    if (head.right == null)
+                        tryReduceLevel();
+                    return;
+                }
+            }
+        }
+    }
+
+    private LongEntry<V> doRemoveLastEntry() {
+        for (; ; ) {
+            Node<V> b = findPredecessorOfLast();
+            Node<V> n = b.next;
+            if (n == null) {
+                if (b.isBaseHeader())               // empty
+                    return null;
+                else
+                    continue; // all b's successors are deleted; retry
+            }
+            for (; ; ) {
+                Node<V> f = n.next;
+                if (n != b.next)                    // inconsistent read
+                    break;
+                Object v = n.value;
+                if (v == null) {                    // n is deleted
+                    n.helpDelete(b, f);
+                    break;
+                }
+                if (b.value == null || v == n)      // b is deleted
+                    break;
+                if (f != null) {
+                    b = n;
+                    n = f;
+                    continue;
+                }
+                if (!n.casValue(v, null))
+                    break;
+                long key = n.key;
+                if (!n.appendMarker(f) || !b.casNext(n, f))
+                    findNode(key);                  // retry via findNode
+                else {                              // clean index
+                    findPredecessor(key);
+                    if (head.right == null)
+                        tryReduceLevel();
+                }
+                @SuppressWarnings("unchecked") V vv = (V) v;
+                return new LongEntry<V>(key, vv);
+            }
+        }
+    }
+
+    /* ---------------- Finding and removing last element -------------- */
+
+    final Node<V> findLast() {
+        Index<V> q = head;
+        for (; ; ) {
+            Index<V> d, r;
+            if ((r = q.right) != null) {
+                if (r.indexesDeletedNode()) {
+                    q.unlink(r);
+                    q = head; // restart
+                } else
+                    q = r;
+            } else if ((d = q.down) != null) {
+                q = d;
+            } else {
+                for (Node<V> b = q.node, n = b.next; ; ) {
+                    if (n == null)
+                        return b.isBaseHeader() ? null : b;
+                    Node<V> f = n.next;            // inconsistent read
+                    if (n != b.next)
+                        break;
+                    Object v = n.value;
+                    if (v == null) {                 // n is deleted
+                        n.helpDelete(b, f);
+                        break;
+                    }
+                    if (b.value == null || v == n)      // b is deleted
+                        break;
+                    b = n;
+                    n = f;
+                }
+                q = head; // restart
+            }
+        }
+    }
+
+    private Node<V> findPredecessorOfLast() {
+        for (; ; ) {
+            for (Index<V> q = head; ; ) {
+                Index<V> d, r;
+                if ((r = q.right) != null) {
+                    if (r.indexesDeletedNode()) {
+                        q.unlink(r);
+                        break;    // must restart
+                    }
+                    // proceed as far across as possible without overshooting
+                    if (r.node.next != null) {
+                        q = r;
+                        continue;
+                    }
+                }
+                if ((d = q.down) != null)
+                    q = d;
+                else
+                    return q.node;
+            }
+        }
+    }
+
+    /* ---------------- Relational operations -------------- */
+
+    static final int EQ = 1;
+    static final int LT = 2;
+    static final int GT = 0; // Actually checked as !LT
+
+    final Node<V> findNear(long key, int rel) {
+        for (; ; ) {
+            for (Node<V> b = findPredecessor(key), n = b.next; ; ) {
+                Object v;
+                if (n == null)
+                    return ((rel & LT) == 0 || b.isBaseHeader()) ? null : b;
+                Node<V> f = n.next;
+                if (n != b.next)                  // inconsistent read
+                    break;
+                if ((v = n.value) == null) {      // n is deleted
+                    n.helpDelete(b, f);
+                    break;
+                }
+                if (b.value == null || v == n)      // b is deleted
+                    break;
+                int c = Long.compare(key, n.key);
+                if ((c == 0 && (rel & EQ) != 0) ||
+                        (c < 0 && (rel & LT) == 0))
+                    return n;
+                if (c <= 0 && (rel & LT) != 0)
+                    return b.isBaseHeader() ? null : b;
+                b = n;
+                n = f;
+            }
+        }
+    }
+
+    final LongEntry<V> getNear(long key, int rel) {
+        for (; ; ) {
+            Node<V> n = findNear(key, rel);
+            if (n == null)
+                return null;
+            LongEntry<V> e = n.createSnapshot();
+            if (e != null)
+                return e;
+        }
+    }
+
+    /* ---------------- Map API methods -------------- */
+
+    /**
+     * Returns the value to which the key is mapped, or {@code null}.
+     *
+     * @param key the key
+     * @return the value, or {@code null} if there is no mapping for the key
+     */
+    public V get(long key) {
+        return doGet(key);
+    }
+
+    /**
+     * Returns the value to which the key is mapped, or the given default.
+     *
+     * @param key          the key
+     * @param defaultValue the value to return if there is no mapping
+     * @return the value, or {@code defaultValue}
+     */
+    public V getOrDefault(long key, V defaultValue) {
+        V v;
+        return (v = doGet(key)) == null ? defaultValue : v;
+    }
+
+    /**
+     * Returns {@code true} if this map contains a mapping for the key.
+     *
+     * @param key the key
+     * @return {@code true} if a mapping exists
+     */
+    public boolean containsKey(long key) {
+        return doGet(key) != null;
+    }
+
+    /**
+     * Associates the value with the key, replacing any previous value.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the previous value, or {@code null} if there was none
+     * @throws NullPointerException if the value is null
+     */
+    public V put(long key, V value) {
+        return doPut(key, value, false);
+    }
+
+    /**
+     * Associates the value with the key if it is not already mapped.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the existing value, or {@code null} if there was none
+     * @throws NullPointerException if the value is null
+     */
+    public V putIfAbsent(long key, V value) {
+        return doPut(key, value, true);
+    }
+
+    /**
+     * Returns the value of the key, computing and inserting it first if
+     * absent.  The function may be called more than once under
+     * contention, but only one result is inserted.
+     *
+     * @param key             the key
+     * @param mappingFunction the function to compute a value
+     * @return the current (existing or computed) value, or {@code null}
+     * if the computed value is null
+     */
+    public V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        if (mappingFunction == null)
+            throw new NullPointerException();
+        V v, p, r;
+        if ((v = doGet(key)) == null &&
+                (r = mappingFunction.apply(key)) != null)
+            v = (p = doPut(key, r, true)) == null ? r : p;
+        return v;
+    }
+
+    /**
+     * Removes the mapping for the key.
+     *
+     * @param key the key
+     * @return the previous value, or {@code null} if there was none
+     */
+    public V remove(long key) {
+        return doRemove(key, null);
+    }
+
+    /**
+     * Removes the mapping for the key only if it is mapped to the value.
+     *
+     * @param key   the key
+     * @param value the expected value
+     * @return {@code true} if the mapping was removed
+     */
+    public boolean remove(long key, Object value) {
+        return value != null && doRemove(key, value) != null;
+    }
+
+    /**
+     * Replaces the value of the key only if it is currently mapped.
+     *
+     * @param key   the key
+     * @param value the new value
+     * @return the previous value, or {@code null} if there was none
+     * @throws NullPointerException if the value is null
+     */
+    public V replace(long key, V value) {
+        if (value == null)
+            throw new NullPointerException();
+        for (; ; ) {
+            Node<V> n;
+            Object v;
+            if ((n = findNode(key)) == null)
+                return null;
+            if ((v = n.value) != null && n.casValue(v, value)) {
+                @SuppressWarnings("unchecked") V vv = (V) v;
+                return vv;
+            }
+        }
+    }
+
+    /**
+     * Replaces the value of the key only if it is currently mapped to
+     * the expected value.
+     *
+     * @param key      the key
+     * @param oldValue the expected value
+     * @param newValue the new value
+     * @return {@code true} if the value was replaced
+     * @throws NullPointerException if either value is null
+     */
+    public boolean replace(long key, V oldValue, V newValue) {
+        if (oldValue == null || newValue == null)
+            throw new NullPointerException();
+        for (; ; ) {
+            Node<V> n;
+            Object v;
+            if ((n = findNode(key)) == null)
+                return false;
+            if ((v = n.value) != null) {
+                if (!oldValue.equals(v))
+                    return false;
+                if (n.casValue(v, newValue))
+                    return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of mappings.  This requires a traversal of the
+     * map and is not a snapshot under concurrent modification.
+     *
+     * @return the number of mappings
+     */
+    public int size() {
+        long count = 0;
+        for (Node<V> n = findFirst(); n != null; n = n.next) {
+            if (n.getValidValue() != null)
+                ++count;
+        }
+        return (count >= Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) count;
+    }
+
+    /**
+     * Returns {@code true} if this map contains no mappings.
+     *
+     * @return {@code true} if empty
+     */
+    public boolean isEmpty() {
+        return findFirst() == null;
+    }
+
+    /**
+     * Removes all of the mappings from this map.
+     */
+    public void clear() {
+        initialize();
+    }
+
+    /* ---------------- Navigation -------------- */
+
+    /**
+     * Returns the lowest key.
+     *
+     * @return the lowest key
+     * @throws NoSuchElementException if this map is empty
+     */
+    public long firstKey() {
+        Node<V> n = findFirst();
+        if (n == null)
+            throw new NoSuchElementException();
+        return n.key;
+    }
+
+    /**
+     * Returns the highest key.
+     *
+     * @return the highest key
+     * @throws NoSuchElementException if this map is empty
+     */
+    public long lastKey() {
+        Node<V> n = findLast();
+        if (n == null)
+            throw new NoSuchElementException();
+        return n.key;
+    }
+
+    public LongEntry<V> firstEntry() {
+        for (; ; ) {
+            Node<V> n = findFirst();
+            if (n == null)
+                return null;
+            LongEntry<V> e = n.createSnapshot();
+            if (e != null)
+                return e;
+        }
+    }
+
+    public LongEntry<V> lastEntry() {
+        for (; ; ) {
+            Node<V> n = findLast();
+            if (n == null)
+                return null;
+            LongEntry<V> e = n.createSnapshot();
+            if (e != null)
+                return e;
+        }
+    }
+
+    public LongEntry<V> pollFirstEntry() {
+        return doRemoveFirstEntry();
+    }
+
+    public LongEntry<V> pollLastEntry() {
+        return doRemoveLastEntry();
+    }
+
+    /**
+     * Returns the mapping with the greatest key strictly less than the
+     * given key, or {@code null}.
+     */
+    public LongEntry<V> lowerEntry(long key) {
+        return getNear(key, LT);
+    }
+
+    /**
+     * Returns the mapping with the greatest key less than or equal to
+     * the given key, or {@code null}.
+     */
+    public LongEntry<V> floorEntry(long key) {
+        return getNear(key, LT | EQ);
+    }
+
+    /**
+     * Returns the mapping with the least key greater than or equal to
+     * the given key, or {@code null}.
+     */
+    public LongEntry<V> ceilingEntry(long key) {
+        return getNear(key, GT | EQ);
+    }
+
+    /**
+     * Returns the mapping with the least key strictly greater than the
+     * given key, or {@code null}.
+     */
+    public LongEntry<V> higherEntry(long key) {
+        return getNear(key, GT);
+    }
+
+    /**
+     * Returns the greatest key strictly less than the given key, or
+     * {@code noEntryKey}.
+     */
+    public long lowerKey(long key) {
+        Node<V> n = findNear(key, LT);
+        return (n == null) ? noEntryKey : n.key;
+    }
+
+    /**
+     * Returns the greatest key less than or equal to the given key, or
+     * {@code noEntryKey}.
+     */
+    public long floorKey(long key) {
+        Node<V> n = findNear(key, LT | EQ);
+        return (n == null) ? noEntryKey : n.key;
+    }
+
+    /**
+     * Returns the least key greater than or equal to the given key, or
+     * {@code noEntryKey}.
+     */
+    public long ceilingKey(long key) {
+        Node<V> n = findNear(key, GT | EQ);
+        return (n == null) ? noEntryKey : n.key;
+    }
+
+    /**
+     * Returns the least key strictly greater than the given key, or
+     * {@code noEntryKey}.
+     */
+    public long higherKey(long key) {
+        Node<V> n = findNear(key, GT);
+        return (n == null) ? noEntryKey : n.key;
+    }
+
+    /**
+     * Returns the value returned by key-returning methods when there is
+     * no such key.
+     *
+     * @return the no-entry key
+     */
+    public long noEntryKey() {
+        return noEntryKey;
+    }
+
+    /* ---------------- Views and traversal -------------- */
+
+    /**
+     * Returns a view of the mappings whose keys range from
+     * {@code fromKey} to {@code toKey}.
+     *
+     * @throws IllegalArgumentException if {@code fromKey} is greater
+     *                                  than {@code toKey}
+     */
+    public SubMap<V> subMap(long fromKey, boolean fromInclusive,
+                            long toKey, boolean toInclusive) {
+        return new SubMap<V>(this, true, fromKey, fromInclusive, true, toKey, toInclusive);
+    }
+
+    /**
+     * Returns a view of the mappings whose keys are less than (or equal
+     * to, if {@code inclusive}) {@code toKey}.
+     */
+    public SubMap<V> headMap(long toKey, boolean inclusive) {
+        return new SubMap<V>(this, false, 0L, false, true, toKey, inclusive);
+    }
+
+    /**
+     * Returns a view of the mappings whose keys are greater than (or
+     * equal to, if {@code inclusive}) {@code fromKey}.
+     */
+    public SubMap<V> tailMap(long fromKey, boolean inclusive) {
+        return new SubMap<V>(this, true, fromKey, inclusive, false, 0L, false);
+    }
+
+    /**
+     * Performs the action for each mapping in ascending key order.
+     *
+     * @param action the action
+     */
+    public void forEach(EntryConsumer<? super V> action) {
+        if (action == null) throw new NullPointerException();
+        V v;
+        for (Node<V> n = findFirst(); n != null; n = n.next) {
+            if ((v = n.getValidValue()) != null)
+                action.accept(n.key, v);
+        }
+    }
+
+    /**
+     * Returns an iterator over the keys in ascending order.
+     *
+     * @return a weakly consistent key iterator
+     */
+    public PrimitiveIterator.OfLong keyIterator() {
+        return new SubMap<V>(this, false, 0L, false, false, 0L, false).keyIterator();
+    }
+
+    /**
+     * Returns an iterator over the mappings in ascending key order.
+     *
+     * @return a weakly consistent entry iterator
+     */
+    public Iterator<LongEntry<V>> entryIterator() {
+        return new SubMap<V>(this, false, 0L, false, false, 0L, false).entryIterator();
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder().append('{');
+        forEach((k, v) -> {
+            if (sb.length() > 1)
+                sb.append(", ");
+            sb.append(k).append('=').append(v);
+        });
+        return sb.append('}').toString();
+    }
+
+    /**
+     * 子Map视图: 只包含[lo, hi]范围内的映射(边界可以不存在或不包含), 插入范围之外的key抛出IllegalArgumentException.
+     * <p>
+     * A view of the mappings of a {@link ConcurrentLongSkipListMap} whose
+     * keys lie within a range.  Updates through the view write through to
+     * the map; inserting a key outside the range throws
+     * {@link IllegalArgumentException}.
+     *
+     * @param <V> the type of mapped values
+     */
+    public static final class SubMap<V> {
+        final ConcurrentLongSkipListMap<V> m;
+        final boolean hasLo, hasHi;
+        final long lo, hi;
+        final boolean loInclusive, hiInclusive;
+
+        SubMap(ConcurrentLongSkipListMap<V> map,
+               boolean hasLo, long lo, boolean loInclusive,
+               boolean hasHi, long hi, boolean hiInclusive) {
+            if (hasLo && hasHi && lo > hi)
+                throw new IllegalArgumentException("inconsistent range");
+            this.m = map;
+            this.hasLo = hasLo;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.hasHi = hasHi;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+        }
+
+        boolean tooLow(long key) {
+            return hasLo && (key < lo || (key == lo && !loInclusive));
+        }
+
+        boolean tooHigh(long key) {
+            return hasHi && (key > hi || (key == hi && !hiInclusive));
+        }
+
+        boolean inBounds(long key) {
+            return !tooLow(key) && !tooHigh(key);
+        }
+
+        void checkKeyBounds(long key) {
+            if (!inBounds(key))
+                throw new IllegalArgumentException("key out of range");
+        }
+
+        /**
+         * 范围内的第一个结点(可能已超出上界, 调用者需要检查)
+         */
+        Node<V> loNode() {
+            if (!hasLo)
+                return m.findFirst();
+            else
+                return m.findNear(lo, loInclusive ? GT | EQ : GT);
+        }
+
+        Node<V> hiNode() {
+            if (!hasHi)
+                return m.findLast();
+            else
+                return m.findNear(hi, hiInclusive ? LT | EQ : LT);
+        }
+
+        public V get(long key) {
+            return inBounds(key) ? m.get(key) : null;
+        }
+
+        public boolean containsKey(long key) {
+            return inBounds(key) && m.containsKey(key);
+        }
+
+        public V put(long key, V value) {
+            checkKeyBounds(key);
+            return m.put(key, value);
+        }
+
+        public V putIfAbsent(long key, V value) {
+            checkKeyBounds(key);
+            return m.putIfAbsent(key, value);
+        }
+
+        public V remove(long key) {
+            return inBounds(key) ? m.remove(key) : null;
+        }
+
+        public boolean remove(long key, Object value) {
+            return inBounds(key) && m.remove(key, value);
+        }
+
+        public int size() {
+            long count = 0;
+            for (Node<V> n = loNode(); n != null; n = n.next) {
+                if (n.getValidValue() == null)
+                    continue;
+                if (tooHigh(n.key))
+                    break;
+                ++count;
+            }
+            return (count >= Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) count;
+        }
+
+        public boolean isEmpty() {
+            return firstEntry() == null;
+        }
+
+        public void clear() {
+            for (Node<V> n = loNode(); n != null; n = n.next) {
+                if (n.getValidValue() == null)
+                    continue;
+                if (tooHigh(n.key))
+                    break;
+                m.remove(n.key);
+            }
+        }
+
+        public LongEntry<V> firstEntry() {
+            for (; ; ) {
+                Node<V> n = loNode();
+                if (n == null || tooHigh(n.key))
+                    return null;
+                LongEntry<V> e = n.createSnapshot();
+                if (e != null)
+                    return e;
+            }
+        }
+
+        public LongEntry<V> lastEntry() {
+            for (; ; ) {
+                Node<V> n = hiNode();
+                if (n == null || tooLow(n.key))
+                    return null;
+                LongEntry<V> e = n.createSnapshot();
+                if (e != null)
+                    return e;
+            }
+        }
+
+        public LongEntry<V> pollFirstEntry() {
+            for (; ; ) {
+                LongEntry<V> e = firstEntry();
+                if (e == null)
+                    return null;
+                V v = m.doRemove(e.getKey(), null);
+                if (v != null)
+                    return new LongEntry<V>(e.getKey(), v);
+            }
+        }
+
+        public LongEntry<V> pollLastEntry() {
+            for (; ; ) {
+                LongEntry<V> e = lastEntry();
+                if (e == null)
+                    return null;
+                V v = m.doRemove(e.getKey(), null);
+                if (v != null)
+                    return new LongEntry<V>(e.getKey(), v);
+            }
+        }
+
+        /**
+         * Submap version of ConcurrentLongSkipListMap.getNear
+         */
+        LongEntry<V> getNearEntry(long key, int rel) {
+            if (tooLow(key))
+                return ((rel & LT) != 0) ? null : firstEntry();
+            if (tooHigh(key))
+                return ((rel & LT) != 0) ? lastEntry() : null;
+            LongEntry<V> e = m.getNear(key, rel);
+            return (e == null || !inBounds(e.getKey())) ? null : e;
+        }
+
+        public LongEntry<V> lowerEntry(long key) {
+            return getNearEntry(key, LT);
+        }
+
+        public LongEntry<V> floorEntry(long key) {
+            return getNearEntry(key, LT | EQ);
+        }
+
+        public LongEntry<V> ceilingEntry(long key) {
+            return getNearEntry(key, GT | EQ);
+        }
+
+        public LongEntry<V> higherEntry(long key) {
+            return getNearEntry(key, GT);
+        }
+
+        /**
+         * 创建更小范围的视图: 给定的边界覆盖不存在的边界, 已存在的边界只能缩小
+         */
+        SubMap<V> newSubMap(boolean fromSet, long fromKey, boolean fromInclusive,
+                            boolean toSet, long toKey, boolean toInclusive) {
+            if (hasLo) {
+                if (!fromSet) {
+                    fromSet = true;
+                    fromKey = lo;
+                    fromInclusive = loInclusive;
+                } else if (fromKey < lo || (fromKey == lo && !loInclusive && fromInclusive))
+                    throw new IllegalArgumentException("key out of range");
+            }
+            if (hasHi) {
+                if (!toSet) {
+                    toSet = true;
+                    toKey = hi;
+                    toInclusive = hiInclusive;
+                } else if (toKey > hi || (toKey == hi && !hiInclusive && toInclusive))
+                    throw new IllegalArgumentException("key out of range");
+            }
+            return new SubMap<V>(m, fromSet, fromKey, fromInclusive, toSet, toKey, toInclusive);
+        }
+
+        /**
+         * Returns a narrower view; the bounds must lie within this view's
+         * range.
+         *
+         * @throws IllegalArgumentException if a bound is out of range or
+         *                                  {@code fromKey} is greater than {@code toKey}
+         */
+        public SubMap<V> subMap(long fromKey, boolean fromInclusive,
+                                long toKey, boolean toInclusive) {
+            return newSubMap(true, fromKey, fromInclusive, true, toKey, toInclusive);
+        }
+
+        /**
+         * @throws IllegalArgumentException if {@code toKey} is out of range
+         */
+        public SubMap<V> headMap(long toKey, boolean inclusive) {
+            return newSubMap(false, 0L, false, true, toKey, inclusive);
+        }
+
+        /**
+         * @throws IllegalArgumentException if {@code fromKey} is out of range
+         */
+        public SubMap<V> tailMap(long fromKey, boolean inclusive) {
+            return newSubMap(true, fromKey, inclusive, false, 0L, false);
+        }
+
+        public void forEach(EntryConsumer<? super V> action) {
+            if (action == null) throw new NullPointerException();
+            V v;
+            for (Node<V> n = loNode(); n != null; n = n.next) {
+                if ((v = n.getValidValue()) == null)
+                    continue;
+                if (tooHigh(n.key))
+                    break;
+                action.accept(n.key, v);
+            }
+        }
+
+        public PrimitiveIterator.OfLong keyIterator() {
+            return new KeyIterator();
+        }
+
+        public Iterator<LongEntry<V>> entryIterator() {
+            return new EntryIterator();
+        }
+
+        /**
+         * 升序遍历范围内的结点, 与ConcurrentSkipListMap.SubMap.SubMapIter相同
+         */
+        abstract class Iter {
+            Node<V> lastReturned;
+            Node<V> next;
+            V nextValue;
+
+            Iter() {
+                for (; ; ) {
+                    next = loNode();
+                    if (next == null)
+                        break;
+                    Object x = next.value;
+                    if (x != null && x != next) {
+                        if (tooHigh(next.key))
+                            next = null;
+                        else {
+                            @SuppressWarnings("unchecked") V vv = (V) x;
+                            nextValue = vv;
+                        }
+                        break;
+                    }
+                }
+            }
+
+            public final boolean hasNext() {
+                return next != null;
+            }
+
+            final void advance() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                lastReturned = next;
+                for (; ; ) {
+                    next = next.next;
+                    if (next == null)
+                        break;
+                    Object x = next.value;
+                    if (x != null && x != next) {
+                        if (tooHigh(next.key))
+                            next = null;
+                        else {
+                            @SuppressWarnings("unchecked") V vv = (V) x;
+                            nextValue = vv;
+                        }
+                        break;
+                    }
+                }
+            }
+
+            public void remove() {
+                Node<V> l = lastReturned;
+                if (l == null)
+                    throw new IllegalStateException();
+                m.remove(l.key);
+                lastReturned = null;
+            }
+        }
+
+        final class KeyIterator extends Iter implements PrimitiveIterator.OfLong {
+            public long nextLong() {
+                Node<V> n = next;
+                advance();
+                return n.key;
+            }
+        }
+
+        final class EntryIterator extends Iter implements Iterator<LongEntry<V>> {
+            public LongEntry<V> next() {
+                Node<V> n = next;
+                V v = nextValue;
+                advance();
+                return new LongEntry<V>(n.key, v);
+            }
+        }
+    }
+
+    // Unsafe mechanics
+    private static final sun.misc.Unsafe UNSAFE;
+    private static final long headOffset;
+
+    static {
+        try {
+            UNSAFE = sun.misc.Unsafe.getUnsafe();
+            Class<?> k = ConcurrentLongSkipListMap.class;
+            headOffset = UNSAFE.objectFieldOffset
+                    (k.getDeclaredField("head"));
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+}
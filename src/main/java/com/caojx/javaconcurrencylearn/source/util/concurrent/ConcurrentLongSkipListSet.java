@@ -0,0 +1,226 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.LongConsumer;
+
+/**
+ * ConcurrentLongSkipListSet是元素为基本类型long的ConcurrentSkipListSet，基于ConcurrentLongSkipListMap实现。
+ * <p>
+ * 与ConcurrentSkipListSet相同，集合中的元素是map的key，value统一为Boolean.TRUE；
+ * 子集合（subSet/headSet/tailSet）是同一个map上范围更小的视图，所有集合操作都通过ConcurrentLongSkipListMap.SubMap完成。
+ * <p>
+ * A scalable concurrent sorted set of primitive {@code long} values
+ * based on a {@link ConcurrentLongSkipListMap}.  Methods returning an
+ * element return the set's {@code noEntryKey} (by default
+ * {@link Long#MIN_VALUE}) when there is no such element.  Iterators are
+ * weakly consistent and the {@code size} method is not a constant-time
+ * operation.
+ *
+ * @author caojx created on 2026/10/19
+ * @see ConcurrentSkipListSet
+ * @see ConcurrentLongSkipListMap
+ */
+public class ConcurrentLongSkipListSet {
+
+    /**
+     * 底层map上的视图, 整个集合对应一个没有边界的视图
+     */
+    private final ConcurrentLongSkipListMap.SubMap<Boolean> m;
+
+    /**
+     * Creates a new, empty set whose element-returning methods return
+     * {@link Long#MIN_VALUE} when there is no such element.
+     */
+    public ConcurrentLongSkipListSet() {
+        this(Long.MIN_VALUE);
+    }
+
+    /**
+     * Creates a new, empty set.
+     *
+     * @param noEntryKey the value returned by element-returning methods
+     *                   such as {@link #floor} when there is no such element
+     */
+    public ConcurrentLongSkipListSet(long noEntryKey) {
+        this.m = new ConcurrentLongSkipListMap.SubMap<Boolean>(
+                new ConcurrentLongSkipListMap<Boolean>(noEntryKey), false, 0L, false, false, 0L, false);
+    }
+
+    ConcurrentLongSkipListSet(ConcurrentLongSkipListMap.SubMap<Boolean> m) {
+        this.m = m;
+    }
+
+    /**
+     * Adds the element if it is not already present.
+     *
+     * @param e the element
+     * @return {@code true} if the set did not already contain the element
+     * @throws IllegalArgumentException if this is a subset view and the
+     *                                  element is out of its range
+     */
+    public boolean add(long e) {
+        return m.putIfAbsent(e, Boolean.TRUE) == null;
+    }
+
+    /**
+     * Removes the element if it is present.
+     *
+     * @param e the element
+     * @return {@code true} if the set contained the element
+     */
+    public boolean remove(long e) {
+        return m.remove(e, Boolean.TRUE);
+    }
+
+    /**
+     * Returns {@code true} if this set contains the element.
+     *
+     * @param e the element
+     * @return {@code true} if present
+     */
+    public boolean contains(long e) {
+        return m.containsKey(e);
+    }
+
+    /**
+     * Returns the number of elements, by traversing the set.
+     *
+     * @return the number of elements
+     */
+    public int size() {
+        return m.size();
+    }
+
+    public boolean isEmpty() {
+        return m.isEmpty();
+    }
+
+    public void clear() {
+        m.clear();
+    }
+
+    /**
+     * @throws NoSuchElementException if this set is empty
+     */
+    public long first() {
+        ConcurrentLongSkipListMap.LongEntry<Boolean> e = m.firstEntry();
+        if (e == null)
+            throw new NoSuchElementException();
+        return e.getKey();
+    }
+
+    /**
+     * @throws NoSuchElementException if this set is empty
+     */
+    public long last() {
+        ConcurrentLongSkipListMap.LongEntry<Boolean> e = m.lastEntry();
+        if (e == null)
+            throw new NoSuchElementException();
+        return e.getKey();
+    }
+
+    private long keyOf(ConcurrentLongSkipListMap.LongEntry<Boolean> e) {
+        return (e == null) ? m.m.noEntryKey : e.getKey();
+    }
+
+    /**
+     * Returns the greatest element strictly less than {@code e}, or
+     * {@code noEntryKey}.
+     */
+    public long lower(long e) {
+        return keyOf(m.lowerEntry(e));
+    }
+
+    /**
+     * Returns the greatest element less than or equal to {@code e}, or
+     * {@code noEntryKey}.
+     */
+    public long floor(long e) {
+        return keyOf(m.floorEntry(e));
+    }
+
+    /**
+     * Returns the least element greater than or equal to {@code e}, or
+     * {@code noEntryKey}.
+     */
+    public long ceiling(long e) {
+        return keyOf(m.ceilingEntry(e));
+    }
+
+    /**
+     * Returns the least element strictly greater than {@code e}, or
+     * {@code noEntryKey}.
+     */
+    public long higher(long e) {
+        return keyOf(m.higherEntry(e));
+    }
+
+    /**
+     * Removes and returns the lowest element, or {@code noEntryKey} if
+     * this set is empty.
+     */
+    public long pollFirst() {
+        return keyOf(m.pollFirstEntry());
+    }
+
+    /**
+     * Removes and returns the highest element, or {@code noEntryKey} if
+     * this set is empty.
+     */
+    public long pollLast() {
+        return keyOf(m.pollLastEntry());
+    }
+
+    /**
+     * Returns the value returned by element-returning methods when
+     * there is no such element.
+     */
+    public long noEntryKey() {
+        return m.m.noEntryKey;
+    }
+
+    /**
+     * Returns a view of the elements from {@code fromElement} to
+     * {@code toElement}.
+     *
+     * @throws IllegalArgumentException if a bound is out of this set's
+     *                                  range or {@code fromElement} is greater than {@code toElement}
+     */
+    public ConcurrentLongSkipListSet subSet(long fromElement, boolean fromInclusive,
+                                            long toElement, boolean toInclusive) {
+        return new ConcurrentLongSkipListSet(m.subMap(fromElement, fromInclusive, toElement, toInclusive));
+    }
+
+    public ConcurrentLongSkipListSet headSet(long toElement, boolean inclusive) {
+        return new ConcurrentLongSkipListSet(m.headMap(toElement, inclusive));
+    }
+
+    public ConcurrentLongSkipListSet tailSet(long fromElement, boolean inclusive) {
+        return new ConcurrentLongSkipListSet(m.tailMap(fromElement, inclusive));
+    }
+
+    /**
+     * Returns an iterator over the elements in ascending order.
+     *
+     * @return a weakly consistent iterator
+     */
+    public PrimitiveIterator.OfLong iterator() {
+        return m.keyIterator();
+    }
+
+    public void forEach(LongConsumer action) {
+        if (action == null) throw new NullPointerException();
+        m.forEach((k, v) -> action.accept(k));
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder().append('[');
+        for (PrimitiveIterator.OfLong it = iterator(); it.hasNext(); ) {
+            sb.append(it.nextLong());
+            if (it.hasNext())
+                sb.append(", ");
+        }
+        return sb.append(']').toString();
+    }
+}
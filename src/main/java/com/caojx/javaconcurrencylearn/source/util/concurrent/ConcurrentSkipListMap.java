@@ -38,6 +38,8 @@ package com.caojx.javaconcurrencylearn.source.util.concurrent;
 import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
@@ -1175,6 +1177,37 @@ public class ConcurrentSkipListMap<K, V> extends AbstractMap<K, V>
         }
     }
 
+    /**
+     * Removes first entry; returns its key.
+     * Specialized variant of doRemoveFirstEntry that skips the entry
+     * snapshot, for use by SkipListPriorityBlockingQueue.
+     * <p>
+     * 与doRemoveFirstEntry相同，先CAS把value置为null（逻辑删除），再追加marker结点并断开链接（物理删除），
+     * 只是不再创建SimpleImmutableEntry快照，出队时少一次对象分配.
+     *
+     * @return null if empty, else the key of the removed first entry
+     */
+    final K doRemoveFirstKey() {
+        for (Node<K, V> b, n; ; ) {
+            if ((n = (b = head.node).next) == null)
+                return null;
+            Node<K, V> f = n.next;
+            if (n != b.next)
+                continue;
+            Object v = n.value;
+            if (v == null) {
+                n.helpDelete(b, f);
+                continue;
+            }
+            if (!n.casValue(v, null))
+                continue;
+            if (!n.appendMarker(f) || !b.casNext(n, f))
+                findFirst(); // retry
+            clearIndexToFirst();
+            return n.key;
+        }
+    }
+
     /**
      * Clears out index nodes associated with deleted first entry.
      */
@@ -1530,6 +1563,192 @@ public class ConcurrentSkipListMap<K, V> extends AbstractMap<K, V>
         head = h;
     }
 
+    /* ---------------- Parallel bulk construction -------------- */
+
+    /**
+     * 并行批量构建时每个叶子任务处理的最少元素数
+     */
+    static final int BULK_LEAF_SIZE = 1 << 13;
+
+    /**
+     * Creates a new map, sorted according to the given comparator,
+     * holding the mappings of the given spliterator, whose encounter
+     * order must be strictly ascending by key.  The map is built in
+     * parallel in the {@link ForkJoinPool#commonPool() common pool}.
+     * <p>
+     * 从按key严格升序的Spliterator并行构建ConcurrentSkipListMap, 见{@link #fromSorted(Spliterator, Comparator, ForkJoinPool)}.
+     *
+     * @param entries    the mappings, in strictly ascending key order
+     * @param comparator the comparator that will be used to order the
+     *                   map, or {@code null} for natural ordering
+     * @param <K>        the type of keys
+     * @param <V>        the type of values
+     * @return a new map holding the mappings
+     * @throws NullPointerException     if the spliterator or any key or
+     *                                  value is null
+     * @throws IllegalArgumentException if the keys are not in strictly
+     *                                  ascending order
+     */
+    public static <K, V> ConcurrentSkipListMap<K, V> fromSorted(
+            Spliterator<? extends Entry<? extends K, ? extends V>> entries,
+            Comparator<? super K> comparator) {
+        return fromSorted(entries, comparator, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a new map, sorted according to the given comparator,
+     * holding the mappings of the given spliterator, whose encounter
+     * order must be strictly ascending by key.
+     * <p>
+     * 用put逐个插入时每个元素都要从head开始查找插入位置. 输入已经有序时可以直接拼接链表:
+     * 1.不断调用trySplit把Spliterator切分成若干连续的块, 每个块由ForkJoinPool中的一个任务处理;
+     * 2.每个任务顺序地创建底层Node链表, 按与doPut相同的概率为结点随机生成Index层级, 记录每一层的第一个和最后一个Index(一个“段”);
+     * 3.相邻的段按顺序合并: 检查左段的最后一个key小于右段的第一个key, 然后把底层链表和每一层的Index首尾相接, 合并只需O(层数);
+     * 4.最后为所有层创建HeadIndex, 发布head.
+     * 构建过程中结点还不可见, 所以不需要CAS.
+     *
+     * @param entries    the mappings, in strictly ascending key order
+     * @param comparator the comparator that will be used to order the
+     *                   map, or {@code null} for natural ordering
+     * @param pool       the pool in which to build the map
+     * @param <K>        the type of keys
+     * @param <V>        the type of values
+     * @return a new map holding the mappings
+     * @throws NullPointerException     if the spliterator or pool, or any
+     *                                  key or value, is null
+     * @throws IllegalArgumentException if the keys are not in strictly
+     *                                  ascending order
+     */
+    public static <K, V> ConcurrentSkipListMap<K, V> fromSorted(
+            Spliterator<? extends Entry<? extends K, ? extends V>> entries,
+            Comparator<? super K> comparator, ForkJoinPool pool) {
+        if (entries == null || pool == null)
+            throw new NullPointerException();
+        ConcurrentSkipListMap<K, V> map = new ConcurrentSkipListMap<K, V>(comparator);
+        Segment<K, V> seg = pool.invoke(new BulkBuildTask<K, V>(entries, comparator));
+        HeadIndex<K, V> h = map.head;
+        Node<K, V> base = h.node;
+        base.next = seg.first;
+        for (int i = 1; i <= seg.levels; ++i) {
+            if (i == 1)
+                h.right = seg.heads[1];
+            else
+                h = new HeadIndex<K, V>(base, h, seg.heads[i], i);
+        }
+        map.head = h;
+        return map;
+    }
+
+    /**
+     * 并行构建中的一段: 底层链表的首尾结点, 以及每一层Index链表的首尾(下标为层级, 0不用)
+     */
+    static final class Segment<K, V> {
+        Node<K, V> first, last;
+        Index<K, V>[] heads, tails;
+        int levels;
+
+        @SuppressWarnings("unchecked")
+        Segment() {
+            heads = (Index<K, V>[]) new Index<?, ?>[8];
+            tails = (Index<K, V>[]) new Index<?, ?>[8];
+        }
+
+        /**
+         * 顺序追加一个键值对
+         */
+        void add(K key, V value, Comparator<? super K> cmp) {
+            if (key == null || value == null)
+                throw new NullPointerException();
+            if (last != null && cpr(cmp, last.key, key) >= 0)
+                throw new IllegalArgumentException("keys not in ascending order");
+            Node<K, V> z = new Node<K, V>(key, value, null);
+            if (last == null)
+                first = z;
+            else
+                last.next = z;
+            last = z;
+            int rnd = ThreadLocalRandom.current().nextInt();
+            if ((rnd & 0x80000001) == 0) { // test highest and lowest bits
+                int j = 0;
+                do {
+                    ++j;
+                } while (((rnd >>>= 1) & 1) != 0);
+                if (j >= heads.length) {
+                    heads = Arrays.copyOf(heads, j + 1);
+                    tails = Arrays.copyOf(tails, j + 1);
+                }
+                Index<K, V> idx = null;
+                for (int i = 1; i <= j; ++i) {
+                    idx = new Index<K, V>(z, idx, null);
+                    if (tails[i] == null)
+                        heads[i] = idx;
+                    else
+                        tails[i].right = idx;
+                    tails[i] = idx;
+                }
+                if (j > levels)
+                    levels = j;
+            }
+        }
+
+        /**
+         * 把右边相邻的段接在这一段后面
+         */
+        Segment<K, V> append(Segment<K, V> right, Comparator<? super K> cmp) {
+            if (right.first == null)
+                return this;
+            if (first == null)
+                return right;
+            if (cpr(cmp, last.key, right.first.key) >= 0)
+                throw new IllegalArgumentException("keys not in ascending order");
+            last.next = right.first;
+            last = right.last;
+            if (right.levels >= heads.length) {
+                heads = Arrays.copyOf(heads, right.levels + 1);
+                tails = Arrays.copyOf(tails, right.levels + 1);
+            }
+            for (int i = 1; i <= right.levels; ++i) {
+                if (tails[i] == null)
+                    heads[i] = right.heads[i];
+                else
+                    tails[i].right = right.heads[i];
+                tails[i] = right.tails[i];
+            }
+            if (right.levels > levels)
+                levels = right.levels;
+            return this;
+        }
+    }
+
+    /**
+     * 切分Spliterator并行构建段, 前缀(trySplit的结果)在左, 剩余部分在右
+     */
+    static final class BulkBuildTask<K, V> extends RecursiveTask<Segment<K, V>> {
+        private static final long serialVersionUID = -3226516413916361364L;
+
+        final Spliterator<? extends Entry<? extends K, ? extends V>> spliterator;
+        final Comparator<? super K> comparator;
+
+        BulkBuildTask(Spliterator<? extends Entry<? extends K, ? extends V>> spliterator,
+                      Comparator<? super K> comparator) {
+            this.spliterator = spliterator;
+            this.comparator = comparator;
+        }
+
+        protected Segment<K, V> compute() {
+            Spliterator<? extends Entry<? extends K, ? extends V>> s = spliterator, p;
+            if (s.estimateSize() > BULK_LEAF_SIZE && (p = s.trySplit()) != null) {
+                BulkBuildTask<K, V> left = new BulkBuildTask<K, V>(p, comparator);
+                left.fork();
+                Segment<K, V> right = new BulkBuildTask<K, V>(s, comparator).compute();
+                return left.join().append(right, comparator);
+            }
+            Segment<K, V> seg = new Segment<K, V>();
+            s.forEachRemaining(e -> seg.add(e.getKey(), e.getValue(), comparator));
+            return seg;
+        }
+    }
+
     /* ---------------- Serialization -------------- */
 
     /**
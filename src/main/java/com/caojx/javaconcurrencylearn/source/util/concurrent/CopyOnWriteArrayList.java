@@ -986,6 +986,38 @@ public class CopyOnWriteArrayList<E>
         }
     }
 
+    /**
+     * 批量修改：在锁内把当前数组复制成一个私有的ArrayList交给action修改，修改完成后只发布一次新数组。
+     * 在循环中多次调用add/remove时，每次调用都会复制一次数组，而mutate无论做多少次修改都只复制两次（复制出ArrayList和转回数组）。
+     * 如果action抛出异常，本列表保持不变。
+     * <p>
+     * Applies the given action to a private mutable copy of this list and
+     * then publishes the result as a single update, so a batch of changes
+     * copies the array once instead of once per change.  Readers see
+     * either none or all of the changes.  If the action throws an
+     * exception, this list is left unchanged.
+     *
+     * <p>The action runs while holding this list's lock, so it should be
+     * short, and it must only modify the list it is given: changes made
+     * to this list from within the action are overwritten.
+     *
+     * @param action the action to apply to a copy of this list
+     * @throws NullPointerException if the specified action is null
+     */
+    public void mutate(Consumer<? super List<E>> action) {
+        if (action == null) throw new NullPointerException();
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            @SuppressWarnings("unchecked") E[] elements = (E[]) getArray();
+            List<E> copy = new ArrayList<E>(Arrays.asList(elements));
+            action.accept(copy);
+            setArray(copy.toArray());
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Saves this list to a stream (that is, serializes it).
      *
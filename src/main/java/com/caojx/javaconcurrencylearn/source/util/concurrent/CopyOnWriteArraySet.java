@@ -36,6 +36,7 @@
 package com.caojx.javaconcurrencylearn.source.util.concurrent;
 
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
@@ -107,6 +108,18 @@ public class CopyOnWriteArraySet<E> extends AbstractSet<E>
 
     private final CopyOnWriteArrayList<E> al;
 
+    /**
+     * 元素个数达到这个值后, add使用哈希索引判断元素是否已存在, 而不是线性扫描数组
+     */
+    static final int INDEX_THRESHOLD = 64;
+
+    /**
+     * add使用的哈希索引, 只在持有al.lock时访问.
+     * 索引只对indexedArray有效: 其他修改操作发布了新数组后, 下一次add会重新构建索引
+     */
+    private transient HashSet<Object> index;
+    private transient Object[] indexedArray;
+
     /**
      * Creates an empty set.
      */
@@ -233,7 +246,15 @@ public class CopyOnWriteArraySet<E> extends AbstractSet<E>
      * The set will be empty after this call returns.
      */
     public void clear() {
-        al.clear();
+        final ReentrantLock lock = al.lock;
+        lock.lock();
+        try {
+            al.clear();
+            index = null;
+            indexedArray = null;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -249,7 +270,20 @@ public class CopyOnWriteArraySet<E> extends AbstractSet<E>
      * @return {@code true} if this set contained the specified element
      */
     public boolean remove(Object o) {
-        return al.remove(o);
+        final ReentrantLock lock = al.lock;
+        lock.lock();
+        try {
+            boolean indexed = index != null && indexedArray == al.getArray();
+            if (!al.remove(o))
+                return false;
+            if (indexed) {
+                index.remove(o);
+                indexedArray = al.getArray();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -262,12 +296,71 @@ public class CopyOnWriteArraySet<E> extends AbstractSet<E>
      * If this set already contains the element, the call leaves the set
      * unchanged and returns {@code false}.
      *
+     *
+     * <p>Once the set holds {@value #INDEX_THRESHOLD} or more elements,
+     * the check for an existing element uses a hash index maintained
+     * under the lock, instead of scanning the array, so elements of large
+     * sets must have a {@code hashCode} consistent with {@code equals}.
+     *
      * @param e element to be added to this set
      * @return {@code true} if this set did not already contain the specified
      * element
      */
     public boolean add(E e) {
-        return al.addIfAbsent(e);
+        if (al.getArray().length < INDEX_THRESHOLD)
+            return al.addIfAbsent(e);
+        final ReentrantLock lock = al.lock;
+        lock.lock();
+        try {
+            Object[] elements = al.getArray();
+            if (elements.length < INDEX_THRESHOLD) {
+                index = null;
+                indexedArray = null;
+                return al.addIfAbsent(e);
+            }
+            if (index == null || indexedArray != elements) {
+                index = new HashSet<Object>(Arrays.asList(elements));
+                indexedArray = elements;
+            }
+            if (!index.add(e))
+                return false;
+            al.add(e);
+            indexedArray = al.getArray();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 批量修改：在锁内把当前元素复制到一个私有的LinkedHashSet（保持原有顺序）交给action修改，修改完成后只发布一次新数组。
+     * 与CopyOnWriteArrayList.mutate相同，如果action抛出异常，本集合保持不变。
+     * <p>
+     * Applies the given action to a private mutable copy of this set and
+     * then publishes the result as a single update, so a batch of changes
+     * copies the elements once instead of once per change.  The copy
+     * keeps the iteration order of this set, and elements added by the
+     * action are appended in the order they were added.  If the action
+     * throws an exception, this set is left unchanged.
+     *
+     * <p>The action runs while holding this set's lock, so it should be
+     * short, and it must only modify the set it is given.
+     *
+     * @param action the action to apply to a copy of this set
+     * @throws NullPointerException if the specified action is null
+     */
+    public void mutate(Consumer<? super Set<E>> action) {
+        if (action == null) throw new NullPointerException();
+        final ReentrantLock lock = al.lock;
+        lock.lock();
+        try {
+            @SuppressWarnings("unchecked") E[] elements = (E[]) al.getArray();
+            Set<E> copy = new LinkedHashSet<E>(Arrays.asList(elements));
+            action.accept(copy);
+            al.setArray(copy.toArray());
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
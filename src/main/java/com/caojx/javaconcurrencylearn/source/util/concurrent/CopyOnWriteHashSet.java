@@ -0,0 +1,397 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * CopyOnWriteHashSet是读多写少场景下用来代替CopyOnWriteArraySet的集合，contains是O(1)的哈希查找。
+ * <p>
+ * CopyOnWriteArraySet基于CopyOnWriteArrayList实现，contains需要线性扫描整个数组，集合有几千个元素时每次判断都要比较几千次。
+ * CopyOnWriteHashSet的做法：
+ * 1.每个版本是一个不可变的快照Snapshot，包含按插入顺序排列的元素数组和一个开放寻址（线性探测）的哈希表，
+ *   快照通过volatile字段发布；
+ * 2.contains和迭代都无锁地读取当前快照，迭代器具有与CopyOnWriteArraySet相同的快照语义，迭代顺序是插入顺序；
+ * 3.修改操作在锁内复制出新快照后发布，单个add仍然是O(n)的复制，
+ *   所以批量修改应该使用addAll/removeAll/removeIf/mutate，整批修改只构造一次快照。
+ * <p>
+ * A {@link Set} with the same copy-on-write semantics as
+ * {@link CopyOnWriteArraySet}, in which each version of the set is an
+ * immutable snapshot made of an insertion-ordered element array and an
+ * open-addressing hash table.  The current snapshot is published
+ * through a volatile field, so {@link #contains} is a lock-free hash
+ * lookup rather than a linear scan.
+ *
+ * <p>Mutative operations copy the snapshot under a lock and so remain
+ * O(n) each.  Bulk operations and {@link #mutate} build a single new
+ * snapshot for the whole batch.  Iterators traverse the snapshot that
+ * was current when they were created, in insertion order, and do not
+ * support {@code remove}.
+ *
+ * <p>Elements must have a {@code hashCode} consistent with
+ * {@code equals}.  {@code null} is permitted.
+ *
+ * @param <E> the type of elements held in this collection
+ * @author caojx created on 2026/10/19
+ * @see CopyOnWriteArraySet
+ */
+public class CopyOnWriteHashSet<E> extends AbstractSet<E> {
+
+    /**
+     * 哈希表中代替null元素的对象
+     */
+    static final Object NULL_KEY = new Object();
+
+    /**
+     * 哈希表最小长度
+     */
+    static final int MIN_TABLE = 2;
+
+    /**
+     * 不可变的快照. table的长度是2的幂并且至少是元素个数的两倍, 空槽位为null
+     */
+    static final class Snapshot {
+        final Object[] elements;
+        final Object[] table;
+        final int shift;
+
+        Snapshot(Object[] elements, Object[] table) {
+            this.elements = elements;
+            this.table = table;
+            this.shift = Integer.numberOfLeadingZeros(table.length) + 1;
+        }
+    }
+
+    static final Snapshot EMPTY = new Snapshot(new Object[0], new Object[MIN_TABLE]);
+
+    /**
+     * 排它锁, 用于同步修改操作
+     */
+    final transient ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * 当前快照
+     */
+    private transient volatile Snapshot snapshot;
+
+    /**
+     * Creates an empty set.
+     */
+    public CopyOnWriteHashSet() {
+        snapshot = EMPTY;
+    }
+
+    /**
+     * Creates a set containing all of the elements of the specified
+     * collection.
+     *
+     * @param c the collection of elements to initially contain
+     * @throws NullPointerException if the specified collection is null
+     */
+    public CopyOnWriteHashSet(Collection<? extends E> c) {
+        snapshot = build(new LinkedHashSet<Object>(c).toArray());
+    }
+
+    /* ---------------- Snapshot operations -------------- */
+
+    static Object maskNull(Object o) {
+        return (o == null) ? NULL_KEY : o;
+    }
+
+    /**
+     * 乘法哈希, 取高位作为下标, 避免连续的hashCode在线性探测时聚集
+     */
+    static int slot(Object k, int shift) {
+        return (k.hashCode() * 0x9E3779B9) >>> shift;
+    }
+
+    static int tableSizeFor(int n) {
+        int c = MIN_TABLE;
+        while (c < (n << 1))
+            c <<= 1;
+        return c;
+    }
+
+    /**
+     * 把k放入哈希表, 已存在时返回false
+     */
+    static boolean insert(Object[] tab, int shift, Object k) {
+        int mask = tab.length - 1;
+        for (int i = slot(k, shift); ; i = (i + 1) & mask) {
+            Object x = tab[i];
+            if (x == null) {
+                tab[i] = k;
+                return true;
+            }
+            if (x == k || k.equals(x))
+                return false;
+        }
+    }
+
+    static boolean contains(Snapshot s, Object o) {
+        Object k = maskNull(o);
+        Object[] tab = s.table;
+        int mask = tab.length - 1;
+        for (int i = slot(k, s.shift); ; i = (i + 1) & mask) {
+            Object x = tab[i];
+            if (x == null)
+                return false;
+            if (x == k || k.equals(x))
+                return true;
+        }
+    }
+
+    /**
+     * 用不含重复元素的数组构造快照
+     */
+    static Snapshot build(Object[] elements) {
+        if (elements.length == 0)
+            return EMPTY;
+        Object[] tab = new Object[tableSizeFor(elements.length)];
+        int shift = Integer.numberOfLeadingZeros(tab.length) + 1;
+        for (Object e : elements)
+            insert(tab, shift, maskNull(e));
+        return new Snapshot(elements, tab);
+    }
+
+    /* ---------------- Set operations -------------- */
+
+    public int size() {
+        return snapshot.elements.length;
+    }
+
+    public boolean isEmpty() {
+        return snapshot.elements.length == 0;
+    }
+
+    /**
+     * 无锁的哈希查找
+     * <p>
+     * Returns {@code true} if this set contains the specified element.
+     *
+     * @param o element whose presence in this set is to be tested
+     * @return {@code true} if this set contains the specified element
+     */
+    public boolean contains(Object o) {
+        return contains(snapshot, o);
+    }
+
+    public Object[] toArray() {
+        return snapshot.elements.clone();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(T[] a) {
+        Object[] elements = snapshot.elements;
+        int len = elements.length;
+        if (a.length < len)
+            return (T[]) Arrays.copyOf(elements, len, a.getClass());
+        System.arraycopy(elements, 0, a, 0, len);
+        if (a.length > len)
+            a[len] = null;
+        return a;
+    }
+
+    /**
+     * Adds the specified element to this set if it is not already present.
+     *
+     * @param e element to be added to this set
+     * @return {@code true} if this set did not already contain the specified
+     * element
+     */
+    public boolean add(E e) {
+        if (contains(snapshot, e))
+            return false;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Snapshot s = snapshot;
+            if (contains(s, e))
+                return false;
+            int len = s.elements.length;
+            Object[] elements = Arrays.copyOf(s.elements, len + 1);
+            elements[len] = e;
+            if (s.table.length < ((len + 1) << 1))
+                snapshot = build(elements);
+            else {
+                Object[] tab = s.table.clone();
+                insert(tab, s.shift, maskNull(e));
+                snapshot = new Snapshot(elements, tab);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the specified element from this set if it is present.
+     *
+     * @param o object to be removed from this set, if present
+     * @return {@code true} if this set contained the specified element
+     */
+    public boolean remove(Object o) {
+        if (!contains(snapshot, o))
+            return false;
+        return update(x -> (x == null) ? o == null : x.equals(o));
+    }
+
+    public void clear() {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            snapshot = EMPTY;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds all of the elements in the specified collection to this set
+     * as a single update.
+     *
+     * @param c collection containing elements to be added to this set
+     * @return {@code true} if this set changed as a result of the call
+     * @throws NullPointerException if the specified collection is null
+     */
+    public boolean addAll(Collection<? extends E> c) {
+        Object[] cs = c.toArray();
+        if (cs.length == 0)
+            return false;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Snapshot s = snapshot;
+            int len = s.elements.length, n = len;
+            Object[] elements = Arrays.copyOf(s.elements, len + cs.length);
+            Object[] tab = new Object[tableSizeFor(len + cs.length)];
+            int shift = Integer.numberOfLeadingZeros(tab.length) + 1;
+            for (Object e : s.elements)
+                insert(tab, shift, maskNull(e));
+            for (Object e : cs)
+                if (insert(tab, shift, maskNull(e)))
+                    elements[n++] = e;
+            if (n == len)
+                return false;
+            snapshot = new Snapshot(Arrays.copyOf(elements, n), tab);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 在锁内删除满足条件的元素, 整批只构造一次快照
+     */
+    private boolean update(Predicate<Object> filter) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Object[] old = snapshot.elements;
+            Object[] elements = new Object[old.length];
+            int n = 0;
+            for (Object x : old)
+                if (!filter.test(x))
+                    elements[n++] = x;
+            if (n == old.length)
+                return false;
+            snapshot = build(Arrays.copyOf(elements, n));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean removeAll(Collection<?> c) {
+        if (c == null) throw new NullPointerException();
+        return update(c::contains);
+    }
+
+    public boolean retainAll(Collection<?> c) {
+        if (c == null) throw new NullPointerException();
+        return update(x -> !c.contains(x));
+    }
+
+    @SuppressWarnings("unchecked")
+    public boolean removeIf(Predicate<? super E> filter) {
+        if (filter == null) throw new NullPointerException();
+        return update(x -> filter.test((E) x));
+    }
+
+    /**
+     * 批量修改：与CopyOnWriteArraySet.mutate相同，在锁内把当前元素复制到一个私有的LinkedHashSet交给action修改，
+     * 修改完成后只构造并发布一次快照，如果action抛出异常，本集合保持不变。
+     * <p>
+     * Applies the given action to a private mutable copy of this set,
+     * in iteration order, and then publishes the result as a single
+     * update.  If the action throws an exception, this set is left
+     * unchanged.  The action runs while holding this set's lock and must
+     * only modify the set it is given.
+     *
+     * @param action the action to apply to a copy of this set
+     * @throws NullPointerException if the specified action is null
+     */
+    public void mutate(Consumer<? super Set<E>> action) {
+        if (action == null) throw new NullPointerException();
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            @SuppressWarnings("unchecked") E[] elements = (E[]) snapshot.elements;
+            Set<E> copy = new LinkedHashSet<E>(Arrays.asList(elements));
+            action.accept(copy);
+            snapshot = build(copy.toArray());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super E> action) {
+        if (action == null) throw new NullPointerException();
+        for (Object x : snapshot.elements)
+            action.accept((E) x);
+    }
+
+    /**
+     * Returns an iterator over the elements contained in this set in the
+     * order in which they were added.
+     *
+     * <p>The returned iterator provides a snapshot of the state of the set
+     * when the iterator was constructed. No synchronization is needed while
+     * traversing the iterator. The iterator does <em>NOT</em> support the
+     * {@code remove} method.
+     *
+     * @return an iterator over the elements in this set
+     */
+    public Iterator<E> iterator() {
+        final Object[] elements = snapshot.elements;
+        return new Iterator<E>() {
+            private int cursor;
+
+            public boolean hasNext() {
+                return cursor < elements.length;
+            }
+
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (cursor >= elements.length)
+                    throw new NoSuchElementException();
+                return (E) elements[cursor++];
+            }
+        };
+    }
+
+    public Spliterator<E> spliterator() {
+        return Spliterators.spliterator(snapshot.elements,
+                Spliterator.IMMUTABLE | Spliterator.DISTINCT | Spliterator.ORDERED);
+    }
+}
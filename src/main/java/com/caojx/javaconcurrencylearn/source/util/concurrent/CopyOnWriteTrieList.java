@@ -0,0 +1,1103 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * CopyOnWriteTrieList是语义与CopyOnWriteArrayList相同的“写时复制”列表，但底层不是一个数组，而是一棵持久化（不可变）的32叉树。
+ * <p>
+ * CopyOnWriteArrayList每次修改都要复制整个数组，列表有1万个元素时，每注册一个监听器就要复制80KB。CopyOnWriteTrieList的做法：
+ * 1.元素保存在最多32个元素的叶子节点中，内部节点最多32个子节点，并记录子树大小的前缀和（类似RRB-Tree的relaxed radix），
+ *   所以任意位置的插入和删除都只影响一条从根到叶子的路径；
+ * 2.修改时在锁内只复制这条路径上的节点（每层最多32个槽位），其余节点在新旧两个版本之间共享，复制量是O(log32 n)而不是O(n)；
+ * 3.新的根节点通过volatile字段发布，读操作和迭代器都无锁地读取某一个版本的根节点，迭代器的快照语义与CopyOnWriteArrayList相同；
+ * 4.节点过小时与相邻节点合并或重新均分，保证树的高度是对数级别的。
+ * <p>
+ * 代价是get从O(1)变成O(log32 n)（1万个元素时树高为3），所以它适合元素较多、修改虽少但不能忽略的场景，
+ * 元素很少时CopyOnWriteArrayList仍然更好。
+ * <p>
+ * A thread-safe list with the semantics of {@link CopyOnWriteArrayList},
+ * backed by a persistent 32-way tree instead of a single array.  Each
+ * mutation copies only the nodes on one root-to-leaf path, at most 32
+ * slots per level, and shares every other node with the previous
+ * version, so a write costs O(log n) rather than O(n).  The new root is
+ * published through a volatile field.
+ *
+ * <p>Reads are lock-free.  The "snapshot" style iterators hold the root
+ * that was current when they were created, never throw
+ * {@code ConcurrentModificationException}, and do not support the
+ * element-changing operations {@code remove}, {@code set} and
+ * {@code add}.  Positional reads take O(log n) time, so for small lists
+ * {@link CopyOnWriteArrayList} remains the better choice.
+ *
+ * <p>All elements are permitted, including {@code null}.
+ *
+ * @param <E> the type of elements held in this collection
+ * @author caojx created on 2026/10/19
+ * @see CopyOnWriteArrayList
+ */
+public class CopyOnWriteTrieList<E> extends AbstractList<E>
+        implements List<E>, RandomAccess {
+
+    /**
+     * 每个节点的最大槽位数
+     */
+    static final int NODE_CAPACITY = 32;
+
+    /**
+     * 非最右侧节点的最小槽位数, 删除后低于这个值就与相邻节点合并
+     */
+    static final int MIN_SLOTS = NODE_CAPACITY / 4;
+
+    private static final Object[] EMPTY_SLOTS = new Object[0];
+
+    static final Node EMPTY = new Node(EMPTY_SLOTS, null);
+
+    /**
+     * 树节点, 创建后不再修改.
+     * 叶子节点的slots是元素, sizes为null; 内部节点的slots是子节点, sizes[i]是前i+1个子树的元素总数
+     */
+    static final class Node {
+        final Object[] slots;
+        final int[] sizes;
+
+        Node(Object[] slots, int[] sizes) {
+            this.slots = slots;
+            this.sizes = sizes;
+        }
+
+        int size() {
+            int[] s = sizes;
+            return (s == null) ? slots.length : s[s.length - 1];
+        }
+    }
+
+    /**
+     * 排它锁, 用于同步修改操作
+     */
+    final transient ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * 当前版本的根节点
+     */
+    private transient volatile Node root;
+
+    final Node getRoot() {
+        return root;
+    }
+
+    final void setRoot(Node r) {
+        // 根节点只剩一个子节点时降低树高
+        while (r.sizes != null && r.slots.length == 1)
+            r = (Node) r.slots[0];
+        root = r;
+    }
+
+    /**
+     * Creates an empty list.
+     */
+    public CopyOnWriteTrieList() {
+        root = EMPTY;
+    }
+
+    /**
+     * Creates a list containing the elements of the specified
+     * collection, in the order they are returned by the collection's
+     * iterator.
+     *
+     * @param c the collection of initially held elements
+     * @throws NullPointerException if the specified collection is null
+     */
+    public CopyOnWriteTrieList(Collection<? extends E> c) {
+        setRoot(build(c.toArray()));
+    }
+
+    /* ---------------- Tree operations -------------- */
+
+    /**
+     * 把数组按32个一组构造成叶子节点, 再逐层构造内部节点, 只有最右侧的节点可能不满
+     */
+    static Node build(Object[] a) {
+        int n = a.length;
+        if (n == 0)
+            return EMPTY;
+        Object[] level = new Object[(n + NODE_CAPACITY - 1) / NODE_CAPACITY];
+        for (int i = 0, j = 0; i < n; i += NODE_CAPACITY, ++j)
+            level[j] = new Node(Arrays.copyOfRange(a, i, Math.min(n, i + NODE_CAPACITY)), null);
+        while (level.length > 1) {
+            int m = level.length;
+            Object[] up = new Object[(m + NODE_CAPACITY - 1) / NODE_CAPACITY];
+            for (int i = 0, j = 0; i < m; i += NODE_CAPACITY, ++j)
+                up[j] = branch(Arrays.copyOfRange(level, i, Math.min(m, i + NODE_CAPACITY)));
+            level = up;
+        }
+        return (Node) level[0];
+    }
+
+    /**
+     * 用子节点数组创建内部节点, 计算子树大小的前缀和
+     */
+    static Node branch(Object[] children) {
+        int[] s = new int[children.length];
+        int t = 0;
+        for (int i = 0; i < children.length; ++i)
+            s[i] = t += ((Node) children[i]).size();
+        return new Node(children, s);
+    }
+
+    static Node make(Object[] slots, boolean leaf) {
+        return leaf ? new Node(slots, null) : branch(slots);
+    }
+
+    /**
+     * 找到包含第i个元素的子节点下标. 节点大多是满的, 先按32叉树的比例猜测位置, 再向左右修正
+     */
+    static int childIndex(int[] s, int i) {
+        int j = Math.min(i / s[0], s.length - 1);
+        while (j > 0 && s[j - 1] > i)
+            --j;
+        while (s[j] <= i)
+            ++j;
+        return j;
+    }
+
+    static Object get(Node n, int i) {
+        int[] s;
+        while ((s = n.sizes) != null) {
+            int j = childIndex(s, i);
+            if (j > 0)
+                i -= s[j - 1];
+            n = (Node) n.slots[j];
+        }
+        return n.slots[i];
+    }
+
+    static Node set(Node n, int i, Object e) {
+        int[] s = n.sizes;
+        Object[] c = n.slots.clone();
+        if (s == null)
+            c[i] = e;
+        else {
+            int j = childIndex(s, i);
+            c[j] = set((Node) c[j], (j > 0) ? i - s[j - 1] : i, e);
+        }
+        return new Node(c, s);
+    }
+
+    /**
+     * 在第i个位置插入元素, 返回新节点; 节点超过容量时分裂为两个节点.
+     * atEnd表示在整个列表末尾追加, 此时左边保留满节点, 避免顺序追加留下大量半满的节点
+     */
+    static Node[] insert(Node n, int i, Object e, boolean atEnd) {
+        Object[] c = n.slots;
+        int len = c.length;
+        int[] s = n.sizes;
+        Object[] d;
+        if (s == null) {
+            d = new Object[len + 1];
+            System.arraycopy(c, 0, d, 0, i);
+            d[i] = e;
+            System.arraycopy(c, i, d, i + 1, len - i);
+        } else {
+            int j = 0;
+            while (s[j] < i) // 边界位置插入到左边子节点的末尾
+                ++j;
+            Node[] r = insert((Node) c[j], (j > 0) ? i - s[j - 1] : i, e, atEnd);
+            if (r.length == 1) {
+                d = c.clone();
+                d[j] = r[0];
+                int[] t = s.clone();
+                for (int k = j; k < len; ++k)
+                    ++t[k];
+                return new Node[]{new Node(d, t)};
+            }
+            d = new Object[len + 1];
+            System.arraycopy(c, 0, d, 0, j);
+            d[j] = r[0];
+            d[j + 1] = r[1];
+            System.arraycopy(c, j + 1, d, j + 2, len - j - 1);
+        }
+        boolean leaf = (s == null);
+        if (d.length <= NODE_CAPACITY)
+            return new Node[]{make(d, leaf)};
+        int k = atEnd ? NODE_CAPACITY : d.length >>> 1;
+        return new Node[]{make(Arrays.copyOfRange(d, 0, k), leaf),
+                make(Arrays.copyOfRange(d, k, d.length), leaf)};
+    }
+
+    /**
+     * 删除第i个元素, 返回新节点. 子节点变空时删除该子节点;
+     * 子节点过小时与相邻的兄弟节点合并, 合并后超过容量则重新均分为两个节点
+     */
+    static Node remove(Node n, int i) {
+        Object[] c = n.slots;
+        int len = c.length;
+        int[] s = n.sizes;
+        if (s == null) {
+            Object[] d = new Object[len - 1];
+            System.arraycopy(c, 0, d, 0, i);
+            System.arraycopy(c, i + 1, d, i, len - i - 1);
+            return new Node(d, null);
+        }
+        int j = childIndex(s, i);
+        Node child = remove((Node) c[j], (j > 0) ? i - s[j - 1] : i);
+        int cn = child.slots.length;
+        if (cn == 0) {
+            if (len == 1)
+                return EMPTY;
+            Object[] d = new Object[len - 1];
+            System.arraycopy(c, 0, d, 0, j);
+            System.arraycopy(c, j + 1, d, j, len - j - 1);
+            return branch(d);
+        }
+        if (cn >= MIN_SLOTS || len == 1) {
+            Object[] d = c.clone();
+            d[j] = child;
+            int[] t = s.clone();
+            for (int k = j; k < len; ++k)
+                --t[k];
+            return new Node(d, t);
+        }
+        int lo = (j > 0) ? j - 1 : j;
+        Node a = (lo == j) ? child : (Node) c[lo];
+        Node b = (lo == j) ? (Node) c[lo + 1] : child;
+        boolean leaf = (a.sizes == null);
+        int an = a.slots.length, bn = b.slots.length;
+        Object[] m = new Object[an + bn];
+        System.arraycopy(a.slots, 0, m, 0, an);
+        System.arraycopy(b.slots, 0, m, an, bn);
+        Object[] d;
+        if (m.length <= NODE_CAPACITY) {
+            d = new Object[len - 1];
+            System.arraycopy(c, 0, d, 0, lo);
+            d[lo] = make(m, leaf);
+            System.arraycopy(c, lo + 2, d, lo + 1, len - lo - 2);
+        } else {
+            int half = m.length >>> 1;
+            d = c.clone();
+            d[lo] = make(Arrays.copyOfRange(m, 0, half), leaf);
+            d[lo + 1] = make(Arrays.copyOfRange(m, half, m.length), leaf);
+        }
+        return branch(d);
+    }
+
+    static Node insertAt(Node r, int i, Object e) {
+        Node[] ns = insert(r, i, e, i == r.size());
+        return (ns.length == 1) ? ns[0] : branch(new Object[]{ns[0], ns[1]});
+    }
+
+    /**
+     * 按顺序把所有元素复制到数组a中, 从下标off开始
+     */
+    static int copyTo(Node n, Object[] a, int off) {
+        Object[] c = n.slots;
+        if (n.sizes == null) {
+            System.arraycopy(c, 0, a, off, c.length);
+            return off + c.length;
+        }
+        for (Object x : c)
+            off = copyTo((Node) x, a, off);
+        return off;
+    }
+
+    static Object[] toArray(Node n) {
+        Object[] a = new Object[n.size()];
+        copyTo(n, a, 0);
+        return a;
+    }
+
+    /**
+     * 从下标base开始顺序查找o, 找不到返回-1
+     */
+    static int indexOf(Node n, Object o, int base) {
+        Object[] c = n.slots;
+        if (n.sizes == null) {
+            for (int i = 0; i < c.length; ++i)
+                if (Objects.equals(o, c[i]))
+                    return base + i;
+            return -1;
+        }
+        for (int j = 0; j < c.length; ++j) {
+            int r = indexOf((Node) c[j], o, (j > 0) ? base + n.sizes[j - 1] : base);
+            if (r >= 0)
+                return r;
+        }
+        return -1;
+    }
+
+    static int lastIndexOf(Node n, Object o, int base) {
+        Object[] c = n.slots;
+        if (n.sizes == null) {
+            for (int i = c.length - 1; i >= 0; --i)
+                if (Objects.equals(o, c[i]))
+                    return base + i;
+            return -1;
+        }
+        for (int j = c.length - 1; j >= 0; --j) {
+            int r = lastIndexOf((Node) c[j], o, (j > 0) ? base + n.sizes[j - 1] : base);
+            if (r >= 0)
+                return r;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E> void forEach(Node n, Consumer<? super E> action) {
+        Object[] c = n.slots;
+        if (n.sizes == null) {
+            for (Object x : c)
+                action.accept((E) x);
+        } else {
+            for (Object x : c)
+                forEach((Node) x, action);
+        }
+    }
+
+    /* ---------------- List operations -------------- */
+
+    private static String outOfBounds(int index, int size) {
+        return "Index: " + index + ", Size: " + size;
+    }
+
+    public int size() {
+        return root.size();
+    }
+
+    public boolean isEmpty() {
+        return root.size() == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     */
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        Node r = root;
+        int n = r.size();
+        if (index < 0 || index >= n)
+            throw new IndexOutOfBoundsException(outOfBounds(index, n));
+        return (E) get(r, index);
+    }
+
+    public boolean contains(Object o) {
+        return indexOf(root, o, 0) >= 0;
+    }
+
+    public int indexOf(Object o) {
+        return indexOf(root, o, 0);
+    }
+
+    public int lastIndexOf(Object o) {
+        return lastIndexOf(root, o, 0);
+    }
+
+    public Object[] toArray() {
+        return toArray(root);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(T[] a) {
+        Object[] elements = toArray(root);
+        int len = elements.length;
+        if (a.length < len)
+            return (T[]) Arrays.copyOf(elements, len, a.getClass());
+        System.arraycopy(elements, 0, a, 0, len);
+        if (a.length > len)
+            a[len] = null;
+        return a;
+    }
+
+    /**
+     * Replaces the element at the specified position in this list with the
+     * specified element.
+     *
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     */
+    public E set(int index, E element) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Node r = root;
+            E oldValue = get(index);
+            setRoot((oldValue != element) ? set(r, index, element) : r);
+            return oldValue;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends the specified element to the end of this list.
+     *
+     * @param e element to be appended to this list
+     * @return {@code true} (as specified by {@link Collection#add})
+     */
+    public boolean add(E e) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Node r = root;
+            setRoot(insertAt(r, r.size(), e));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts the specified element at the specified position in this
+     * list.
+     *
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     */
+    public void add(int index, E element) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Node r = root;
+            int n = r.size();
+            if (index < 0 || index > n)
+                throw new IndexOutOfBoundsException(outOfBounds(index, n));
+            setRoot(insertAt(r, index, element));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends the element, if not present.
+     *
+     * @param e element to be added to this list, if absent
+     * @return {@code true} if the element was added
+     */
+    public boolean addIfAbsent(E e) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Node r = root;
+            if (indexOf(r, e, 0) >= 0)
+                return false;
+            setRoot(insertAt(r, r.size(), e));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the element at the specified position in this list.
+     *
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     */
+    public E remove(int index) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Node r = root;
+            E oldValue = get(index);
+            setRoot(remove(r, index));
+            return oldValue;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the first occurrence of the specified element from this
+     * list, if it is present.
+     *
+     * @param o element to be removed from this list, if present
+     * @return {@code true} if this list contained the specified element
+     */
+    public boolean remove(Object o) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Node r = root;
+            int index = indexOf(r, o, 0);
+            if (index < 0)
+                return false;
+            setRoot(remove(r, index));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            root = EMPTY;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends all of the elements in the specified collection to the end
+     * of this list, in the order that they are returned by the specified
+     * collection's iterator.  All of them are published at once.
+     *
+     * @param c collection containing elements to be added to this list
+     * @return {@code true} if this list changed as a result of the call
+     * @throws NullPointerException if the specified collection is null
+     */
+    public boolean addAll(Collection<? extends E> c) {
+        return addAll(-1, c);
+    }
+
+    /**
+     * Inserts all of the elements in the specified collection into this
+     * list, starting at the specified position.  All of them are
+     * published at once.
+     *
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     * @throws NullPointerException      if the specified collection is null
+     */
+    public boolean addAll(int index, Collection<? extends E> c) {
+        Object[] cs = c.toArray();
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Node r = root;
+            int n = r.size();
+            if (index < 0)
+                index = n;
+            else if (index > n)
+                throw new IndexOutOfBoundsException(outOfBounds(index, n));
+            if (cs.length == 0)
+                return false;
+            if (cs.length < n / NODE_CAPACITY) {
+                // 插入的元素相对较少, 逐个做路径复制, 中间版本不发布
+                for (Object e : cs)
+                    r = insertAt(r, index++, e);
+            } else {
+                Object[] a = new Object[n + cs.length];
+                Object[] old = toArray(r);
+                System.arraycopy(old, 0, a, 0, index);
+                System.arraycopy(cs, 0, a, index, cs.length);
+                System.arraycopy(old, index, a, index + cs.length, n - index);
+                r = build(a);
+            }
+            setRoot(r);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 删除[fromIndex, toIndex)范围内的元素. 范围相对较小时逐个做路径复制, 否则重新构造整棵树
+     */
+    protected void removeRange(int fromIndex, int toIndex) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Node r = root;
+            int n = r.size();
+            if (fromIndex < 0 || toIndex > n || toIndex < fromIndex)
+                throw new IndexOutOfBoundsException();
+            int k = toIndex - fromIndex;
+            if (k < n / NODE_CAPACITY) {
+                for (int i = 0; i < k; ++i)
+                    r = remove(r, fromIndex);
+            } else {
+                Object[] old = toArray(r);
+                Object[] a = new Object[n - k];
+                System.arraycopy(old, 0, a, 0, fromIndex);
+                System.arraycopy(old, toIndex, a, fromIndex, n - toIndex);
+                r = build(a);
+            }
+            setRoot(r);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 批量修改: 在锁内取出全部元素, 修改后重新构造整棵树
+     */
+    private boolean rebuild(Predicate<Object> filter, UnaryOperator<Object[]> op) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Object[] a = toArray(root);
+            if (filter != null) {
+                int k = 0;
+                for (Object x : a)
+                    if (!filter.test(x))
+                        a[k++] = x;
+                if (k == a.length)
+                    return false;
+                a = Arrays.copyOf(a, k);
+            } else
+                a = op.apply(a);
+            setRoot(build(a));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean removeAll(Collection<?> c) {
+        if (c == null) throw new NullPointerException();
+        return rebuild(c::contains, null);
+    }
+
+    public boolean retainAll(Collection<?> c) {
+        if (c == null) throw new NullPointerException();
+        return rebuild(x -> !c.contains(x), null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public boolean removeIf(Predicate<? super E> filter) {
+        if (filter == null) throw new NullPointerException();
+        return rebuild(x -> filter.test((E) x), null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void replaceAll(UnaryOperator<E> operator) {
+        if (operator == null) throw new NullPointerException();
+        rebuild(null, a -> {
+            for (int i = 0; i < a.length; ++i)
+                a[i] = operator.apply((E) a[i]);
+            return a;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    public void sort(Comparator<? super E> c) {
+        rebuild(null, a -> {
+            Arrays.sort(a, (Comparator<Object>) c);
+            return a;
+        });
+    }
+
+    public void forEach(Consumer<? super E> action) {
+        if (action == null) throw new NullPointerException();
+        forEach(root, action);
+    }
+
+    /**
+     * Returns an iterator over the elements in this list in proper sequence.
+     *
+     * <p>The returned iterator provides a snapshot of the state of the list
+     * when the iterator was constructed. No synchronization is needed while
+     * traversing the iterator. The iterator does <em>NOT</em> support the
+     * {@code remove} method.
+     *
+     * @return an iterator over the elements in this list in proper sequence
+     */
+    public Iterator<E> iterator() {
+        Node r = root;
+        return new TrieIterator<E>(r, 0, r.size(), 0);
+    }
+
+    public ListIterator<E> listIterator() {
+        Node r = root;
+        return new TrieIterator<E>(r, 0, r.size(), 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     */
+    public ListIterator<E> listIterator(int index) {
+        Node r = root;
+        int n = r.size();
+        if (index < 0 || index > n)
+            throw new IndexOutOfBoundsException(outOfBounds(index, n));
+        return new TrieIterator<E>(r, 0, n, index);
+    }
+
+    public Spliterator<E> spliterator() {
+        Node r = root;
+        return Spliterators.spliterator(new TrieIterator<E>(r, 0, r.size(), 0), r.size(),
+                Spliterator.IMMUTABLE | Spliterator.ORDERED);
+    }
+
+    /**
+     * 快照迭代器, 缓存当前所在的叶子节点, 顺序遍历时每32个元素才从根节点重新定位一次
+     */
+    static final class TrieIterator<E> implements ListIterator<E> {
+        /**
+         * Snapshot of the tree
+         */
+        private final Node snapshot;
+        /**
+         * 迭代范围在快照中的起始下标和元素个数, 子列表的迭代器只遍历其中一段
+         */
+        private final int offset;
+        private final int size;
+        /**
+         * Index of element to be returned by subsequent call to next.
+         */
+        private int cursor;
+        /**
+         * 当前叶子节点的元素, 覆盖下标[leafStart, leafStart + leaf.length)
+         */
+        private Object[] leaf = EMPTY_SLOTS;
+        private int leafStart;
+
+        TrieIterator(Node root, int offset, int size, int initialCursor) {
+            snapshot = root;
+            this.offset = offset;
+            this.size = size;
+            cursor = initialCursor;
+        }
+
+        private Object elementAt(int i) {
+            i += offset;
+            int k = i - leafStart;
+            if (k < 0 || k >= leaf.length) {
+                Node n = snapshot;
+                int start = 0, j = i;
+                int[] s;
+                while ((s = n.sizes) != null) {
+                    int c = childIndex(s, j);
+                    if (c > 0) {
+                        start += s[c - 1];
+                        j -= s[c - 1];
+                    }
+                    n = (Node) n.slots[c];
+                }
+                leaf = n.slots;
+                leafStart = start;
+                k = j;
+            }
+            return leaf[k];
+        }
+
+        public boolean hasNext() {
+            return cursor < size;
+        }
+
+        public boolean hasPrevious() {
+            return cursor > 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return (E) elementAt(cursor++);
+        }
+
+        @SuppressWarnings("unchecked")
+        public E previous() {
+            if (!hasPrevious())
+                throw new NoSuchElementException();
+            return (E) elementAt(--cursor);
+        }
+
+        public int nextIndex() {
+            return cursor;
+        }
+
+        public int previousIndex() {
+            return cursor - 1;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void set(E e) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void add(E e) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super E> action) {
+            Objects.requireNonNull(action);
+            for (; cursor < size; ++cursor)
+                action.accept((E) elementAt(cursor));
+        }
+    }
+
+    /**
+     * Returns a view of the portion of this list between
+     * {@code fromIndex}, inclusive, and {@code toIndex}, exclusive.
+     * As with {@link CopyOnWriteArrayList#subList}, the returned list
+     * supports all of the optional list operations, bulk operations on
+     * it are published as a single update of this list, and its
+     * operations throw {@code ConcurrentModificationException} if the
+     * backing list is modified other than through it.
+     *
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     */
+    public List<E> subList(int fromIndex, int toIndex) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            int n = root.size();
+            if (fromIndex < 0 || toIndex > n || fromIndex > toIndex)
+                throw new IndexOutOfBoundsException();
+            return new TrieSubList<E>(this, fromIndex, toIndex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 子列表视图, 与CopyOnWriteArrayList.COWSubList相同, 通过检查根节点是否被其他操作替换来发现并发修改
+     */
+    private static class TrieSubList<E> extends AbstractList<E> implements RandomAccess {
+        private final CopyOnWriteTrieList<E> l;
+        private final int offset;
+        private int size;
+        private Node expectedRoot;
+
+        // only call this holding l's lock
+        TrieSubList(CopyOnWriteTrieList<E> list, int fromIndex, int toIndex) {
+            l = list;
+            expectedRoot = l.getRoot();
+            offset = fromIndex;
+            size = toIndex - fromIndex;
+        }
+
+        // only call this holding l's lock
+        private void checkForComodification() {
+            if (l.getRoot() != expectedRoot)
+                throw new ConcurrentModificationException();
+        }
+
+        // only call this holding l's lock
+        private void rangeCheck(int index) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException(outOfBounds(index, size));
+        }
+
+        public E set(int index, E element) {
+            final ReentrantLock lock = l.lock;
+            lock.lock();
+            try {
+                rangeCheck(index);
+                checkForComodification();
+                E x = l.set(index + offset, element);
+                expectedRoot = l.getRoot();
+                return x;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public E get(int index) {
+            final ReentrantLock lock = l.lock;
+            lock.lock();
+            try {
+                rangeCheck(index);
+                checkForComodification();
+                return l.get(index + offset);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public int size() {
+            final ReentrantLock lock = l.lock;
+            lock.lock();
+            try {
+                checkForComodification();
+                return size;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public void add(int index, E element) {
+            final ReentrantLock lock = l.lock;
+            lock.lock();
+            try {
+                checkForComodification();
+                if (index < 0 || index > size)
+                    throw new IndexOutOfBoundsException(outOfBounds(index, size));
+                l.add(index + offset, element);
+                expectedRoot = l.getRoot();
+                size++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public E remove(int index) {
+            final ReentrantLock lock = l.lock;
+            lock.lock();
+            try {
+                rangeCheck(index);
+                checkForComodification();
+                E result = l.remove(index + offset);
+                expectedRoot = l.getRoot();
+                size--;
+                return result;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public void clear() {
+            final ReentrantLock lock = l.lock;
+            lock.lock();
+            try {
+                checkForComodification();
+                l.removeRange(offset, offset + size);
+                expectedRoot = l.getRoot();
+                size = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        protected void removeRange(int fromIndex, int toIndex) {
+            final ReentrantLock lock = l.lock;
+            lock.lock();
+            try {
+                checkForComodification();
+                if (fromIndex < 0 || toIndex > size || toIndex < fromIndex)
+                    throw new IndexOutOfBoundsException();
+                l.removeRange(fromIndex + offset, toIndex + offset);
+                expectedRoot = l.getRoot();
+                size -= toIndex - fromIndex;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public boolean remove(Object o) {
+            int index = indexOf(o);
+            if (index == -1)
+                return false;
+            remove(index);
+            return true;
+        }
+
+        /**
+         * 批量修改子列表: 在锁内取出子列表范围内的元素, 过滤(filter不为null时)或整体替换后, 重新构造整棵树并只发布一次
+         */
+        private boolean updateRange(Predicate<Object> filter, UnaryOperator<Object[]> op) {
+            final ReentrantLock lock = l.lock;
+            lock.lock();
+            try {
+                checkForComodification();
+                Object[] all = CopyOnWriteTrieList.toArray(expectedRoot);
+                int lo = offset, hi = offset + size;
+                Object[] mid = Arrays.copyOfRange(all, lo, hi);
+                if (filter != null) {
+                    int k = 0;
+                    for (Object x : mid)
+                        if (!filter.test(x))
+                            mid[k++] = x;
+                    if (k == mid.length)
+                        return false;
+                    mid = Arrays.copyOf(mid, k);
+                } else
+                    mid = op.apply(mid);
+                Object[] a = new Object[all.length - size + mid.length];
+                System.arraycopy(all, 0, a, 0, lo);
+                System.arraycopy(mid, 0, a, lo, mid.length);
+                System.arraycopy(all, hi, a, lo + mid.length, all.length - hi);
+                l.setRoot(build(a));
+                expectedRoot = l.getRoot();
+                size = mid.length;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public boolean removeAll(Collection<?> c) {
+            if (c == null) throw new NullPointerException();
+            return updateRange(c::contains, null);
+        }
+
+        public boolean retainAll(Collection<?> c) {
+            if (c == null) throw new NullPointerException();
+            return updateRange(x -> !c.contains(x), null);
+        }
+
+        @SuppressWarnings("unchecked")
+        public boolean removeIf(Predicate<? super E> filter) {
+            if (filter == null) throw new NullPointerException();
+            return updateRange(x -> filter.test((E) x), null);
+        }
+
+        @SuppressWarnings("unchecked")
+        public void replaceAll(UnaryOperator<E> operator) {
+            if (operator == null) throw new NullPointerException();
+            updateRange(null, a -> {
+                for (int i = 0; i < a.length; ++i)
+                    a[i] = operator.apply((E) a[i]);
+                return a;
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        public void sort(Comparator<? super E> c) {
+            updateRange(null, a -> {
+                Arrays.sort(a, (Comparator<Object>) c);
+                return a;
+            });
+        }
+
+        public void forEach(Consumer<? super E> action) {
+            if (action == null) throw new NullPointerException();
+            Node r = expectedRoot;
+            if (l.getRoot() != r)
+                throw new ConcurrentModificationException();
+            new TrieIterator<E>(r, offset, size, 0).forEachRemaining(action);
+        }
+
+        public List<E> subList(int fromIndex, int toIndex) {
+            final ReentrantLock lock = l.lock;
+            lock.lock();
+            try {
+                checkForComodification();
+                if (fromIndex < 0 || toIndex > size || fromIndex > toIndex)
+                    throw new IndexOutOfBoundsException();
+                return new TrieSubList<E>(l, fromIndex + offset, toIndex + offset);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public Iterator<E> iterator() {
+            return listIterator(0);
+        }
+
+        public ListIterator<E> listIterator(int index) {
+            final ReentrantLock lock = l.lock;
+            lock.lock();
+            try {
+                checkForComodification();
+                if (index < 0 || index > size)
+                    throw new IndexOutOfBoundsException(outOfBounds(index, size));
+                return new TrieIterator<E>(expectedRoot, offset, size, index);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
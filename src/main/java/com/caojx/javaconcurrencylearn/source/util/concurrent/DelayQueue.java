@@ -91,7 +91,7 @@ import java.util.concurrent.TimeUnit;
  * @since 1.5
  */
 public class DelayQueue<E extends Delayed> extends AbstractQueue<E>
-        implements BlockingQueue<E> {
+        implements BlockingQueue<E>, InstrumentedQueue {
 
     private final transient ReentrantLock lock = new ReentrantLock();
 
@@ -135,6 +135,11 @@ public class DelayQueue<E extends Delayed> extends AbstractQueue<E>
      */
     private final Condition available = lock.newCondition();
 
+    /**
+     * 观测探针, 为null表示不做统计
+     */
+    private volatile QueueProbe probe;
+
     /**
      * 默认构造器
      * <p>
@@ -180,6 +185,9 @@ public class DelayQueue<E extends Delayed> extends AbstractQueue<E>
         lock.lock();
         try {
             q.offer(e);             // 调用PriorityQueue的offer方法
+            final QueueProbe p = probe;
+            if (p != null)
+                p.onEnqueue(q.size());
 
             // 需要注意的是当首次入队元素时，需要唤醒一个出队线程，因为此时可能已有出队线程在空队列上等待了，如果不唤醒，会导致出队线程永远无法执行。
             if (q.peek() == e) {    // 如果入队元素在队首, 则唤醒一个出队线程
@@ -235,7 +243,7 @@ public class DelayQueue<E extends Delayed> extends AbstractQueue<E>
             if (first == null || first.getDelay(NANOSECONDS) > 0)
                 return null;
             else
-                return q.poll();
+                return dequeue(first);
         } finally {
             lock.unlock();
         }
@@ -255,18 +263,23 @@ public class DelayQueue<E extends Delayed> extends AbstractQueue<E>
     public E take() throws InterruptedException {
         final ReentrantLock lock = this.lock;
         lock.lockInterruptibly();
+        long blockedAt = 0L;
         try {
             for (; ; ) {
                 E first = q.peek();     // 读取队首元素
-                if (first == null)      // CASE1: 队列为空, 直接阻塞
+                if (first == null) {    // CASE1: 队列为空, 直接阻塞
+                    if (blockedAt == 0L)
+                        blockedAt = blockStart();
                     available.await();
-                else {                  // CASE2: 队列非空
+                } else {                // CASE2: 队列非空
                     long delay = first.getDelay(NANOSECONDS);
                     if (delay <= 0)      // CASE2.0: 队首元素已过期，队首元素直接出队
-                        return q.poll();
+                        return dequeue(first);
 
                     // 执行到此处说明队列非空, 且队首元素未过期
                     first = null; // don't retain ref while waiting
+                    if (blockedAt == 0L)
+                        blockedAt = blockStart();
                     if (leader != null)     // CASE2.1: 已存在leader线程
                         available.await();  // 无限期阻塞当前线程
                     else {                  // CASE2.2: 不存在leader线程
@@ -284,6 +297,8 @@ public class DelayQueue<E extends Delayed> extends AbstractQueue<E>
         } finally {
             if (leader == null && q.peek() != null)     // 没有leader线程但队列中存在元素, 则唤醒一个其它出队线程
                 available.signal();
+            if (blockedAt != 0L)
+                consumerBlocked(blockedAt);
             lock.unlock();
         }
     }
@@ -302,21 +317,25 @@ public class DelayQueue<E extends Delayed> extends AbstractQueue<E>
         long nanos = unit.toNanos(timeout);
         final ReentrantLock lock = this.lock;
         lock.lockInterruptibly();
+        long blockedAt = 0L;
         try {
             for (; ; ) {
                 E first = q.peek();
                 if (first == null) {
                     if (nanos <= 0)
                         return null;
-                    else
-                        nanos = available.awaitNanos(nanos);
+                    if (blockedAt == 0L)
+                        blockedAt = blockStart();
+                    nanos = available.awaitNanos(nanos);
                 } else {
                     long delay = first.getDelay(NANOSECONDS);
                     if (delay <= 0)
-                        return q.poll();
+                        return dequeue(first);
                     if (nanos <= 0)
                         return null;
                     first = null; // don't retain ref while waiting
+                    if (blockedAt == 0L)
+                        blockedAt = blockStart();
                     if (nanos < delay || leader != null)
                         nanos = available.awaitNanos(nanos);
                     else {
@@ -335,6 +354,8 @@ public class DelayQueue<E extends Delayed> extends AbstractQueue<E>
         } finally {
             if (leader == null && q.peek() != null)
                 available.signal();
+            if (blockedAt != 0L)
+                consumerBlocked(blockedAt);
             lock.unlock();
         }
     }
@@ -369,6 +390,49 @@ public class DelayQueue<E extends Delayed> extends AbstractQueue<E>
         }
     }
 
+    /**
+     * 出队已过期的队首元素first.
+     * 对DelayQueue来说, 元素在到期之前本来就不能出队, 所以报告给探针的排队时间是元素“到期后”等待的时间，
+     * 即出队时getDelay返回值的相反数.
+     * <p>
+     * Removes the expired head, reporting the time since its delay
+     * expired as its sojourn time.  Call only when holding lock.
+     */
+    private E dequeue(E first) {
+        E x = q.poll();
+        final QueueProbe p = probe;
+        if (p != null)
+            p.onDequeue(Math.max(0L, -first.getDelay(NANOSECONDS)));
+        return x;
+    }
+
+    /**
+     * 开始阻塞时调用, 返回开始阻塞的时间; 没有安装探针时返回0, 不读取时钟.
+     */
+    private long blockStart() {
+        return (probe == null) ? 0L : System.nanoTime();
+    }
+
+    private void consumerBlocked(long start) {
+        QueueProbe p = probe;
+        if (p != null)
+            p.onConsumerBlocked(System.nanoTime() - start);
+    }
+
+    /**
+     * 安装探针. 由于队列是无界的, 生产者从不阻塞, 所以不会回调onProducerBlocked;
+     * 消费者的阻塞时间包括等待队首元素到期的时间.
+     * <p>
+     * {@inheritDoc}
+     */
+    public void setProbe(QueueProbe probe) {
+        this.probe = probe;
+    }
+
+    public QueueProbe getProbe() {
+        return probe;
+    }
+
     /**
      * Returns first element only if it is expired.
      * Used only by drainTo.  Call only when holding lock.
@@ -397,7 +461,7 @@ public class DelayQueue<E extends Delayed> extends AbstractQueue<E>
             int n = 0;
             for (E e; (e = peekExpired()) != null; ) {
                 c.add(e);       // In this order, in case add() throws.
-                q.poll();
+                dequeue(e);
                 ++n;
             }
             return n;
@@ -425,7 +489,7 @@ public class DelayQueue<E extends Delayed> extends AbstractQueue<E>
             int n = 0;
             for (E e; n < maxElements && (e = peekExpired()) != null; ) {
                 c.add(e);       // In this order, in case add() throws.
-                q.poll();
+                dequeue(e);
                 ++n;
             }
             return n;
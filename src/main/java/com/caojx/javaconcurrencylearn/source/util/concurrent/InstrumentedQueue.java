@@ -0,0 +1,50 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+/**
+ * InstrumentedQueue是可以挂观测探针的队列，ArrayBlockingQueue、LinkedBlockingQueue、PriorityBlockingQueue、
+ * LinkedBlockingDeque、DelayQueue、LinkedTransferQueue、RelaxedPriorityBlockingQueue、SkipListPriorityBlockingQueue和MappedFileBlockingQueue都实现了该接口。
+ * <p>
+ * 使用方式：
+ * <pre> {@code
+ * QueueStatistics stats = queue.recordStatistics();
+ * // ... 运行一段时间
+ * System.out.println(stats);
+ * }</pre>
+ * <p>
+ * A queue that reports its activity to an optional {@link QueueProbe}.
+ * No probe is installed by default, in which case the queue does not
+ * read the clock and the cost of instrumentation is a single volatile
+ * read per operation.
+ *
+ * @author caojx created on 2026/10/19
+ */
+public interface InstrumentedQueue {
+
+    /**
+     * Installs the given probe, replacing any previous one.  Elements
+     * already in the queue are reported with an unknown sojourn time.
+     *
+     * @param probe the probe, or {@code null} to disable instrumentation
+     */
+    void setProbe(QueueProbe probe);
+
+    /**
+     * Returns the installed probe.
+     *
+     * @return the installed probe, or {@code null} if none
+     */
+    QueueProbe getProbe();
+
+    /**
+     * 安装一个新的QueueStatistics探针并返回.
+     * <p>
+     * Installs and returns a new {@link QueueStatistics} probe.
+     *
+     * @return the installed statistics
+     */
+    default QueueStatistics recordStatistics() {
+        QueueStatistics stats = new QueueStatistics();
+        setProbe(stats);
+        return stats;
+    }
+}
@@ -38,6 +38,7 @@ package com.caojx.javaconcurrencylearn.source.util.concurrent;
 import java.util.*;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
@@ -87,7 +88,7 @@ import java.util.function.Consumer;
  */
 public class LinkedBlockingDeque<E>
         extends AbstractQueue<E>
-        implements BlockingDeque<E>, java.io.Serializable {
+        implements BlockingDeque<E>, InstrumentedQueue, java.io.Serializable {
 
     /*
      * Implemented as a simple doubly-linked list protected by a
@@ -106,6 +107,22 @@ public class LinkedBlockingDeque<E>
      * linking a Node that has just been dequeued to itself.  Such a
      * self-link implicitly means to jump to "first" (for next links)
      * or "last" (for prev links).
+     *
+     * The stack methods push and pop add an elimination layer in
+     * front of the lock.  When the lock is contended, a pusher
+     * publishes its node in a random slot of a small arena and spins
+     * briefly; a popper that also misses the lock scans the arena and
+     * takes any waiting node with a CAS.  Such a pair is linearized
+     * at that CAS as a push immediately followed by a pop of the same
+     * element, so it never touches the list.  The push half of such a
+     * pair must fail if the deque is full at that point, which cannot
+     * be checked without the lock, so elimination is used only by
+     * unbounded deques (capacity Integer.MAX_VALUE), where the
+     * list cannot hold that many nodes anyway.  A pusher that is not
+     * matched withdraws its node with a CAS and falls back to the
+     * lock; if the withdrawal fails the node was taken.  An installed
+     * probe sees an eliminated pair as an enqueue immediately
+     * followed by a dequeue, reported by the popper.
      */
 
     /*
@@ -122,7 +139,7 @@ public class LinkedBlockingDeque<E>
      * <p>
      * Doubly-linked list node class
      */
-    static final class Node<E> {
+    static class Node<E> {
         /**
          * 结点值, null表示该结点已被移除.
          * <p>
@@ -155,6 +172,19 @@ public class LinkedBlockingDeque<E>
         }
     }
 
+    /**
+     * 安装了探针时使用的结点, 额外记录入队时间. 没有探针时仍然使用Node, 不增加内存开销.
+     * <p>
+     * Node carrying its enqueue time, used only while a probe is installed.
+     */
+    static final class TimedNode<E> extends Node<E> {
+        long stamp;
+
+        TimedNode(E x) {
+            super(x);
+        }
+    }
+
     /**
      * 队首结点指针
      * <p>
@@ -207,6 +237,40 @@ public class LinkedBlockingDeque<E>
      */
     private final Condition notFull = lock.newCondition();
 
+    /**
+     * 观测探针, 为null表示不做统计
+     */
+    private transient volatile QueueProbe probe;
+
+    /**
+     * CPU核数
+     */
+    static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 消除数组的槽位数, 与CPU核数相关, 但不超过16.
+     * <p>
+     * The number of slots in the elimination arena.
+     */
+    static final int ELIMINATION_SLOTS = Math.min(16, Math.max(2, NCPU >>> 1));
+
+    /**
+     * push线程在消除数组中等待pop线程配对时的自旋次数，单核时不自旋（也就不做消除）.
+     * <p>
+     * The number of times a pusher spins waiting for a matching pop.
+     */
+    static final int ELIMINATION_SPINS = (NCPU > 1) ? 1 << 8 : 0;
+
+    /**
+     * 消除数组（elimination array）
+     * 锁竞争激烈时，push线程把结点放入随机的槽位中等待，pop线程直接从槽位取走结点，
+     * 这样一对push/pop相互抵消，完全不需要获取全局锁. 只有无界（容量为Integer.MAX_VALUE）的deque使用.
+     * <p>
+     * Elimination arena for push/pop; reset on deserialization.
+     */
+    private transient AtomicReferenceArray<Node<E>> arena =
+            new AtomicReferenceArray<Node<E>>(ELIMINATION_SLOTS);
+
     /**
      * 默认构造器
      * <p>
@@ -281,6 +345,7 @@ public class LinkedBlockingDeque<E>
             f.prev = node;
 
         ++count;            // 队列元素数量加1
+        enqueued(node);
         notEmpty.signal();  // 唤醒一个等待的出队线程
         return true;
     }
@@ -307,6 +372,7 @@ public class LinkedBlockingDeque<E>
             l.next = node;
 
         ++count;                // 队列元素加1
+        enqueued(node);
         notEmpty.signal();      // 唤醒一个等待的出队线程
         return true;
     }
@@ -334,6 +400,7 @@ public class LinkedBlockingDeque<E>
             n.prev = null;
 
         --count;            // 队列元素个数减1
+        dequeued(f);
         notFull.signal();   // 唤醒一个等待的入队线程
         return item;
     }
@@ -361,6 +428,7 @@ public class LinkedBlockingDeque<E>
             p.next = null;
 
         --count;            // 队列元素个数减1
+        dequeued(l);
         notFull.signal();    // 唤醒一个等待的入队线程
         return item;
     }
@@ -387,6 +455,75 @@ public class LinkedBlockingDeque<E>
         }
     }
 
+    /**
+     * 创建新结点: 安装了探针时创建TimedNode.
+     */
+    private Node<E> newNode(E e) {
+        return (probe == null) ? new Node<E>(e) : new TimedNode<E>(e);
+    }
+
+    /**
+     * 结点入队后调用: 记录入队时间, 并报告入队后的大小.
+     */
+    private void enqueued(Node<E> node) {
+        final QueueProbe p = probe;
+        if (p != null) {
+            if (node instanceof TimedNode)
+                ((TimedNode<E>) node).stamp = System.nanoTime();
+            p.onEnqueue(count);
+        }
+    }
+
+    /**
+     * 结点出队后调用, 报告该结点的排队时间.
+     */
+    private void dequeued(Node<E> node) {
+        final QueueProbe p = probe;
+        if (p != null)
+            p.onDequeue((node instanceof TimedNode) ?
+                    System.nanoTime() - ((TimedNode<E>) node).stamp :
+                    QueueProbe.UNKNOWN);
+    }
+
+    /**
+     * pop线程在消除数组中取走结点后调用, 向探针报告一次入队和紧接着的一次出队.
+     * 不持有锁, 报告的大小是对count的无锁读取, 只是近似值.
+     */
+    private void eliminated(Node<E> node) {
+        final QueueProbe p = probe;
+        if (p != null) {
+            p.onEnqueue(count + 1);
+            dequeued(node);
+        }
+    }
+
+    /**
+     * 开始阻塞时调用, 返回开始阻塞的时间; 没有安装探针时返回0, 不读取时钟.
+     */
+    private long blockStart() {
+        return (probe == null) ? 0L : System.nanoTime();
+    }
+
+    private void producerBlocked(long start) {
+        QueueProbe p = probe;
+        if (p != null)
+            p.onProducerBlocked(System.nanoTime() - start);
+    }
+
+    private void consumerBlocked(long start) {
+        QueueProbe p = probe;
+        if (p != null)
+            p.onConsumerBlocked(System.nanoTime() - start);
+    }
+
+    public void setProbe(QueueProbe probe) {
+        this.probe = probe;
+    }
+
+    public QueueProbe getProbe() {
+        return probe;
+    }
+
     // BlockingDeque methods
 
     /**
@@ -412,7 +549,7 @@ public class LinkedBlockingDeque<E>
      */
     public boolean offerFirst(E e) {
         if (e == null) throw new NullPointerException();
-        Node<E> node = new Node<E>(e);
+        Node<E> node = newNode(e);
         final ReentrantLock lock = this.lock;
         lock.lock();
         try {
@@ -427,7 +564,7 @@ public class LinkedBlockingDeque<E>
      */
     public boolean offerLast(E e) {
         if (e == null) throw new NullPointerException();
-        Node<E> node = new Node<E>(e);
+        Node<E> node = newNode(e);
         final ReentrantLock lock = this.lock;
         lock.lock();
         try {
@@ -446,13 +583,19 @@ public class LinkedBlockingDeque<E>
      */
     public void putFirst(E e) throws InterruptedException {
         if (e == null) throw new NullPointerException();
-        Node<E> node = new Node<E>(e);
+        Node<E> node = newNode(e);
         final ReentrantLock lock = this.lock;
         lock.lock();
+        long blockedAt = 0L;
         try {
-            while (!linkFirst(node))         // 队列已满, 则阻塞线程
+            while (!linkFirst(node)) {       // 队列已满, 则阻塞线程
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
                 notFull.await();
+            }
         } finally {
+            if (blockedAt != 0L)
+                producerBlocked(blockedAt);
             lock.unlock();
         }
     }
@@ -463,13 +606,19 @@ public class LinkedBlockingDeque<E>
      */
     public void putLast(E e) throws InterruptedException {
         if (e == null) throw new NullPointerException();    // 队列不能包含null元素
-        Node<E> node = new Node<E>(e);                      // 创建入队结点
+        Node<E> node = newNode(e);                      // 创建入队结点
         final ReentrantLock lock = this.lock;
         lock.lock();
+        long blockedAt = 0L;
         try {
-            while (!linkLast(node))                         // 队列已满, 则阻塞线程
+            while (!linkLast(node)) {                       // 队列已满, 则阻塞线程
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
                 notFull.await();
+            }
         } finally {
+            if (blockedAt != 0L)
+                producerBlocked(blockedAt);
             lock.unlock();
         }
     }
@@ -481,18 +630,23 @@ public class LinkedBlockingDeque<E>
     public boolean offerFirst(E e, long timeout, TimeUnit unit)
             throws InterruptedException {
         if (e == null) throw new NullPointerException();
-        Node<E> node = new Node<E>(e);
+        Node<E> node = newNode(e);
         long nanos = unit.toNanos(timeout);
         final ReentrantLock lock = this.lock;
         lock.lockInterruptibly();
+        long blockedAt = 0L;
         try {
             while (!linkFirst(node)) {
                 if (nanos <= 0)
                     return false;
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
                 nanos = notFull.awaitNanos(nanos);
             }
             return true;
         } finally {
+            if (blockedAt != 0L)
+                producerBlocked(blockedAt);
             lock.unlock();
         }
     }
@@ -504,18 +658,23 @@ public class LinkedBlockingDeque<E>
     public boolean offerLast(E e, long timeout, TimeUnit unit)
             throws InterruptedException {
         if (e == null) throw new NullPointerException();
-        Node<E> node = new Node<E>(e);
+        Node<E> node = newNode(e);
         long nanos = unit.toNanos(timeout);
         final ReentrantLock lock = this.lock;
         lock.lockInterruptibly();
+        long blockedAt = 0L;
         try {
             while (!linkLast(node)) {
                 if (nanos <= 0)
                     return false;
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
                 nanos = notFull.awaitNanos(nanos);
             }
             return true;
         } finally {
+            if (blockedAt != 0L)
+                producerBlocked(blockedAt);
             lock.unlock();
         }
     }
@@ -561,12 +720,18 @@ public class LinkedBlockingDeque<E>
     public E takeFirst() throws InterruptedException {
         final ReentrantLock lock = this.lock;
         lock.lock();
+        long blockedAt = 0L;
         try {
             E x;
-            while ((x = unlinkFirst()) == null)     // 队列为空, 则阻塞线程
+            while ((x = unlinkFirst()) == null) {     // 队列为空, 则阻塞线程
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
                 notEmpty.await();
+            }
             return x;
         } finally {
+            if (blockedAt != 0L)
+                consumerBlocked(blockedAt);
             lock.unlock();
         }
     }
@@ -579,12 +744,18 @@ public class LinkedBlockingDeque<E>
     public E takeLast() throws InterruptedException {
         final ReentrantLock lock = this.lock;
         lock.lock();
+        long blockedAt = 0L;
         try {
             E x;
-            while ((x = unlinkLast()) == null)  // 队列为空, 阻塞线程
+            while ((x = unlinkLast()) == null) {  // 队列为空, 阻塞线程
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
                 notEmpty.await();
+            }
             return x;
         } finally {
+            if (blockedAt != 0L)
+                consumerBlocked(blockedAt);
             lock.unlock();
         }
     }
@@ -594,15 +765,20 @@ public class LinkedBlockingDeque<E>
         long nanos = unit.toNanos(timeout);
         final ReentrantLock lock = this.lock;
         lock.lockInterruptibly();
+        long blockedAt = 0L;
         try {
             E x;
             while ((x = unlinkFirst()) == null) {
                 if (nanos <= 0)
                     return null;
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
                 nanos = notEmpty.awaitNanos(nanos);
             }
             return x;
         } finally {
+            if (blockedAt != 0L)
+                consumerBlocked(blockedAt);
             lock.unlock();
         }
     }
@@ -612,15 +788,20 @@ public class LinkedBlockingDeque<E>
         long nanos = unit.toNanos(timeout);
         final ReentrantLock lock = this.lock;
         lock.lockInterruptibly();
+        long blockedAt = 0L;
         try {
             E x;
             while ((x = unlinkLast()) == null) {
                 if (nanos <= 0)
                     return null;
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
                 nanos = notEmpty.awaitNanos(nanos);
             }
             return x;
         } finally {
+            if (blockedAt != 0L)
+                consumerBlocked(blockedAt);
             lock.unlock();
         }
     }
@@ -858,14 +1039,90 @@ public class LinkedBlockingDeque<E>
      * @throws NullPointerException  {@inheritDoc}
      */
     public void push(E e) {
-        addFirst(e);
+        if (e == null) throw new NullPointerException();
+        Node<E> node = newNode(e);
+        final ReentrantLock lock = this.lock;
+        if (!lock.tryLock()) {          // 锁有竞争时，先尝试在消除数组中与并发的pop直接配对
+            if (tryEliminatePush(node))
+                return;
+            lock.lock();
+        }
+        try {
+            if (!linkFirst(node))
+                throw new IllegalStateException("Deque full");
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * @throws NoSuchElementException {@inheritDoc}
      */
     public E pop() {
-        return removeFirst();
+        final ReentrantLock lock = this.lock;
+        if (!lock.tryLock()) {          // 锁有竞争时，先尝试从消除数组中取走一个等待的push结点
+            E x = tryEliminatePop();
+            if (x != null)
+                return x;
+            lock.lock();
+        }
+        E x;
+        try {
+            x = unlinkFirst();
+        } finally {
+            lock.unlock();
+        }
+        if (x == null) throw new NoSuchElementException();
+        return x;
+    }
+
+    /**
+     * push线程把结点放入消除数组的一个随机槽位，自旋等待pop线程取走.
+     * 超时后CAS撤回结点，撤回失败说明结点已经被pop线程取走了.
+     * <p>
+     * Offers node to a concurrent pop via the elimination arena.
+     *
+     * @return true if the node was taken by a pop
+     */
+    private boolean tryEliminatePush(Node<E> node) {
+        // 有界deque不做消除: 不加锁无法判断配对时deque是否已满, 满时push必须失败
+        if (ELIMINATION_SPINS == 0 || capacity != Integer.MAX_VALUE)
+            return false;
+        if (node instanceof TimedNode)          // 排队时间从放入消除数组时算起
+            ((TimedNode<E>) node).stamp = System.nanoTime();
+        final AtomicReferenceArray<Node<E>> a = arena;
+        int i = ThreadLocalRandom.current().nextInt(a.length());
+        if (!a.compareAndSet(i, null, node))    // 槽位已被其它push线程占用
+            return false;
+        for (int spins = ELIMINATION_SPINS; spins > 0; --spins) {
+            if (a.get(i) != node)               // 已被pop线程取走
+                return true;
+        }
+        return !a.compareAndSet(i, node, null);
+    }
+
+    /**
+     * pop线程扫描消除数组，取走一个正在等待的push结点.
+     * <p>
+     * Tries to take an element from a pusher waiting in the
+     * elimination arena.
+     *
+     * @return the element, or null if no pusher was waiting
+     */
+    private E tryEliminatePop() {
+        final AtomicReferenceArray<Node<E>> a = arena;
+        int n = a.length();
+        int i = ThreadLocalRandom.current().nextInt(n);
+        for (int k = 0; k < n; ++k) {
+            Node<E> p = a.get(i);
+            if (p != null && a.compareAndSet(i, p, null)) {
+                eliminated(p);
+                return p.item;
+            }
+            if (++i == n)
+                i = 0;
+        }
+        return null;
     }
 
     // Collection methods
@@ -1429,6 +1686,7 @@ public class LinkedBlockingDeque<E>
         count = 0;
         first = null;
         last = null;
+        arena = new AtomicReferenceArray<Node<E>>(ELIMINATION_SLOTS);
         // Read in all elements and place in queue
         for (; ; ) {
             @SuppressWarnings("unchecked")
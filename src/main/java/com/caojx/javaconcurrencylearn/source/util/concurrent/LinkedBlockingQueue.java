@@ -95,7 +95,7 @@ import java.util.concurrent.TimeUnit;
  * @since 1.5
  */
 public class LinkedBlockingQueue<E> extends AbstractQueue<E>
-        implements BlockingQueue<E>, java.io.Serializable {
+        implements BlockingQueue<E>, InstrumentedQueue, java.io.Serializable {
     private static final long serialVersionUID = -6903933977591709194L;
 
     /*
@@ -153,6 +153,19 @@ public class LinkedBlockingQueue<E> extends AbstractQueue<E>
         }
     }
 
+    /**
+     * 安装了探针时使用的结点, 额外记录入队时间. 没有探针时仍然使用Node, 不增加内存开销.
+     * <p>
+     * Node carrying its enqueue time, used only while a probe is installed.
+     */
+    static final class TimedNode<E> extends Node<E> {
+        long stamp;
+
+        TimedNode(E x) {
+            super(x);
+        }
+    }
+
     /**
      * 队列容量.
      * 如果不指定, 则为Integer.MAX_VALUE
@@ -212,6 +225,11 @@ public class LinkedBlockingQueue<E> extends AbstractQueue<E>
      */
     private final Condition notFull = putLock.newCondition();
 
+    /**
+     * 观测探针, 为null表示不做统计
+     */
+    private transient volatile QueueProbe probe;
+
     /**
      * Signals a waiting take. Called only from put/offer (which do not
      * otherwise ordinarily lock takeLock.)
@@ -248,6 +266,49 @@ public class LinkedBlockingQueue<E> extends AbstractQueue<E>
         // assert putLock.isHeldByCurrentThread();
         // assert last.next == null;
         last = last.next = node;
+        if (node instanceof TimedNode)
+            ((TimedNode<E>) node).stamp = System.nanoTime();
+    }
+
+    /**
+     * 创建新结点: 安装了探针时创建TimedNode.
+     */
+    private Node<E> newNode(E e) {
+        return (probe == null) ? new Node<E>(e) : new TimedNode<E>(e);
+    }
+
+    /**
+     * 出队一个结点后调用, 报告该结点的排队时间.
+     */
+    private static void dequeued(QueueProbe p, Node<?> node) {
+        p.onDequeue((node instanceof TimedNode) ?
+                System.nanoTime() - ((TimedNode<?>) node).stamp :
+                QueueProbe.UNKNOWN);
+    }
+
+    private void enqueued(int size) {
+        QueueProbe p = probe;
+        if (p != null)
+            p.onEnqueue(size);
+    }
+
+    /**
+     * 开始阻塞时调用, 返回开始阻塞的时间; 没有安装探针时返回0, 不读取时钟.
+     */
+    private long blockStart() {
+        return (probe == null) ? 0L : System.nanoTime();
+    }
+
+    private void producerBlocked(long start) {
+        QueueProbe p = probe;
+        if (p != null)
+            p.onProducerBlocked(System.nanoTime() - start);
+    }
+
+    private void consumerBlocked(long start) {
+        QueueProbe p = probe;
+        if (p != null)
+            p.onConsumerBlocked(System.nanoTime() - start);
     }
 
     /**
@@ -266,6 +327,9 @@ public class LinkedBlockingQueue<E> extends AbstractQueue<E>
         head = first;
         E x = first.item;
         first.item = null;
+        final QueueProbe p = probe;
+        if (p != null)
+            dequeued(p, first);
         return x;
     }
 
@@ -400,10 +464,11 @@ public class LinkedBlockingQueue<E> extends AbstractQueue<E>
         // Note: convention in all put/take/etc is to preset local var
         // holding count negative to indicate failure unless set.
         int c = -1;
-        Node<E> node = new Node<E>(e);
+        Node<E> node = newNode(e);
         final ReentrantLock putLock = this.putLock;
         final AtomicInteger count = this.count;
         putLock.lockInterruptibly();                // 获取“入队锁”
+        long blockedAt = 0L;
         try {
             /*
              * Note that count is used in wait guard even though it is
@@ -414,13 +479,18 @@ public class LinkedBlockingQueue<E> extends AbstractQueue<E>
              * for all other uses of count in other wait guards.
              */
             while (count.get() == capacity) {       // 队列已满, 则线程在notFull上等待
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
                 notFull.await();
             }
             enqueue(node);                          // 将新结点链接到“队尾”
             c = count.getAndIncrement();            // 自增1，并返回自增前的元素个数，c表示入队前的队列元素个数
+            enqueued(c + 1);
             if (c + 1 < capacity)                   // 入队后队列未满, 则唤醒一个“入队线程”
                 notFull.signal();
         } finally {
+            if (blockedAt != 0L)
+                producerBlocked(blockedAt);
             putLock.unlock();
         }
         if (c == 0)     // 如果队列为空了，说明何有可能很快就有入队元素，所以先唤醒一个出队线程，以提升性能
@@ -445,17 +515,23 @@ public class LinkedBlockingQueue<E> extends AbstractQueue<E>
         final ReentrantLock putLock = this.putLock;
         final AtomicInteger count = this.count;
         putLock.lockInterruptibly();
+        long blockedAt = 0L;
         try {
             while (count.get() == capacity) {
                 if (nanos <= 0)
                     return false;
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
                 nanos = notFull.awaitNanos(nanos);
             }
-            enqueue(new Node<E>(e));
+            enqueue(newNode(e));
             c = count.getAndIncrement();
+            enqueued(c + 1);
             if (c + 1 < capacity)
                 notFull.signal();
         } finally {
+            if (blockedAt != 0L)
+                producerBlocked(blockedAt);
             putLock.unlock();
         }
         if (c == 0)
@@ -480,13 +556,14 @@ public class LinkedBlockingQueue<E> extends AbstractQueue<E>
         if (count.get() == capacity)
             return false;
         int c = -1;
-        Node<E> node = new Node<E>(e);
+        Node<E> node = newNode(e);
         final ReentrantLock putLock = this.putLock;
         putLock.lock();
         try {
             if (count.get() < capacity) {
                 enqueue(node);
                 c = count.getAndIncrement();
+                enqueued(c + 1);
                 if (c + 1 < capacity)
                     notFull.signal();
             }
@@ -510,8 +587,11 @@ public class LinkedBlockingQueue<E> extends AbstractQueue<E>
         final AtomicInteger count = this.count;
         final ReentrantLock takeLock = this.takeLock;   // 获取“出队锁”
         takeLock.lockInterruptibly();
+        long blockedAt = 0L;
         try {
             while (count.get() == 0) {                  // 队列为空, 则阻塞线程
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
                 notEmpty.await();
             }
             x = dequeue();
@@ -519,6 +599,8 @@ public class LinkedBlockingQueue<E> extends AbstractQueue<E>
             if (c > 1)                                  // 出队前队列非空, 则唤醒一个出队线程
                 notEmpty.signal();
         } finally {
+            if (blockedAt != 0L)
+                consumerBlocked(blockedAt);
             takeLock.unlock();
         }
         if (c == capacity)   // 队列满了，说明很快将会有出队线程从队列中获取元素，之后队列就可以重新入队了，所以先唤醒一个入队线程，以提升性能
@@ -533,10 +615,13 @@ public class LinkedBlockingQueue<E> extends AbstractQueue<E>
         final AtomicInteger count = this.count;
         final ReentrantLock takeLock = this.takeLock;
         takeLock.lockInterruptibly();
+        long blockedAt = 0L;
         try {
             while (count.get() == 0) {
                 if (nanos <= 0)
                     return null;
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
                 nanos = notEmpty.awaitNanos(nanos);
             }
             x = dequeue();
@@ -544,6 +629,8 @@ public class LinkedBlockingQueue<E> extends AbstractQueue<E>
             if (c > 1)
                 notEmpty.signal();
         } finally {
+            if (blockedAt != 0L)
+                consumerBlocked(blockedAt);
             takeLock.unlock();
         }
         if (c == capacity)
@@ -810,11 +897,14 @@ public class LinkedBlockingQueue<E> extends AbstractQueue<E>
             // count.get provides visibility to first n Nodes
             Node<E> h = head;
             int i = 0;
+            final QueueProbe probe = this.probe;
             try {
                 while (i < n) {
                     Node<E> p = h.next;
                     c.add(p.item);
                     p.item = null;
+                    if (probe != null)
+                        dequeued(probe, p);
                     h.next = h;
                     h = p;
                     ++i;
@@ -835,6 +925,14 @@ public class LinkedBlockingQueue<E> extends AbstractQueue<E>
         }
     }
 
+    public void setProbe(QueueProbe probe) {
+        this.probe = probe;
+    }
+
+    public QueueProbe getProbe() {
+        return probe;
+    }
+
     /**
      * Returns an iterator over the elements in this queue in proper sequence.
      * The elements will be returned in order from first (head) to last (tail).
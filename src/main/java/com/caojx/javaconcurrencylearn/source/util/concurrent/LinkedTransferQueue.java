@@ -35,6 +35,8 @@
 
 package com.caojx.javaconcurrencylearn.source.util.concurrent;
 
+import com.caojx.javaconcurrencylearn.source.util.concurrent.atomic.AtomicInteger;
+
 import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
@@ -105,7 +107,7 @@ import java.util.function.Consumer;
  * @since 1.7
  */
 public class LinkedTransferQueue<E> extends AbstractQueue<E>
-        implements TransferQueue<E>, java.io.Serializable {
+        implements TransferQueue<E>, InstrumentedQueue, java.io.Serializable {
     private static final long serialVersionUID = -3223113410248163686L;
 
     /*
@@ -442,7 +444,8 @@ public class LinkedTransferQueue<E> extends AbstractQueue<E>
      * <p>
      * The number of times to spin (with randomly interspersed calls
      * to Thread.yield) on multiprocessor before blocking when a node
-     * is apparently the first waiter in the queue.  See above for
+     * is apparently the first waiter in the queue.  Now only the
+     * initial value of spinPolicy's budget.  See above for
      * explanation. Must be a power of two. The value is empirically
      * derived -- it works pretty well across a variety of processors,
      * numbers of CPUs, and OSes.
@@ -477,7 +480,7 @@ public class LinkedTransferQueue<E> extends AbstractQueue<E>
      * unnecessary ordering constraints: Writes that are intrinsically
      * ordered wrt other accesses or CASes use simple relaxed forms.
      */
-    static final class Node {
+    static class Node {
         // Node结点有两种类型：数据结点、请求结点，通过字段isData区分，只有不同类型的结点才能相互匹配；
         final boolean isData;   // false if this is a request node      // true: 数据结点; false: 请求结点
 
@@ -608,6 +611,20 @@ public class LinkedTransferQueue<E> extends AbstractQueue<E>
         }
     }
 
+    /**
+     * 安装了探针时使用的数据结点, 额外记录入队时间. 没有探针时仍然使用Node, 不增加内存开销.
+     * <p>
+     * Data node carrying its enqueue time, used only while a probe is
+     * installed.
+     */
+    static final class TimedNode extends Node {
+        final long stamp = System.nanoTime();
+
+        TimedNode(Object item) {
+            super(item, true);
+        }
+    }
+
     /**
      * 队首结点指针.
      * <p>
@@ -627,6 +644,28 @@ public class LinkedTransferQueue<E> extends AbstractQueue<E>
      */
     private transient volatile int sweepVotes;
 
+    /**
+     * 自适应自旋策略: 自旋预算作为FRONT_SPINS使用, 一半作为CHAINED_SPINS使用.
+     * <p>
+     * Adaptive spin budget, used in place of FRONT_SPINS (with half of
+     * it in place of CHAINED_SPINS); reset on deserialization.
+     */
+    private transient AdaptiveSpinPolicy spinPolicy =
+            new AdaptiveSpinPolicy(FRONT_SPINS, FRONT_SPINS << 3);
+
+    /**
+     * 观测探针, 为null表示不做统计
+     */
+    private transient volatile QueueProbe probe;
+
+    /**
+     * 队列中TimedNode的个数, 作为onEnqueue报告的队列大小; 只在安装了探针时才会有TimedNode, 所以没有探针时不更新.
+     * <p>
+     * The number of TimedNodes appended and not yet matched, cancelled
+     * or removed; reset on deserialization.
+     */
+    private transient AtomicInteger timedCount = new AtomicInteger();
+
     // CAS设置队尾tail指针为val
     // CAS methods for fields
     private boolean casTail(Node cmp, Node val) {
@@ -696,6 +735,8 @@ public class LinkedTransferQueue<E> extends AbstractQueue<E>
                                 break;        // unless slack < 2
                         }
                         LockSupport.unpark(p.waiter);                                   // 唤醒匹配结点上的等待线程
+                        if (isData)                                                     // 取走了一个数据结点
+                            dequeued(p, true);
                         return LinkedTransferQueue.<E>cast(item);                       // 返回匹配结点的值
                     }
                 }
@@ -705,8 +746,8 @@ public class LinkedTransferQueue<E> extends AbstractQueue<E>
 
             if (how != NOW) {                 // No matches available
                 if (s == null)
-                    s = new Node(e, haveData);      // 创建一个入队结点
-                Node pred = tryAppend(s, haveData); // 添加到队尾，pred指向s的前驱结点或s（队列中只有一个结点）或null（tryAppend失败）
+                    s = newNode(e, haveData);       // 创建一个入队结点
+                Node pred = append(s, haveData);    // 添加到队尾，pred指向s的前驱结点或s（队列中只有一个结点）或null（append失败）
                 if (pred == null)
                     continue retry;           // lost race vs opposite mode // 入队失败，则重试
                 if (how != ASYNC)
@@ -716,6 +757,74 @@ public class LinkedTransferQueue<E> extends AbstractQueue<E>
         }
     }
 
+    /**
+     * 创建新结点: 安装了探针时数据结点创建为TimedNode.
+     */
+    private Node newNode(Object e, boolean haveData) {
+        return (haveData && probe != null) ? new TimedNode(e) : new Node(e, haveData);
+    }
+
+    /**
+     * tryAppend加上探针统计: TimedNode在追加之前计数, 追加失败时撤销, 所以计数不会小于队列中TimedNode的实际个数.
+     * <p>
+     * Calls tryAppend, counting s first if it is a TimedNode and
+     * reporting the enqueue if the append succeeds.
+     */
+    private Node append(Node s, boolean haveData) {
+        if (!(s instanceof TimedNode))
+            return tryAppend(s, haveData);
+        int size = timedCount.incrementAndGet();
+        Node pred = tryAppend(s, haveData);
+        if (pred == null)
+            timedCount.decrementAndGet();
+        else {
+            QueueProbe p = probe;
+            if (p != null)
+                p.onEnqueue(size);
+        }
+        return pred;
+    }
+
+    /**
+     * 数据结点p离开队列时调用: taken为true表示被消费者取走（报告排队时间）, false表示被取消或删除（只更新计数）.
+     * <p>
+     * Called after data node p has been matched; taken is true if a
+     * consumer received its item, false if it was cancelled or removed.
+     */
+    private void dequeued(Node p, boolean taken) {
+        boolean timed = p instanceof TimedNode;
+        if (timed)
+            timedCount.decrementAndGet();
+        if (taken) {
+            QueueProbe q = probe;
+            if (q != null)
+                q.onDequeue(timed ?
+                        System.nanoTime() - ((TimedNode) p).stamp :
+                        QueueProbe.UNKNOWN);
+        }
+    }
+
+    /**
+     * 开始等待时调用, 返回开始等待的时间; 没有安装探针时返回0, 不读取时钟.
+     */
+    private long blockStart() {
+        return (probe == null) ? 0L : System.nanoTime();
+    }
+
+    /**
+     * 等待结束时调用: 数据结点的等待是生产者阻塞（transfer）, 请求结点的等待是消费者阻塞（take/poll）.
+     */
+    private void blocked(Node s, long start) {
+        QueueProbe p = probe;
+        if (p != null) {
+            long nanos = System.nanoTime() - start;
+            if (s.isData)
+                p.onProducerBlocked(nanos);
+            else
+                p.onConsumerBlocked(nanos);
+        }
+    }
+
     /**
      * 尝试将结点s添加到队尾.
      * <p>
@@ -776,6 +885,9 @@ public class LinkedTransferQueue<E> extends AbstractQueue<E>
         final long deadline = timed ? System.nanoTime() + nanos : 0L;       // 限时等待情况下使用
         Thread w = Thread.currentThread();
         int spins = -1; // initialized after first item and cancel checks   // 自旋次数, 锁优化操作
+        int budget = 0;
+        long parkedAt = 0L;                                                 // 第一次阻塞的时间, 0表示还没有阻塞过
+        long blockedAt = 0L;                                                // 开始等待的时间, 只在安装了探针时读取时钟
         ThreadLocalRandom randomYields = null; // bound if needed
 
         for (; ; ) {
@@ -783,18 +895,29 @@ public class LinkedTransferQueue<E> extends AbstractQueue<E>
             if (item != e) {                  // matched                    // CASE1: 匹配成功
                 // assert item != s;
                 s.forgetContents();           // avoid garbage              // 设置当前结点的值为自身，设置当前结点的等待线程为null.
+                if (parkedAt == 0L)                                         // 把本次等待的结果反馈给spinPolicy
+                    spinPolicy.spunHandoff(budget - Math.max(spins, 0), budget);
+                else
+                    spinPolicy.parkedHandoff(System.nanoTime() - parkedAt);
+                if (blockedAt != 0L)
+                    blocked(s, blockedAt);
                 return LinkedTransferQueue.<E>cast(item);
             }
             if ((w.isInterrupted() || (timed && nanos <= 0)) &&
                     s.casItem(e, s)) {        // cancel                     // CASE2: 取消（线程被中断或超时）
                 unsplice(pred, s);
+                if (s.isData)
+                    dequeued(s, false);
+                if (blockedAt != 0L)
+                    blocked(s, blockedAt);
                 return e;
             }
 
             // CASE3: 设置轻量级锁（自旋 -> yield）
 
             if (spins < 0) {                  // establish spins at/near front  // 初始化自旋次数
-                if ((spins = spinsFor(pred, s.isData)) > 0)
+                blockedAt = blockStart();
+                if ((budget = spins = spinsFor(pred, s.isData)) > 0)
                     randomYields = ThreadLocalRandom.current();
             } else if (spins > 0) {             // spin                         // 自选次数减1
                 --spins;
@@ -804,9 +927,14 @@ public class LinkedTransferQueue<E> extends AbstractQueue<E>
                 s.waiter = w;                 // request unpark then recheck    // waiter保存待阻塞线程
             } else if (timed) {                                                 // 限时等待情况, 计算剩余有效时间
                 nanos = deadline - System.nanoTime();
-                if (nanos > 0L)
+                if (nanos > 0L) {
+                    if (parkedAt == 0L)
+                        parkedAt = System.nanoTime();
                     LockSupport.parkNanos(this, nanos);
+                }
             } else {
+                if (parkedAt == 0L)
+                    parkedAt = System.nanoTime();
                 LockSupport.park(this);                                  // CASE4: 阻塞线程
             }
         }
@@ -814,20 +942,53 @@ public class LinkedTransferQueue<E> extends AbstractQueue<E>
 
     /**
      * Returns spin/yield value for a node with given predecessor and
-     * data mode. See above for explanation.
+     * data mode, scaled by the current adaptive budget. See above for
+     * explanation.
      */
-    private static int spinsFor(Node pred, boolean haveData) {
+    private int spinsFor(Node pred, boolean haveData) {
         if (MP && pred != null) {
+            int front = spinPolicy.spins(false), chained = front >>> 1;
             if (pred.isData != haveData)      // phase change
-                return FRONT_SPINS + CHAINED_SPINS;
+                return front + chained;
             if (pred.isMatched())             // probably at front
-                return FRONT_SPINS;
+                return front;
             if (pred.waiter == null)          // pred apparently spinning
-                return CHAINED_SPINS;
+                return chained;
         }
         return 0;
     }
 
+    /**
+     * 返回本队列的自适应自旋策略, 可用于查看自旋/阻塞的配对次数.
+     * <p>
+     * Returns the adaptive spin policy of this queue, which reports
+     * how many handoffs completed while spinning versus after parking.
+     *
+     * @return the adaptive spin policy of this queue
+     */
+    public AdaptiveSpinPolicy getSpinPolicy() {
+        return spinPolicy;
+    }
+
+    /**
+     * 只统计留在队列中的数据结点（offer/put/add追加的元素以及正在等待的transfer）: onEnqueue报告队列中数据结点的个数,
+     * onDequeue报告被消费者取走时的排队时间; 直接交给正在等待的消费者的元素没有入队, 不报告.
+     * 生产者阻塞是transfer/tryTransfer/transferAll等待消费者的时间, 消费者阻塞是take/poll等待元素的时间.
+     * <p>
+     * Only elements that are actually queued are reported: an element
+     * handed directly to a waiting consumer is neither enqueued nor
+     * dequeued.  The reported size counts only elements inserted while
+     * a probe was installed.  Producer waits are the waits of
+     * {@code transfer} and its variants for a consumer.
+     */
+    public void setProbe(QueueProbe probe) {
+        this.probe = probe;
+    }
+
+    public QueueProbe getProbe() {
+        return probe;
+    }
+
     /* -------------- Traversal methods -------------- */
 
     /**
@@ -998,8 +1159,10 @@ public class LinkedTransferQueue<E> extends AbstractQueue<E>
             if (lastRet == null)
                 throw new IllegalStateException();
             this.lastRet = null;
-            if (lastRet.tryMatchData())
+            if (lastRet.tryMatchData()) {
                 unsplice(lastPred, lastRet);
+                dequeued(lastRet, false);
+            }
         }
     }
 
@@ -1197,6 +1360,7 @@ public class LinkedTransferQueue<E> extends AbstractQueue<E>
                     if (item != null && item != p && e.equals(item) &&
                             p.tryMatchData()) {
                         unsplice(pred, p);
+                        dequeued(p, false);
                         return true;
                     }
                 } else if (item == null)
@@ -1339,6 +1503,106 @@ public class LinkedTransferQueue<E> extends AbstractQueue<E>
         throw new InterruptedException();
     }
 
+    /**
+     * 批量传递: 把集合c中的所有元素一次性交给消费者，整批元素只做一次等待（自旋/阻塞）.
+     * <p>
+     * 实现思路：逐个元素先尝试直接匹配正在等待的消费者（相当于NOW模式的xfer），匹配不到就追加到队尾但不等待（相当于ASYNC模式）；
+     * 然后按顺序等待本批次的每个结点被匹配，已匹配的结点直接跳过。消费者总是从队首开始匹配，所以通常只在第一个未匹配的结点上阻塞一次，
+     * 但不依赖这一点：每个结点都要确认被匹配后才计入结果。
+     * 超时或被中断时，撤回本批次中所有还未被匹配的结点，并返回已经交给消费者的元素个数（与drainTo一样报告部分结果）；
+     * 等待期间被中断时不抛出InterruptedException，而是保留线程的中断状态，调用者可以通过返回值和中断状态区分超时和中断。
+     * 只有调用时线程已经被中断才抛出InterruptedException，此时没有任何元素入队。
+     * 注意：等待期间被remove(Object)或迭代器删除的结点与被消费者取走的结点无法区分，也计为已传递.
+     * <p>
+     * Transfers all elements of the given collection to consumers,
+     * waiting if necessary, with a single rendezvous for the whole
+     * batch.
+     *
+     * <p>Each element is first handed to a consumer that is already
+     * waiting, if there is one, and otherwise appended to the tail of
+     * this queue without waiting.  The caller then waits, in order, for
+     * each appended element to be received, skipping those already
+     * received; since consumers match from the head, this usually
+     * blocks only once for the whole batch.  If the specified wait time
+     * elapses first, the elements not yet received are withdrawn from
+     * the queue.
+     *
+     * <p>If the caller is interrupted while waiting, the elements not
+     * yet received are withdrawn in the same way, the interrupt status
+     * is left set, and the number of elements already received is
+     * returned instead of throwing {@code InterruptedException}, so that
+     * the partial count is not lost.  The exception is thrown only if
+     * the caller is interrupted on entry, before any element has been
+     * handed off or queued.  An element removed from this queue by
+     * {@link #remove(Object)} or through an iterator while the caller
+     * waits cannot be told apart from one received by a consumer, and
+     * is counted as received.
+     *
+     * @param c       the elements to transfer, in order
+     * @param timeout how long to wait before giving up, in units of
+     *                {@code unit}
+     * @param unit    a {@code TimeUnit} determining how to interpret the
+     *                {@code timeout} parameter
+     * @return the number of elements received by consumers; equal to
+     * {@code c.size()} unless the wait timed out or was interrupted
+     * @throws InterruptedException if interrupted on entry, in which
+     *                              case no element has been transferred
+     * @throws NullPointerException if the specified collection or any
+     *                              of its elements is null
+     */
+    public int transferAll(Collection<? extends E> c, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        Object[] a = c.toArray();
+        int n = a.length;
+        for (Object x : a)
+            if (x == null)
+                throw new NullPointerException();
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        Node[] nodes = new Node[n];     // 本批次追加到队列中的结点, 直接交给消费者的元素对应位置为null
+        Node[] preds = new Node[n];     // 对应结点的前驱, 撤回时用于unsplice
+        int last = -1;
+        for (int i = 0; i < n; ++i) {
+            E e = LinkedTransferQueue.<E>cast(a[i]);
+            for (; ; ) {
+                if (xfer(e, true, NOW, 0) == null)  // 直接交给正在等待的消费者
+                    break;
+                Node s = newNode(e, true);
+                Node pred = append(s, true);        // 追加到队尾, 但不等待
+                if (pred != null) {
+                    nodes[i] = s;
+                    preds[i] = pred;
+                    last = i;
+                    break;
+                }                                   // lost race vs opposite mode, retry
+            }
+        }
+        if (last < 0)
+            return n;                               // 全部直接交给了消费者
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int transferred = n;
+        boolean cancelled = false;
+        for (int i = 0; i <= last; ++i) {
+            Node s = nodes[i];
+            if (s == null)
+                continue;
+            E e = LinkedTransferQueue.<E>cast(a[i]);
+            if (!cancelled) {
+                // 已匹配的结点不调用awaitMatch, 避免把没有发生的等待反馈给spinPolicy
+                if (s.item != e ||
+                        awaitMatch(s, preds[i], e, true, deadline - System.nanoTime()) != e)
+                    continue;
+                cancelled = true;                   // 超时或中断（中断状态保留）: 该结点已被awaitMatch取消
+                --transferred;
+            } else if (s.casItem(e, s)) {           // 撤回其余未匹配的结点
+                unsplice(preds[i], s);
+                dequeued(s, false);
+                --transferred;
+            }
+        }
+        return transferred;
+    }
+
     /**
      * 该方法会从队首取出一个元素，如果队列为空，则线程会阻塞
      * 从队首出队一个元素.
@@ -1354,6 +1618,29 @@ public class LinkedTransferQueue<E> extends AbstractQueue<E>
         throw new InterruptedException();
     }
 
+    /**
+     * 批量出队: 队列为空时阻塞等待第一个元素（整批只阻塞一次），然后在一次遍历中连续匹配队首的数据结点，最多取maxElements个元素.
+     * <p>
+     * Retrieves and removes up to {@code maxElements} elements,
+     * waiting if necessary until at least one element is available.
+     * After the first element, the remaining ones are matched in a
+     * single traversal from the head without further waiting.
+     *
+     * @param maxElements the maximum number of elements to take
+     * @return a list of the elements taken, in queue order, never empty
+     * @throws InterruptedException     if interrupted while waiting
+     * @throws IllegalArgumentException if {@code maxElements} is not positive
+     */
+    public List<E> takeBatch(int maxElements) throws InterruptedException {
+        if (maxElements <= 0)
+            throw new IllegalArgumentException();
+        List<E> batch = new ArrayList<E>(Math.min(maxElements, 16));
+        batch.add(take());
+        if (maxElements > 1)
+            matchBatch(batch, maxElements - 1);
+        return batch;
+    }
+
     public E poll(long timeout, TimeUnit unit) throws InterruptedException {
         E e = xfer(null, false, TIMED, unit.toNanos(timeout));
         if (e != null || !Thread.interrupted())
@@ -1374,12 +1661,7 @@ public class LinkedTransferQueue<E> extends AbstractQueue<E>
             throw new NullPointerException();
         if (c == this)
             throw new IllegalArgumentException();
-        int n = 0;
-        for (E e; (e = poll()) != null; ) {
-            c.add(e);
-            ++n;
-        }
-        return n;
+        return matchBatch(c, Integer.MAX_VALUE);
     }
 
     /**
@@ -1391,10 +1673,56 @@ public class LinkedTransferQueue<E> extends AbstractQueue<E>
             throw new NullPointerException();
         if (c == this)
             throw new IllegalArgumentException();
+        return (maxElements <= 0) ? 0 : matchBatch(c, maxElements);
+    }
+
+    /**
+     * 从队首开始在一次遍历中连续匹配最多max个数据结点，全部匹配完后只推进一次head指针.
+     * 遇到未匹配的请求结点或队列末尾时停止.
+     * <p>
+     * Matches up to max data nodes in a single traversal from head,
+     * adding their items to c, then advances head once past the last
+     * matched node using the same slack rule as xfer.  Stops at the
+     * end of the list or at an unmatched request node.
+     *
+     * @return the number of items added to c
+     */
+    private int matchBatch(Collection<? super E> c, int max) {
         int n = 0;
-        for (E e; n < maxElements && (e = poll()) != null; ) {
-            c.add(e);
-            ++n;
+        Node h = head, last = null;
+        for (Node p = h; p != null && n < max; ) {
+            boolean isData = p.isData;
+            Object item = p.item;
+            if (item != p && (item != null) == isData) {    // unmatched
+                if (!isData)                                // 请求结点, 队列中没有数据
+                    break;
+                if (!p.casItem(item, null))                 // 被其它线程抢先匹配, 重新检查p
+                    continue;
+                LockSupport.unpark(p.waiter);
+                dequeued(p, true);
+                c.add(LinkedTransferQueue.<E>cast(item));
+                ++n;
+                last = p;
+            }
+            Node next = p.next;
+            if (p != next)
+                p = next;
+            else {                                          // p offlist: head已越过p, 也就越过了last
+                p = h = head;
+                last = null;
+            }
+        }
+        if (last != null) {
+            for (Node q = last; q != h; ) {
+                Node next = q.next;  // update by 2 unless singleton
+                if (head == h && casHead(h, next == null ? q : next)) {
+                    h.forgetNext();
+                    break;
+                }                 // advance and retry
+                if ((h = head) == null ||
+                        (q = h.next) == null || !q.isMatched())
+                    break;        // unless slack < 2
+            }
         }
         return n;
     }
@@ -1529,6 +1857,8 @@ public class LinkedTransferQueue<E> extends AbstractQueue<E>
     private void readObject(java.io.ObjectInputStream s)
             throws java.io.IOException, ClassNotFoundException {
         s.defaultReadObject();
+        spinPolicy = new AdaptiveSpinPolicy(FRONT_SPINS, FRONT_SPINS << 3);
+        timedCount = new AtomicInteger();
         for (; ; ) {
             @SuppressWarnings("unchecked")
             E item = (E) s.readObject();
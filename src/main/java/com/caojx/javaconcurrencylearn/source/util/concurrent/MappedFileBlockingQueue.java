@@ -0,0 +1,991 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+import com.caojx.javaconcurrencylearn.source.util.concurrent.atomic.AtomicInteger;
+import com.caojx.javaconcurrencylearn.source.util.concurrent.locks.Condition;
+import com.caojx.javaconcurrencylearn.source.util.concurrent.locks.ReentrantLock;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MappedFileBlockingQueue是基于内存映射文件（MappedByteBuffer）实现的持久化阻塞队列，元素类型为byte[]。
+ * <p>
+ * ThreadPoolExecutor使用的LinkedBlockingQueue完全在内存中，服务一重启，队列里排队的任务就全部丢失了。
+ * MappedFileBlockingQueue的做法是：
+ * 1.数据保存在目录下的多个段文件（segment）中，每个段文件大小固定，文件名为该段的起始偏移量；
+ * 2.入队只追加写：先把数据复制到映射内存（即页缓存，只复制这一次，没有额外的缓冲区和系统调用），最后再写记录头，这样半条记录永远不会被读到；
+ *   出队同样把数据从映射内存复制到新的byte[]中，所以这不是零拷贝的队列；
+ * 3.出队只移动读偏移量，读偏移量保存在同样是内存映射的checkpoint文件中，整段读完后删除该段文件；
+ * 4.进程崩溃后页缓存中的数据不会丢失；为了防止掉电丢数据，使用“组提交”：累计写入syncBytes字节或距上次刷盘超过syncInterval后，
+ *   由当前持有putLock的入队线程调用一次force()，把这段时间内所有生产者写入的数据一起刷盘；
+ *   最后一批数据之后可能不再有入队，所以另有一个后台刷盘线程每隔syncInterval检查一次，把还没有刷盘的数据刷盘，
+ *   这样每条数据最迟在入队后约syncInterval内被刷盘；
+ * 5.重启时读取checkpoint得到读位置，从读位置向后扫描记录即可恢复元素个数和写位置，不需要加载数据本身，所以恢复很快。
+ * <p>
+ * 并发控制与LinkedBlockingQueue相同：入队使用putLock，出队使用takeLock，两者通过原子变量count协调，入队和出队可以并发执行.
+ * <p>
+ * A persistent, optionally-bounded {@linkplain BlockingQueue blocking
+ * queue} of byte arrays, stored in append-only memory-mapped segment
+ * files.  This queue orders elements FIFO, and survives process
+ * restarts: constructing a queue on a directory used by a previous
+ * instance recovers all elements that had not been taken.
+ *
+ * <p>Each record is a four-byte header holding the payload length
+ * plus one, followed by the payload, padded to a multiple of four
+ * bytes.  The header is written after the payload, so a record is
+ * either completely visible or not at all.  A header of zero marks
+ * the end of written data; a header of {@code -1} marks that the
+ * writer rolled over to the next segment.
+ *
+ * <p>Insertion copies the payload once, directly into the mapping,
+ * and retrieval copies it out into a new array; the queue is not
+ * zero-copy.
+ *
+ * <p>Data written to the mapping survives a crash of the process.
+ * Durability against power loss is provided by group commit: the
+ * mapping is forced to storage once {@code syncBytes} bytes have been
+ * written or {@code syncInterval} has elapsed since the last force,
+ * whichever comes first, by whichever producer crosses the threshold.
+ * A daemon thread also wakes every {@code syncInterval} and forces any
+ * data not yet forced, so an inserted element reaches storage at most
+ * about {@code syncInterval} (plus the time to force) after insertion
+ * even if no further insertion follows.  The consumer position is
+ * forced only by {@link #sync()} and {@link #close()}, so after a power
+ * loss some taken elements may be delivered again.  Call
+ * {@link #sync()} to force explicitly; {@link #close()} also forces
+ * and stops the daemon thread.
+ *
+ * <p>An installed {@link QueueProbe} sees the sojourn time of the
+ * elements inserted while it was installed; the enqueue times are
+ * kept in memory only, so recovered elements are reported with an
+ * unknown sojourn time.
+ *
+ * <p>The iterator traverses a snapshot of the queue and does not
+ * support removal; consequently {@link #remove(Object)} is not
+ * supported either.  Head removal ({@link #poll()}, {@link #take()},
+ * etc.) is fully supported.
+ *
+ * @author caojx created on 2026/10/19
+ * @see LinkedBlockingQueue
+ */
+public class MappedFileBlockingQueue extends AbstractQueue<byte[]>
+        implements BlockingQueue<byte[]>, InstrumentedQueue, Closeable {
+
+    /**
+     * 默认段文件大小: 64MB
+     */
+    static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    /**
+     * 默认组提交字节数: 1MB
+     */
+    static final int DEFAULT_SYNC_BYTES = 1 << 20;
+
+    /**
+     * 默认组提交时间间隔: 100毫秒
+     */
+    static final long DEFAULT_SYNC_INTERVAL_MILLIS = 100L;
+
+    /**
+     * 记录头长度
+     */
+    static final int HEADER = 4;
+
+    /**
+     * 记录头为该值时，表示写线程已切换到下一个段文件.
+     */
+    static final int ROLL = -1;
+
+    /**
+     * checkpoint文件的魔数
+     */
+    static final int MAGIC = 0x4d465142; // "MFQB"
+
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final String CHECKPOINT_FILE = "checkpoint";
+
+    /**
+     * 一个段文件及其映射内存.
+     */
+    static final class Segment {
+        final long base;            // 段的起始偏移量, 也是文件名
+        final File file;
+        final MappedByteBuffer buffer;
+
+        Segment(long base, File file, MappedByteBuffer buffer) {
+            this.base = base;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * 数据目录
+     */
+    private final File dir;
+
+    /**
+     * 段文件大小
+     */
+    private final int segmentSize;
+
+    /**
+     * 队列容量
+     */
+    private final int capacity;
+
+    /**
+     * 组提交: 累计写入多少字节后刷盘
+     */
+    private final long syncBytes;
+
+    /**
+     * 组提交: 距上次刷盘多长时间后刷盘
+     */
+    private final long syncIntervalNanos;
+
+    /**
+     * 所有未删除的段文件, key为段的起始偏移量
+     */
+    private final ConcurrentSkipListMap<Long, Segment> segments =
+            new ConcurrentSkipListMap<Long, Segment>();
+
+    /**
+     * checkpoint映射内存: [long 读偏移量][int 段大小][int 魔数]
+     */
+    private final MappedByteBuffer checkpoint;
+
+    /**
+     * 队列元素个数
+     */
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * 出队锁
+     */
+    private final ReentrantLock takeLock = new ReentrantLock();
+
+    /**
+     * 出队线程条件队列（队列为空时，出队线程在此等待）
+     */
+    private final Condition notEmpty = takeLock.newCondition();
+
+    /**
+     * 入队锁
+     */
+    private final ReentrantLock putLock = new ReentrantLock();
+
+    /**
+     * 入队线程条件队列（队列为满时，入队线程在此等待）
+     */
+    private final Condition notFull = putLock.newCondition();
+
+    /**
+     * 后台刷盘线程在此定时等待, close时唤醒它退出
+     */
+    private final Condition flushDue = putLock.newCondition();
+
+    // 以下写状态只在持有putLock时访问
+    private Segment writeSegment;
+    private ByteBuffer writeBuffer;
+    private int writePos;
+    private long unsyncedBytes;
+    private long lastSync;
+
+    // 以下读状态只在持有takeLock时访问
+    private Segment readSegment;
+    private ByteBuffer readBuffer;
+    private int readPos;
+
+    private volatile boolean closed;
+
+    /**
+     * 观测探针, 为null时不统计
+     */
+    private volatile QueueProbe probe;
+
+    /**
+     * 安装了探针时入队元素的[全局偏移量, 入队时间], 按偏移量递增排列.
+     * 在持有putLock时追加, 在持有takeLock时取走, 没有安装探针时入队的元素没有对应项.
+     */
+    private final ConcurrentLinkedQueue<long[]> stamps = new ConcurrentLinkedQueue<long[]>();
+
+    /**
+     * 使用默认参数打开（或创建）一个队列.
+     *
+     * @param dir the directory holding the segment files
+     * @throws IOException if the directory cannot be created or the
+     *                     existing files cannot be read
+     */
+    public MappedFileBlockingQueue(File dir) throws IOException {
+        this(dir, Integer.MAX_VALUE, DEFAULT_SEGMENT_SIZE,
+                DEFAULT_SYNC_BYTES, DEFAULT_SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 打开（或创建）一个队列.
+     * 如果目录中已有数据, 则恢复上次未出队的元素, 此时段文件大小以已有数据为准, 与参数不一致时抛出异常.
+     *
+     * @param dir          the directory holding the segment files
+     * @param capacity     the maximum number of elements
+     * @param segmentSize  the size of each segment file in bytes
+     * @param syncBytes    force to storage after this many bytes have
+     *                     been written since the last force; 0 forces on every insertion
+     * @param syncInterval force to storage after this much time has
+     *                     elapsed since the last force, and the period at which
+     *                     the daemon thread forces data not yet forced
+     * @param unit         the time unit of {@code syncInterval}
+     * @throws IOException              if the directory cannot be created or the
+     *                                  existing files cannot be read, or if they were written with
+     *                                  a different segment size
+     * @throws IllegalArgumentException if {@code capacity} is not
+     *                                  positive, {@code segmentSize} is too small or not a multiple
+     *                                  of four, or {@code syncBytes} or {@code syncInterval} is negative
+     */
+    public MappedFileBlockingQueue(File dir, int capacity, int segmentSize,
+                                   long syncBytes, long syncInterval, TimeUnit unit)
+            throws IOException {
+        if (capacity <= 0 || segmentSize < 4 * HEADER || (segmentSize & 3) != 0 ||
+                syncBytes < 0 || syncInterval < 0)
+            throw new IllegalArgumentException();
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Cannot create directory " + dir);
+        this.dir = dir;
+        this.capacity = capacity;
+        this.syncBytes = syncBytes;
+        this.syncIntervalNanos = unit.toNanos(syncInterval);
+        // 用更小的容量重新打开已有数据时, 恢复出的元素个数可能超过capacity, 所以下面判断队列已满都用 >= capacity
+
+        File cp = new File(dir, CHECKPOINT_FILE);
+        boolean fresh = !cp.exists();
+        this.checkpoint = map(cp, 16);
+        if (fresh) {
+            checkpoint.putLong(0, 0L);
+            checkpoint.putInt(8, segmentSize);
+            checkpoint.putInt(12, MAGIC);
+            checkpoint.force();
+        } else if (checkpoint.getInt(12) != MAGIC) {
+            throw new IOException("Not a queue checkpoint: " + cp);
+        } else if (checkpoint.getInt(8) != segmentSize) {
+            throw new IOException("Segment size mismatch: " + checkpoint.getInt(8));
+        }
+        this.segmentSize = segmentSize;
+        recover();
+        this.lastSync = System.nanoTime();
+        if (syncBytes > 0 && syncIntervalNanos > 0) {    // 每次入队都刷盘时不需要后台线程
+            Thread t = new Thread(this::flushLoop, "MappedFileBlockingQueue-flusher-" + dir.getName());
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /**
+     * 后台刷盘: 每隔syncInterval把还没有刷盘的数据刷盘, 保证最后一批数据之后即使不再有入队, 也会在syncInterval内刷盘.
+     * 在flushDue上等待时释放putLock.
+     */
+    private void flushLoop() {
+        final ReentrantLock putLock = this.putLock;
+        putLock.lock();
+        try {
+            while (!closed) {
+                flushDue.awaitNanos(syncIntervalNanos);
+                if (!closed && unsyncedBytes > 0)
+                    forceWrites();
+            }
+        } catch (InterruptedException ignore) {
+            // 退出, 之后的数据仍由入队线程的组提交和close刷盘
+        } finally {
+            putLock.unlock();
+        }
+    }
+
+    /**
+     * 映射文件的前size个字节.
+     */
+    private static MappedByteBuffer map(File f, int size) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw");
+             FileChannel ch = raf.getChannel()) {
+            return ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private static int align(int n) {
+        return (n + 3) & ~3;
+    }
+
+    private Segment openSegment(long base) throws IOException {
+        File f = new File(dir, String.format("%020d%s", base, SEGMENT_SUFFIX));
+        Segment s = new Segment(base, f, map(f, segmentSize));
+        segments.put(base, s);
+        return s;
+    }
+
+    /**
+     * 释放映射内存并删除段文件.
+     */
+    private void deleteSegment(Segment s) {
+        segments.remove(s.base);
+        unmap(s.buffer);
+        if (!s.file.delete())
+            s.file.deleteOnExit();
+    }
+
+    private static void unmap(MappedByteBuffer b) {
+        sun.misc.Cleaner cleaner = ((sun.nio.ch.DirectBuffer) b).cleaner();
+        if (cleaner != null)
+            cleaner.clean();
+    }
+
+    /**
+     * 崩溃恢复: 根据checkpoint中的读偏移量定位读位置, 从读位置向后扫描记录, 得到元素个数和写位置.
+     * 对于不是最后一个的段文件, 如果末尾缺少ROLL标记（写线程创建下一个段后、写ROLL前崩溃）, 则补上.
+     */
+    private void recover() throws IOException {
+        long readOffset = checkpoint.getLong(0);
+        long readBase = readOffset - readOffset % segmentSize;
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SEGMENT_SUFFIX));
+        TreeMap<Long, File> found = new TreeMap<Long, File>();
+        if (files != null) {
+            for (File f : files) {
+                String name = f.getName();
+                try {
+                    found.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), f);
+                } catch (NumberFormatException ignore) {
+                    // not ours
+                }
+            }
+        }
+        for (Map.Entry<Long, File> e : found.entrySet()) {
+            if (e.getKey() < readBase)                      // 已经读完但还没来得及删除的段
+                e.getValue().delete();
+            else
+                openSegment(e.getKey());
+        }
+        if (segments.isEmpty()) {
+            openSegment(readBase);
+            readOffset = readBase;
+        } else if (!segments.containsKey(readBase)) {
+            throw new IOException("Missing segment for read offset " + readOffset);
+        }
+
+        readSegment = segments.get(readBase);
+        readBuffer = readSegment.buffer.duplicate();
+        readPos = (int) (readOffset - readBase);
+
+        int n = 0;
+        Segment s = readSegment;
+        int pos = readPos;
+        for (; ; ) {
+            int h = s.buffer.getInt(pos);
+            if (h > 0) {
+                ++n;
+                pos += align(HEADER + h - 1);
+                continue;
+            }
+            Map.Entry<Long, Segment> next = segments.higherEntry(s.base);
+            if (next == null)
+                break;
+            if (h == 0)                                     // 补上缺失的ROLL标记
+                s.buffer.putInt(pos, ROLL);
+            s = next.getValue();
+            pos = 0;
+        }
+        writeSegment = s;
+        writeBuffer = s.buffer.duplicate();
+        writePos = pos;
+        count.set(n);
+    }
+
+    /**
+     * Signals a waiting take. Called only from put/offer (which do not
+     * otherwise ordinarily lock takeLock.)
+     */
+    private void signalNotEmpty() {
+        final ReentrantLock takeLock = this.takeLock;
+        takeLock.lock();
+        try {
+            notEmpty.signal();
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    /**
+     * Signals a waiting put. Called only from take/poll.
+     */
+    private void signalNotFull() {
+        final ReentrantLock putLock = this.putLock;
+        putLock.lock();
+        try {
+            notFull.signal();
+        } finally {
+            putLock.unlock();
+        }
+    }
+
+    /**
+     * Locks to prevent both puts and takes.
+     */
+    void fullyLock() {
+        putLock.lock();
+        takeLock.lock();
+    }
+
+    /**
+     * Unlocks to allow both puts and takes.
+     */
+    void fullyUnlock() {
+        takeLock.unlock();
+        putLock.unlock();
+    }
+
+    /**
+     * 入队后调用, 报告入队后的大小.
+     */
+    private void enqueued(int size) {
+        QueueProbe p = probe;
+        if (p != null)
+            p.onEnqueue(size);
+    }
+
+    /**
+     * 出队偏移量为offset的记录后调用: 取走该记录的入队时间, 报告排队时间.
+     */
+    private void dequeued(long offset) {
+        long[] s = stamps.peek();
+        long sojourn = QueueProbe.UNKNOWN;
+        if (s != null && s[0] == offset) {
+            stamps.poll();
+            sojourn = System.nanoTime() - s[1];
+        }
+        QueueProbe p = probe;
+        if (p != null)
+            p.onDequeue(sojourn);
+    }
+
+    /**
+     * 开始阻塞时调用, 返回开始阻塞的时间; 没有安装探针时返回0, 不读取时钟.
+     */
+    private long blockStart() {
+        return (probe == null) ? 0L : System.nanoTime();
+    }
+
+    private void producerBlocked(long start) {
+        QueueProbe p = probe;
+        if (p != null)
+            p.onProducerBlocked(System.nanoTime() - start);
+    }
+
+    private void consumerBlocked(long start) {
+        QueueProbe p = probe;
+        if (p != null)
+            p.onConsumerBlocked(System.nanoTime() - start);
+    }
+
+    public void setProbe(QueueProbe probe) {
+        this.probe = probe;
+    }
+
+    public QueueProbe getProbe() {
+        return probe;
+    }
+
+    private void ensureOpen() {
+        if (closed)
+            throw new IllegalStateException("Queue closed");
+    }
+
+    private void checkRecord(byte[] e) {
+        if (e == null)
+            throw new NullPointerException();
+        if (e.length > segmentSize - 2 * HEADER - 3)
+            throw new IllegalArgumentException("Record too large: " + e.length);
+    }
+
+    /**
+     * 追加一条记录: 先写数据, 再写记录头. 段文件剩余空间不足时切换到下一个段.
+     * 只在持有putLock时调用.
+     */
+    private void enqueue(byte[] e) {
+        // assert putLock.isHeldByCurrentThread();
+        int size = align(HEADER + e.length);
+        if (writePos + size > segmentSize - HEADER)         // 始终为ROLL标记保留一个记录头的空间
+            roll();
+        if (probe != null)                                  // 在记录对读线程可见之前登记入队时间
+            stamps.offer(new long[]{writeSegment.base + writePos, System.nanoTime()});
+        ByteBuffer w = writeBuffer;
+        w.position(writePos + HEADER);
+        w.put(e);
+        w.putInt(writePos, e.length + 1);                   // 最后写记录头, 记录才对读线程可见
+        writePos += size;
+        unsyncedBytes += size;
+        if (unsyncedBytes >= syncBytes ||
+                System.nanoTime() - lastSync >= syncIntervalNanos)
+            forceWrites();                                  // 组提交
+    }
+
+    /**
+     * 切换到下一个段: 先创建并映射下一个段文件, 再写ROLL标记, 保证读线程读到ROLL时下一个段一定已存在.
+     */
+    private void roll() {
+        Segment next;
+        try {
+            next = openSegment(writeSegment.base + segmentSize);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        writeBuffer.putInt(writePos, ROLL);
+        writeSegment.buffer.force();
+        writeSegment = next;
+        writeBuffer = next.buffer.duplicate();
+        writePos = 0;
+    }
+
+    private void forceWrites() {
+        writeSegment.buffer.force();
+        unsyncedBytes = 0L;
+        lastSync = System.nanoTime();
+    }
+
+    /**
+     * 读取队首记录; advance为true时同时出队（移动读偏移量并写入checkpoint）.
+     * 只在持有takeLock且count > 0时调用.
+     */
+    private byte[] dequeue(boolean advance) {
+        // assert takeLock.isHeldByCurrentThread();
+        for (; ; ) {
+            int h = readBuffer.getInt(readPos);
+            if (h == ROLL) {                                // 切换到下一个段, 并删除已读完的段
+                Segment old = readSegment;
+                readSegment = segments.get(old.base + segmentSize);
+                readBuffer = readSegment.buffer.duplicate();
+                readPos = 0;
+                checkpoint.putLong(0, readSegment.base);
+                deleteSegment(old);
+                continue;
+            }
+            byte[] x = new byte[h - 1];
+            readBuffer.position(readPos + HEADER);
+            readBuffer.get(x);
+            if (advance) {
+                dequeued(readSegment.base + readPos);
+                readPos += align(HEADER + x.length);
+                checkpoint.putLong(0, readSegment.base + readPos);
+            }
+            return x;
+        }
+    }
+
+    /**
+     * Forces all inserted elements and the consumer position to storage.
+     * Blocks insertions and retrievals while forcing.
+     *
+     * @throws IllegalStateException if this queue has been closed
+     */
+    public void sync() {
+        // 持有两把锁, 与close互斥: close会释放映射内存, 之后再force会访问已释放的内存
+        fullyLock();
+        try {
+            ensureOpen();
+            forceWrites();
+            checkpoint.force();
+        } finally {
+            fullyUnlock();
+        }
+    }
+
+    /**
+     * Forces all data to storage and releases the mappings.  Any
+     * further operation on this queue throws {@code IllegalStateException},
+     * as do the blocking operations of threads waiting when it is closed.
+     */
+    public void close() {
+        fullyLock();
+        try {
+            if (closed)
+                return;
+            forceWrites();
+            checkpoint.force();
+            closed = true;
+            flushDue.signal();
+            notEmpty.signalAll();               // 唤醒阻塞的出/入队线程, 它们重新检查closed后抛出异常
+            notFull.signalAll();
+            for (Segment s : segments.values())
+                unmap(s.buffer);
+            segments.clear();
+            unmap(checkpoint);
+        } finally {
+            fullyUnlock();
+        }
+    }
+
+    /**
+     * Returns the number of elements in this queue.
+     *
+     * @return the number of elements in this queue
+     */
+    public int size() {
+        return count.get();
+    }
+
+    /**
+     * Returns the number of additional elements that this queue can ideally
+     * (in the absence of memory or resource constraints) accept without
+     * blocking.
+     */
+    public int remainingCapacity() {
+        return Math.max(0, capacity - count.get());
+    }
+
+    /**
+     * Inserts the specified element at the tail of this queue, waiting if
+     * necessary for space to become available.
+     *
+     * @throws InterruptedException     {@inheritDoc}
+     * @throws NullPointerException     {@inheritDoc}
+     * @throws IllegalArgumentException if the element does not fit in a segment
+     * @throws UncheckedIOException     if a new segment file cannot be created
+     */
+    public void put(byte[] e) throws InterruptedException {
+        checkRecord(e);
+        int c = -1;
+        final ReentrantLock putLock = this.putLock;
+        final AtomicInteger count = this.count;
+        putLock.lockInterruptibly();
+        long blockedAt = 0L;
+        try {
+            ensureOpen();
+            while (count.get() >= capacity) {
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
+                notFull.await();
+                ensureOpen();
+            }
+            enqueue(e);
+            c = count.getAndIncrement();
+            enqueued(c + 1);
+            if (c + 1 < capacity)
+                notFull.signal();
+        } finally {
+            if (blockedAt != 0L)
+                producerBlocked(blockedAt);
+            putLock.unlock();
+        }
+        if (c == 0)
+            signalNotEmpty();
+    }
+
+    /**
+     * Inserts the specified element at the tail of this queue, waiting if
+     * necessary up to the specified wait time for space to become available.
+     *
+     * @return {@code true} if successful, or {@code false} if
+     * the specified waiting time elapses before space is available
+     * @throws InterruptedException     {@inheritDoc}
+     * @throws NullPointerException     {@inheritDoc}
+     * @throws IllegalArgumentException if the element does not fit in a segment
+     * @throws UncheckedIOException     if a new segment file cannot be created
+     */
+    public boolean offer(byte[] e, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        checkRecord(e);
+        long nanos = unit.toNanos(timeout);
+        int c = -1;
+        final ReentrantLock putLock = this.putLock;
+        final AtomicInteger count = this.count;
+        putLock.lockInterruptibly();
+        long blockedAt = 0L;
+        try {
+            ensureOpen();
+            while (count.get() >= capacity) {
+                if (nanos <= 0)
+                    return false;
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
+                nanos = notFull.awaitNanos(nanos);
+                ensureOpen();
+            }
+            enqueue(e);
+            c = count.getAndIncrement();
+            enqueued(c + 1);
+            if (c + 1 < capacity)
+                notFull.signal();
+        } finally {
+            if (blockedAt != 0L)
+                producerBlocked(blockedAt);
+            putLock.unlock();
+        }
+        if (c == 0)
+            signalNotEmpty();
+        return true;
+    }
+
+    /**
+     * Inserts the specified element at the tail of this queue if it is
+     * possible to do so immediately without exceeding the queue's capacity,
+     * returning {@code true} upon success and {@code false} if this queue
+     * is full.
+     *
+     * @throws NullPointerException     if the specified element is null
+     * @throws IllegalArgumentException if the element does not fit in a segment
+     * @throws UncheckedIOException     if a new segment file cannot be created
+     */
+    public boolean offer(byte[] e) {
+        checkRecord(e);
+        final AtomicInteger count = this.count;
+        if (count.get() >= capacity)
+            return false;
+        int c = -1;
+        final ReentrantLock putLock = this.putLock;
+        putLock.lock();
+        try {
+            ensureOpen();
+            if (count.get() < capacity) {
+                enqueue(e);
+                c = count.getAndIncrement();
+                enqueued(c + 1);
+                if (c + 1 < capacity)
+                    notFull.signal();
+            }
+        } finally {
+            putLock.unlock();
+        }
+        if (c == 0)
+            signalNotEmpty();
+        return c >= 0;
+    }
+
+    public byte[] take() throws InterruptedException {
+        byte[] x;
+        int c = -1;
+        final AtomicInteger count = this.count;
+        final ReentrantLock takeLock = this.takeLock;
+        takeLock.lockInterruptibly();
+        long blockedAt = 0L;
+        try {
+            ensureOpen();
+            while (count.get() == 0) {
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
+                notEmpty.await();
+                ensureOpen();
+            }
+            x = dequeue(true);
+            c = count.getAndDecrement();
+            if (c > 1)
+                notEmpty.signal();
+        } finally {
+            if (blockedAt != 0L)
+                consumerBlocked(blockedAt);
+            takeLock.unlock();
+        }
+        if (c >= capacity)
+            signalNotFull();
+        return x;
+    }
+
+    public byte[] poll(long timeout, TimeUnit unit) throws InterruptedException {
+        byte[] x = null;
+        int c = -1;
+        long nanos = unit.toNanos(timeout);
+        final AtomicInteger count = this.count;
+        final ReentrantLock takeLock = this.takeLock;
+        takeLock.lockInterruptibly();
+        long blockedAt = 0L;
+        try {
+            ensureOpen();
+            while (count.get() == 0) {
+                if (nanos <= 0)
+                    return null;
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
+                nanos = notEmpty.awaitNanos(nanos);
+                ensureOpen();
+            }
+            x = dequeue(true);
+            c = count.getAndDecrement();
+            if (c > 1)
+                notEmpty.signal();
+        } finally {
+            if (blockedAt != 0L)
+                consumerBlocked(blockedAt);
+            takeLock.unlock();
+        }
+        if (c >= capacity)
+            signalNotFull();
+        return x;
+    }
+
+    public byte[] poll() {
+        final AtomicInteger count = this.count;
+        if (count.get() == 0)
+            return null;
+        byte[] x = null;
+        int c = -1;
+        final ReentrantLock takeLock = this.takeLock;
+        takeLock.lock();
+        try {
+            ensureOpen();
+            if (count.get() > 0) {
+                x = dequeue(true);
+                c = count.getAndDecrement();
+                if (c > 1)
+                    notEmpty.signal();
+            }
+        } finally {
+            takeLock.unlock();
+        }
+        if (c >= capacity)
+            signalNotFull();
+        return x;
+    }
+
+    public byte[] peek() {
+        if (count.get() == 0)
+            return null;
+        final ReentrantLock takeLock = this.takeLock;
+        takeLock.lock();
+        try {
+            ensureOpen();
+            return (count.get() > 0) ? dequeue(false) : null;
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    /**
+     * @throws UnsupportedOperationException always
+     */
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Atomically removes all of the elements from this queue.
+     * The queue will be empty after this call returns.
+     */
+    public void clear() {
+        fullyLock();
+        try {
+            ensureOpen();
+            for (Segment s : new ArrayList<Segment>(segments.headMap(writeSegment.base).values()))
+                deleteSegment(s);
+            readSegment = writeSegment;
+            readBuffer = writeSegment.buffer.duplicate();
+            readPos = writePos;
+            checkpoint.putLong(0, readSegment.base + readPos);
+            stamps.clear();
+            if (count.getAndSet(0) >= capacity)
+                notFull.signal();
+        } finally {
+            fullyUnlock();
+        }
+    }
+
+    /**
+     * @throws UnsupportedOperationException {@inheritDoc}
+     * @throws ClassCastException            {@inheritDoc}
+     * @throws NullPointerException          {@inheritDoc}
+     * @throws IllegalArgumentException      {@inheritDoc}
+     */
+    public int drainTo(Collection<? super byte[]> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @throws UnsupportedOperationException {@inheritDoc}
+     * @throws ClassCastException            {@inheritDoc}
+     * @throws NullPointerException          {@inheritDoc}
+     * @throws IllegalArgumentException      {@inheritDoc}
+     */
+    public int drainTo(Collection<? super byte[]> c, int maxElements) {
+        if (c == null)
+            throw new NullPointerException();
+        if (c == this)
+            throw new IllegalArgumentException();
+        if (maxElements <= 0)
+            return 0;
+        boolean signalNotFull = false;
+        final ReentrantLock takeLock = this.takeLock;
+        takeLock.lock();
+        try {
+            ensureOpen();
+            int n = Math.min(maxElements, count.get());
+            int i = 0;
+            try {
+                while (i < n) {
+                    c.add(dequeue(true));
+                    ++i;
+                }
+                return n;
+            } finally {
+                // Restore invariants even if c.add() threw
+                if (i > 0) {
+                    signalNotFull = (count.getAndAdd(-i) >= capacity);
+                }
+            }
+        } finally {
+            takeLock.unlock();
+            if (signalNotFull)
+                signalNotFull();
+        }
+    }
+
+    /**
+     * 在持有两把锁的情况下, 从读位置扫描到写位置, 得到所有元素的快照.
+     */
+    private List<byte[]> snapshot() {
+        fullyLock();
+        try {
+            ensureOpen();
+            List<byte[]> list = new ArrayList<byte[]>(count.get());
+            Segment s = readSegment;
+            ByteBuffer b = s.buffer.duplicate();
+            int pos = readPos;
+            for (int n = count.get(); n > 0; ) {
+                int h = b.getInt(pos);
+                if (h == ROLL) {
+                    s = segments.get(s.base + segmentSize);
+                    b = s.buffer.duplicate();
+                    pos = 0;
+                    continue;
+                }
+                byte[] x = new byte[h - 1];
+                b.position(pos + HEADER);
+                b.get(x);
+                list.add(x);
+                pos += align(HEADER + x.length);
+                --n;
+            }
+            return list;
+        } finally {
+            fullyUnlock();
+        }
+    }
+
+    public Object[] toArray() {
+        return snapshot().toArray();
+    }
+
+    public <T> T[] toArray(T[] a) {
+        return snapshot().toArray(a);
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the elements in this queue
+     * in proper sequence.  The iterator does not support {@code remove}.
+     *
+     * @return an iterator over the elements in this queue in proper sequence
+     */
+    public Iterator<byte[]> iterator() {
+        return Collections.unmodifiableList(snapshot()).iterator();
+    }
+}
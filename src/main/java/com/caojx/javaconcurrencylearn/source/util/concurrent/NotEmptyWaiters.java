@@ -0,0 +1,133 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+import com.caojx.javaconcurrencylearn.source.util.concurrent.atomic.AtomicInteger;
+import com.caojx.javaconcurrencylearn.source.util.concurrent.locks.Condition;
+import com.caojx.javaconcurrencylearn.source.util.concurrent.locks.ReentrantLock;
+
+/**
+ * NotEmptyWaiters是无锁出/入队的无界阻塞队列共用的“队列为空时等待”的实现，
+ * RelaxedPriorityBlockingQueue和SkipListPriorityBlockingQueue都使用它。
+ * <p>
+ * 这些队列的入队和出队都不加锁，元素个数由一个AtomicInteger单独维护（入队完成后才加1），只有队列为空时出队线程才需要阻塞：
+ * 1.出队线程poll失败后获取takeLock，把waiters加1，然后在count <= 0时在notEmpty上等待；
+ * 2.入队线程在count加1之后读取waiters，只有确实有线程等待时才去获取takeLock进行唤醒，所以没有等待者时入队完全不加锁；
+ * 3.count和waiters都是volatile的：要么入队线程看到了waiters，要么等待线程看到了新的count，不会丢失唤醒；
+ * 4.被唤醒的出队线程取到元素后，如果还有剩余元素并且还有线程在等待，则级联唤醒下一个。
+ * <p>
+ * The blocking part of an unbounded queue whose insertions and
+ * removals do not lock.  The queue keeps its element count in an
+ * {@link AtomicInteger} that is incremented only after an element has
+ * been inserted.  Consumers that find the queue empty wait on a single
+ * condition, and producers acquire the lock to signal only when the
+ * volatile waiters field shows that some consumer is (about to be)
+ * parked.  Because both the count and the waiters field are volatile,
+ * either the producer sees the waiter or the waiter sees the new
+ * count, so no signal is lost.
+ *
+ * @author caojx created on 2026/10/19
+ * @see RelaxedPriorityBlockingQueue
+ * @see SkipListPriorityBlockingQueue
+ */
+final class NotEmptyWaiters {
+
+    /**
+     * 出队线程阻塞等待时使用的锁
+     */
+    private final ReentrantLock takeLock = new ReentrantLock();
+
+    /**
+     * 当队列为空时，出队线程在该条件队列上等待.
+     */
+    private final Condition notEmpty = takeLock.newCondition();
+
+    /**
+     * 正在notEmpty上等待（或即将等待）的线程数，只在持有takeLock时修改.
+     */
+    private volatile int waiters;
+
+    /**
+     * 唤醒一个等待的出队线程.
+     */
+    private void signal() {
+        final ReentrantLock takeLock = this.takeLock;
+        takeLock.lock();
+        try {
+            notEmpty.signal();
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    /**
+     * 入队并把count加1之后调用: 确实有出队线程在等待时才去获取takeLock.
+     * <p>
+     * Called by producers after incrementing the count.
+     */
+    void signalIfWaiting() {
+        if (waiters > 0)
+            signal();
+    }
+
+    /**
+     * 出队线程取到元素后调用: 还有剩余元素, 级联唤醒其它出队线程.
+     * <p>
+     * Called by a consumer that has obtained an element after waiting,
+     * so that a remaining element is not left unclaimed.
+     *
+     * @param count the element count of the queue
+     */
+    void signalNext(AtomicInteger count) {
+        if (waiters > 0 && count.get() > 0)
+            signal();
+    }
+
+    /**
+     * Waits until the count is positive.
+     *
+     * @param count the element count of the queue
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void await(AtomicInteger count) throws InterruptedException {
+        final ReentrantLock takeLock = this.takeLock;
+        takeLock.lockInterruptibly();
+        try {
+            waiters++;
+            try {
+                while (count.get() <= 0)    // 队列为空, 则线程在notEmpty上等待
+                    notEmpty.await();
+            } finally {
+                waiters--;
+            }
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the count is positive or the given time elapses.
+     *
+     * @param count the element count of the queue
+     * @param nanos the maximum time to wait, positive
+     * @return the remaining time, not positive if the wait timed out
+     * @throws InterruptedException if interrupted while waiting
+     */
+    long awaitNanos(AtomicInteger count, long nanos) throws InterruptedException {
+        final ReentrantLock takeLock = this.takeLock;
+        takeLock.lockInterruptibly();
+        try {
+            waiters++;
+            try {
+                while (count.get() <= 0) {
+                    if (nanos <= 0)
+                        return nanos;
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+                return nanos;
+            } finally {
+                waiters--;
+            }
+        } finally {
+            takeLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,991 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+import com.caojx.javaconcurrencylearn.source.util.concurrent.locks.ReentrantLock;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * OffHeapConcurrentHashMap是把键和值保存在堆外内存中的并发哈希表，适合上千万条映射、又不想承受GC停顿的场景。
+ * <p>
+ * 用ConcurrentHashMap保存5000万条映射时，堆上有上亿个对象，每次Full GC都要遍历它们。
+ * OffHeapConcurrentHashMap的实现方式（与JDK 7的ConcurrentHashMap一样分段加锁）：
+ * 1.整个表分成若干段（Segment），每段继承ReentrantLock，所有读写操作只锁一个段；
+ * 2.每个映射是一块用Unsafe.allocateMemory分配的堆外内存：[next][LRU prev][LRU next][hash][键长度][值长度] + 键 + 值，
+ *   堆上只保留每段一个long[]作为哈希桶数组（保存链表头节点的地址），每个桶8字节；
+ * 3.每段有自己的内存上限（总上限 / 段数），插入时超出上限就按LRU顺序淘汰最久未访问的映射；
+ * 4.键按字节内容比较，本类本身就是ConcurrentMap<byte[], byte[]>视图；
+ *   {@link #typedView(Serializer, Serializer)}返回使用可插拔序列化器的类型化视图。
+ * <p>
+ * 堆外内存不会被GC回收，使用完毕必须调用{@link #close()}释放。
+ * <p>
+ * A concurrent map storing serialized keys and values off-heap.  The
+ * table is split into segments, each guarded by its own lock, and each
+ * entry is a single block of native memory holding its chain and LRU
+ * links, the key and the value; the only on-heap structure is one
+ * array of entry addresses per segment.  Each segment may use at most
+ * its share of the memory limit and evicts its least recently used
+ * entries to make room.
+ *
+ * <p>Keys and values are {@code byte[]} compared by content, so unlike
+ * a plain {@code Map<byte[], byte[]>} two distinct arrays with equal
+ * contents denote the same key.  Arrays are copied in and out; the
+ * map never retains caller arrays.  Views with other key and value
+ * types are available through {@link #typedView}.
+ *
+ * <p>Native memory is released only by {@link #close}; any operation
+ * after {@code close} throws {@link IllegalStateException}.  Null keys
+ * and values are not permitted.
+ *
+ * @author caojx created on 2026/10/19
+ * @see ConcurrentHashMap
+ */
+public class OffHeapConcurrentHashMap extends AbstractMap<byte[], byte[]>
+        implements ConcurrentMap<byte[], byte[]>, Closeable {
+
+    /**
+     * 序列化器, 在类型化视图中把键和值与byte[]互相转换.
+     * <p>
+     * Converts objects to and from their serialized form.
+     *
+     * @param <T> the type of objects
+     */
+    public interface Serializer<T> {
+
+        byte[] serialize(T value);
+
+        T deserialize(byte[] bytes);
+
+        /**
+         * UTF-8 strings.
+         */
+        Serializer<String> STRING = new Serializer<String>() {
+            public byte[] serialize(String value) {
+                return value.getBytes(StandardCharsets.UTF_8);
+            }
+
+            public String deserialize(byte[] bytes) {
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+
+        /**
+         * Longs as eight big-endian bytes.
+         */
+        Serializer<Long> LONG = new Serializer<Long>() {
+            public byte[] serialize(Long value) {
+                long v = value;
+                byte[] b = new byte[8];
+                for (int i = 7; i >= 0; i--, v >>>= 8)
+                    b[i] = (byte) v;
+                return b;
+            }
+
+            public Long deserialize(byte[] bytes) {
+                long v = 0L;
+                for (int i = 0; i < 8; i++)
+                    v = (v << 8) | (bytes[i] & 0xffL);
+                return v;
+            }
+        };
+    }
+
+    /**
+     * 堆外映射的内存布局（字节偏移）
+     */
+    static final int NEXT_OFFSET = 0;
+    static final int LRU_PREV_OFFSET = 8;
+    static final int LRU_NEXT_OFFSET = 16;
+    static final int HASH_OFFSET = 24;
+    static final int KEY_LENGTH_OFFSET = 28;
+    static final int VALUE_LENGTH_OFFSET = 32;
+    static final int HEADER_SIZE = 40;
+
+    /**
+     * 默认段数
+     */
+    static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /**
+     * 每段桶数组的初始长度和最大长度
+     */
+    static final int MIN_SEGMENT_TABLE_CAPACITY = 16;
+    static final int MAX_SEGMENT_TABLE_CAPACITY = 1 << 30;
+
+    /**
+     * 段数组
+     */
+    final Segment[] segments;
+
+    final int segmentMask;
+
+    /**
+     * 堆外内存总上限（字节）
+     */
+    final long memoryLimit;
+
+    /**
+     * 是否已关闭
+     */
+    volatile boolean closed;
+
+    /**
+     * Creates a map with the given memory limit and the default number
+     * of segments.
+     *
+     * @param memoryLimit the maximum number of bytes of native memory,
+     *                    including per-entry headers
+     * @throws IllegalArgumentException if {@code memoryLimit} is not positive
+     */
+    public OffHeapConcurrentHashMap(long memoryLimit) {
+        this(memoryLimit, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Creates a map with the given memory limit and number of segments.
+     *
+     * @param memoryLimit      the maximum number of bytes of native
+     *                         memory, including per-entry headers; each segment
+     *                         may use {@code memoryLimit / segments}
+     * @param concurrencyLevel the number of segments, rounded up to a
+     *                         power of two
+     * @throws IllegalArgumentException if an argument is not positive
+     */
+    public OffHeapConcurrentHashMap(long memoryLimit, int concurrencyLevel) {
+        if (memoryLimit <= 0L || concurrencyLevel <= 0)
+            throw new IllegalArgumentException();
+        int n = 1;
+        while (n < concurrencyLevel && n < (1 << 16))
+            n <<= 1;
+        this.memoryLimit = memoryLimit;
+        this.segments = new Segment[n];
+        this.segmentMask = n - 1;
+        long segmentLimit = Math.max(1L, memoryLimit / n);
+        for (int i = 0; i < n; i++)
+            segments[i] = new Segment(segmentLimit);
+    }
+
+    /**
+     * 计算键的哈希值（字节内容的哈希再做一次fmix32）, 高16位选段, 低位选桶.
+     */
+    static int hash(byte[] key) {
+        int h = Arrays.hashCode(key);
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private Segment segmentFor(int h) {
+        if (closed)
+            throw new IllegalStateException("Map is closed");
+        return segments[(h >>> 16) & segmentMask];
+    }
+
+    // ConcurrentMap<byte[], byte[]>
+
+    /**
+     * Returns a copy of the value of the key, or {@code null} if there
+     * is no mapping.  Marks the entry as recently used.
+     *
+     * @param key the key, a {@code byte[]}
+     * @return a copy of the value, or {@code null}
+     */
+    public byte[] get(Object key) {
+        if (!(key instanceof byte[]))
+            return null;
+        byte[] k = (byte[]) key;
+        int h = hash(k);
+        return segmentFor(h).get(k, h);
+    }
+
+    public boolean containsKey(Object key) {
+        if (!(key instanceof byte[]))
+            return false;
+        byte[] k = (byte[]) key;
+        int h = hash(k);
+        return segmentFor(h).containsKey(k, h);
+    }
+
+    /**
+     * 按内容比较值, 逐段在锁下扫描.
+     * <p>
+     * Returns {@code true} if some key maps to a value with the same
+     * contents.  Scans every segment, one at a time under its lock.
+     *
+     * @param value the value, a {@code byte[]}
+     * @return whether the value is present
+     */
+    public boolean containsValue(Object value) {
+        if (!(value instanceof byte[]))
+            return false;
+        for (Segment s : segments)
+            if (s.containsValue((byte[]) value))
+                return true;
+        return false;
+    }
+
+    /**
+     * 写入映射, 段内存不足时按LRU淘汰其它映射.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the previous value, or {@code null}
+     * @throws IllegalArgumentException if the entry alone exceeds the
+     *                                  memory limit of a segment
+     */
+    public byte[] put(byte[] key, byte[] value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        int h = hash(key);
+        return segmentFor(h).put(key, h, value, false);
+    }
+
+    public byte[] putIfAbsent(byte[] key, byte[] value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        int h = hash(key);
+        return segmentFor(h).put(key, h, value, true);
+    }
+
+    public byte[] remove(Object key) {
+        if (!(key instanceof byte[]))
+            return null;
+        byte[] k = (byte[]) key;
+        int h = hash(k);
+        return segmentFor(h).remove(k, h, null);
+    }
+
+    public boolean remove(Object key, Object value) {
+        if (!(key instanceof byte[]) || !(value instanceof byte[]))
+            return false;
+        byte[] k = (byte[]) key;
+        int h = hash(k);
+        return segmentFor(h).remove(k, h, (byte[]) value) != null;
+    }
+
+    public boolean replace(byte[] key, byte[] oldValue, byte[] newValue) {
+        if (key == null || oldValue == null || newValue == null)
+            throw new NullPointerException();
+        int h = hash(key);
+        return segmentFor(h).replace(key, h, oldValue, newValue) != null;
+    }
+
+    public byte[] replace(byte[] key, byte[] value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        int h = hash(key);
+        return segmentFor(h).replace(key, h, null, value);
+    }
+
+    public int size() {
+        long n = 0L;
+        for (Segment s : segments)
+            n += s.count;
+        return (n > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) n;
+    }
+
+    public boolean isEmpty() {
+        for (Segment s : segments)
+            if (s.count != 0)
+                return false;
+        return true;
+    }
+
+    public void clear() {
+        for (Segment s : segments)
+            s.clear();
+    }
+
+    /**
+     * 返回所有映射的集合. 遍历时逐段在锁下拷贝, 弱一致; 迭代器的remove删除对应的键.
+     * <p>
+     * Returns a set view of the mappings.  Iteration copies one segment
+     * at a time under its lock and is weakly consistent; entries are
+     * copies, {@code setValue} is not supported and
+     * {@code Iterator.remove} removes the key from this map.
+     *
+     * @return a set view of the mappings
+     */
+    public Set<Map.Entry<byte[], byte[]>> entrySet() {
+        return new AbstractSet<Map.Entry<byte[], byte[]>>() {
+            public Iterator<Map.Entry<byte[], byte[]>> iterator() {
+                return new EntryIterator();
+            }
+
+            public boolean contains(Object o) {
+                if (!(o instanceof Map.Entry))
+                    return false;
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                Object k = e.getKey(), v = e.getValue();
+                if (!(k instanceof byte[]) || !(v instanceof byte[]))
+                    return false;
+                byte[] key = (byte[]) k;
+                int h = hash(key);
+                return segmentFor(h).containsEntry(key, h, (byte[]) v);
+            }
+
+            public boolean remove(Object o) {
+                if (!(o instanceof Map.Entry))
+                    return false;
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                return OffHeapConcurrentHashMap.this.remove(e.getKey(), e.getValue());
+            }
+
+            public int size() {
+                return OffHeapConcurrentHashMap.this.size();
+            }
+
+            public void clear() {
+                OffHeapConcurrentHashMap.this.clear();
+            }
+        };
+    }
+
+    /**
+     * 与AbstractMap.equals相同, 但按内容比较byte[]值.
+     * <p>
+     * Compares the specified object with this map for equality, comparing
+     * {@code byte[]} values by content.  Keys are looked up in the other
+     * map with its own {@code get}, so two maps of this class with the
+     * same contents are equal.
+     *
+     * @param o object to be compared for equality with this map
+     * @return {@code true} if the specified object is equal to this map
+     */
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof Map))
+            return false;
+        Map<?, ?> m = (Map<?, ?>) o;
+        if (m.size() != size())
+            return false;
+        for (Map.Entry<byte[], byte[]> e : entrySet()) {
+            Object v = m.get(e.getKey());
+            if (!(v instanceof byte[]) || !Arrays.equals(e.getValue(), (byte[]) v))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the sum of the hash codes of the entries, each being
+     * {@code Arrays.hashCode(key) ^ Arrays.hashCode(value)}.
+     *
+     * @return the hash code value for this map
+     */
+    public int hashCode() {
+        int h = 0;
+        for (Map.Entry<byte[], byte[]> e : entrySet())
+            h += e.hashCode();
+        return h;
+    }
+
+    /**
+     * 迭代器返回的映射拷贝, 按内容比较键和值, 使entrySet与其它Set的比较符合Map.Entry的约定.
+     */
+    static final class BytesEntry extends AbstractMap.SimpleImmutableEntry<byte[], byte[]> {
+        private static final long serialVersionUID = 3914216342906123810L;
+
+        BytesEntry(byte[] key, byte[] value) {
+            super(key, value);
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object k = e.getKey(), v = e.getValue();
+            return k instanceof byte[] && v instanceof byte[] &&
+                    Arrays.equals(getKey(), (byte[]) k) && Arrays.equals(getValue(), (byte[]) v);
+        }
+
+        public int hashCode() {
+            return Arrays.hashCode(getKey()) ^ Arrays.hashCode(getValue());
+        }
+
+        public String toString() {
+            return Arrays.toString(getKey()) + "=" + Arrays.toString(getValue());
+        }
+    }
+
+    final class EntryIterator implements Iterator<Map.Entry<byte[], byte[]>> {
+        int nextSegment;
+        Iterator<Map.Entry<byte[], byte[]>> current = java.util.Collections.emptyIterator();
+        Map.Entry<byte[], byte[]> last;
+
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (nextSegment >= segments.length)
+                    return false;
+                current = segments[nextSegment++].snapshot().iterator();
+            }
+            return true;
+        }
+
+        public Map.Entry<byte[], byte[]> next() {
+            if (!hasNext())
+                throw new java.util.NoSuchElementException();
+            return last = current.next();
+        }
+
+        public void remove() {
+            if (last == null)
+                throw new IllegalStateException();
+            OffHeapConcurrentHashMap.this.remove(last.getKey());
+            last = null;
+        }
+    }
+
+    // 统计与生命周期
+
+    /**
+     * Returns the configured memory limit.
+     *
+     * @return the memory limit in bytes
+     */
+    public long memoryLimit() {
+        return memoryLimit;
+    }
+
+    /**
+     * Returns the native memory currently allocated to entries.
+     *
+     * @return the number of bytes in use
+     */
+    public long memoryUsed() {
+        long n = 0L;
+        for (Segment s : segments)
+            n += s.usedBytes;
+        return n;
+    }
+
+    /**
+     * Returns the number of entries evicted to respect the memory limit.
+     *
+     * @return the number of evictions
+     */
+    public long evictionCount() {
+        long n = 0L;
+        for (Segment s : segments)
+            n += s.evictions;
+        return n;
+    }
+
+    /**
+     * 释放所有堆外内存. 之后的任何操作都会抛出IllegalStateException.
+     * <p>
+     * Releases all native memory.  Idempotent.
+     */
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        for (Segment s : segments)
+            s.close();
+    }
+
+    /**
+     * 返回使用给定序列化器的类型化视图, 与本map共享数据.
+     * <p>
+     * Returns a view of this map whose keys and values are converted with
+     * the given serializers.  Keys are compared by their serialized
+     * form.
+     *
+     * @param keySerializer   the key serializer
+     * @param valueSerializer the value serializer
+     * @param <K>             the type of keys
+     * @param <V>             the type of values
+     * @return a typed view backed by this map
+     */
+    public <K, V> ConcurrentMap<K, V> typedView(Serializer<K> keySerializer,
+                                                Serializer<V> valueSerializer) {
+        if (keySerializer == null || valueSerializer == null)
+            throw new NullPointerException();
+        return new TypedView<K, V>(this, keySerializer, valueSerializer);
+    }
+
+    /**
+     * 段: 桶数组在堆上, 映射在堆外, 所有操作都持有段锁.
+     */
+    @SuppressWarnings("serial")
+    static final class Segment extends ReentrantLock {
+
+        /**
+         * 桶数组, 保存链表头映射的地址, 0表示空
+         */
+        long[] table = new long[MIN_SEGMENT_TABLE_CAPACITY];
+
+        /**
+         * 映射数和已用内存, volatile以便不加锁读取
+         */
+        volatile int count;
+        volatile long usedBytes;
+        volatile long evictions;
+
+        /**
+         * 本段的内存上限
+         */
+        final long limit;
+
+        /**
+         * 段是否已关闭, 由锁保护
+         */
+        boolean closed;
+
+        /**
+         * LRU链表: head最近访问, tail最久未访问
+         */
+        long lruHead;
+        long lruTail;
+
+        Segment(long limit) {
+            this.limit = limit;
+        }
+
+        static long entrySize(int keyLength, int valueLength) {
+            return (long) HEADER_SIZE + keyLength + valueLength;
+        }
+
+        static int keyLength(long e) {
+            return U.getInt(e + KEY_LENGTH_OFFSET);
+        }
+
+        static int valueLength(long e) {
+            return U.getInt(e + VALUE_LENGTH_OFFSET);
+        }
+
+        /**
+         * 比较堆外映射e的键与key是否相同, 每次比较8个字节.
+         */
+        static boolean keyEquals(long e, byte[] key, int h) {
+            if (U.getInt(e + HASH_OFFSET) != h || keyLength(e) != key.length)
+                return false;
+            long addr = e + HEADER_SIZE;
+            int n = key.length, i = 0;
+            for (; i + 8 <= n; i += 8)
+                if (U.getLong(addr + i) != U.getLong(key, BYTE_ARRAY_BASE + i))
+                    return false;
+            for (; i < n; i++)
+                if (U.getByte(addr + i) != key[i])
+                    return false;
+            return true;
+        }
+
+        static boolean valueEquals(long e, byte[] value) {
+            int n = valueLength(e);
+            if (n != value.length)
+                return false;
+            long addr = e + HEADER_SIZE + keyLength(e);
+            for (int i = 0; i < n; i++)
+                if (U.getByte(addr + i) != value[i])
+                    return false;
+            return true;
+        }
+
+        static byte[] copyKey(long e) {
+            byte[] b = new byte[keyLength(e)];
+            U.copyMemory(null, e + HEADER_SIZE, b, BYTE_ARRAY_BASE, b.length);
+            return b;
+        }
+
+        static byte[] copyValue(long e) {
+            byte[] b = new byte[valueLength(e)];
+            U.copyMemory(null, e + HEADER_SIZE + keyLength(e), b, BYTE_ARRAY_BASE, b.length);
+            return b;
+        }
+
+        /**
+         * 查找key对应的堆外映射地址, 找不到返回0. 调用者持有锁.
+         */
+        long find(byte[] key, int h) {
+            if (closed)
+                throw new IllegalStateException("Map is closed");
+            long[] tab = table;
+            for (long e = tab[h & (tab.length - 1)]; e != 0L; e = U.getLong(e + NEXT_OFFSET))
+                if (keyEquals(e, key, h))
+                    return e;
+            return 0L;
+        }
+
+        byte[] get(byte[] key, int h) {
+            lock();
+            try {
+                long e = find(key, h);
+                if (e == 0L)
+                    return null;
+                moveToHead(e);
+                return copyValue(e);
+            } finally {
+                unlock();
+            }
+        }
+
+        boolean containsKey(byte[] key, int h) {
+            lock();
+            try {
+                return find(key, h) != 0L;
+            } finally {
+                unlock();
+            }
+        }
+
+        boolean containsEntry(byte[] key, int h, byte[] value) {
+            lock();
+            try {
+                long e = find(key, h);
+                return e != 0L && valueEquals(e, value);
+            } finally {
+                unlock();
+            }
+        }
+
+        boolean containsValue(byte[] value) {
+            lock();
+            try {
+                if (closed)
+                    throw new IllegalStateException("Map is closed");
+                for (long e = lruHead; e != 0L; e = U.getLong(e + LRU_NEXT_OFFSET))
+                    if (valueEquals(e, value))
+                        return true;
+                return false;
+            } finally {
+                unlock();
+            }
+        }
+
+        byte[] put(byte[] key, int h, byte[] value, boolean onlyIfAbsent) {
+            long size = entrySize(key.length, value.length);
+            if (size > limit)
+                throw new IllegalArgumentException("Entry of " + size +
+                        " bytes exceeds the segment limit of " + limit + " bytes");
+            lock();
+            try {
+                long old = find(key, h);
+                byte[] prev = null;
+                if (old != 0L) {
+                    prev = copyValue(old);
+                    if (onlyIfAbsent) {
+                        moveToHead(old);
+                        return prev;
+                    }
+                    unlinkAndFree(old);
+                }
+                insert(key, h, value, size);
+                return prev;
+            } finally {
+                unlock();
+            }
+        }
+
+        /**
+         * 替换已存在的映射; expect不为null时只有值相等才替换. 返回旧值, 未替换返回null.
+         */
+        byte[] replace(byte[] key, int h, byte[] expect, byte[] value) {
+            long size = entrySize(key.length, value.length);
+            if (size > limit)
+                throw new IllegalArgumentException("Entry of " + size +
+                        " bytes exceeds the segment limit of " + limit + " bytes");
+            lock();
+            try {
+                long old = find(key, h);
+                if (old == 0L || (expect != null && !valueEquals(old, expect)))
+                    return null;
+                byte[] prev = copyValue(old);
+                unlinkAndFree(old);
+                insert(key, h, value, size);
+                return prev;
+            } finally {
+                unlock();
+            }
+        }
+
+        byte[] remove(byte[] key, int h, byte[] expect) {
+            lock();
+            try {
+                long e = find(key, h);
+                if (e == 0L || (expect != null && !valueEquals(e, expect)))
+                    return null;
+                byte[] prev = copyValue(e);
+                unlinkAndFree(e);
+                return prev;
+            } finally {
+                unlock();
+            }
+        }
+
+        /**
+         * 分配堆外内存并插入映射, 超出内存上限时先淘汰LRU尾部的映射. 调用者持有锁.
+         */
+        private void insert(byte[] key, int h, byte[] value, long size) {
+            while (usedBytes + size > limit && lruTail != 0L) {
+                unlinkAndFree(lruTail);
+                evictions = evictions + 1;
+            }
+            long e = U.allocateMemory(size);
+            U.putInt(e + HASH_OFFSET, h);
+            U.putInt(e + KEY_LENGTH_OFFSET, key.length);
+            U.putInt(e + VALUE_LENGTH_OFFSET, value.length);
+            U.copyMemory(key, BYTE_ARRAY_BASE, null, e + HEADER_SIZE, key.length);
+            U.copyMemory(value, BYTE_ARRAY_BASE, null, e + HEADER_SIZE + key.length, value.length);
+            long[] tab = table;
+            int i = h & (tab.length - 1);
+            U.putLong(e + NEXT_OFFSET, tab[i]);
+            tab[i] = e;
+            U.putLong(e + LRU_PREV_OFFSET, 0L);
+            U.putLong(e + LRU_NEXT_OFFSET, 0L);
+            linkHead(e);
+            usedBytes = usedBytes + size;
+            int c = count + 1;
+            count = c;
+            if (c > (tab.length >>> 2) * 3 && tab.length < MAX_SEGMENT_TABLE_CAPACITY)
+                rehash();
+        }
+
+        /**
+         * 从桶链表和LRU链表中摘除映射并释放内存. 调用者持有锁.
+         */
+        private void unlinkAndFree(long e) {
+            long[] tab = table;
+            int i = U.getInt(e + HASH_OFFSET) & (tab.length - 1);
+            long next = U.getLong(e + NEXT_OFFSET);
+            if (tab[i] == e) {
+                tab[i] = next;
+            } else {
+                long p = tab[i], n;
+                while ((n = U.getLong(p + NEXT_OFFSET)) != e)
+                    p = n;
+                U.putLong(p + NEXT_OFFSET, next);
+            }
+            unlinkLru(e);
+            usedBytes = usedBytes - entrySize(keyLength(e), valueLength(e));
+            count = count - 1;
+            U.freeMemory(e);
+        }
+
+        private void linkHead(long e) {
+            long h = lruHead;
+            U.putLong(e + LRU_NEXT_OFFSET, h);
+            U.putLong(e + LRU_PREV_OFFSET, 0L);
+            if (h != 0L)
+                U.putLong(h + LRU_PREV_OFFSET, e);
+            else
+                lruTail = e;
+            lruHead = e;
+        }
+
+        private void unlinkLru(long e) {
+            long prev = U.getLong(e + LRU_PREV_OFFSET);
+            long next = U.getLong(e + LRU_NEXT_OFFSET);
+            if (prev != 0L)
+                U.putLong(prev + LRU_NEXT_OFFSET, next);
+            else
+                lruHead = next;
+            if (next != 0L)
+                U.putLong(next + LRU_PREV_OFFSET, prev);
+            else
+                lruTail = prev;
+        }
+
+        private void moveToHead(long e) {
+            if (lruHead != e) {
+                unlinkLru(e);
+                linkHead(e);
+            }
+        }
+
+        /**
+         * 桶数组翻倍. 映射本身不移动, 只重新串链表.
+         */
+        private void rehash() {
+            long[] old = table;
+            long[] tab = new long[old.length << 1];
+            int m = tab.length - 1;
+            for (long head : old) {
+                for (long e = head, next; e != 0L; e = next) {
+                    next = U.getLong(e + NEXT_OFFSET);
+                    int i = U.getInt(e + HASH_OFFSET) & m;
+                    U.putLong(e + NEXT_OFFSET, tab[i]);
+                    tab[i] = e;
+                }
+            }
+            table = tab;
+        }
+
+        void clear() {
+            lock();
+            try {
+                for (long e = lruHead, next; e != 0L; e = next) {
+                    next = U.getLong(e + LRU_NEXT_OFFSET);
+                    U.freeMemory(e);
+                }
+                lruHead = lruTail = 0L;
+                table = new long[MIN_SEGMENT_TABLE_CAPACITY];
+                count = 0;
+                usedBytes = 0L;
+            } finally {
+                unlock();
+            }
+        }
+
+        void close() {
+            lock();
+            try {
+                closed = true;
+                clear();
+            } finally {
+                unlock();
+            }
+        }
+
+        List<Map.Entry<byte[], byte[]>> snapshot() {
+            lock();
+            try {
+                if (closed)
+                    throw new IllegalStateException("Map is closed");
+                List<Map.Entry<byte[], byte[]>> list =
+                        new ArrayList<Map.Entry<byte[], byte[]>>(count);
+                for (long e = lruHead; e != 0L; e = U.getLong(e + LRU_NEXT_OFFSET))
+                    list.add(new BytesEntry(copyKey(e), copyValue(e)));
+                return list;
+            } finally {
+                unlock();
+            }
+        }
+    }
+
+    /**
+     * 类型化视图: 所有操作序列化后委托给底层的byte[]映射.
+     */
+    static final class TypedView<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+        final OffHeapConcurrentHashMap map;
+        final Serializer<K> keys;
+        final Serializer<V> values;
+
+        TypedView(OffHeapConcurrentHashMap map, Serializer<K> keys, Serializer<V> values) {
+            this.map = map;
+            this.keys = keys;
+            this.values = values;
+        }
+
+        private V value(byte[] b) {
+            return (b == null) ? null : values.deserialize(b);
+        }
+
+        @SuppressWarnings("unchecked")
+        private byte[] keyBytes(Object key) {
+            try {
+                return keys.serialize((K) key);
+            } catch (ClassCastException e) {
+                return null;        // 键的类型不对, 视为不存在
+            }
+        }
+
+        public V get(Object key) {
+            byte[] k = keyBytes(key);
+            return (k == null) ? null : value(map.get(k));
+        }
+
+        public boolean containsKey(Object key) {
+            byte[] k = keyBytes(key);
+            return k != null && map.containsKey(k);
+        }
+
+        public V put(K key, V value) {
+            return value(map.put(keys.serialize(key), values.serialize(value)));
+        }
+
+        public V putIfAbsent(K key, V value) {
+            return value(map.putIfAbsent(keys.serialize(key), values.serialize(value)));
+        }
+
+        public V remove(Object key) {
+            byte[] k = keyBytes(key);
+            return (k == null) ? null : value(map.remove(k));
+        }
+
+        @SuppressWarnings("unchecked")
+        public boolean remove(Object key, Object value) {
+            byte[] k = keyBytes(key);
+            if (k == null || value == null)
+                return false;
+            try {
+                return map.remove(k, values.serialize((V) value));
+            } catch (ClassCastException e) {
+                return false;
+            }
+        }
+
+        public boolean replace(K key, V oldValue, V newValue) {
+            return map.replace(keys.serialize(key), values.serialize(oldValue), values.serialize(newValue));
+        }
+
+        public V replace(K key, V value) {
+            return value(map.replace(keys.serialize(key), values.serialize(value)));
+        }
+
+        public int size() {
+            return map.size();
+        }
+
+        public boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        public void clear() {
+            map.clear();
+        }
+
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new AbstractSet<Map.Entry<K, V>>() {
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    Iterator<Map.Entry<byte[], byte[]>> it = map.entrySet().iterator();
+                    return new Iterator<Map.Entry<K, V>>() {
+                        public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        public Map.Entry<K, V> next() {
+                            Map.Entry<byte[], byte[]> e = it.next();
+                            return new AbstractMap.SimpleImmutableEntry<K, V>(
+                                    keys.deserialize(e.getKey()), values.deserialize(e.getValue()));
+                        }
+
+                        public void remove() {
+                            it.remove();
+                        }
+                    };
+                }
+
+                public int size() {
+                    return map.size();
+                }
+            };
+        }
+    }
+
+    // Unsafe mechanics
+    private static final sun.misc.Unsafe U;
+    private static final long BYTE_ARRAY_BASE;
+
+    static {
+        try {
+            U = sun.misc.Unsafe.getUnsafe();
+            BYTE_ARRAY_BASE = U.arrayBaseOffset(byte[].class);
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+import com.caojx.javaconcurrencylearn.source.util.concurrent.locks.ReentrantLock;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * OffHeapMessageQueue是基于堆外内存（direct ByteBuffer）实现的有界环形消息队列，消息为变长的字节序列。
+ * <p>
+ * 用ArrayBlockingQueue排队上百万个小的byte[]消息时，每条消息都是一个堆上对象，GC压力大，遍历时还要追指针。
+ * OffHeapMessageQueue把消息直接保存在一块连续的堆外内存中：
+ * 1.每条消息是一条记录：8字节的记录头[int 记录总长度][int 消息长度] + 消息内容，记录总长度按8字节对齐；
+ * 2.生产者通过CAS推进tail指针来“认领”一段空间，然后各自并发地写入消息，最后用有序写（putOrderedInt）写入记录总长度，表示该记录已提交；
+ * 3.认领的空间跨越缓冲区末尾时，先在末尾写一条填充记录（消息长度为-1），消息从缓冲区开头写入；
+ * 4.消费者批量读取：从head开始依次读取已提交的记录，把只读视图交给回调，不做任何拷贝；
+ *   一批处理完后把这段内存清零（记录头为0表示未提交），再推进head指针，释放空间给生产者。
+ * <p>
+ * A bounded, multi-producer queue of variable-length byte messages
+ * stored in a ring of off-heap memory.  Producers claim space by a CAS
+ * on the tail cursor and then copy their message concurrently;
+ * consumers read committed messages in batches through
+ * {@link #read(Consumer, int)}, which hands each message to the
+ * handler as a read-only view of the ring, with no copying.
+ *
+ * <p>Each record consists of an eight-byte header holding the aligned
+ * record length and the message length, followed by the message, and
+ * is padded to a multiple of eight bytes.  The record length is
+ * written last with an ordered store, which commits the record; a
+ * record length of zero means the slot is not yet committed.  Space
+ * is zeroed again by the consumer before it is released.
+ *
+ * <p>Reads are serialized by an internal lock, so any number of
+ * threads may consume, but throughput is best with a single consumer.
+ *
+ * @author caojx created on 2026/10/19
+ * @see ArrayBlockingQueue
+ */
+public class OffHeapMessageQueue {
+
+    /*
+     * The cursors are positions in an unbounded byte sequence; the
+     * index into the ring is (position & mask).  Producers read head
+     * with volatile semantics before claiming, which orders the
+     * consumer's zeroing of released space before any writes into it.
+     * A producer that wins the tail CAS owns [tail, newTail) and is
+     * the only writer there until it commits.  The consumer stops at
+     * the first uncommitted record, so a slow producer delays readers
+     * of later records but never lets them see partial data.
+     */
+
+    /**
+     * 记录头长度
+     */
+    static final int HEADER = 8;
+
+    /**
+     * 对齐长度
+     */
+    static final int ALIGNMENT = 8;
+
+    /**
+     * 填充记录的消息长度
+     */
+    static final int PADDING = -1;
+
+    /**
+     * 堆外缓冲区
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * 缓冲区的起始内存地址
+     */
+    private final long address;
+
+    /**
+     * 缓冲区容量（字节数, 2的幂次）
+     */
+    private final int capacity;
+
+    private final int mask;
+
+    /**
+     * 单条消息的最大长度: 容量的1/8
+     */
+    private final int maxMessageLength;
+
+    /**
+     * 生产者游标: 下一条记录的写入位置, 生产者通过CAS认领空间.
+     */
+    @sun.misc.Contended
+    private volatile long tail;
+
+    /**
+     * 消费者游标: 下一条记录的读取位置.
+     */
+    @sun.misc.Contended
+    private volatile long head;
+
+    /**
+     * 消费者锁, 保证同一时刻只有一个线程在读取
+     */
+    private final ReentrantLock readLock = new ReentrantLock();
+
+    /**
+     * 交给消费者回调的只读视图, 每条消息只调整position/limit, 不分配新对象
+     */
+    private final ByteBuffer readView;
+
+    /**
+     * Creates a queue backed by {@code capacity} bytes of off-heap memory.
+     *
+     * @param capacity the size of the ring in bytes; must be a power
+     *                 of two and at least 64
+     * @throws IllegalArgumentException if {@code capacity} is not a
+     *                                  power of two or is less than 64
+     */
+    public OffHeapMessageQueue(int capacity) {
+        if (capacity < 64 || (capacity & (capacity - 1)) != 0)
+            throw new IllegalArgumentException();
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.maxMessageLength = (capacity >>> 3) - HEADER;
+        this.buffer = ByteBuffer.allocateDirect(capacity);
+        this.address = ((sun.nio.ch.DirectBuffer) buffer).address();
+        UNSAFE.setMemory(address, capacity, (byte) 0);
+        this.readView = buffer.asReadOnlyBuffer();
+    }
+
+    private static int align(int n) {
+        return (n + ALIGNMENT - 1) & ~(ALIGNMENT - 1);
+    }
+
+    /**
+     * Returns the capacity of the ring in bytes.
+     *
+     * @return the capacity of the ring in bytes
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the maximum length of a single message.
+     *
+     * @return the maximum length of a single message
+     */
+    public int maxMessageLength() {
+        return maxMessageLength;
+    }
+
+    /**
+     * 认领length字节的消息空间, 返回消息记录在缓冲区中的下标; 空间不足返回-1.
+     * 跨越缓冲区末尾时, 先提交一条填充记录.
+     */
+    private int claim(int length) {
+        if (length < 0 || length > maxMessageLength)
+            throw new IllegalArgumentException("Invalid message length: " + length);
+        final int required = align(HEADER + length);
+        long t, next;
+        int padding;
+        do {
+            long h = head;
+            t = tail;
+            int index = (int) t & mask;
+            int toEnd = capacity - index;
+            padding = (required > toEnd) ? toEnd : 0;       // 放不下, 需要在末尾填充
+            next = t + padding + required;
+            if (next - h > capacity)
+                return -1;                                  // 队列已满
+        } while (!UNSAFE.compareAndSwapLong(this, TAIL, t, next));
+        int index = (int) t & mask;
+        if (padding != 0) {
+            UNSAFE.putInt(address + index + 4, PADDING);
+            UNSAFE.putOrderedInt(null, address + index, padding);
+            index = 0;
+        }
+        return index;
+    }
+
+    /**
+     * 提交记录: 先写消息长度, 最后有序写入记录总长度.
+     */
+    private void commit(int index, int length) {
+        UNSAFE.putInt(address + index + 4, length);
+        UNSAFE.putOrderedInt(null, address + index, align(HEADER + length));
+    }
+
+    /**
+     * 写入一条消息, 空间不足时立即返回false.
+     *
+     * @param src the message
+     * @return {@code true} if the message was added, {@code false} if
+     * there was not enough free space
+     * @throws NullPointerException     if {@code src} is null
+     * @throws IllegalArgumentException if the message is longer than
+     *                                  {@link #maxMessageLength()}
+     */
+    public boolean offer(byte[] src) {
+        return offer(src, 0, src.length);
+    }
+
+    /**
+     * 写入byte数组中的一段作为一条消息, 空间不足时立即返回false.
+     *
+     * @param src    the array holding the message
+     * @param offset the offset of the message in {@code src}
+     * @param length the length of the message
+     * @return {@code true} if the message was added, {@code false} if
+     * there was not enough free space
+     * @throws IndexOutOfBoundsException if the range is outside {@code src}
+     * @throws IllegalArgumentException  if the message is longer than
+     *                                   {@link #maxMessageLength()}
+     */
+    public boolean offer(byte[] src, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > src.length - length)
+            throw new IndexOutOfBoundsException();
+        int index = claim(length);
+        if (index < 0)
+            return false;
+        UNSAFE.copyMemory(src, BYTE_ARRAY_BASE + offset, null, address + index + HEADER, length);
+        commit(index, length);
+        return true;
+    }
+
+    /**
+     * 写入ByteBuffer中剩余的字节作为一条消息, 成功时src的position移动到limit.
+     *
+     * @param src the buffer holding the message between its position and limit
+     * @return {@code true} if the message was added, {@code false} if
+     * there was not enough free space
+     * @throws IllegalArgumentException if the message is longer than
+     *                                  {@link #maxMessageLength()}
+     */
+    public boolean offer(ByteBuffer src) {
+        int length = src.remaining();
+        int index = claim(length);
+        if (index < 0)
+            return false;
+        ByteBuffer dst = buffer.duplicate();
+        dst.position(index + HEADER);
+        dst.put(src);
+        commit(index, length);
+        return true;
+    }
+
+    /**
+     * 批量读取: 从head开始依次把已提交的消息交给handler, 最多maxMessages条.
+     * 交给handler的ByteBuffer是缓冲区的只读视图（position到limit之间是消息内容），
+     * 只在回调期间有效, 回调返回后对应的内存就可能被生产者复用.
+     * <p>
+     * Reads up to {@code maxMessages} committed messages, in order,
+     * passing each to {@code handler} as a read-only view whose
+     * position and limit delimit the message.  The view is valid only
+     * for the duration of the callback; copy the bytes if they must be
+     * retained.  The space of all messages read is released when this
+     * method returns, even if the handler throws.
+     *
+     * @param handler     the callback receiving each message
+     * @param maxMessages the maximum number of messages to read
+     * @return the number of messages read
+     */
+    public int read(Consumer<ByteBuffer> handler, int maxMessages) {
+        final ReentrantLock readLock = this.readLock;
+        readLock.lock();
+        try {
+            final long h = head;
+            final ByteBuffer view = readView;
+            int n = 0;
+            int bytes = 0;
+            try {
+                while (n < maxMessages && bytes < capacity) {
+                    int index = (int) (h + bytes) & mask;
+                    int recordLength = UNSAFE.getIntVolatile(null, address + index);
+                    if (recordLength == 0)                          // 未提交, 本批次结束
+                        break;
+                    int length = UNSAFE.getInt(address + index + 4);
+                    bytes += recordLength;
+                    if (length != PADDING) {
+                        view.limit(index + HEADER + length).position(index + HEADER);
+                        ++n;
+                        handler.accept(view);
+                    }
+                }
+            } finally {
+                if (bytes > 0)
+                    release(h, bytes);
+            }
+            return n;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * 把[h, h + bytes)这段内存清零, 然后推进head, 释放空间给生产者.
+     */
+    private void release(long h, int bytes) {
+        int index = (int) h & mask;
+        int toEnd = capacity - index;
+        if (bytes <= toEnd) {
+            UNSAFE.setMemory(address + index, bytes, (byte) 0);
+        } else {
+            UNSAFE.setMemory(address + index, toEnd, (byte) 0);
+            UNSAFE.setMemory(address, bytes - toEnd, (byte) 0);
+        }
+        UNSAFE.putOrderedLong(this, HEAD, h + bytes);
+    }
+
+    /**
+     * 读取一条消息并拷贝到新的byte数组中; 没有已提交的消息时返回null.
+     *
+     * @return a copy of the next message, or {@code null} if none is available
+     */
+    public byte[] poll() {
+        byte[][] holder = new byte[1][];
+        read(view -> {
+            byte[] b = new byte[view.remaining()];
+            view.get(b);
+            holder[0] = b;
+        }, 1);
+        return holder[0];
+    }
+
+    /**
+     * Returns the number of bytes currently claimed, including headers
+     * and padding of records not yet read.
+     *
+     * @return the number of bytes in use
+     */
+    public int usedBytes() {
+        long h = head;
+        return (int) (tail - h);
+    }
+
+    /**
+     * Returns {@code true} if no space is claimed by unread records.
+     *
+     * @return {@code true} if this queue is empty
+     */
+    public boolean isEmpty() {
+        return tail == head;
+    }
+
+    // Unsafe mechanics
+    private static final sun.misc.Unsafe UNSAFE;
+    private static final long TAIL;
+    private static final long HEAD;
+    private static final long BYTE_ARRAY_BASE;
+
+    static {
+        try {
+            UNSAFE = sun.misc.Unsafe.getUnsafe();
+            Class<?> k = OffHeapMessageQueue.class;
+            TAIL = UNSAFE.objectFieldOffset(k.getDeclaredField("tail"));
+            HEAD = UNSAFE.objectFieldOffset(k.getDeclaredField("head"));
+            BYTE_ARRAY_BASE = UNSAFE.arrayBaseOffset(byte[].class);
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+}
@@ -119,7 +119,7 @@ import java.util.concurrent.TimeUnit;
  */
 @SuppressWarnings("unchecked")
 public class PriorityBlockingQueue<E> extends AbstractQueue<E>
-        implements BlockingQueue<E>, java.io.Serializable {
+        implements BlockingQueue<E>, InstrumentedQueue, java.io.Serializable {
     private static final long serialVersionUID = 5595510919245408276L;
 
     /*
@@ -209,6 +209,17 @@ public class PriorityBlockingQueue<E> extends AbstractQueue<E>
      */
     private PriorityQueue<E> q;
 
+    /**
+     * 观测探针, 为null表示不做统计
+     */
+    private transient volatile QueueProbe probe;
+
+    /**
+     * 与queue平行的入队时间戳数组, 堆调整时时间戳跟着元素一起移动; 仅在安装了探针时非null, 0表示入队时间未知.
+     * probe和stamps都在持有lock时设置.
+     */
+    private transient long[] stamps;
+
     /**
      * 默认构造器.
      * 默认初始容量11, 以元素自然顺序比较(元素必须实现Comparable接口)
@@ -359,6 +370,8 @@ public class PriorityBlockingQueue<E> extends AbstractQueue<E>
         if (newArray != null && queue == array) {
             queue = newArray;   // 指向新的内部数组
             System.arraycopy(array, 0, newArray, 0, oldCap);
+            if (stamps != null)
+                stamps = Arrays.copyOf(stamps, newArray.length);
         }
     }
 
@@ -374,14 +387,20 @@ public class PriorityBlockingQueue<E> extends AbstractQueue<E>
             return null;
         else {
             Object[] array = queue;
+            long[] stamps = this.stamps;
             E result = (E) array[0];    // array[0]是堆顶结点, 每次出队都删除堆顶结点
             E x = (E) array[n];         // array[n]是堆的最后一个结点, 也就是二叉树的最右下结点
             array[n] = null;
+            long t = 0L;
+            if (stamps != null) {
+                probe.onDequeue(sojourn(stamps[0]));
+                t = stamps[n];
+            }
             Comparator<? super E> cmp = comparator;
             if (cmp == null)
-                siftDownComparable(0, x, array, n);
+                siftDownComparable(0, x, t, array, stamps, n);
             else
-                siftDownUsingComparator(0, x, array, n, cmp);
+                siftDownUsingComparator(0, x, t, array, stamps, n, cmp);
             size = n;
             return result;
         }
@@ -406,11 +425,14 @@ public class PriorityBlockingQueue<E> extends AbstractQueue<E>
      * These methods are static, with heap state as arguments, to
      * simplify use in light of possible comparator exceptions.
      *
-     * @param k     the position to fill
-     * @param x     the item to insert
-     * @param array the heap array
+     * @param k      the position to fill
+     * @param x      the item to insert
+     * @param t      the enqueue time of x, used only if stamps is non-null
+     * @param array  the heap array
+     * @param stamps the enqueue times parallel to array, or null
      */
-    private static <T> void siftUpComparable(int k, T x, Object[] array) {
+    private static <T> void siftUpComparable(int k, T x, long t, Object[] array,
+                                             long[] stamps) {
         Comparable<? super T> key = (Comparable<? super T>) x;
         while (k > 0) {
             int parent = (k - 1) >>> 1;        // 相当于(k-1)除2, 就是求k结点的父结点索引parent
@@ -420,12 +442,17 @@ public class PriorityBlockingQueue<E> extends AbstractQueue<E>
 
             // 否则，交换父结点和当前结点的值
             array[k] = e;
+            if (stamps != null)
+                stamps[k] = stamps[parent];
             k = parent;
         }
         array[k] = key;
+        if (stamps != null)
+            stamps[k] = t;
     }
 
-    private static <T> void siftUpUsingComparator(int k, T x, Object[] array,
+    private static <T> void siftUpUsingComparator(int k, T x, long t, Object[] array,
+                                                  long[] stamps,
                                                   Comparator<? super T> cmp) {
         while (k > 0) {
             int parent = (k - 1) >>> 1;
@@ -433,9 +460,13 @@ public class PriorityBlockingQueue<E> extends AbstractQueue<E>
             if (cmp.compare(x, (T) e) >= 0)
                 break;
             array[k] = e;
+            if (stamps != null)
+                stamps[k] = stamps[parent];
             k = parent;
         }
         array[k] = x;
+        if (stamps != null)
+            stamps[k] = t;
     }
 
     /**
@@ -446,12 +477,15 @@ public class PriorityBlockingQueue<E> extends AbstractQueue<E>
      * demoting x down the tree repeatedly until it is less than or
      * equal to its children or is a leaf.
      *
-     * @param k     the position to fill        待删除的位置
-     * @param x     the item to insert          待比较的健
-     * @param array the heap array              堆数组
-     * @param n     heap size                   堆的大小
+     * @param k      the position to fill        待删除的位置
+     * @param x      the item to insert          待比较的健
+     * @param t      the enqueue time of x       x的入队时间
+     * @param array  the heap array              堆数组
+     * @param stamps the enqueue times, or null  入队时间戳数组
+     * @param n      heap size                   堆的大小
      */
-    private static <T> void siftDownComparable(int k, T x, Object[] array, int n) {
+    private static <T> void siftDownComparable(int k, T x, long t, Object[] array,
+                                               long[] stamps, int n) {
         if (n > 0) {
             Comparable<? super T> key = (Comparable<? super T>) x;
             int half = n >>> 1;           // loop while a non-leaf  // 相当于n除2, 即找到索引n对应结点的父结点
@@ -471,14 +505,18 @@ public class PriorityBlockingQueue<E> extends AbstractQueue<E>
                 if (key.compareTo((T) c) <= 0)
                     break;
                 array[k] = c;
+                if (stamps != null)
+                    stamps[k] = stamps[child];
                 k = child;
             }
             array[k] = key;
+            if (stamps != null)
+                stamps[k] = t;
         }
     }
 
-    private static <T> void siftDownUsingComparator(int k, T x, Object[] array,
-                                                    int n,
+    private static <T> void siftDownUsingComparator(int k, T x, long t, Object[] array,
+                                                    long[] stamps, int n,
                                                     Comparator<? super T> cmp) {
         if (n > 0) {
             int half = n >>> 1;
@@ -491,12 +529,23 @@ public class PriorityBlockingQueue<E> extends AbstractQueue<E>
                 if (cmp.compare(x, (T) c) <= 0)
                     break;
                 array[k] = c;
+                if (stamps != null)
+                    stamps[k] = stamps[child];
                 k = child;
             }
             array[k] = x;
+            if (stamps != null)
+                stamps[k] = t;
         }
     }
 
+    /**
+     * 返回元素的排队时间, 入队时间未知时返回QueueProbe.UNKNOWN.
+     */
+    private static long sojourn(long stamp) {
+        return (stamp == 0L) ? QueueProbe.UNKNOWN : System.nanoTime() - stamp;
+    }
+
     /**
      * Establishes the heap invariant (described above) in the entire tree,
      * assuming nothing about the order of the elements prior to the call.
@@ -508,10 +557,10 @@ public class PriorityBlockingQueue<E> extends AbstractQueue<E>
         Comparator<? super E> cmp = comparator;
         if (cmp == null) {
             for (int i = half; i >= 0; i--)
-                siftDownComparable(i, (E) array[i], array, n);
+                siftDownComparable(i, (E) array[i], 0L, array, null, n);
         } else {
             for (int i = half; i >= 0; i--)
-                siftDownUsingComparator(i, (E) array[i], array, n, cmp);
+                siftDownUsingComparator(i, (E) array[i], 0L, array, null, n, cmp);
         }
     }
 
@@ -551,11 +600,15 @@ public class PriorityBlockingQueue<E> extends AbstractQueue<E>
             tryGrow(array, cap);
         try {
             Comparator<? super E> cmp = comparator;
+            long[] stamps = this.stamps;
+            long t = (stamps == null) ? 0L : System.nanoTime();
             if (cmp == null)                    // 比较器为空, 则按照元素的自然顺序进行堆调整
-                siftUpComparable(n, e, array);
+                siftUpComparable(n, e, t, array, stamps);
             else                                // 比较器非空, 则按照比较器进行堆调整
-                siftUpUsingComparator(n, e, array, cmp);
+                siftUpUsingComparator(n, e, t, array, stamps, cmp);
             size = n + 1;                      // 队列元素总数+1
+            if (stamps != null)
+                probe.onEnqueue(n + 1);
             notEmpty.signal();                 // 唤醒一个可能正在等待的"出队线程"
         } finally {
             lock.unlock();
@@ -620,10 +673,16 @@ public class PriorityBlockingQueue<E> extends AbstractQueue<E>
         final ReentrantLock lock = this.lock;
         lock.lockInterruptibly();   // 获取全局锁
         E result;
+        long blockedAt = 0L;
         try {
-            while ((result = dequeue()) == null)    // 队列为空
+            while ((result = dequeue()) == null) {  // 队列为空
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
                 notEmpty.await();                   // 线程在noEmpty条件队列等待
+            }
         } finally {
+            if (blockedAt != 0L)
+                consumerBlocked(blockedAt);
             lock.unlock();
         }
         return result;
@@ -634,10 +693,16 @@ public class PriorityBlockingQueue<E> extends AbstractQueue<E>
         final ReentrantLock lock = this.lock;
         lock.lockInterruptibly();
         E result;
+        long blockedAt = 0L;
         try {
-            while ((result = dequeue()) == null && nanos > 0)
+            while ((result = dequeue()) == null && nanos > 0) {
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
                 nanos = notEmpty.awaitNanos(nanos);
+            }
         } finally {
+            if (blockedAt != 0L)
+                consumerBlocked(blockedAt);
             lock.unlock();
         }
         return result;
@@ -653,6 +718,39 @@ public class PriorityBlockingQueue<E> extends AbstractQueue<E>
         }
     }
 
+    /**
+     * 开始阻塞时调用, 返回开始阻塞的时间; 没有安装探针时返回0, 不读取时钟.
+     */
+    private long blockStart() {
+        return (probe == null) ? 0L : System.nanoTime();
+    }
+
+    private void consumerBlocked(long start) {
+        QueueProbe p = probe;
+        if (p != null)
+            p.onConsumerBlocked(System.nanoTime() - start);
+    }
+
+    /**
+     * 安装探针. 由于队列是无界的, 生产者从不阻塞, 所以不会回调onProducerBlocked.
+     * <p>
+     * {@inheritDoc}
+     */
+    public void setProbe(QueueProbe probe) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            stamps = (probe == null) ? null : new long[queue.length];
+            this.probe = probe;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public QueueProbe getProbe() {
+        return probe;
+    }
+
     /**
      * Returns the comparator used to order the elements in this queue,
      * or {@code null} if this queue uses the {@linkplain Comparable
@@ -708,16 +806,18 @@ public class PriorityBlockingQueue<E> extends AbstractQueue<E>
         else {
             E moved = (E) array[n];
             array[n] = null;
+            long[] stamps = this.stamps;
+            long t = (stamps == null) ? 0L : stamps[n];
             Comparator<? super E> cmp = comparator;
             if (cmp == null)
-                siftDownComparable(i, moved, array, n);
+                siftDownComparable(i, moved, t, array, stamps, n);
             else
-                siftDownUsingComparator(i, moved, array, n, cmp);
+                siftDownUsingComparator(i, moved, t, array, stamps, n, cmp);
             if (array[i] == moved) {
                 if (cmp == null)
-                    siftUpComparable(i, moved, array);
+                    siftUpComparable(i, moved, t, array, stamps);
                 else
-                    siftUpUsingComparator(i, moved, array, cmp);
+                    siftUpUsingComparator(i, moved, t, array, stamps, cmp);
             }
         }
         size = n;
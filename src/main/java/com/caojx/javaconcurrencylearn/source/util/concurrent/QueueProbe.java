@@ -0,0 +1,66 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+/**
+ * QueueProbe是阻塞队列的观测探针，由{@link InstrumentedQueue#setProbe(QueueProbe)}挂到队列上。
+ * <p>
+ * 一条流水线中有多个阻塞队列时，很难判断哪个队列才是瓶颈。挂上探针后，队列会在以下时机回调：
+ * 1.元素入队之后：onEnqueue，参数是入队后的队列大小，可用于统计峰值；
+ * 2.元素被取出之后（take/poll/drainTo）：onDequeue，参数是该元素从入队到出队经过的时间；
+ * 3.生产者在notFull上阻塞结束后：onProducerBlocked，参数是阻塞的时间；
+ * 4.消费者在notEmpty上阻塞结束后：onConsumerBlocked，参数是阻塞的时间。
+ * <p>
+ * 没有挂探针时，队列只多了一次volatile读和一次判空，不会调用System.nanoTime，所以开销接近于0。
+ * <p>
+ * A set of callbacks through which an {@link InstrumentedQueue}
+ * reports occupancy and wait times.  Callbacks are usually invoked
+ * while the queue holds its internal lock, so implementations must be
+ * thread-safe, fast and must never block or call back into the queue.
+ *
+ * @author caojx created on 2026/10/19
+ * @see QueueStatistics
+ */
+public interface QueueProbe {
+
+    /**
+     * 元素的入队时间未知（例如元素在挂上探针之前就已入队）时，onDequeue的参数值.
+     * <p>
+     * The sojourn time reported for elements whose enqueue time is not
+     * known, such as elements inserted before the probe was installed.
+     */
+    long UNKNOWN = -1L;
+
+    /**
+     * Invoked after an element is inserted.
+     *
+     * @param size the number of elements after the insertion
+     */
+    void onEnqueue(int size);
+
+    /**
+     * Invoked after an element is removed by a retrieval operation
+     * ({@code take}, {@code poll}, {@code drainTo} and their variants).
+     * Elements discarded by {@code clear} are not reported; whether an
+     * element removed by {@code remove(Object)} is reported depends on
+     * the queue.
+     *
+     * @param sojournNanos the time the element spent in the queue, or
+     *                     {@link #UNKNOWN}
+     */
+    void onDequeue(long sojournNanos);
+
+    /**
+     * Invoked after a producer stops waiting for space, whether it then
+     * inserted its element, timed out or was interrupted.
+     *
+     * @param nanos the time spent waiting
+     */
+    void onProducerBlocked(long nanos);
+
+    /**
+     * Invoked after a consumer stops waiting for an element, whether it
+     * then removed one, timed out or was interrupted.
+     *
+     * @param nanos the time spent waiting
+     */
+    void onConsumerBlocked(long nanos);
+}
@@ -0,0 +1,192 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+import com.caojx.javaconcurrencylearn.source.util.concurrent.atomic.AtomicInteger;
+import com.caojx.javaconcurrencylearn.source.util.concurrent.atomic.LongAdder;
+
+/**
+ * QueueStatistics是{@link QueueProbe}的默认实现，累计队列的入队/出队次数、峰值大小、元素的排队时间，以及生产者/消费者的阻塞时间。
+ * <p>
+ * 计数和累计时间使用LongAdder，多个线程同时回调时不会争用同一个变量；
+ * 峰值大小和最大排队时间只在超过当前值时才CAS更新，绝大多数回调只有一次读操作。
+ * <p>
+ * A {@link QueueProbe} accumulating counts, peak size and total and
+ * maximum wait times.  Values are updated without locking and read
+ * without a global snapshot, so a set of values read while the queue
+ * is active need not be mutually consistent.
+ *
+ * @author caojx created on 2026/10/19
+ */
+public class QueueStatistics implements QueueProbe {
+
+    private final LongAdder enqueues = new LongAdder();
+    private final LongAdder dequeues = new LongAdder();
+
+    /**
+     * 已知排队时间的出队次数和排队时间总和
+     */
+    private final LongAdder timedDequeues = new LongAdder();
+    private final LongAdder sojournNanos = new LongAdder();
+
+    private final LongAdder producerBlocks = new LongAdder();
+    private final LongAdder producerBlockedNanos = new LongAdder();
+    private final LongAdder consumerBlocks = new LongAdder();
+    private final LongAdder consumerBlockedNanos = new LongAdder();
+
+    /**
+     * 队列的峰值大小
+     */
+    private final AtomicInteger peakSize = new AtomicInteger();
+
+    /**
+     * 最大排队时间
+     */
+    private final java.util.concurrent.atomic.AtomicLong maxSojournNanos =
+            new java.util.concurrent.atomic.AtomicLong();
+
+    public void onEnqueue(int size) {
+        enqueues.increment();
+        int p;
+        while (size > (p = peakSize.get()) && !peakSize.compareAndSet(p, size))
+            ;
+    }
+
+    public void onDequeue(long nanos) {
+        dequeues.increment();
+        if (nanos >= 0L) {
+            timedDequeues.increment();
+            sojournNanos.add(nanos);
+            long m;
+            while (nanos > (m = maxSojournNanos.get()) &&
+                    !maxSojournNanos.compareAndSet(m, nanos))
+                ;
+        }
+    }
+
+    public void onProducerBlocked(long nanos) {
+        producerBlocks.increment();
+        producerBlockedNanos.add(nanos);
+    }
+
+    public void onConsumerBlocked(long nanos) {
+        consumerBlocks.increment();
+        consumerBlockedNanos.add(nanos);
+    }
+
+    /**
+     * Returns the number of insertions.
+     *
+     * @return the number of insertions
+     */
+    public long getEnqueueCount() {
+        return enqueues.sum();
+    }
+
+    /**
+     * Returns the number of elements removed by retrieval operations.
+     *
+     * @return the number of elements removed by retrieval operations
+     */
+    public long getDequeueCount() {
+        return dequeues.sum();
+    }
+
+    /**
+     * Returns the largest size observed after an insertion.
+     *
+     * @return the peak size
+     */
+    public int getPeakSize() {
+        return peakSize.get();
+    }
+
+    /**
+     * Returns the mean enqueue-to-dequeue latency of the elements whose
+     * enqueue time is known.
+     *
+     * @return the mean sojourn time in nanoseconds, or 0 if none recorded
+     */
+    public long getMeanSojournNanos() {
+        long n = timedDequeues.sum();
+        return (n == 0L) ? 0L : sojournNanos.sum() / n;
+    }
+
+    /**
+     * Returns the maximum enqueue-to-dequeue latency.
+     *
+     * @return the maximum sojourn time in nanoseconds
+     */
+    public long getMaxSojournNanos() {
+        return maxSojournNanos.get();
+    }
+
+    /**
+     * Returns the number of times a producer had to wait for space.
+     *
+     * @return the number of producer waits
+     */
+    public long getProducerBlockCount() {
+        return producerBlocks.sum();
+    }
+
+    /**
+     * Returns the total time producers spent waiting for space.
+     *
+     * @return the total producer wait time in nanoseconds
+     */
+    public long getProducerBlockedNanos() {
+        return producerBlockedNanos.sum();
+    }
+
+    /**
+     * Returns the number of times a consumer had to wait for an element.
+     *
+     * @return the number of consumer waits
+     */
+    public long getConsumerBlockCount() {
+        return consumerBlocks.sum();
+    }
+
+    /**
+     * Returns the total time consumers spent waiting for elements.
+     *
+     * @return the total consumer wait time in nanoseconds
+     */
+    public long getConsumerBlockedNanos() {
+        return consumerBlockedNanos.sum();
+    }
+
+    /**
+     * Resets all values to zero.  Updates concurrent with the reset may
+     * or may not be retained.
+     */
+    public void reset() {
+        enqueues.reset();
+        dequeues.reset();
+        timedDequeues.reset();
+        sojournNanos.reset();
+        producerBlocks.reset();
+        producerBlockedNanos.reset();
+        consumerBlocks.reset();
+        consumerBlockedNanos.reset();
+        peakSize.set(0);
+        maxSojournNanos.set(0L);
+    }
+
+    /**
+     * Returns a string identifying these statistics, as well as their values.
+     *
+     * @return a string identifying these statistics, as well as their values
+     */
+    public String toString() {
+        return super.toString() +
+                "[enqueues = " + getEnqueueCount() +
+                ", dequeues = " + getDequeueCount() +
+                ", peakSize = " + getPeakSize() +
+                ", meanSojournNanos = " + getMeanSojournNanos() +
+                ", maxSojournNanos = " + getMaxSojournNanos() +
+                ", producerBlocks = " + getProducerBlockCount() +
+                ", producerBlockedNanos = " + getProducerBlockedNanos() +
+                ", consumerBlocks = " + getConsumerBlockCount() +
+                ", consumerBlockedNanos = " + getConsumerBlockedNanos() + "]";
+    }
+}
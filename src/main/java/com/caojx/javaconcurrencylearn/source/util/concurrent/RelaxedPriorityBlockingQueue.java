@@ -0,0 +1,667 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+import com.caojx.javaconcurrencylearn.source.util.concurrent.atomic.AtomicInteger;
+import com.caojx.javaconcurrencylearn.source.util.concurrent.locks.ReentrantLock;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RelaxedPriorityBlockingQueue是基于MultiQueue思想实现的“松弛”优先级阻塞队列，可作为PriorityBlockingQueue的替代品。
+ * <p>
+ * PriorityBlockingQueue使用一把全局锁（lock）保护整个堆，扩容时还要额外竞争allocationSpinLock，线程数一多吞吐量就上不去了。
+ * RelaxedPriorityBlockingQueue的做法是：
+ * 1.内部维护 C * 并行度 个子堆（Heap），每个子堆有自己的锁，并缓存了自己的堆顶元素（top）；
+ * 2.入队时随机选择一个子堆，tryLock成功就插入，失败就换一个子堆重试，所以入队几乎不会阻塞；
+ * 3.出队时随机选择两个子堆，比较两者的堆顶，从较优的那个子堆出队（"power of two choices"）；
+ * 4.当队列为空时，出队线程在notEmpty条件上等待，入队线程只有在确实有线程等待时才会去获取takeLock进行唤醒。
+ * <p>
+ * 注意：出队顺序只是近似有序的，每次出队的元素不一定是全局最小的，但它在全局中的排名误差是有界的（期望值为O(子堆个数)）。
+ * 适用于任务调度、最佳优先搜索等不需要严格优先级顺序的场景；需要严格顺序时请使用PriorityBlockingQueue。
+ * <p>
+ * An unbounded {@linkplain BlockingQueue blocking queue} with
+ * <em>relaxed</em> priority ordering.  Elements are spread over
+ * several independently locked binary heaps; {@link #poll()} samples
+ * two heaps at random and removes from the one whose head ranks
+ * better.  The element returned is therefore not necessarily the
+ * least element of the queue, but with high probability its rank is
+ * within a small multiple of the number of heaps.
+ *
+ * <p>Ordering uses the {@linkplain Comparable natural ordering} of
+ * the elements or the {@link Comparator} supplied at construction
+ * time, exactly as in {@link PriorityBlockingQueue}.  This class does
+ * not permit {@code null} elements.
+ *
+ * <p>The Iterator provided in method {@link #iterator()} traverses a
+ * snapshot of the elements in no particular order.
+ *
+ * <p>While a {@link QueueProbe} is installed, inserted elements are
+ * wrapped together with their enqueue time so that the probe sees
+ * their sojourn time; elements inserted without a probe are stored
+ * as they are, and are reported with {@link QueueProbe#UNKNOWN}.
+ * Insertions never block, so only consumer blocking is reported.
+ *
+ * @param <E> the type of elements held in this collection
+ * @author caojx created on 2026/10/19
+ * @see PriorityBlockingQueue
+ */
+@SuppressWarnings("unchecked")
+public class RelaxedPriorityBlockingQueue<E> extends AbstractQueue<E>
+        implements BlockingQueue<E>, InstrumentedQueue {
+
+    /*
+     * The implementation follows the MultiQueue design: C * p
+     * sequential heaps, each guarded by its own lock and publishing
+     * its current head in a volatile field so that polls can compare
+     * candidate heaps without locking them.  Inserts and head
+     * removals (offer, poll and the scan poll falls back to) use
+     * tryLock only and simply pick or rescan another heap on failure,
+     * so they never block on a heap lock.  Only the non-relaxed
+     * operations that must visit every heap (remove(Object),
+     * contains, toArray, clear) lock each heap in turn.
+     *
+     * The element count is maintained separately and is incremented
+     * only after an element has been inserted, so it may transiently
+     * lag behind (or even drop below zero) but never reports an
+     * element that cannot eventually be found.  Blocking takes wait
+     * in NotEmptyWaiters, shared with SkipListPriorityBlockingQueue:
+     * producers only acquire its lock to signal when some consumer
+     * is (about to be) parked.
+     */
+
+    /**
+     * 默认每个线程对应的子堆个数（即MultiQueue中的C）.
+     */
+    static final int DEFAULT_HEAPS_PER_THREAD = 2;
+
+    /**
+     * CPU核数，作为默认的并行度.
+     */
+    static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 安装了探针时入队的元素, 带入队时间. 没有探针时子堆中直接保存元素本身, 不额外分配对象.
+     */
+    static final class TimedElement<E> {
+        final E item;
+        final long stamp = System.nanoTime();
+
+        TimedElement(E item) {
+            this.item = item;
+        }
+    }
+
+    /**
+     * 子堆中保存的对象对应的元素.
+     */
+    static <E> E item(Object x) {
+        return (x instanceof TimedElement) ? ((TimedElement<E>) x).item : (E) x;
+    }
+
+    /**
+     * 子堆: 一个普通的二叉堆，加上自己的锁和缓存的堆顶元素.
+     * 堆中保存元素本身或TimedElement, 比较时取出元素再比较.
+     */
+    static final class Heap<E> {
+        final ReentrantLock lock = new ReentrantLock();
+        final PriorityQueue<Object> queue;
+        /**
+         * 堆顶元素的快照，只在持有lock时写入，出队线程无锁读取后用来挑选子堆.
+         */
+        volatile E top;
+
+        Heap(Comparator<? super E> comparator) {
+            this.queue = new PriorityQueue<Object>(11, (comparator == null) ?
+                    (a, b) -> ((Comparable<? super E>) RelaxedPriorityBlockingQueue.<E>item(a)).compareTo(item(b)) :
+                    (a, b) -> comparator.compare(item(a), item(b)));
+        }
+
+        /**
+         * 持有lock时调用, 修改堆之后更新堆顶快照.
+         */
+        void updateTop() {
+            top = item(queue.peek());
+        }
+    }
+
+    /**
+     * 所有的子堆
+     */
+    private final Heap<E>[] heaps;
+
+    /**
+     * 比较器, 如果为null, 表示以元素自身的自然顺序进行比较（元素必须实现Comparable接口）.
+     */
+    private final Comparator<? super E> comparator;
+
+    /**
+     * 队列中的元素个数（近似值，见上面的实现说明）
+     */
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * 队列为空时阻塞的出队线程
+     */
+    private final NotEmptyWaiters waiters = new NotEmptyWaiters();
+
+    /**
+     * 观测探针, 为null时不统计
+     */
+    private volatile QueueProbe probe;
+
+    /**
+     * 默认构造器.
+     * 子堆个数为 2 * CPU核数, 以元素自然顺序比较(元素必须实现Comparable接口)
+     */
+    public RelaxedPriorityBlockingQueue() {
+        this(DEFAULT_HEAPS_PER_THREAD, NCPU, null);
+    }
+
+    /**
+     * 指定比较器的构造器.
+     *
+     * @param comparator the comparator that will be used to order this
+     *                   queue.  If {@code null}, the {@linkplain Comparable
+     *                   natural ordering} of the elements will be used.
+     */
+    public RelaxedPriorityBlockingQueue(Comparator<? super E> comparator) {
+        this(DEFAULT_HEAPS_PER_THREAD, NCPU, comparator);
+    }
+
+    /**
+     * 指定每个线程的子堆个数、并行度和比较器的构造器.
+     * 子堆个数越多，竞争越小，但出队顺序的误差也越大.
+     *
+     * @param heapsPerThread the number of heaps per expected thread
+     * @param parallelism    the expected number of concurrent threads
+     * @param comparator     the comparator that will be used to order this
+     *                       queue.  If {@code null}, the {@linkplain Comparable
+     *                       natural ordering} of the elements will be used.
+     * @throws IllegalArgumentException if {@code heapsPerThread} or
+     *                                  {@code parallelism} is less than 1
+     */
+    public RelaxedPriorityBlockingQueue(int heapsPerThread, int parallelism,
+                                        Comparator<? super E> comparator) {
+        if (heapsPerThread < 1 || parallelism < 1)
+            throw new IllegalArgumentException();
+        // 至少两个子堆，"两个里选一个"才有意义
+        int n = Math.max(2, heapsPerThread * parallelism);
+        Heap<E>[] hs = (Heap<E>[]) new Heap<?>[n];
+        for (int i = 0; i < n; ++i)
+            hs[i] = new Heap<E>(comparator);
+        this.heaps = hs;
+        this.comparator = comparator;
+    }
+
+    /**
+     * 按照比较器（或自然顺序）比较两个元素.
+     */
+    private int compare(E a, E b) {
+        Comparator<? super E> cmp = comparator;
+        return (cmp == null) ? ((Comparable<? super E>) a).compareTo(b) :
+                cmp.compare(a, b);
+    }
+
+    /**
+     * 入队后调用, 报告入队后的大小.
+     */
+    private void enqueued(int size) {
+        QueueProbe p = probe;
+        if (p != null)
+            p.onEnqueue(size);
+    }
+
+    /**
+     * 出队后调用, 报告排队时间; 没有安装探针时入队的元素排队时间未知.
+     */
+    private void dequeued(Object x) {
+        QueueProbe p = probe;
+        if (p != null)
+            p.onDequeue((x instanceof TimedElement) ?
+                    System.nanoTime() - ((TimedElement<?>) x).stamp :
+                    QueueProbe.UNKNOWN);
+    }
+
+    /**
+     * 开始阻塞时调用, 返回开始阻塞的时间; 没有安装探针时返回0, 不读取时钟.
+     */
+    private long blockStart() {
+        return (probe == null) ? 0L : System.nanoTime();
+    }
+
+    private void consumerBlocked(long start) {
+        QueueProbe p = probe;
+        if (p != null)
+            p.onConsumerBlocked(System.nanoTime() - start);
+    }
+
+    public void setProbe(QueueProbe probe) {
+        this.probe = probe;
+    }
+
+    public QueueProbe getProbe() {
+        return probe;
+    }
+
+    /**
+     * Inserts the specified element into this priority queue.
+     *
+     * @param e the element to add
+     * @return {@code true} (as specified by {@link Collection#add})
+     * @throws ClassCastException   if the specified element cannot be compared
+     *                              with elements currently in the priority queue according to the
+     *                              priority queue's ordering
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean add(E e) {
+        return offer(e);
+    }
+
+    /**
+     * Inserts the specified element into this priority queue.
+     * As the queue is unbounded, this method will never return {@code false}.
+     *
+     * @param e the element to add
+     * @return {@code true} (as specified by {@link Queue#offer})
+     * @throws ClassCastException   if the specified element cannot be compared
+     *                              with elements currently in the priority queue according to the
+     *                              priority queue's ordering
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean offer(E e) {
+        if (e == null)
+            throw new NullPointerException();
+        if (comparator == null && !(e instanceof Comparable))  // 空的子堆插入时不比较, 与PriorityBlockingQueue一样提前检查
+            throw new ClassCastException(e.getClass().getName() + " cannot be cast to java.lang.Comparable");
+        final Heap<E>[] hs = heaps;
+        final ThreadLocalRandom r = ThreadLocalRandom.current();
+        for (; ; ) {
+            Heap<E> h = hs[r.nextInt(hs.length)];   // 随机选一个子堆
+            final ReentrantLock lock = h.lock;
+            if (lock.tryLock()) {                   // 抢不到锁就换一个子堆，不阻塞
+                try {
+                    h.queue.offer((probe == null) ? e : new TimedElement<E>(e));
+                    h.updateTop();
+                } finally {
+                    lock.unlock();
+                }
+                break;
+            }
+        }
+        enqueued(count.incrementAndGet());
+        waiters.signalIfWaiting();  // 确实有出队线程在等待时才去获取takeLock
+        return true;
+    }
+
+    /**
+     * Inserts the specified element into this priority queue.
+     * As the queue is unbounded, this method will never block.
+     *
+     * @param e the element to add
+     * @throws ClassCastException   if the specified element cannot be compared
+     *                              with elements currently in the priority queue according to the
+     *                              priority queue's ordering
+     * @throws NullPointerException if the specified element is null
+     */
+    public void put(E e) {
+        offer(e); // never need to block
+    }
+
+    /**
+     * Inserts the specified element into this priority queue.
+     * As the queue is unbounded, this method will never block or
+     * return {@code false}.
+     *
+     * @param e       the element to add
+     * @param timeout This parameter is ignored as the method never blocks
+     * @param unit    This parameter is ignored as the method never blocks
+     * @return {@code true} (as specified by
+     * {@link BlockingQueue#offer(Object, long, TimeUnit) BlockingQueue.offer})
+     * @throws ClassCastException   if the specified element cannot be compared
+     *                              with elements currently in the priority queue according to the
+     *                              priority queue's ordering
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean offer(E e, long timeout, TimeUnit unit) {
+        return offer(e); // never need to block
+    }
+
+    /**
+     * 出队: 随机选两个子堆，从堆顶较优的那个子堆出队.
+     * 连续多次都没有成功（比如元素很少，分布在个别子堆中）时，退化为全量扫描.
+     */
+    public E poll() {
+        final Heap<E>[] hs = heaps;
+        final int n = hs.length;
+        final ThreadLocalRandom r = ThreadLocalRandom.current();
+        for (int misses = 0; count.get() > 0; ) {
+            Heap<E> a = hs[r.nextInt(n)], b = hs[r.nextInt(n)];
+            E ta = a.top, tb = b.top;
+            Heap<E> h;
+            if (ta == null)
+                h = b;
+            else if (tb == null || compare(ta, tb) <= 0)
+                h = a;
+            else
+                h = b;
+            if (h.top != null && h.lock.tryLock()) {
+                try {
+                    Object x = h.queue.poll();
+                    if (x != null) {
+                        h.updateTop();
+                        count.getAndDecrement();
+                        dequeued(x);
+                        return item(x);
+                    }
+                } finally {
+                    h.lock.unlock();
+                }
+            }
+            if (++misses >= n)
+                return pollScan();
+        }
+        return null;
+    }
+
+    /**
+     * 全量扫描所有子堆，从堆顶最优的子堆出队; 所有子堆都为空时返回null.
+     * 与poll相同只使用tryLock, 获取锁失败时重新扫描（持有锁的线程出队后堆顶会变化, 重新选择本来就更准确）.
+     */
+    private E pollScan() {
+        final Heap<E>[] hs = heaps;
+        for (; ; ) {
+            Heap<E> best = null;
+            E bestTop = null;
+            for (Heap<E> h : hs) {
+                E t = h.top;
+                if (t != null && (bestTop == null || compare(t, bestTop) < 0)) {
+                    best = h;
+                    bestTop = t;
+                }
+            }
+            if (best == null)
+                return null;
+            if (!best.lock.tryLock())
+                continue;
+            try {
+                Object x = best.queue.poll();
+                if (x != null) {
+                    best.updateTop();
+                    count.getAndDecrement();
+                    dequeued(x);
+                    return item(x);
+                }
+            } finally {
+                best.lock.unlock();
+            }
+        }
+    }
+
+    public E take() throws InterruptedException {
+        E e;
+        long blockedAt = 0L;
+        try {
+            while ((e = poll()) == null) {
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
+                waiters.await(count);           // 队列为空, 则线程在notEmpty上等待
+            }
+        } finally {
+            if (blockedAt != 0L)
+                consumerBlocked(blockedAt);
+        }
+        waiters.signalNext(count);              // 还有剩余元素, 级联唤醒其它出队线程
+        return e;
+    }
+
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        E e;
+        long blockedAt = 0L;
+        try {
+            while ((e = poll()) == null) {
+                if (nanos <= 0)
+                    return null;
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
+                nanos = waiters.awaitNanos(count, nanos);
+            }
+        } finally {
+            if (blockedAt != 0L)
+                consumerBlocked(blockedAt);
+        }
+        waiters.signalNext(count);
+        return e;
+    }
+
+    /**
+     * 返回所有子堆中最优的堆顶元素（无锁读取，只是一个近似值）.
+     */
+    public E peek() {
+        E best = null;
+        for (Heap<E> h : heaps) {
+            E t = h.top;
+            if (t != null && (best == null || compare(t, best) < 0))
+                best = t;
+        }
+        return best;
+    }
+
+    /**
+     * Returns the comparator used to order the elements in this queue,
+     * or {@code null} if this queue uses the {@linkplain Comparable
+     * natural ordering} of its elements.
+     *
+     * @return the comparator used to order the elements in this queue,
+     * or {@code null} if this queue uses the natural
+     * ordering of its elements
+     */
+    public Comparator<? super E> comparator() {
+        return comparator;
+    }
+
+    public int size() {
+        int n = count.get();
+        return (n < 0) ? 0 : n;
+    }
+
+    /**
+     * Always returns {@code Integer.MAX_VALUE} because
+     * a {@code RelaxedPriorityBlockingQueue} is not capacity constrained.
+     *
+     * @return {@code Integer.MAX_VALUE} always
+     */
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Removes a single instance of the specified element from this queue,
+     * if it is present.
+     *
+     * @param o element to be removed from this queue, if present
+     * @return {@code true} if this queue changed as a result of the call
+     */
+    public boolean remove(Object o) {
+        if (o == null)
+            return false;
+        for (Heap<E> h : heaps) {
+            h.lock.lock();
+            try {
+                for (Iterator<Object> it = h.queue.iterator(); it.hasNext(); ) {
+                    if (o.equals(item(it.next()))) {
+                        it.remove();
+                        h.updateTop();
+                        count.getAndDecrement();
+                        return true;
+                    }
+                }
+            } finally {
+                h.lock.unlock();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Identity-based version for use in Itr.remove.
+     */
+    void removeEQ(Object o) {
+        for (Heap<E> h : heaps) {
+            h.lock.lock();
+            try {
+                for (Iterator<Object> it = h.queue.iterator(); it.hasNext(); ) {
+                    if (o == item(it.next())) {
+                        it.remove();
+                        h.updateTop();
+                        count.getAndDecrement();
+                        return;
+                    }
+                }
+            } finally {
+                h.lock.unlock();
+            }
+        }
+    }
+
+    public boolean contains(Object o) {
+        if (o == null)
+            return false;
+        for (Heap<E> h : heaps) {
+            h.lock.lock();
+            try {
+                for (Object x : h.queue)
+                    if (o.equals(item(x)))
+                        return true;
+            } finally {
+                h.lock.unlock();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns an array containing all of the elements in this queue.
+     * The returned array elements are in no particular order.  Each
+     * heap is locked in turn, so the result is not an atomic snapshot
+     * of the whole queue.
+     *
+     * @return an array containing all of the elements in this queue
+     */
+    public Object[] toArray() {
+        ArrayList<Object> all = new ArrayList<Object>();
+        for (Heap<E> h : heaps) {
+            h.lock.lock();
+            try {
+                for (Object x : h.queue)
+                    all.add(item(x));
+            } finally {
+                h.lock.unlock();
+            }
+        }
+        return all.toArray();
+    }
+
+    public <T> T[] toArray(T[] a) {
+        Object[] all = toArray();
+        int n = all.length;
+        if (a.length < n)
+            return (T[]) Arrays.copyOf(all, n, a.getClass());
+        System.arraycopy(all, 0, a, 0, n);
+        if (a.length > n)
+            a[n] = null;
+        return a;
+    }
+
+    /**
+     * @throws UnsupportedOperationException {@inheritDoc}
+     * @throws ClassCastException            {@inheritDoc}
+     * @throws NullPointerException          {@inheritDoc}
+     * @throws IllegalArgumentException      {@inheritDoc}
+     */
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @throws UnsupportedOperationException {@inheritDoc}
+     * @throws ClassCastException            {@inheritDoc}
+     * @throws NullPointerException          {@inheritDoc}
+     * @throws IllegalArgumentException      {@inheritDoc}
+     */
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == null)
+            throw new NullPointerException();
+        if (c == this)
+            throw new IllegalArgumentException();
+        int n = 0;
+        E e;
+        while (n < maxElements && (e = poll()) != null) {
+            c.add(e);
+            ++n;
+        }
+        return n;
+    }
+
+    /**
+     * Removes all of the elements from this queue.
+     */
+    public void clear() {
+        for (Heap<E> h : heaps) {
+            h.lock.lock();
+            try {
+                int n = h.queue.size();
+                h.queue.clear();
+                h.top = null;
+                count.getAndAdd(-n);
+            } finally {
+                h.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns an iterator over the elements in this queue. The
+     * iterator does not return the elements in any particular order.
+     *
+     * <p>The returned iterator is
+     * <a href="package-summary.html#Weakly"><i>weakly consistent</i></a>.
+     *
+     * @return an iterator over the elements in this queue
+     */
+    public Iterator<E> iterator() {
+        return new Itr(toArray());
+    }
+
+    /**
+     * Snapshot iterator that works off copy of underlying q array.
+     */
+    final class Itr implements Iterator<E> {
+        final Object[] array; // Array of all elements
+        int cursor;           // index of next element to return
+        int lastRet;          // index of last element, or -1 if no such
+
+        Itr(Object[] array) {
+            lastRet = -1;
+            this.array = array;
+        }
+
+        public boolean hasNext() {
+            return cursor < array.length;
+        }
+
+        public E next() {
+            if (cursor >= array.length)
+                throw new NoSuchElementException();
+            lastRet = cursor;
+            return (E) array[cursor++];
+        }
+
+        public void remove() {
+            if (lastRet < 0)
+                throw new IllegalStateException();
+            removeEQ(array[lastRet]);
+            lastRet = -1;
+        }
+    }
+}
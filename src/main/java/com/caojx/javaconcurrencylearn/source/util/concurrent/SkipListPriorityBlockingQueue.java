@@ -0,0 +1,468 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+import com.caojx.javaconcurrencylearn.source.util.concurrent.atomic.AtomicInteger;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SkipListPriorityBlockingQueue是基于ConcurrentSkipListMap实现的无锁、严格有序的优先级阻塞队列。
+ * <p>
+ * PriorityBlockingQueue的所有出/入队操作都要竞争同一把全局锁；RelaxedPriorityBlockingQueue去掉了全局锁，但出队顺序只是近似有序。
+ * 对于需要严格优先级顺序的场景，SkipListPriorityBlockingQueue的做法是：
+ * 1.底层直接复用ConcurrentSkipListMap的Node、Index、HeadIndex结构，入队就是一次无锁的跳表插入；
+ * 2.每个元素入队时分配一个递增的序号，以(元素, 序号)作为跳表的key，这样相等的元素也可以重复入队，并且相等元素之间按FIFO出队；
+ * 3.出队调用ConcurrentSkipListMap的doRemoveFirstKey，先CAS把头结点的value置为null（逻辑删除），再追加marker结点完成物理删除；
+ * 4.只有队列为空时，take线程才会在notEmpty上阻塞，入队线程只有在确实有线程等待时才去获取takeLock进行唤醒。
+ * <p>
+ * An unbounded {@linkplain BlockingQueue blocking queue} that uses
+ * the same ordering rules as class {@link PriorityBlockingQueue} but
+ * is backed by a lock-free {@link ConcurrentSkipListMap}.  Insertion
+ * and removal of the head are non-blocking; only {@link #take()} and
+ * the timed {@link #poll(long, TimeUnit)} block, and only while the
+ * queue is empty.  Elements that compare equal are permitted and are
+ * returned in insertion order.
+ *
+ * <p>Unlike in {@link PriorityBlockingQueue}, the {@link #iterator()}
+ * of this class traverses the elements in priority order, and is
+ * <a href="package-summary.html#Weakly"><i>weakly consistent</i></a>.
+ * This class does not permit {@code null} elements.
+ *
+ * <p>Insertions never block, so an installed {@link QueueProbe} is
+ * told of insertions, removals and consumer blocking only.
+ *
+ * @param <E> the type of elements held in this collection
+ * @author caojx created on 2026/10/19
+ * @see PriorityBlockingQueue
+ * @see RelaxedPriorityBlockingQueue
+ */
+@SuppressWarnings("unchecked")
+public class SkipListPriorityBlockingQueue<E> extends AbstractQueue<E>
+        implements BlockingQueue<E>, InstrumentedQueue {
+
+    /*
+     * Each element is wrapped in an Item carrying a unique sequence
+     * number drawn from a shared counter; the skip list orders Items
+     * by element first and sequence second, which makes keys unique
+     * (so duplicates are tolerated) and gives FIFO tie-breaking.
+     *
+     * The count field is a separate, approximate element count used
+     * only for size() and for the blocking wait guard.  It is
+     * incremented after insertion, and blocking is delegated to
+     * NotEmptyWaiters, shared with RelaxedPriorityBlockingQueue.
+     *
+     * The skip list compares keys only once it holds another key, so
+     * offer checks eagerly that elements are Comparable when no
+     * comparator is given; otherwise the first element of an empty
+     * queue would be accepted and fail only later, in another thread.
+     */
+
+    /**
+     * 跳表中的key：元素 + 入队序号.
+     */
+    static class Item<E> {
+        final E item;
+        final long seq;
+
+        Item(E item, long seq) {
+            this.item = item;
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * 带入队时间的key, 只在安装了探针时使用.
+     */
+    static final class TimedItem<E> extends Item<E> {
+        final long stamp = System.nanoTime();
+
+        TimedItem(E item, long seq) {
+            super(item, seq);
+        }
+    }
+
+    /**
+     * 底层跳表, value统一为Boolean.TRUE
+     */
+    private final ConcurrentSkipListMap<Item<E>, Boolean> map;
+
+    /**
+     * 比较器, 如果为null, 表示以元素自身的自然顺序进行比较（元素必须实现Comparable接口）.
+     */
+    private final Comparator<? super E> comparator;
+
+    /**
+     * 入队序号生成器，用于区分相等的元素
+     */
+    private final AtomicLong sequencer = new AtomicLong();
+
+    /**
+     * 队列中的元素个数（近似值）
+     */
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * 队列为空时阻塞的出队线程
+     */
+    private final NotEmptyWaiters waiters = new NotEmptyWaiters();
+
+    /**
+     * 观测探针, 为null时不统计
+     */
+    private volatile QueueProbe probe;
+
+    /**
+     * 默认构造器.
+     * 以元素自然顺序比较(元素必须实现Comparable接口)
+     */
+    public SkipListPriorityBlockingQueue() {
+        this((Comparator<? super E>) null);
+    }
+
+    /**
+     * 指定比较器的构造器.
+     *
+     * @param comparator the comparator that will be used to order this
+     *                   queue.  If {@code null}, the {@linkplain Comparable
+     *                   natural ordering} of the elements will be used.
+     */
+    public SkipListPriorityBlockingQueue(Comparator<? super E> comparator) {
+        this.comparator = comparator;
+        this.map = new ConcurrentSkipListMap<Item<E>, Boolean>((a, b) -> {
+            int c = (comparator == null) ?
+                    ((Comparable<? super E>) a.item).compareTo(b.item) :
+                    comparator.compare(a.item, b.item);
+            return (c != 0) ? c : Long.compare(a.seq, b.seq);   // 相等的元素按入队顺序排列
+        });
+    }
+
+    /**
+     * 从已有集合构造队列
+     *
+     * @param c the collection whose elements are to be placed
+     *          into this priority queue
+     * @throws ClassCastException   if elements of the specified collection
+     *                              cannot be compared to one another according to the priority
+     *                              queue's ordering
+     * @throws NullPointerException if the specified collection or any
+     *                              of its elements are null
+     */
+    public SkipListPriorityBlockingQueue(Collection<? extends E> c) {
+        this((c instanceof SortedSet<?>) ?
+                ((SortedSet<E>) c).comparator() :
+                (c instanceof PriorityBlockingQueue<?>) ?
+                        ((PriorityBlockingQueue<E>) c).comparator() : null);
+        for (E e : c)
+            offer(e);
+    }
+
+    /**
+     * 入队后调用, 报告入队后的大小.
+     */
+    private void enqueued(int size) {
+        QueueProbe p = probe;
+        if (p != null)
+            p.onEnqueue(size);
+    }
+
+    /**
+     * 开始阻塞时调用, 返回开始阻塞的时间; 没有安装探针时返回0, 不读取时钟.
+     */
+    private long blockStart() {
+        return (probe == null) ? 0L : System.nanoTime();
+    }
+
+    private void consumerBlocked(long start) {
+        QueueProbe p = probe;
+        if (p != null)
+            p.onConsumerBlocked(System.nanoTime() - start);
+    }
+
+    public void setProbe(QueueProbe probe) {
+        this.probe = probe;
+    }
+
+    public QueueProbe getProbe() {
+        return probe;
+    }
+
+    /**
+     * Inserts the specified element into this priority queue.
+     *
+     * @param e the element to add
+     * @return {@code true} (as specified by {@link Collection#add})
+     * @throws ClassCastException   if the specified element cannot be compared
+     *                              with elements currently in the priority queue according to the
+     *                              priority queue's ordering
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean add(E e) {
+        return offer(e);
+    }
+
+    /**
+     * Inserts the specified element into this priority queue.
+     * As the queue is unbounded, this method will never return {@code false}.
+     *
+     * @param e the element to add
+     * @return {@code true} (as specified by {@link Queue#offer})
+     * @throws ClassCastException   if the specified element cannot be compared
+     *                              with elements currently in the priority queue according to the
+     *                              priority queue's ordering
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean offer(E e) {
+        if (e == null)
+            throw new NullPointerException();
+        if (comparator == null && !(e instanceof Comparable))  // 空跳表插入时不比较, 与PriorityBlockingQueue一样提前检查
+            throw new ClassCastException(e.getClass().getName() + " cannot be cast to java.lang.Comparable");
+        long seq = sequencer.getAndIncrement();
+        map.put((probe == null) ? new Item<E>(e, seq) : new TimedItem<E>(e, seq), Boolean.TRUE);  // 无锁的跳表插入
+        enqueued(count.incrementAndGet());
+        waiters.signalIfWaiting();  // 确实有出队线程在等待时才去获取takeLock
+        return true;
+    }
+
+    /**
+     * Inserts the specified element into this priority queue.
+     * As the queue is unbounded, this method will never block.
+     *
+     * @param e the element to add
+     * @throws ClassCastException   if the specified element cannot be compared
+     *                              with elements currently in the priority queue according to the
+     *                              priority queue's ordering
+     * @throws NullPointerException if the specified element is null
+     */
+    public void put(E e) {
+        offer(e); // never need to block
+    }
+
+    /**
+     * Inserts the specified element into this priority queue.
+     * As the queue is unbounded, this method will never block or
+     * return {@code false}.
+     *
+     * @param e       the element to add
+     * @param timeout This parameter is ignored as the method never blocks
+     * @param unit    This parameter is ignored as the method never blocks
+     * @return {@code true} (as specified by
+     * {@link BlockingQueue#offer(Object, long, TimeUnit) BlockingQueue.offer})
+     * @throws ClassCastException   if the specified element cannot be compared
+     *                              with elements currently in the priority queue according to the
+     *                              priority queue's ordering
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean offer(E e, long timeout, TimeUnit unit) {
+        return offer(e); // never need to block
+    }
+
+    /**
+     * 出队: 逻辑删除跳表的第一个结点.
+     */
+    public E poll() {
+        Item<E> k = map.doRemoveFirstKey();
+        if (k == null)
+            return null;
+        count.getAndDecrement();
+        QueueProbe p = probe;
+        if (p != null)
+            p.onDequeue((k instanceof TimedItem) ?
+                    System.nanoTime() - ((TimedItem<E>) k).stamp :
+                    QueueProbe.UNKNOWN);
+        return k.item;
+    }
+
+    public E take() throws InterruptedException {
+        E e;
+        long blockedAt = 0L;
+        try {
+            while ((e = poll()) == null) {
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
+                waiters.await(count);           // 队列为空, 则线程在notEmpty上等待
+            }
+        } finally {
+            if (blockedAt != 0L)
+                consumerBlocked(blockedAt);
+        }
+        waiters.signalNext(count);              // 还有剩余元素, 级联唤醒其它出队线程
+        return e;
+    }
+
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        E e;
+        long blockedAt = 0L;
+        try {
+            while ((e = poll()) == null) {
+                if (nanos <= 0)
+                    return null;
+                if (blockedAt == 0L)
+                    blockedAt = blockStart();
+                nanos = waiters.awaitNanos(count, nanos);
+            }
+        } finally {
+            if (blockedAt != 0L)
+                consumerBlocked(blockedAt);
+        }
+        waiters.signalNext(count);
+        return e;
+    }
+
+    public E peek() {
+        ConcurrentSkipListMap.Node<Item<E>, Boolean> n = map.findFirst();
+        return (n == null) ? null : n.key.item;
+    }
+
+    /**
+     * Returns the comparator used to order the elements in this queue,
+     * or {@code null} if this queue uses the {@linkplain Comparable
+     * natural ordering} of its elements.
+     *
+     * @return the comparator used to order the elements in this queue,
+     * or {@code null} if this queue uses the natural
+     * ordering of its elements
+     */
+    public Comparator<? super E> comparator() {
+        return comparator;
+    }
+
+    /**
+     * Returns the number of elements in this queue.  Unlike
+     * {@link ConcurrentSkipListMap#size()}, this is a constant-time
+     * operation, but it is only an estimate while other threads are
+     * concurrently inserting or removing elements.
+     *
+     * @return the number of elements in this queue
+     */
+    public int size() {
+        int n = count.get();
+        return (n < 0) ? 0 : n;
+    }
+
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    /**
+     * Always returns {@code Integer.MAX_VALUE} because
+     * a {@code SkipListPriorityBlockingQueue} is not capacity constrained.
+     *
+     * @return {@code Integer.MAX_VALUE} always
+     */
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Removes a single instance of the specified element from this queue,
+     * if it is present.
+     *
+     * @param o element to be removed from this queue, if present
+     * @return {@code true} if this queue changed as a result of the call
+     */
+    public boolean remove(Object o) {
+        if (o == null)
+            return false;
+        for (Item<E> k : map.keySet()) {
+            if (o.equals(k.item) && map.remove(k) != null) {
+                count.getAndDecrement();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean contains(Object o) {
+        if (o == null)
+            return false;
+        for (Item<E> k : map.keySet()) {
+            if (o.equals(k.item))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @throws UnsupportedOperationException {@inheritDoc}
+     * @throws ClassCastException            {@inheritDoc}
+     * @throws NullPointerException          {@inheritDoc}
+     * @throws IllegalArgumentException      {@inheritDoc}
+     */
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @throws UnsupportedOperationException {@inheritDoc}
+     * @throws ClassCastException            {@inheritDoc}
+     * @throws NullPointerException          {@inheritDoc}
+     * @throws IllegalArgumentException      {@inheritDoc}
+     */
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == null)
+            throw new NullPointerException();
+        if (c == this)
+            throw new IllegalArgumentException();
+        int n = 0;
+        E e;
+        while (n < maxElements && (e = poll()) != null) {
+            c.add(e);
+            ++n;
+        }
+        return n;
+    }
+
+    /**
+     * Removes all of the elements from this queue.
+     */
+    public void clear() {
+        while (poll() != null)
+            ;
+    }
+
+    /**
+     * Returns an iterator over the elements in this queue, in
+     * priority order.
+     *
+     * <p>The returned iterator is
+     * <a href="package-summary.html#Weakly"><i>weakly consistent</i></a>.
+     *
+     * @return an iterator over the elements in this queue
+     */
+    public Iterator<E> iterator() {
+        return new Itr(map.keySet().iterator());
+    }
+
+    /**
+     * Iterator over the keys of the underlying skip list.
+     */
+    final class Itr implements Iterator<E> {
+        final Iterator<Item<E>> it;
+        Item<E> lastRet;
+
+        Itr(Iterator<Item<E>> it) {
+            this.it = it;
+        }
+
+        public boolean hasNext() {
+            return it.hasNext();
+        }
+
+        public E next() {
+            Item<E> k = it.next();
+            lastRet = k;
+            return k.item;
+        }
+
+        public void remove() {
+            Item<E> k = lastRet;
+            if (k == null)
+                throw new IllegalStateException();
+            if (map.remove(k) != null)
+                count.getAndDecrement();
+            lastRet = null;
+        }
+    }
+}
@@ -181,6 +181,14 @@ public class SynchronousQueue<E> extends AbstractQueue<E>
      * Shared internal API for dual stacks and queues.
      */
     abstract static class Transferer<E> {
+        /**
+         * 自适应自旋策略, 根据最近的配对等待情况调整自旋次数.
+         * <p>
+         * Spin budget for awaitFulfill, starting from maxUntimedSpins.
+         */
+        final AdaptiveSpinPolicy spinPolicy =
+                new AdaptiveSpinPolicy(maxUntimedSpins, maxUntimedSpins << 2);
+
         /**
          * 非null表示 生产者 -> 消费者;
          * null表示, 消费者 -> 生产者.
@@ -207,6 +215,8 @@ public class SynchronousQueue<E> extends AbstractQueue<E>
 
     /**
      * The number of times to spin before blocking in timed waits.
+     * Now only the initial value: each transferer's AdaptiveSpinPolicy
+     * adjusts its budget from recent handoffs.
      * The value is empirically derived -- it works well across a
      * variety of processors and OSes. Empirically, the best value
      * seems not to vary with number of CPUs (beyond 2) so is just
@@ -506,10 +516,12 @@ public class SynchronousQueue<E> extends AbstractQueue<E>
              */
             final long deadline = timed ? System.nanoTime() + nanos : 0L;
             Thread w = Thread.currentThread();
+            final AdaptiveSpinPolicy policy = spinPolicy;
 
-            // 性能优化操作（计算自旋次数）
-            int spins = (shouldSpin(s) ?
-                    (timed ? maxTimedSpins : maxUntimedSpins) : 0);
+            // 性能优化操作（计算自旋次数）, 自旋次数由spinPolicy根据最近的配对情况动态调整
+            int budget = shouldSpin(s) ? policy.spins(timed) : 0;
+            int spins = budget, used = 0;
+            long parkedAt = 0L;             // 第一次阻塞的时间, 0表示还没有阻塞过
             for (; ; ) {
                 if (w.isInterrupted())
                     s.tryCancel();
@@ -520,8 +532,15 @@ public class SynchronousQueue<E> extends AbstractQueue<E>
                  * s.match==s 说明当前结点s对应的线程被中断了
                  */
                 SNode m = s.match;
-                if (m != null)
+                if (m != null) {
+                    if (m != s) {           // 配对成功, 把本次等待的结果反馈给spinPolicy
+                        if (parkedAt == 0L)
+                            policy.spunHandoff(used, budget);
+                        else
+                            policy.parkedHandoff(System.nanoTime() - parkedAt);
+                    }
                     return m;
+                }
                 if (timed) {
                     nanos = deadline - System.nanoTime();
                     if (nanos <= 0L) {
@@ -529,14 +548,23 @@ public class SynchronousQueue<E> extends AbstractQueue<E>
                         continue;
                     }
                 }
-                if (spins > 0)
-                    spins = shouldSpin(s) ? (spins - 1) : 0;
-                else if (s.waiter == null)  // 还没有匹配结点, 则保存当前线程
+                if (spins > 0) {
+                    if (shouldSpin(s)) {
+                        --spins;
+                        ++used;
+                    } else
+                        spins = 0;
+                } else if (s.waiter == null)  // 还没有匹配结点, 则保存当前线程
                     s.waiter = w; // establish waiter so can park next iter // s.waiter保存当前阻塞线程
-                else if (!timed)
+                else if (!timed) {
+                    if (parkedAt == 0L)
+                        parkedAt = System.nanoTime();
                     LockSupport.park(this); // 阻塞当前线程
-                else if (nanos > spinForTimeoutThreshold)
+                } else if (nanos > spinForTimeoutThreshold) {
+                    if (parkedAt == 0L)
+                        parkedAt = System.nanoTime();
                     LockSupport.parkNanos(this, nanos);
+                }
             }
         }
 
@@ -832,14 +860,23 @@ public class SynchronousQueue<E> extends AbstractQueue<E>
             /* Same idea as TransferStack.awaitFulfill */
             final long deadline = timed ? System.nanoTime() + nanos : 0L;
             Thread w = Thread.currentThread();
-            int spins = ((head.next == s) ?
-                    (timed ? maxTimedSpins : maxUntimedSpins) : 0);
+            final AdaptiveSpinPolicy policy = spinPolicy;
+            int budget = (head.next == s) ? policy.spins(timed) : 0;
+            int spins = budget;
+            long parkedAt = 0L;
             for (; ; ) {
                 if (w.isInterrupted())
                     s.tryCancel(e);
                 Object x = s.item;
-                if (x != e)
+                if (x != e) {
+                    if (x != s) {
+                        if (parkedAt == 0L)
+                            policy.spunHandoff(budget - spins, budget);
+                        else
+                            policy.parkedHandoff(System.nanoTime() - parkedAt);
+                    }
                     return x;
+                }
                 if (timed) {
                     nanos = deadline - System.nanoTime();
                     if (nanos <= 0L) {
@@ -851,10 +888,15 @@ public class SynchronousQueue<E> extends AbstractQueue<E>
                     --spins;
                 else if (s.waiter == null)
                     s.waiter = w;
-                else if (!timed)
+                else if (!timed) {
+                    if (parkedAt == 0L)
+                        parkedAt = System.nanoTime();
                     LockSupport.park(this);
-                else if (nanos > spinForTimeoutThreshold)
+                } else if (nanos > spinForTimeoutThreshold) {
+                    if (parkedAt == 0L)
+                        parkedAt = System.nanoTime();
                     LockSupport.parkNanos(this, nanos);
+                }
             }
         }
 
@@ -966,6 +1008,18 @@ public class SynchronousQueue<E> extends AbstractQueue<E>
         transferer = fair ? new TransferQueue<E>() : new TransferStack<E>();
     }
 
+    /**
+     * 返回本队列的自适应自旋策略, 可用于查看自旋/阻塞的配对次数.
+     * <p>
+     * Returns the adaptive spin policy of this queue, which reports
+     * how many handoffs completed while spinning versus after parking.
+     *
+     * @return the adaptive spin policy of this queue
+     */
+    public AdaptiveSpinPolicy getSpinPolicy() {
+        return transferer.spinPolicy;
+    }
+
     /**
      * 入队指定元素e.
      * 如果没有另一个线程进行出队操作, 则阻塞该入队线程.
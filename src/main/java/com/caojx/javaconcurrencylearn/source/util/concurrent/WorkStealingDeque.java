@@ -0,0 +1,335 @@
+package com.caojx.javaconcurrencylearn.source.util.concurrent;
+
+import java.util.NoSuchElementException;
+
+/**
+ * WorkStealingDeque是从ForkJoinPool.WorkQueue中抽取出来的独立的“工作窃取”双端队列（Chase-Lev风格的数组双端队列）。
+ * <p>
+ * ForkJoinPool.WorkQueue是一个高度优化的双端队列，但它是ForkJoinPool的私有内部类，并且和线程池耦合在一起（signalWork、qlock等）。
+ * WorkStealingDeque保留了它的核心算法，去掉了线程池相关的部分，自定义调度器可以直接使用：
+ * 1.队列有一个“所有者”线程，只有所有者可以调用push/pop，在栈顶（top）以LIFO的方式存取元素；
+ * 2.其它线程（窃取者）调用steal，在栈底（base）以FIFO的方式窃取元素；
+ * 3.push只有一次有序写（putOrderedObject）和一次有序写top，不需要CAS；pop和steal都通过CAS把数组槽位置为null来“认领”元素，
+ *   所以所有者和窃取者争抢最后一个元素时，只有一个能成功；
+ * 4.数组容量不足时由所有者扩容为原来的两倍，扩容时模拟“从旧数组poll、向新数组push”，与并发的窃取者不冲突。
+ * <p>
+ * A single-owner work-stealing deque.  The owner thread pushes and
+ * pops elements at the top in LIFO order; any other thread may steal
+ * elements from the base in FIFO order.  The algorithm is that of
+ * {@code ForkJoinPool.WorkQueue}: pushes use only ordered writes,
+ * while pops and steals claim an element by CASing its array slot to
+ * null, so an owner and a thief racing for the last element never
+ * both obtain it.
+ *
+ * <p>{@link #push}, {@link #pop}, {@link #peekTop} and
+ * {@link #tryUnpush} must only be called by the owner thread, which
+ * is not checked; all other methods may be called by any thread.  This
+ * class does not permit {@code null} elements.
+ *
+ * @param <E> the type of elements held in this deque
+ * @author caojx created on 2026/10/19
+ * @see ForkJoinPool
+ */
+@sun.misc.Contended
+public class WorkStealingDeque<E> {
+
+    /*
+     * Indices base and top only ever increase (modulo wraparound);
+     * the slot of index i is (i & (array.length - 1)).  base is
+     * volatile and advanced by thieves after a successful slot CAS;
+     * top is written only by the owner, with ordered stores so that a
+     * thief that sees the new top also sees the element.  As in
+     * WorkQueue, the array reference is a plain field: thieves read
+     * base before array, and a stale array is harmless because growth
+     * CASes every element out of the old array before re-publishing it.
+     */
+
+    /**
+     * 数组的默认初始容量, 必须是2的幂次
+     */
+    static final int INITIAL_CAPACITY = 1 << 8;
+
+    /**
+     * 数组的最大容量
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 26; // 64M
+
+    /**
+     * 下一个窃取位置的索引
+     */
+    volatile int base;
+
+    /**
+     * 下一个push位置的索引, 只有所有者线程写
+     */
+    int top;
+
+    /**
+     * 元素数组, 容量为2的幂次
+     */
+    Object[] array;
+
+    /**
+     * Creates a deque with the default initial capacity.
+     */
+    public WorkStealingDeque() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates a deque with at least the given initial capacity.
+     *
+     * @param initialCapacity the initial capacity, rounded up to a power
+     *                        of two
+     * @throws IllegalArgumentException if {@code initialCapacity} is
+     *                                  less than 1 or greater than the maximum capacity
+     */
+    public WorkStealingDeque(int initialCapacity) {
+        if (initialCapacity < 1 || initialCapacity > MAXIMUM_CAPACITY)
+            throw new IllegalArgumentException();
+        int n = 2;
+        while (n < initialCapacity)
+            n <<= 1;
+        array = new Object[n];
+        // 与WorkQueue一样, 索引从数组中间开始
+        base = top = n >>> 1;
+    }
+
+    /**
+     * 所有者线程在栈顶插入元素.
+     * <p>
+     * Pushes an element at the top.  Call only by the owner.
+     *
+     * @param e the element
+     * @throws NullPointerException  if {@code e} is null
+     * @throws IllegalStateException if the deque would exceed its
+     *                               maximum capacity
+     */
+    public void push(E e) {
+        if (e == null)
+            throw new NullPointerException();
+        Object[] a = array;
+        int b = base, s = top;
+        int m = a.length - 1;        // fenced write for element visibility
+        U.putOrderedObject(a, ((m & s) << ASHIFT) + ABASE, e);
+        U.putOrderedInt(this, TOP, s + 1);
+        if (s - b >= m)
+            growArray();
+    }
+
+    /**
+     * 容量翻倍. 只有所有者调用, 扩容期间base可以被窃取者移动, top不会.
+     * <p>
+     * Doubles the capacity of the array.  Call only by the owner.
+     */
+    private void growArray() {
+        Object[] oldA = array;
+        int size = oldA.length << 1;
+        if (size > MAXIMUM_CAPACITY)
+            throw new IllegalStateException("Deque capacity exceeded");
+        int oldMask = oldA.length - 1, t, b;
+        Object[] a = array = new Object[size];
+        if ((t = top) - (b = base) > 0) {
+            int mask = size - 1;
+            do { // emulate poll from old array, push to new array
+                Object x;
+                long oldj = ((b & oldMask) << ASHIFT) + ABASE;
+                long j = ((b & mask) << ASHIFT) + ABASE;
+                x = U.getObjectVolatile(oldA, oldj);
+                if (x != null &&
+                        U.compareAndSwapObject(oldA, oldj, x, null))
+                    U.putObjectVolatile(a, j, x);
+            } while (++b != t);
+        }
+    }
+
+    /**
+     * 所有者线程从栈顶取出元素（LIFO）, 队列为空时返回null.
+     * <p>
+     * Removes and returns the top element, or returns {@code null} if
+     * this deque is empty.  Call only by the owner.
+     *
+     * @return the top element, or {@code null} if empty
+     */
+    @SuppressWarnings("unchecked")
+    public E pop() {
+        Object[] a = array;
+        int m = a.length - 1;
+        for (int s; (s = top - 1) - base >= 0; ) {
+            long j = ((m & s) << ASHIFT) + ABASE;
+            Object t;
+            if ((t = U.getObject(a, j)) == null)
+                break;      // 被窃取者抢走了最后一个元素
+            if (U.compareAndSwapObject(a, j, t, null)) {
+                U.putOrderedInt(this, TOP, s);
+                return (E) t;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 仅当e位于栈顶时将其移除.
+     * <p>
+     * Removes the given element only if it is at the top.  Call only
+     * by the owner.
+     *
+     * @param e the element
+     * @return {@code true} if removed
+     */
+    public boolean tryUnpush(E e) {
+        Object[] a = array;
+        int s;
+        if ((s = top) != base &&
+                U.compareAndSwapObject
+                        (a, (((a.length - 1) & --s) << ASHIFT) + ABASE, e, null)) {
+            U.putOrderedInt(this, TOP, s);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 查看栈顶元素但不移除.
+     * <p>
+     * Returns the top element without removing it.  Call only by the owner.
+     *
+     * @return the top element, or {@code null} if empty
+     */
+    @SuppressWarnings("unchecked")
+    public E peekTop() {
+        Object[] a = array;
+        int s = top - 1;
+        if (s - base < 0)
+            return null;
+        return (E) U.getObjectVolatile(a, (((a.length - 1) & s) << ASHIFT) + ABASE);
+    }
+
+    /**
+     * 从栈底窃取元素（FIFO）, 与其它窃取者竞争失败时重试, 直到成功或队列为空.
+     * <p>
+     * Removes and returns the bottom element, retrying on contention
+     * with other thieves, or returns {@code null} if this deque is
+     * empty.  May be called by any thread, including the owner.
+     *
+     * @return the bottom element, or {@code null} if empty
+     */
+    @SuppressWarnings("unchecked")
+    public E steal() {
+        Object[] a;
+        int b;
+        Object t;
+        while ((b = base) - top < 0 && (a = array) != null) {
+            long j = (((a.length - 1) & b) << ASHIFT) + ABASE;
+            t = U.getObjectVolatile(a, j);
+            if (base == b) {
+                if (t != null) {
+                    if (U.compareAndSwapObject(a, j, t, null)) {
+                        base = b + 1;
+                        return (E) t;
+                    }
+                } else if (b + 1 == top) // now empty
+                    break;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 尝试窃取一次, 有竞争时立即放弃（返回null）, 适合在多个队列之间随机扫描的调度器.
+     * <p>
+     * Makes a single attempt to steal the bottom element, giving up on
+     * contention.  Useful for schedulers that scan several deques and
+     * prefer moving on to retrying.
+     *
+     * @return the bottom element, or {@code null} if empty or contended
+     */
+    @SuppressWarnings("unchecked")
+    public E trySteal() {
+        Object[] a;
+        int b;
+        Object t;
+        if ((b = base) - top < 0 && (a = array) != null) {
+            long j = (((a.length - 1) & b) << ASHIFT) + ABASE;
+            if ((t = U.getObjectVolatile(a, j)) != null &&
+                    base == b && U.compareAndSwapObject(a, j, t, null)) {
+                base = b + 1;
+                return (E) t;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 窃取栈底元素, 队列为空时抛出NoSuchElementException.
+     * <p>
+     * Removes and returns the bottom element.
+     *
+     * @return the bottom element
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public E remove() {
+        E x = steal();
+        if (x == null)
+            throw new NoSuchElementException();
+        return x;
+    }
+
+    /**
+     * 返回近似的元素个数.
+     * <p>
+     * Returns an estimate of the number of elements.
+     *
+     * @return an estimate of the number of elements
+     */
+    public int size() {
+        int n = base - top;       // non-owner callers must read base first
+        return (n >= 0) ? 0 : -n; // ignore transient negative
+    }
+
+    /**
+     * Returns {@code true} if this deque appears to contain no
+     * elements; more accurate than {@code size() == 0} when one element
+     * may have been claimed but base not yet advanced.
+     *
+     * @return {@code true} if this deque appears empty
+     */
+    public boolean isEmpty() {
+        Object[] a;
+        int n, s;
+        return ((n = base - (s = top)) >= 0 ||
+                (n == -1 &&           // possibly one element
+                        ((a = array) == null ||
+                                U.getObject(a, ((long) ((a.length - 1) & (s - 1)) << ASHIFT) + ABASE) == null)));
+    }
+
+    /**
+     * Returns a string identifying this deque, as well as its size.
+     *
+     * @return a string identifying this deque, as well as its size
+     */
+    public String toString() {
+        return super.toString() + "[size = " + size() + "]";
+    }
+
+    // Unsafe mechanics
+    private static final sun.misc.Unsafe U;
+    private static final long TOP;
+    private static final int ABASE;
+    private static final int ASHIFT;
+
+    static {
+        try {
+            U = sun.misc.Unsafe.getUnsafe();
+            Class<?> k = WorkStealingDeque.class;
+            TOP = U.objectFieldOffset(k.getDeclaredField("top"));
+            ABASE = U.arrayBaseOffset(Object[].class);
+            int scale = U.arrayIndexScale(Object[].class);
+            if ((scale & (scale - 1)) != 0)
+                throw new Error("data type scale not a power of two");
+            ASHIFT = 31 - Integer.numberOfLeadingZeros(scale);
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+}